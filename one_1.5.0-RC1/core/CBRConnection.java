@@ -10,6 +10,8 @@ import routing.MessageRouter;
  * A constant bit-rate connection between two DTN nodes.
  */
 public class CBRConnection extends Connection {
+	private static final long serialVersionUID = 1L;
+
 	private int speed;
 	private double transferDoneTime;
 
@@ -0,0 +1,482 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import report.Report;
+import util.Tuple;
+
+/**
+ * <P>Writes checkpoints of a simulation run and resumes runs from them.
+ * A checkpoint contains the whole state of the run's
+ * {@link SimulationContext} (the scenario, world, hosts, routers, movement
+ * models, connections, event queues etc.) and the state of the user
+ * interface (e.g., the reports). The checkpoint is written as a gzipped
+ * Java serialization stream and written over the previous checkpoint only
+ * when the new one is complete.</P>
+ * <P>A resumed run continues exactly as the original run would have
+ * continued from the checkpoint. The run must use the same settings (apart
+ * from the checkpoint settings) and run index as the run that wrote the
+ * checkpoint. Since the iteration order of hash maps and sets depends on
+ * their capacity, the capacities are stored to the checkpoint too (see
+ * {@link HashCollection}).</P>
+ */
+public class Checkpoint {
+	/** Checkpoint settings namespace ({@value}) */
+	public static final String CHECKPOINT_NS = "Checkpoint";
+	/** Checkpoint interval -setting id ({@value}). Defines how many
+	 * simulated seconds there are between checkpoints. If not defined, or
+	 * 0, no checkpoints are written. */
+	public static final String INTERVAL_S = "interval";
+	/** Checkpoint file -setting id ({@value}). Path of the checkpoint file.
+	 * Supports value filling. Default is the scenario name suffixed with
+	 * the run number and {@value #DEF_FILE_SUFFIX} in the report directory.
+	 * If the run has a report subdirectory (see
+	 * {@link SimulationContext#setReportSubdir(String)}), the file is put
+	 * to that subdirectory. */
+	public static final String FILE_S = "file";
+	/** Resume -setting id ({@value}). If true, the run is resumed from the
+	 * checkpoint file, if the file exists. Default is false. */
+	public static final String RESUME_S = "resume";
+	/** Suffix of the default checkpoint file name ({@value}) */
+	public static final String DEF_FILE_SUFFIX = ".ckpt.gz";
+
+	private double interval;
+	private double nextCheckpoint;
+	private File file;
+	private boolean resume;
+
+	/**
+	 * Constructor. Reads the checkpoint settings.
+	 */
+	public Checkpoint() {
+		Settings s = new Settings(CHECKPOINT_NS);
+		this.interval = s.getDouble(INTERVAL_S, 0);
+		this.resume = s.getBoolean(RESUME_S, false);
+
+		if (this.interval < 0) {
+			throw new SettingsError("Checkpoint interval can't be negative");
+		}
+		if (this.interval > 0 || this.resume) {
+			this.file = getFile(s);
+		}
+		scheduleNext();
+	}
+
+	/**
+	 * Returns the checkpoint file of the run defined by the settings
+	 * @param s The checkpoint settings
+	 * @return The file
+	 */
+	private File getFile(Settings s) {
+		String fileName;
+		if (s.contains(FILE_S)) {
+			fileName = s.valueFillString(s.getSetting(FILE_S));
+		}
+		else {
+			s.setNameSpace(null);
+			String dir = s.getSetting(Report.REPORTDIR_SETTING);
+			if (!dir.endsWith("/")) {
+				dir += "/";
+			}
+			fileName = dir + s.valueFillString(s.getSetting(
+					SimScenario.SCENARIO_NS + "." + SimScenario.NAME_S));
+			int runIndex = SimulationContext.get().getRunIndex();
+			if (runIndex >= 0) {
+				fileName += "_run" + (runIndex + 1);
+			}
+			fileName += DEF_FILE_SUFFIX;
+		}
+
+		File f = new File(fileName);
+		String subdir = SimulationContext.get().getReportSubdir();
+		if (subdir != null) { // run specific reports -> use run's subdir
+			f = new File(new File(f.getParentFile(), subdir), f.getName());
+		}
+		return f;
+	}
+
+	/**
+	 * Returns true if the run should be resumed from a checkpoint, i.e.,
+	 * resuming is requested and the checkpoint file exists
+	 * @return true if the run should be resumed
+	 */
+	public boolean canResume() {
+		return this.resume && this.file.exists();
+	}
+
+	/**
+	 * Returns the checkpoint file
+	 * @return the checkpoint file or null if checkpoints are neither
+	 * written nor resumed from
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Deletes the checkpoint file, if there is one. Should be called when
+	 * the run has completed, so that the completed run isn't resumed.
+	 */
+	public void delete() {
+		if (this.file != null && this.file.exists() && !this.file.delete()) {
+			throw new SimError("Couldn't delete checkpoint file " + file);
+		}
+	}
+
+	/**
+	 * Writes a checkpoint if the checkpoint interval has passed since
+	 * the previous checkpoint. Must be called between world updates.
+	 * @param uiState State of the user interface to include in the
+	 * checkpoint
+	 */
+	public void update(Serializable uiState) {
+		if (this.interval <= 0 || SimClock.getTime() < this.nextCheckpoint) {
+			return;
+		}
+		write(uiState);
+		scheduleNext();
+	}
+
+	/**
+	 * Schedules the next checkpoint to the next multiple of the interval
+	 */
+	private void scheduleNext() {
+		if (this.interval > 0) {
+			this.nextCheckpoint = (Math.floor(SimClock.getTime() /
+					this.interval) + 1) * this.interval;
+		}
+	}
+
+	/**
+	 * Writes a checkpoint of the current simulation context
+	 * @param uiState State of the user interface to include in the
+	 * checkpoint
+	 */
+	public void write(Serializable uiState) {
+		State state = new State();
+		state.settingsDigest = getSettingsDigest();
+		state.context = SimulationContext.get();
+		state.uiState = uiState;
+
+		File tmpFile = new File(file.getPath() + ".tmp");
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.exists() && !dir.mkdirs()) {
+			throw new SimError("Couldn't create checkpoint directory " + dir);
+		}
+
+		try {
+			ObjectOutputStream out = new StateOutputStream(
+					new BufferedOutputStream(new GZIPOutputStream(
+							new FileOutputStream(tmpFile))));
+			try {
+				out.writeObject(state);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			throw new SimError("Checkpoint " + file + " failed: " + e, e);
+		}
+
+		/* replace the old checkpoint only when the new one is complete */
+		if (file.exists() && !file.delete() || !tmpFile.renameTo(file)) {
+			throw new SimError("Couldn't replace checkpoint file " + file);
+		}
+	}
+
+	/**
+	 * Resumes the run from the checkpoint: restores the state of the current
+	 * simulation context from the checkpoint file.
+	 * @return The state of the user interface stored in the checkpoint
+	 * @throws SettingsError if the checkpoint was written by a run with
+	 * different settings
+	 */
+	public Serializable resume() {
+		State state;
+		SimulationContext ctx = SimulationContext.get();
+
+		try {
+			StateInputStream in = new StateInputStream(
+					new BufferedInputStream(new GZIPInputStream(
+							new FileInputStream(file))));
+			try {
+				state = (State)in.readObject();
+				in.fillCollections();
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new SimError("Checkpoint " + file + " failed: " + e, e);
+		} catch (ClassNotFoundException e) {
+			throw new SimError("Checkpoint " + file + " failed: " + e, e);
+		}
+
+		if (!getSettingsDigest().equals(state.settingsDigest) ||
+				state.context.getRunIndex() != ctx.getRunIndex()) {
+			throw new SettingsError("Checkpoint " + file + " was written " +
+					"by a run with different settings or run index");
+		}
+
+		ctx.restore(state.context);
+		scheduleNext();
+		return state.uiState;
+	}
+
+	/**
+	 * Returns a digest of all the settings, except the checkpoint settings
+	 * @return The digest in a hex string
+	 */
+	private static String getSettingsDigest() {
+		List<String> entries = new ArrayList<String>();
+		for (String key : Settings.props.stringPropertyNames()) {
+			if (!key.startsWith(CHECKPOINT_NS + ".")) {
+				entries.add(key + "=" + Settings.props.getProperty(key));
+			}
+		}
+		Collections.sort(entries);
+
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			for (String entry : entries) {
+				md.update(entry.getBytes("UTF-8"));
+				md.update((byte)'\n');
+			}
+			StringBuilder sb = new StringBuilder();
+			for (byte b : md.digest()) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new SimError(e);
+		} catch (IOException e) {
+			throw new SimError(e);
+		}
+	}
+
+	/**
+	 * Object output stream that writes hash maps and sets as
+	 * {@link HashCollection}s. The iteration order of a hash based
+	 * collection depends on the capacity of its hash table, which isn't
+	 * restored when the collection is read by the default serialization.
+	 * Also used for the {@link WarmupSnapshot}s.
+	 */
+	static class StateOutputStream extends ObjectOutputStream {
+
+		/**
+		 * Constructor.
+		 * @param out The stream to write to
+		 * @throws IOException if writing the stream header fails
+		 */
+		public StateOutputStream(OutputStream out) throws IOException {
+			super(out);
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) throws IOException {
+			if (obj != null && (obj.getClass() == HashMap.class ||
+					obj.getClass() == HashSet.class)) {
+				return new HashCollection(obj);
+			}
+			return obj;
+		}
+	}
+
+	/**
+	 * Object input stream that reads the hash maps and sets written as
+	 * {@link HashCollection}s. Since the hash codes of the elements may not
+	 * be valid before the elements have been read completely, the elements
+	 * are added to the collections by {@link #fillCollections()} after the
+	 * whole state has been read.
+	 */
+	static class StateInputStream extends ObjectInputStream {
+		/** the collections that have been read but not filled yet */
+		private List<Tuple<HashCollection, Object>> unfilled;
+
+		/**
+		 * Constructor.
+		 * @param in The stream to read from
+		 * @throws IOException if reading the stream header fails
+		 */
+		public StateInputStream(InputStream in) throws IOException {
+			super(in);
+			this.unfilled = new ArrayList<Tuple<HashCollection, Object>>();
+			enableResolveObject(true);
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) throws IOException {
+			if (obj instanceof HashCollection) {
+				HashCollection hc = (HashCollection)obj;
+				Object c = hc.createCollection();
+				unfilled.add(new Tuple<HashCollection, Object>(hc, c));
+				return c;
+			}
+			return obj;
+		}
+
+		/**
+		 * Adds the elements to all the collections that have been read. Must
+		 * be called after the whole state has been read.
+		 */
+		public void fillCollections() {
+			for (Tuple<HashCollection, Object> t : unfilled) {
+				t.getKey().fill(t.getValue());
+			}
+			unfilled.clear();
+		}
+	}
+
+	/**
+	 * Serialized form of a hash map or set. Contains the elements in the
+	 * iteration order and the capacity of a hash table in which the
+	 * elements iterate in that order when they are added in that order.
+	 * The capacity is the smallest such capacity, starting from the one
+	 * the size of the collection needs with the default load factor, so it
+	 * is the capacity of the original collection unless the collection has
+	 * shrunk (e.g., a message buffer that has been fuller before). A
+	 * collection that has shrunk iterates in the same order after resuming
+	 * but may grow its table at a different size than the original one.
+	 */
+	private static class HashCollection implements Serializable {
+		private static final long serialVersionUID = 1L;
+		/** the largest capacity of a hash table */
+		private static final int MAX_CAPACITY = 1 << 30;
+
+		/** is the collection a set (or a map) */
+		private boolean isSet;
+		private int capacity;
+		/** elements of a set or the keys and values of a map, in turns */
+		private Object[] elements;
+
+		/**
+		 * Constructor.
+		 * @param collection The hash map or set
+		 * @throws IOException if no capacity gives the same iteration order
+		 */
+		@SuppressWarnings("unchecked")
+		public HashCollection(Object collection) throws IOException {
+			this.isSet = collection instanceof HashSet;
+
+			if (isSet) {
+				this.elements = ((HashSet<Object>)collection).toArray();
+			}
+			else {
+				Map<Object, Object> map = (Map<Object, Object>)collection;
+				this.elements = new Object[map.size() * 2];
+				int i = 0;
+				for (Map.Entry<Object, Object> e : map.entrySet()) {
+					elements[i++] = e.getKey();
+					elements[i++] = e.getValue();
+				}
+			}
+			this.capacity = getCapacity(collection);
+		}
+
+		/**
+		 * Returns the smallest capacity with which a collection that is
+		 * filled with the elements iterates in the same order as the
+		 * original collection
+		 * @param collection The original collection
+		 * @return The capacity
+		 * @throws IOException if no capacity gives the same order
+		 */
+		private int getCapacity(Object collection) throws IOException {
+			int size = isSet ? elements.length : elements.length / 2;
+			long c = Math.max(1, (long)Math.ceil(size / 0.75));
+			for (; c <= MAX_CAPACITY; c *= 2) {
+				this.capacity = (int)c;
+				Object probe = createCollection();
+				fill(probe);
+				if (hasSameOrder(probe)) {
+					return this.capacity;
+				}
+			}
+			throw new IOException("Couldn't resolve the capacity of " + 
+					collection.getClass());
+		}
+
+		/**
+		 * Returns true if the set or the keys of the map iterate in the
+		 * order of the elements
+		 */
+		private boolean hasSameOrder(Object collection) {
+			Iterable<?> keys = isSet ? (HashSet<?>)collection : 
+				((HashMap<?, ?>)collection).keySet();
+			int step = isSet ? 1 : 2;
+			int i = 0;
+			for (Object key : keys) {
+				if (key != elements[i]) {
+					return false;
+				}
+				i += step;
+			}
+			return true;
+		}
+
+		/**
+		 * Creates an empty collection with the stored capacity
+		 * @return The collection
+		 */
+		public Object createCollection() {
+			if (isSet) {
+				return new HashSet<Object>(capacity);
+			}
+			else {
+				return new HashMap<Object, Object>(capacity);
+			}
+		}
+
+		/**
+		 * Adds the elements to a collection created by
+		 * {@link #createCollection()}
+		 * @param collection The collection
+		 */
+		@SuppressWarnings("unchecked")
+		public void fill(Object collection) {
+			if (isSet) {
+				Collections.addAll((HashSet<Object>)collection, elements);
+				return;
+			}
+
+			Map<Object, Object> map = (Map<Object, Object>)collection;
+			for (int i = 0; i < elements.length; i += 2) {
+				map.put(elements[i], elements[i + 1]);
+			}
+		}
+	}
+
+	/**
+	 * The state stored in a checkpoint
+	 */
+	private static class State implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private String settingsDigest;
+		private SimulationContext context;
+		private Serializable uiState;
+	}
+}
@@ -4,12 +4,16 @@
  */
 package core;
 
+import java.io.Serializable;
+
 import routing.MessageRouter;
 
 /**
  * A connection between two DTN nodes.
  */
-public abstract class Connection {
+public abstract class Connection implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	protected DTNHost toNode;
 	protected NetworkInterface toInterface;
 	protected DTNHost fromNode;
@@ -136,7 +140,7 @@ public abstract class Connection {
 		
 		this.bytesTransferred += msgOnFly.getSize();
 
-		getOtherNode(msgFromNode).messageTransferred(this.msgOnFly.getId(),
+		getOtherNode(msgFromNode).messageTransferred(this.msgOnFly,
 				msgFromNode);
 		clearMsgOnFly();
 	}
@@ -169,6 +173,15 @@ public abstract class Connection {
 	 */
 	public abstract double getSpeed();	
 
+	/**
+	 * Returns the node that is sending the message that is currently being
+	 * transferred
+	 * @return The sending node or null if no message is being transferred
+	 */
+	public DTNHost getMessageSender() {
+		return (this.msgOnFly != null ? this.msgFromNode : null);
+	}
+
 	/**
 	 * Returns the total amount of bytes this connection has transferred so far
 	 * (including all transfers).
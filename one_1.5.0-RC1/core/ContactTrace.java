@@ -0,0 +1,437 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import interfaces.SimpleBroadcastInterface;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <P>Cache of the connectivity of a scenario. When many runs differ only in
+ * settings that don't affect the movement or the interfaces (e.g., when
+ * routers are compared), the connection up and down events of the first
+ * run are recorded to a contact trace file and the other runs replay the
+ * connections from the trace. The replaying runs don't move the hosts or
+ * check the ranges of the interfaces at all.</P>
+ * <P>The trace files are kept in the directory given with the
+ * {@link #CONTACT_TRACE_DIR_S} setting and named by a hash of the
+ * settings that were read while the scenario was created (apart from the
+ * router, application and event settings, see
+ * {@link Settings#startRecording()}), the settings of the interfaces, the
+ * end time and the warmup time. A trace is recorded if there is no trace
+ * for the settings yet and saved when the simulation reaches the end
+ * time.</P>
+ * <P>The recorded changes are replayed at their times and at the same
+ * points between the host updates as they were made in the recording run:
+ * the changes made while a host was updated are replayed at the turn of
+ * that host, just before its router is updated, and the other changes
+ * (e.g., the ones of a connectivity sweep) before the next host update.
+ * The routers thus see the same connections in the same order as in the
+ * recording run (as long as the hosts are updated the same number of
+ * times in the same order). The locations of the hosts are not updated in the replaying runs, so the
+ * traces should not be used with reports, routers or applications that
+ * use the locations, or with energy models (which may turn the radios
+ * off depending on the routing). All the interfaces must be
+ * {@link SimpleBroadcastInterface}s.</P>
+ * <P>The trace is a gzipped stream of records: the time (double), the
+ * turn of the change (int, 2n-1 for changes made during the nth host
+ * update and 2n for changes made after it), the type (byte, 1 for up and 0 for down), the address and interface index
+ * (int and short) of the host that created (or tore down) the connection,
+ * the same of the other host, and, for up records, the connection speed
+ * (int).</P>
+ */
+public class ContactTrace implements UpdateListener, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** Contact trace directory -setting id ({@value}). If defined, the
+	 * connections are recorded to and replayed from the contact traces in
+	 * the directory. */
+	public static final String CONTACT_TRACE_DIR_S = "contactTraceDir";
+
+	/** identifier in the beginning of the trace files */
+	private static final int MAGIC = 0x4f4e4543;
+	private static final int VERSION = 3;
+	private static final byte UP = 1;
+	private static final byte DOWN = 0;
+
+	private List<DTNHost> hosts;
+	private File file;
+	private double endTime;
+	/** the records (without the header) */
+	private byte[] data;
+	private int size;
+	/** position of the next record to replay */
+	private int position;
+	private boolean saved;
+	/** the connection whose tear down was recorded last */
+	private Connection lastDown;
+	/** turn of the recorded changes or the number of replayed turns */
+	private int turn;
+
+	/**
+	 * Constructor.
+	 * @param hosts The hosts of the world
+	 * @param file The trace file
+	 * @param endTime End time of the simulation
+	 */
+	private ContactTrace(List<DTNHost> hosts, File file, double endTime) {
+		this.hosts = hosts;
+		this.file = file;
+		this.endTime = endTime;
+		this.data = new byte[1024];
+	}
+
+	/**
+	 * Sets up recording or replaying the contact trace of the world if
+	 * contact traces are in use (see {@link #CONTACT_TRACE_DIR_S}). If the
+	 * trace is replayed, the simulation time is set to the end of the
+	 * warmup and the movement models should not be warmed up.
+	 * @param world The world
+	 * @param reads Settings reads recorded while the scenario was created
+	 * (or null if the reads weren't recorded)
+	 * @param warmupTime Warmup time of the movement models
+	 * @return True if the trace is replayed, false if not
+	 * @throws SettingsError if some interface is not supported
+	 */
+	public static boolean setup(World world, Map<String, String> reads,
+			double warmupTime) {
+		Settings s = new Settings(World.OPTIMIZATION_SETTINGS_NS);
+		if (!s.contains(CONTACT_TRACE_DIR_S) || reads == null) {
+			return false;
+		}
+
+		SimScenario scen = SimScenario.getInstance();
+		List<DTNHost> hosts = world.getHosts();
+		for (DTNHost host : hosts) {
+			for (NetworkInterface ni : host.getInterfaces()) {
+				if (!(ni instanceof SimpleBroadcastInterface)) {
+					throw new SettingsError("Interface " + ni + " is not " +
+							"supported by " + World.OPTIMIZATION_SETTINGS_NS +
+							"." + CONTACT_TRACE_DIR_S);
+				}
+			}
+		}
+
+		String key = getKey(reads, scen.getInterfaceReads(),
+				scen.getEndTime(), warmupTime);
+		File file = new File(s.getSetting(CONTACT_TRACE_DIR_S),
+				"contacts_" + key + ".trace");
+		ContactTrace trace = new ContactTrace(hosts, file, scen.getEndTime());
+
+		if (file.exists()) {
+			trace.load();
+			world.setContactReplay(trace);
+			SimClock.getInstance().setTime(0);
+			return true;
+		}
+
+		for (DTNHost host : hosts) {
+			host.setContactTrace(trace);
+		}
+		scen.addUpdateListener(trace);
+		return false;
+	}
+
+	/**
+	 * Returns the hash of the settings the connectivity depends on
+	 */
+	private static String getKey(Map<String, String> reads,
+			Map<String, String> interfaceReads, double endTime,
+			double warmupTime) {
+		Map<String, String> all = new TreeMap<String, String>(reads);
+		all.putAll(interfaceReads);
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, String> e : all.entrySet()) {
+			sb.append(e.getKey()).append('=').append(e.getValue());
+			sb.append('\n');
+		}
+		sb.append(endTime).append('\n').append(warmupTime);
+
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-1").digest(
+					sb.toString().getBytes("UTF-8"));
+			StringBuilder key = new StringBuilder();
+			for (byte b : hash) {
+				key.append(String.format("%02x", b));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new SimError(e);
+		} catch (IOException e) {
+			throw new SimError(e);
+		}
+	}
+
+	/**
+	 * Starts the turn of a host update in the recording run. The following
+	 * changes are replayed at the same turn.
+	 */
+	void startTurn() {
+		this.turn++;
+	}
+
+	/**
+	 * Ends the turn of a host update in the recording run. The following
+	 * changes are replayed before the next turn.
+	 */
+	void endTurn() {
+		this.turn++;
+	}
+
+	/**
+	 * Records a connection that was created
+	 * @param con The connection
+	 */
+	void connectionUp(Connection con) {
+		writeRecord(con, UP, con.fromNode);
+		writeInt((int)con.getSpeed());
+	}
+
+	/**
+	 * Records a connection that was torn down. Both the hosts of the 
+	 * connection call this, and the host that tore the connection down 
+	 * calls it first.
+	 * @param con The connection
+	 * @param host The host that calls this
+	 */
+	void connectionDown(Connection con, DTNHost host) {
+		if (con == this.lastDown) {
+			return; /* recorded already by the first host */
+		}
+		this.lastDown = con;
+		writeRecord(con, DOWN, host);
+	}
+
+	/**
+	 * Writes a record of a connection with the given host first
+	 */
+	private void writeRecord(Connection con, byte type, DTNHost first) {
+		writeLong(Double.doubleToLongBits(SimClock.getTime()));
+		writeInt(this.turn);
+		ensureCapacity(1);
+		this.data[size++] = type;
+		if (first == con.fromNode) {
+			writeInterface(con.fromNode, con.fromInterface);
+			writeInterface(con.toNode, con.toInterface);
+		}
+		else {
+			writeInterface(con.toNode, con.toInterface);
+			writeInterface(con.fromNode, con.fromInterface);
+		}
+	}
+
+	private void writeInterface(DTNHost host, NetworkInterface ni) {
+		writeInt(host.getAddress());
+		int index = host.getInterfaces().indexOf(ni);
+		ensureCapacity(2);
+		this.data[size++] = (byte)(index >>> 8);
+		this.data[size++] = (byte)index;
+	}
+
+	private void writeInt(int value) {
+		ensureCapacity(4);
+		for (int shift = 24; shift >= 0; shift -= 8) {
+			this.data[size++] = (byte)(value >>> shift);
+		}
+	}
+
+	private void writeLong(long value) {
+		writeInt((int)(value >>> 32));
+		writeInt((int)value);
+	}
+
+	private void ensureCapacity(int bytes) {
+		if (this.size + bytes > this.data.length) {
+			this.data = Arrays.copyOf(this.data,
+					Math.max(this.data.length * 2, this.size + bytes));
+		}
+	}
+
+	private int readInt() {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8) | (this.data[position++] & 0xff);
+		}
+		return value;
+	}
+
+	private NetworkInterface readInterface() {
+		DTNHost host = this.hosts.get(readInt());
+		int index = ((this.data[position] & 0xff) << 8) |
+			(this.data[position + 1] & 0xff);
+		position += 2;
+		return host.getInterfaces().get(index);
+	}
+
+	/**
+	 * Returns the time of the next record to replay
+	 * @return The time or Double.MAX_VALUE if all the records have been
+	 * replayed
+	 */
+	public double getNextTime() {
+		if (this.position >= this.size) {
+			return Double.MAX_VALUE;
+		}
+		int p = this.position;
+		long bits = ((long)readInt() << 32) | (readInt() & 0xffffffffL);
+		this.position = p;
+		return Double.longBitsToDouble(bits);
+	}
+
+	/**
+	 * Replays all the records whose time is at or before the given time
+	 * @param time The time
+	 */
+	public void replay(double time) {
+		while (getNextTime() <= time) {
+			replayNext();
+		}
+	}
+
+	/**
+	 * Replays the records that were made before the next host update: the
+	 * records whose time is before the given time and the ones of the
+	 * given time up to the turn of the next host update.
+	 * @param time The current time
+	 */
+	public void replayBeforeTurn(double time) {
+		replayUpTo(time, 2 * this.turn);
+	}
+
+	/**
+	 * Replays the records of the next host update (and the ones before
+	 * it, see {@link #replayBeforeTurn(double)}). This must be called
+	 * before every host update of the replaying run.
+	 * @param time The current time
+	 */
+	public void replayTurn(double time) {
+		this.turn++;
+		replayUpTo(time, 2 * this.turn - 1);
+	}
+
+	/**
+	 * Replays the records whose time is before the given time and the
+	 * ones of the time whose turn is at most the given turn
+	 */
+	private void replayUpTo(double time, int lastTurn) {
+		double next;
+		while ((next = getNextTime()) < time ||
+				(next == time && getNextTurn() <= lastTurn)) {
+			replayNext();
+		}
+	}
+
+	/**
+	 * Returns the turn (host address) of the next record to replay
+	 */
+	private int getNextTurn() {
+		int p = this.position;
+		this.position += 8;
+		int turn = readInt();
+		this.position = p;
+		return turn;
+	}
+
+	/**
+	 * Replays the next record
+	 */
+	private void replayNext() {
+		this.position += 12;
+		byte type = this.data[position++];
+		NetworkInterface from = readInterface();
+		NetworkInterface to = readInterface();
+		if (type == DOWN) {
+			from.destroyConnection(to);
+		}
+		else {
+			int speed = readInt();
+			if (!from.isConnected(to)) {
+				from.connect(new CBRConnection(from.getHost(), from,
+						to.getHost(), to, speed), to);
+			}
+		}
+	}
+
+	/**
+	 * Saves the recorded trace when the simulation reaches the end time
+	 */
+	public void updated(List<DTNHost> hosts) {
+		if (!this.saved && SimClock.getTime() >= this.endTime) {
+			save();
+			this.saved = true;
+		}
+	}
+
+	/**
+	 * Writes the trace to its file. The trace is written to a temporary
+	 * file first so that concurrent runs never read an incomplete trace.
+	 */
+	private void save() {
+		File tmp = new File(this.file.getPath() + "." +
+				Thread.currentThread().getId() + ".tmp");
+		if (this.file.getParentFile() != null) {
+			this.file.getParentFile().mkdirs();
+		}
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new GZIPOutputStream(
+							new FileOutputStream(tmp))));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(this.hosts.size());
+			out.write(this.data, 0, this.size);
+			out.close();
+		} catch (IOException e) {
+			throw new SimError("Can't write contact trace " + tmp + ": " + e);
+		}
+		if (!tmp.renameTo(this.file)) {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Reads the trace from its file
+	 */
+	private void load() {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new GZIPInputStream(new FileInputStream(this.file))));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION ||
+					in.readInt() != this.hosts.size()) {
+				in.close();
+				throw new SimError("Invalid contact trace " + this.file);
+			}
+			int n;
+			ensureCapacity(4096);
+			while ((n = in.read(this.data, size, data.length - size)) >= 0) {
+				this.size += n;
+				ensureCapacity(4096);
+			}
+			in.close();
+		} catch (EOFException e) {
+			throw new SimError("Invalid contact trace " + this.file);
+		} catch (IOException e) {
+			throw new SimError("Can't read contact trace " + this.file +
+					": " + e);
+		}
+	}
+}
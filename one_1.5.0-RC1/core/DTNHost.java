@@ -4,6 +4,7 @@
  */
 package core;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -16,8 +17,9 @@ import routing.util.RoutingInfo;
 /**
  * A DTN capable host.
  */
-public class DTNHost implements Comparable<DTNHost> {
-	private static int nextAddress = 0;
+public class DTNHost implements Comparable<DTNHost>, Serializable {
+	private static final long serialVersionUID = 1L;
+
 	private int address;
 
 	private Coord location; 	// where is the host
@@ -33,8 +35,22 @@ public class DTNHost implements Comparable<DTNHost> {
 	private String name;
 	private List<MessageListener> msgListeners;
 	private List<MovementListener> movListeners;
+	/** destinations (and speeds) whose movement listener notifications are
+	 * deferred or null if notifications are not deferred */
+	private List<Coord> deferredDestinations;
+	private List<Double> deferredSpeeds;
 	private List<NetworkInterface> net;
 	private ModuleCommunicationBus comBus;
+	/** should the router updates be skipped while the router is idle */
+	private boolean skipIdleRouter;
+	/** time of the next router update the router needs (if idle router
+	 * updates are skipped) */
+	private double routerUpdateTime;
+	/** the movement of the host in the last movement step (or null if the
+	 * movement is not recorded) */
+	private KineticContacts.Trajectory trajectory;
+	/** trace the connections of the host are recorded to (or null) */
+	private ContactTrace contactTrace;
 
 	static {
 		DTNSim.registerForReset(DTNHost.class.getCanonicalName());
@@ -97,14 +113,44 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @return The next address.
 	 */
 	private synchronized static int getNextAddress() {
-		return nextAddress++;	
+		return SimulationContext.get().nextHostAddress++;	
 	}
 
 	/**
 	 * Reset the host and its interfaces
 	 */
 	public static void reset() {
-		nextAddress = 0;
+		SimulationContext.get().nextHostAddress = 0;
+	}
+
+	/**
+	 * Returns the movement state of this host
+	 * @return The movement state
+	 */
+	MovementState getMovementState() {
+		MovementState state = new MovementState();
+		state.location = this.location;
+		state.destination = this.destination;
+		state.path = this.path;
+		state.speed = this.speed;
+		state.nextTimeToMove = this.nextTimeToMove;
+		state.movement = this.movement;
+		return state;
+	}
+
+	/**
+	 * Replaces the movement state of this host (e.g., with a state of a
+	 * host of a {@link WarmupSnapshot}). The movement model of the state
+	 * must be attached to this host.
+	 * @param state The movement state
+	 */
+	void setMovementState(MovementState state) {
+		this.location = state.location;
+		this.destination = state.destination;
+		this.path = state.path;
+		this.speed = state.speed;
+		this.nextTimeToMove = state.nextTimeToMove;
+		this.movement = state.movement;
 	}
 
 	/**
@@ -162,10 +208,18 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param con  The connection object whose state changed
 	 */
 	public void connectionUp(Connection con) {
+		this.routerUpdateTime = -Double.MAX_VALUE;
+		if (this.contactTrace != null && con.isInitiator(this)) {
+			this.contactTrace.connectionUp(con);
+		}
 		this.router.changedConnection(con);
 	}
 
 	public void connectionDown(Connection con) {
+		this.routerUpdateTime = -Double.MAX_VALUE;
+		if (this.contactTrace != null) {
+			this.contactTrace.connectionDown(con, this);
+		}
 		this.router.changedConnection(con);
 	}
 
@@ -330,18 +384,47 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param simulateConnections Should network layer be updated too
 	 */
 	public void update(boolean simulateConnections) {
-		if (!isRadioActive()) {
+		boolean active = isRadioActive();
+		if (this.contactTrace != null) {
+			/* the changes are replayed at the turn of this update */
+			this.contactTrace.startTurn();
+		}
+		
+		if (!active) {
 			// Make sure inactive nodes don't have connections
 			tearDownAllConnections();
-			return;
 		}
-		
-		if (simulateConnections) {
+		else if (simulateConnections) {
 			for (NetworkInterface i : net) {
 				i.update();
 			}
 		}
-		this.router.update();
+		
+		if (this.contactTrace != null) {
+			this.contactTrace.endTurn();
+		}
+		if (!active) {
+			return;
+		}
+		
+		if (!this.skipIdleRouter) {
+			this.router.update();
+		}
+		else if (SimClock.getTime() >= this.routerUpdateTime ||
+				this.router.hasPendingWork()) {
+			this.router.update();
+			this.routerUpdateTime = this.router.getNextUpdateTime();
+		}
+	}
+	
+	/**
+	 * Sets whether the router updates are skipped while the router has
+	 * nothing to do (see {@link MessageRouter#getNextUpdateTime()})
+	 * @param skip If true, the idle router updates are skipped
+	 */
+	public void setSkipIdleRouter(boolean skip) {
+		this.skipIdleRouter = skip;
+		this.routerUpdateTime = -Double.MAX_VALUE;
 	}
 	
 	/** 
@@ -371,11 +454,40 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param timeIncrement How long time the node moves
 	 */
 	public void move(double timeIncrement) {		
+		if (!isMovementActive()) {
+			return;
+		}
+		moveOnPath(timeIncrement);
+	}
+	
+	/**
+	 * Moves the node towards the next waypoint like {@link #move(double)}
+	 * but without checking whether the movement is active. Used when the
+	 * activity is checked separately (see {@link World}).
+	 * @param timeIncrement How long time the node moves
+	 */
+	void moveOnPath(double timeIncrement) {
+		if (this.trajectory != null) {
+			this.trajectory.start(this.location);
+		}
+		moveTowardsWaypoints(timeIncrement);
+		if (this.trajectory != null) {
+			this.trajectory.addPoint(timeIncrement, this.location);
+		}
+	}
+	
+	/**
+	 * Moves the node towards the next waypoint(s) for the given time (see
+	 * {@link #moveOnPath(double)})
+	 * @param timeIncrement How long time the node moves
+	 */
+	private void moveTowardsWaypoints(double timeIncrement) {
 		double possibleMovement;
 		double distance;
+		double elapsed = 0; // time spent on the passed path segments
 		double dx, dy;
 
-		if (!isMovementActive() || SimClock.getTime() < this.nextTimeToMove) {
+		if (SimClock.getTime() < this.nextTimeToMove) {
 			return; 
 		}
 		if (this.destination == null) {
@@ -391,6 +503,12 @@ public class DTNHost implements Comparable<DTNHost> {
 			// node can move past its next destination
 			this.location.setLocation(this.destination); // snap to destination
 			possibleMovement -= distance;
+			if (this.trajectory != null && this.speed > 0) {
+				/* every segment is passed at the speed of its own path */
+				elapsed = Math.min(elapsed + distance / this.speed,
+						timeIncrement);
+				this.trajectory.addPoint(elapsed, this.location);
+			}
 			if (!setNextWaypoint()) { // get a new waypoint
 				return; // no more waypoints left
 			}
@@ -405,6 +523,33 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.location.translate(dx, dy);
 	}	
 
+	/**
+	 * Sets the contact trace the connections this host initiates are
+	 * recorded to
+	 * @param trace The trace or null to stop recording
+	 */
+	void setContactTrace(ContactTrace trace) {
+		this.contactTrace = trace;
+	}
+	
+	/**
+	 * Sets whether the movement of this host in every movement step is
+	 * recorded (see {@link #getTrajectory()})
+	 * @param record If true, the movement is recorded
+	 */
+	void setRecordTrajectory(boolean record) {
+		this.trajectory = record ? new KineticContacts.Trajectory() : null;
+	}
+	
+	/**
+	 * Returns the movement of this host in the last movement step (if the
+	 * movement is recorded)
+	 * @return The movement or null if the movement is not recorded
+	 */
+	KineticContacts.Trajectory getTrajectory() {
+		return this.trajectory;
+	}
+	
 	/**
 	 * Sets the next destination and speed to correspond the next waypoint
 	 * on the path.
@@ -425,7 +570,11 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.destination = path.getNextWaypoint();
 		this.speed = path.getSpeed();
 
-		if (this.movListeners != null) {
+		if (this.deferredDestinations != null) {
+			this.deferredDestinations.add(this.destination);
+			this.deferredSpeeds.add(this.speed);
+		}
+		else if (this.movListeners != null) {
 			for (MovementListener l : this.movListeners) {
 				l.newDestination(this, this.destination, this.speed);
 			}
@@ -433,6 +582,84 @@ public class DTNHost implements Comparable<DTNHost> {
 
 		return true;
 	}
+	
+	/**
+	 * Returns the time when the movement of this host changes next, i.e., 
+	 * when the host arrives at its current destination or starts moving
+	 * after waiting. Changes of the movement activity are not considered.
+	 * @return The time of the next change or the current time if the
+	 * change can happen already in the next movement step
+	 */
+	double getNextMovementChangeTime() {
+		double now = SimClock.getTime();
+		
+		if (now < this.nextTimeToMove) {
+			return this.nextTimeToMove;
+		}
+		if (this.destination == null) {
+			return now;
+		}
+		
+		double distance = this.location.distance(this.destination);
+		if (distance == 0) {
+			return now; /* next waypoint is requested in the next move */
+		}
+		if (this.speed == 0) {
+			return Double.MAX_VALUE;
+		}
+		return now + distance / this.speed;
+	}
+	
+	/**
+	 * Returns the speed this host is currently moving at
+	 * @return The current speed or 0 if the host is waiting
+	 */
+	double getCurrentSpeed() {
+		if (SimClock.getTime() < this.nextTimeToMove || 
+				this.destination == null) {
+			return 0;
+		}
+		return this.speed;
+	}
+	
+	/**
+	 * Returns true if this host can be moved concurrently with other hosts
+	 * @return true if this host can be moved concurrently with other hosts
+	 * @see MovementModel#isParallelSafe()
+	 */
+	boolean isMovementParallelSafe() {
+		return this.movement.isParallelSafe();
+	}
+	
+	/**
+	 * Defers the movement listener notifications of this host until 
+	 * {@link #notifyDeferredMovement()} is called. Used when the host is
+	 * moved concurrently with other hosts.
+	 */
+	void deferMovementNotifications() {
+		if (this.deferredDestinations == null && this.movListeners != null) {
+			this.deferredDestinations = new ArrayList<Coord>();
+			this.deferredSpeeds = new ArrayList<Double>();
+		}
+	}
+	
+	/**
+	 * Informs the movement listeners about the new destinations that were
+	 * set while the notifications were deferred.
+	 */
+	void notifyDeferredMovement() {
+		if (this.deferredDestinations == null) {
+			return;
+		}
+		for (int i=0, n = this.deferredDestinations.size(); i < n; i++) {
+			for (MovementListener l : this.movListeners) {
+				l.newDestination(this, this.deferredDestinations.get(i),
+						this.deferredSpeeds.get(i));
+			}
+		}
+		this.deferredDestinations.clear();
+		this.deferredSpeeds.clear();
+	}
 
 	/**
 	 * Sends a message from this host to another host
@@ -479,6 +706,15 @@ public class DTNHost implements Comparable<DTNHost> {
 		this.router.messageTransferred(id, from);
 	}
 
+	/**
+	 * Informs the host that a message was successfully transferred.
+	 * @param m The message (as the sender has it)
+	 * @param from From who the message was from
+	 */
+	public void messageTransferred(Message m, DTNHost from) {
+		this.router.messageTransferred(m, from);
+	}
+
 	/**
 	 * Informs the host that a message transfer was aborted.
 	 * @param id Identifier of the message
@@ -495,6 +731,7 @@ public class DTNHost implements Comparable<DTNHost> {
 	 * @param m The message to create
 	 */
 	public void createNewMessage(Message m) {
+		this.routerUpdateTime = -Double.MAX_VALUE; /* new work for router */
 		this.router.createNewMessage(m);
 	}
 
@@ -518,6 +755,16 @@ public class DTNHost implements Comparable<DTNHost> {
 		return name;
 	}
 
+	/**
+	 * Returns a hash code for the host. The address is used instead of the
+	 * identity hash code so that hash based collections of hosts iterate
+	 * in the same order when a run is resumed from a checkpoint.
+	 * @return The host's address
+	 */
+	public int hashCode() {
+		return this.address;
+	}
+
 	/**
 	 * Checks if a host is the same as this host by comparing the object
 	 * reference
@@ -544,4 +791,17 @@ public class DTNHost implements Comparable<DTNHost> {
 		return this.hosts;
 	}
 
+	/**
+	 * State of a host's movement: location, path and the movement model
+	 */
+	static class MovementState implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private Coord location;
+		private Coord destination;
+		private Path path;
+		private double speed;
+		private double nextTimeToMove;
+		private MovementModel movement;
+	}
 }
@@ -4,10 +4,14 @@
  */
 package core;
 import gui.DTNSimGUI;
+import input.ExternalEventsQueue;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import ui.DTNSimTextUI;
 
@@ -20,6 +24,14 @@ public class DTNSim {
 	public static final String BATCH_MODE_FLAG = "-b";
 	/** Delimiter for batch mode index range values (colon) */
 	public static final String RANGE_DELIMETER = ":";
+	/** Number of concurrent batch runs -setting id ({@value}). Defines how
+	 * many runs of a batch are executed in parallel. Every concurrent run has
+	 * its own simulation context and writes its reports to a run specific
+	 * subdirectory ("run" + run number) of the normal report location.
+	 * Maps and external event files are read only once and shared by the
+	 * runs. Default is 1 (runs are executed one after another). */
+	public static final String PARALLEL_RUNS_S = 
+		World.OPTIMIZATION_SETTINGS_NS + ".parallelRuns";
 	
 	/** Name of the static method that all resettable classes must have
 	 * @see #registerForReset(String) */
@@ -77,6 +89,14 @@ public class DTNSim {
 		initSettings(confFiles, firstConfIndex);
 		
 		if (batchMode) {
+			int nrofParallel = getNrofParallelRuns();
+			if (nrofParallel > 1 && nrofRuns[1] - nrofRuns[0] > 1) {
+				if (runBatchInParallel(nrofRuns[0], nrofRuns[1], 
+						nrofParallel).size() > 0) {
+					System.exit(-1);
+				}
+				return;
+			}
 			long startTime = System.currentTimeMillis();
 			for (int i=nrofRuns[0]; i<nrofRuns[1]; i++) {
 				print("Run " + (i+1) + "/" + nrofRuns[1]);
@@ -93,6 +113,119 @@ public class DTNSim {
 		}
 	}
 	
+	/**
+	 * Returns the number of concurrent batch runs from the settings
+	 * @return The number of concurrent runs (1 if not defined)
+	 * @see #PARALLEL_RUNS_S
+	 */
+	private static int getNrofParallelRuns() {
+		Settings s = new Settings();
+		if (!s.contains(PARALLEL_RUNS_S)) {
+			return 1;
+		}
+		int nrof = s.getInt(PARALLEL_RUNS_S);
+		if (nrof < 1) { /* use all the processors */
+			nrof = Runtime.getRuntime().availableProcessors();
+		}
+		return nrof;
+	}
+	
+	/**
+	 * Runs batch runs concurrently in a pool of worker threads. Every run is
+	 * executed in its own simulation context, so there is no need to reset
+	 * classes between the runs. Prints the progress and a summary of the
+	 * run times when all runs are done. If some runs fail, the other runs
+	 * are still finished. Method is public only to make testing easier.
+	 * @param firstRun Index of the first run
+	 * @param lastRun Index of the last run + 1
+	 * @param nrofParallel Maximum number of concurrent runs
+	 * @return Names of the failed runs (empty if all the runs succeeded)
+	 */
+	public static List<String> runBatchInParallel(final int firstRun, 
+			final int lastRun, int nrofParallel) {
+		final int nrofRuns = lastRun - firstRun;
+		final double[] durations = new double[nrofRuns];
+		final String[] names = new String[nrofRuns];
+		final int[] nrofDone = {0};
+		final List<String> failed = new ArrayList<String>();
+		long startTime = System.currentTimeMillis();
+		
+		ExternalEventsQueue.setEventSharing(true);
+		print("Running " + nrofRuns + " runs, " + nrofParallel + 
+				" at a time");
+		
+		ExecutorService pool = Executors.newFixedThreadPool(
+				Math.min(nrofParallel, nrofRuns));
+		for (int i = firstRun; i < lastRun; i++) {
+			final int runIndex = i;
+			pool.execute(new Runnable() {
+				public void run() {
+					String runName = "Run " + (runIndex+1) + "/" + lastRun;
+					SimulationContext ctx = new SimulationContext(runIndex);
+					ctx.setReportSubdir("run" + (runIndex+1));
+					SimulationContext.setCurrent(ctx);
+					
+					long runStart = System.currentTimeMillis();
+					try {
+						print(runName + " started");
+						Settings.setRunIndex(runIndex);
+						DTNSimTextUI ui = new DTNSimTextUI("[" + runName + "] ");
+						ui.setExitOnError(false); /* let the other runs finish */
+						ui.start();
+						names[runIndex - firstRun] = 
+							SimScenario.getInstance().getName();
+					} catch (Throwable t) {
+						System.err.println(runName + " failed: " + t);
+						t.printStackTrace();
+						synchronized (failed) {
+							failed.add(runName);
+						}
+						return;
+					} finally {
+						SimulationContext.setCurrent(null);
+					}
+					
+					double duration = 
+						(System.currentTimeMillis() - runStart)/1000.0;
+					durations[runIndex - firstRun] = duration;
+					synchronized (nrofDone) {
+						nrofDone[0]++;
+						print(runName + " done in " + 
+								String.format("%.2f", duration) + "s (" + 
+								nrofDone[0] + "/" + nrofRuns + " done)");
+					}
+				}
+			});
+		}
+		
+		pool.shutdown();
+		try {
+			while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+				/* wait until all the runs are done */
+			}
+		} catch (InterruptedException e) {
+			throw new SimError(e);
+		}
+		ExternalEventsQueue.setEventSharing(false);
+		
+		double duration = (System.currentTimeMillis() - startTime)/1000.0;
+		double sum = 0;
+		print("---\nRun\tTime(s)\tScenario");
+		for (int i = 0; i < nrofRuns; i++) {
+			print((firstRun+i+1) + "\t" + String.format("%.2f", durations[i]) +
+					"\t" + (names[i] != null ? names[i] : "FAILED"));
+			sum += durations[i];
+		}
+		print("---\nAll done in " + String.format("%.2f", duration) + "s" +
+				" (sum of run times " + String.format("%.2f", sum) + "s)");
+		
+		if (failed.size() > 0) {
+			System.err.println(failed.size() + " of " + nrofRuns + 
+					" runs failed: " + failed);
+		}
+		return failed;
+	}
+	
 	/**
 	 * Initializes Settings
 	 * @param confFiles File name paths where to read additional settings 
@@ -0,0 +1,489 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import interfaces.SimpleBroadcastInterface;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <P>Kinetic contact detection. The hosts move along straight line segments
+ * during a movement step, so the times when two interfaces get in to and
+ * out of each other's range can be solved exactly from their trajectories
+ * instead of checking the distances only at the end of every update
+ * interval. The contacts are then created and torn down at the exact
+ * times, which allows using long update intervals without losing the
+ * accuracy of the contact times.</P>
+ * <P>The candidate pairs are found by sorting the bounding boxes of the
+ * trajectories (extended by the transmit ranges) and sweeping over them.
+ * For every candidate pair the relative movement is linear between the
+ * waypoint arrivals of the two hosts, so the range crossings are the roots
+ * of a quadratic equation on every such part of the step.</P>
+ * <P>Only {@link SimpleBroadcastInterface}s are supported and the scanning
+ * intervals of the interfaces are not considered.</P>
+ */
+public class KineticContacts implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** tolerance (seconds) for a range crossing at a segment boundary */
+	private static final double EPSILON = 1e-9;
+
+	/** the interfaces that have a connectivity optimizer */
+	private NetworkInterface[] interfaces;
+	/** indexes of the interfaces */
+	private Map<NetworkInterface, Integer> indexes;
+	/** bounding boxes of the interfaces (extended by half of the range) */
+	private double[] minX, maxX, minY, maxY;
+	/** the interfaces in the order of their minX */
+	private Integer[] order;
+	/** the pairs (and their range states at the end of the step) */
+	private List<Pair> pairs;
+	/** the contact events of the ongoing step (in time order) */
+	private List<ContactEvent> events;
+	private int nextEvent;
+
+	/**
+	 * Constructor. Starts recording the trajectories of the hosts.
+	 * @param hosts The hosts whose contacts are detected
+	 * @throws SettingsError if some interface is not supported
+	 */
+	public KineticContacts(List<DTNHost> hosts) {
+		List<NetworkInterface> list = new ArrayList<NetworkInterface>();
+		for (DTNHost host : hosts) {
+			for (NetworkInterface ni : host.getInterfaces()) {
+				if (!(ni instanceof SimpleBroadcastInterface)) {
+					throw new SettingsError("Interface " + ni + " is not " +
+							"supported by kinetic contact detection");
+				}
+				if (ni.getOptimizer() != null) {
+					list.add(ni);
+				}
+			}
+			host.setRecordTrajectory(true);
+		}
+
+		int n = list.size();
+		this.interfaces = list.toArray(new NetworkInterface[n]);
+		this.indexes = new IdentityHashMap<NetworkInterface, Integer>();
+		for (int i = 0; i < n; i++) {
+			this.indexes.put(this.interfaces[i], i);
+		}
+		this.minX = new double[n];
+		this.maxX = new double[n];
+		this.minY = new double[n];
+		this.maxY = new double[n];
+		this.order = new Integer[n];
+		this.pairs = new ArrayList<Pair>();
+		this.events = new ArrayList<ContactEvent>();
+	}
+
+	/**
+	 * Computes the contact events of a movement step. The hosts must have
+	 * been moved for the step (starting at the current simulation time)
+	 * before calling this.
+	 * @param duration Duration of the step
+	 */
+	public void computeEvents(double duration) {
+		double start = SimClock.getTime();
+
+		this.pairs.clear();
+		this.events.clear();
+		this.nextEvent = 0;
+		findPairs(start);
+
+		for (Pair p : this.pairs) {
+			p.solve(start, duration, this.events);
+		}
+		/* stable sort keeps the events of the same time in pair order */
+		Collections.sort(this.events);
+	}
+
+	/**
+	 * Returns the time of the next contact event of the step
+	 * @return The time of the next event or Double.MAX_VALUE if there are
+	 * no more events
+	 */
+	public double getNextEventTime() {
+		if (this.nextEvent >= this.events.size()) {
+			return Double.MAX_VALUE;
+		}
+		return this.events.get(this.nextEvent).time;
+	}
+
+	/**
+	 * Processes the next contact event of the step: creates or tears down
+	 * the connection of the pair. A connection is created only if the
+	 * radios of both hosts are active.
+	 */
+	public void processNextEvent() {
+		ContactEvent ev = this.events.get(this.nextEvent++);
+		NetworkInterface a = ev.pair.a;
+		NetworkInterface b = ev.pair.b;
+
+		if (!ev.up) {
+			a.destroyConnection(b);
+		}
+		else if (a.getHost().isRadioActive() && b.getHost().isRadioActive()){
+			a.createConnection(b);
+		}
+	}
+
+	/**
+	 * Connects the pairs that are in range at the end of the step but not
+	 * connected (e.g., because a radio was inactive when they got in
+	 * range). Should be called after all the events of the step have been
+	 * processed.
+	 */
+	public void connectRemaining() {
+		for (Pair p : this.pairs) {
+			if (p.inRange && !p.a.isConnected(p.b) &&
+					p.a.getHost().isRadioActive() &&
+					p.b.getHost().isRadioActive()) {
+				p.a.createConnection(p.b);
+			}
+		}
+	}
+
+	/**
+	 * Finds the pairs of interfaces whose (extended) bounding boxes overlap
+	 * and the pairs that are connected
+	 * @param start Start time of the step
+	 */
+	private void findPairs(double start) {
+		int n = this.interfaces.length;
+		Set<Long> found = new HashSet<Long>();
+
+		for (int i = 0; i < n; i++) {
+			NetworkInterface ni = this.interfaces[i];
+			Trajectory t = getTrajectory(ni.getHost(), start);
+			double pad = ni.getTransmitRange() / 2;
+			minX[i] = t.minX - pad;
+			maxX[i] = t.maxX + pad;
+			minY[i] = t.minY - pad;
+			maxY[i] = t.maxY + pad;
+			order[i] = i;
+		}
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				int c = Double.compare(minX[i1], minX[i2]);
+				return c != 0 ? c : i1 - i2;
+			}
+		});
+
+		List<Integer> active = new ArrayList<Integer>();
+		for (int k = 0; k < n; k++) {
+			int i = order[k];
+			for (int m = 0; m < active.size(); ) {
+				int j = active.get(m);
+				if (maxX[j] < minX[i]) {
+					active.remove(m);
+					continue;
+				}
+				m++;
+				if (maxY[j] >= minY[i] && minY[j] <= maxY[i]) {
+					addPair(i, j, start, found);
+				}
+			}
+			active.add(i);
+		}
+
+		/* connected pairs may be out of range for the whole step */
+		for (int i = 0; i < n; i++) {
+			for (Connection con : this.interfaces[i].getConnections()) {
+				Integer j = this.indexes.get(
+						con.getOtherInterface(this.interfaces[i]));
+				if (j != null) {
+					addPair(i, j, start, found);
+				}
+			}
+		}
+
+		/* same order for every run regardless of the sorting */
+		Collections.sort(this.pairs);
+	}
+
+	/**
+	 * Adds a pair of interfaces if they use the same optimizer and the
+	 * pair hasn't been added yet
+	 */
+	private void addPair(int i, int j, double start, Set<Long> found) {
+		NetworkInterface a = this.interfaces[Math.min(i, j)];
+		NetworkInterface b = this.interfaces[Math.max(i, j)];
+		if (a.getOptimizer() != b.getOptimizer() ||
+				a.getHost() == b.getHost()) {
+			return;
+		}
+		long key = (long)Math.min(i, j) * this.interfaces.length +
+			Math.max(i, j);
+		if (found.add(key)) {
+			this.pairs.add(new Pair(Math.min(i, j), Math.max(i, j), a, b,
+					getTrajectory(a.getHost(), start),
+					getTrajectory(b.getHost(), start)));
+		}
+	}
+
+	/**
+	 * Returns the trajectory of a host for the step starting at the given
+	 * time. Hosts that weren't moved during the step stay in place.
+	 */
+	private Trajectory getTrajectory(DTNHost host, double start) {
+		Trajectory t = host.getTrajectory();
+		if (t.startTime != start) {
+			t.startTime = start;
+			t.size = 0;
+			t.addPoint(0, host.getLocation());
+		}
+		return t;
+	}
+
+	/**
+	 * Piecewise linear movement of a host during one movement step
+	 */
+	public static class Trajectory implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		/** simulation time when the step started */
+		private double startTime = Double.NaN;
+		/** times (from the start of the step) and coordinates of the
+		 * points */
+		private double[] ts = new double[4];
+		private double[] xs = new double[4];
+		private double[] ys = new double[4];
+		private int size;
+		private double minX, maxX, minY, maxY;
+
+		/**
+		 * Starts a new step at the current simulation time
+		 * @param location Location of the host at the start of the step
+		 */
+		void start(Coord location) {
+			this.startTime = SimClock.getTime();
+			this.size = 0;
+			addPoint(0, location);
+		}
+
+		/**
+		 * Adds a point to the trajectory
+		 * @param time Time from the start of the step
+		 * @param location Location of the host at that time
+		 */
+		void addPoint(double time, Coord location) {
+			double x = location.getX();
+			double y = location.getY();
+			if (this.size == this.ts.length) {
+				this.ts = Arrays.copyOf(this.ts, this.size * 2);
+				this.xs = Arrays.copyOf(this.xs, this.size * 2);
+				this.ys = Arrays.copyOf(this.ys, this.size * 2);
+			}
+			if (this.size == 0) {
+				minX = maxX = x;
+				minY = maxY = y;
+			}
+			else {
+				minX = Math.min(minX, x);
+				maxX = Math.max(maxX, x);
+				minY = Math.min(minY, y);
+				maxY = Math.max(maxY, y);
+			}
+			this.ts[size] = time;
+			this.xs[size] = x;
+			this.ys[size] = y;
+			this.size++;
+		}
+
+		/**
+		 * Returns the index of the last point at or before the given time
+		 */
+		private int indexAt(double time) {
+			int i = 0;
+			while (i + 1 < size && ts[i + 1] <= time) {
+				i++;
+			}
+			return i;
+		}
+
+		/** Returns the x coordinate at the given time */
+		private double xAt(int i, double time) {
+			return valueAt(xs, i, time);
+		}
+
+		/** Returns the y coordinate at the given time */
+		private double yAt(int i, double time) {
+			return valueAt(ys, i, time);
+		}
+
+		private double valueAt(double[] values, int i, double time) {
+			if (i + 1 >= size || ts[i + 1] <= ts[i]) {
+				return values[i];
+			}
+			double f = (time - ts[i]) / (ts[i + 1] - ts[i]);
+			return values[i] + f * (values[i + 1] - values[i]);
+		}
+	}
+
+	/**
+	 * A pair of interfaces that may get in to or out of range during the
+	 * step
+	 */
+	private static class Pair implements Comparable<Pair>, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private int i, j;
+		private NetworkInterface a, b;
+		private Trajectory ta, tb;
+		/** is the pair in range at the end of the step */
+		private boolean inRange;
+
+		public Pair(int i, int j, NetworkInterface a, NetworkInterface b,
+				Trajectory ta, Trajectory tb) {
+			this.i = i;
+			this.j = j;
+			this.a = a;
+			this.b = b;
+			this.ta = ta;
+			this.tb = tb;
+		}
+
+		/**
+		 * Solves the range crossings of the pair during the step and adds
+		 * the contact events to the list. The state before the step is the
+		 * connection state of the pair.
+		 */
+		public void solve(double start, double duration,
+				List<ContactEvent> events) {
+			double r = Math.min(a.getTransmitRange(), b.getTransmitRange());
+			boolean up = a.isConnected(b);
+			double t0 = 0;
+			int ia = ta.indexAt(t0); /* skip waypoints passed at time 0 */
+			int ib = tb.indexAt(t0);
+
+			while (t0 < duration || (t0 == 0 && duration == 0)) {
+				/* next waypoint arrival of either of the hosts */
+				double t1 = duration;
+				if (ia + 1 < ta.size && ta.ts[ia + 1] > t0) {
+					t1 = Math.min(t1, ta.ts[ia + 1]);
+				}
+				if (ib + 1 < tb.size && tb.ts[ib + 1] > t0) {
+					t1 = Math.min(t1, tb.ts[ib + 1]);
+				}
+
+				double dx0 = tb.xAt(ib, t0) - ta.xAt(ia, t0);
+				double dy0 = tb.yAt(ib, t0) - ta.yAt(ia, t0);
+				double dx1 = tb.xAt(ib, t1) - ta.xAt(ia, t1);
+				double dy1 = tb.yAt(ib, t1) - ta.yAt(ia, t1);
+				up = solveSegment(start, t0, t1, dx0, dy0, dx1 - dx0,
+						dy1 - dy0, r, up, events);
+
+				if (t1 <= t0) {
+					break;
+				}
+				t0 = t1;
+				ia = ta.indexAt(t0);
+				ib = tb.indexAt(t0);
+			}
+			this.inRange = up;
+		}
+
+		/**
+		 * Solves the range crossings on a part of the step where the
+		 * relative movement is linear: d(s) = d0 + s * v, s in [0,1].
+		 * @return Is the pair in range at the end of the part
+		 */
+		private boolean solveSegment(double start, double t0, double t1,
+				double dx, double dy, double vx, double vy, double r,
+				boolean up, List<ContactEvent> events) {
+			double aa = vx * vx + vy * vy;
+			double bb = 2 * (dx * vx + dy * vy);
+			double cc = dx * dx + dy * dy - r * r;
+			double len = t1 - t0;
+			double u, v; /* the in range part of the segment (times) */
+
+			if (aa == 0) {
+				if (cc > 0) {
+					u = v = Double.NaN;
+				}
+				else {
+					u = t0;
+					v = t1;
+				}
+			}
+			else {
+				double disc = bb * bb - 4 * aa * cc;
+				if (disc < 0) {
+					u = v = Double.NaN;
+				}
+				else {
+					double sq = Math.sqrt(disc);
+					u = t0 + Math.max(0, (-bb - sq) / (2 * aa)) * len;
+					v = t0 + Math.min(1, (-bb + sq) / (2 * aa)) * len;
+					if (u - t0 <= EPSILON) {
+						u = t0;
+					}
+					if (t1 - v <= EPSILON) {
+						v = t1;
+					}
+					if (!(u < v || (u == t0 && v == t1))) {
+						u = v = Double.NaN; /* outside or only touching */
+					}
+				}
+			}
+
+			if (Double.isNaN(u)) {
+				if (up) {
+					events.add(new ContactEvent(start + t0, false, this));
+				}
+				return false;
+			}
+			if (up && u > t0) {
+				events.add(new ContactEvent(start + t0, false, this));
+				up = false;
+			}
+			if (!up) {
+				events.add(new ContactEvent(start + u, true, this));
+			}
+			if (v < t1) {
+				events.add(new ContactEvent(start + v, false, this));
+				return false;
+			}
+			return true;
+		}
+
+		public int compareTo(Pair other) {
+			return i != other.i ? i - other.i : j - other.j;
+		}
+	}
+
+	/**
+	 * Link up or down event of a pair
+	 */
+	private static class ContactEvent implements Comparable<ContactEvent>,
+			Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private double time;
+		private boolean up;
+		private Pair pair;
+
+		public ContactEvent(double time, boolean up, Pair pair) {
+			this.time = time;
+			this.up = up;
+			this.pair = pair;
+		}
+
+		public int compareTo(ContactEvent other) {
+			return Double.compare(time, other.time);
+		}
+	}
+}
@@ -4,50 +4,44 @@
  */
 package core;
 
-import java.util.ArrayList;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * A message that is created at a node or passed between nodes.
+ * <P>The replicates of a message share the data that is the same for all 
+ * of them (see {@link Core}) and the properties, which are copied only 
+ * when a replicate changes them. The nodes the message has passed are
+ * kept in a persistent list (see {@link HopPath}) where every replicate 
+ * shares the path of the message it was replicated from and only adds 
+ * its own hops, so replicating a message is cheap.</P>
  */
-public class Message implements Comparable<Message> {
+public class Message implements Comparable<Message>, Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** Value for infinite TTL of message */
 	public static final int INFINITE_TTL = -1;
-	private DTNHost from;
-	private DTNHost to;
-	/** Identifier of the message */
-	private String id;
-	/** Size of the message (bytes) */
-	private int size;
+	/** Data of the message that is shared with the replicates */
+	private Core core;
+	/** is the core shared with some other message */
+	private boolean coreShared;
 	/** List of nodes this message has passed */
-	private List<DTNHost> path; 
-	/** Next unique identifier to be given */
-	private static int nextUniqueId;
+	private HopPath path; 
 	/** Unique ID of this message */
 	private int uniqueId;
 	/** The time this message was received */
 	private double timeReceived;
-	/** The time when this message was created */
-	private double timeCreated;
-	/** Initial TTL of the message */
-	private int initTtl;
-	
-	/** if a response to this message is required, this is the size of the 
-	 * response message (or 0 if no response is requested) */
-	private int responseSize;
-	/** if this message is a response message, this is set to the request msg*/
-	private Message requestMsg;
 	
 	/** Container for generic message properties. Note that all values
 	 * stored in the properties should be immutable because only a shallow
 	 * copy of the properties is made when replicating messages */
 	private Map<String, Object> properties;
-	
-	/** Application ID of the application that created the message */
-	private String	appID;
+	/** are the properties shared with some other message */
+	private boolean propertiesShared;
 	
 	static {
 		reset();
@@ -63,31 +57,59 @@ public class Message implements Comparable<Message> {
 	 * @param size Size of the message (in bytes)
 	 */
 	public Message(DTNHost from, DTNHost to, String id, int size) {
-		this.from = from;
-		this.to = to;
-		this.id = id;
-		this.size = size;
-		this.path = new ArrayList<DTNHost>();
-		this.uniqueId = nextUniqueId;
+		this.core = new Core(from, to, id, size);
+		this.path = null;
+		SimulationContext ctx = SimulationContext.get();
+		this.uniqueId = ctx.nextMessageId;
+		Integer index = ctx.messageIndexes.get(id);
+		if (index == null) {
+			index = ctx.messageIndexes.size();
+			ctx.messageIndexes.put(id, index);
+		}
+		this.core.index = index;
 		
-		this.timeCreated = SimClock.getTime();
-		this.timeReceived = this.timeCreated;
-		this.initTtl = INFINITE_TTL;
-		this.responseSize = 0;
-		this.requestMsg = null;
+		this.core.timeCreated = SimClock.getTime();
+		this.timeReceived = this.core.timeCreated;
+		this.core.initTtl = INFINITE_TTL;
+		this.core.responseSize = 0;
+		this.core.requestMsg = null;
 		this.properties = null;
-		this.appID = null;
+		this.core.appID = null;
 		
-		Message.nextUniqueId++;
+		ctx.nextMessageId++;
 		addNodeOnPath(from);
 	}
 	
+	/**
+	 * Creates a replicate of a message (see {@link #replicate()}).
+	 * @param m The message to replicate
+	 */
+	private Message(Message m) {
+		SimulationContext ctx = SimulationContext.get();
+		this.uniqueId = ctx.nextMessageId++;
+		this.timeReceived = SimClock.getTime();
+		copyFrom(m);
+	}
+	
+	/**
+	 * Returns the core of this message for changing it. The core is copied
+	 * first if it is shared with other messages.
+	 * @return The core that only this message uses
+	 */
+	private Core getWritableCore() {
+		if (this.coreShared) {
+			this.core = this.core.copy();
+			this.coreShared = false;
+		}
+		return this.core;
+	}
+	
 	/**
 	 * Returns the node this message is originally from
 	 * @return the node this message is originally from
 	 */
 	public DTNHost getFrom() {
-		return this.from;
+		return this.core.from;
 	}
 
 	/**
@@ -95,7 +117,7 @@ public class Message implements Comparable<Message> {
 	 * @return the node this message is originally to
 	 */
 	public DTNHost getTo() {
-		return this.to;
+		return this.core.to;
 	}
 
 	/**
@@ -103,7 +125,28 @@ public class Message implements Comparable<Message> {
 	 * @return The message id
 	 */
 	public String getId() {
-		return this.id;
+		return this.core.id;
+	}
+	
+	/**
+	 * Returns the index of the ID of this message. The IDs are given
+	 * indexes (starting from zero) in the order they are first used, so all
+	 * the messages with the same ID have the same index and the indexes can
+	 * be used as dense integer keys instead of the IDs.
+	 * @return The index of the ID
+	 */
+	public int getIdIndex() {
+		return this.core.index;
+	}
+	
+	/**
+	 * Returns the index of a message ID (see {@link #getIdIndex()})
+	 * @param id The message ID
+	 * @return The index of the ID or -1 if no message has had the ID
+	 */
+	public static int getIdIndex(String id) {
+		Integer index = SimulationContext.get().messageIndexes.get(id);
+		return index != null ? index : -1;
 	}
 	
 	/**
@@ -114,13 +157,24 @@ public class Message implements Comparable<Message> {
 	public int getUniqueId() {
 		return this.uniqueId;
 	}
+
+	/**
+	 * Returns a hash code for the message. The unique ID is used instead of
+	 * the identity hash code so that the hash codes (and e.g. the random
+	 * queue mode order of the routers) stay the same when a run is resumed
+	 * from a checkpoint.
+	 * @return The unique id
+	 */
+	public int hashCode() {
+		return this.uniqueId;
+	}
 	
 	/**
 	 * Returns the size of the message (in bytes)
 	 * @return the size of the message
 	 */
 	public int getSize() {
-		return this.size;
+		return this.core.size;
 	}
 
 	/**
@@ -128,15 +182,32 @@ public class Message implements Comparable<Message> {
 	 * @param node The node to add
 	 */
 	public void addNodeOnPath(DTNHost node) {
-		this.path.add(node);
+		this.path = new HopPath(node, this.path);
 	}
 	
 	/**
 	 * Returns a list of nodes this message has passed so far
-	 * @return The list as vector
+	 * @return The list as an unmodifiable list (a new list is created for
+	 * every call)
 	 */
 	public List<DTNHost> getHops() {
-		return this.path;
+		return Collections.unmodifiableList(
+				Arrays.asList(this.path.toArray()));
+	}
+	
+	/**
+	 * Returns true if the given node is on the list of nodes this message
+	 * has passed so far. Doesn't create the list like {@link #getHops()}.
+	 * @param node The node to look for
+	 * @return True if the message has passed the node
+	 */
+	public boolean isOnPath(DTNHost node) {
+		for (HopPath p = this.path; p != null; p = p.parent) {
+			if (p.host == node) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	/**
@@ -144,7 +215,7 @@ public class Message implements Comparable<Message> {
 	 * @return the amount of hops this message has passed
 	 */
 	public int getHopCount() {
-		return this.path.size() -1;
+		return this.path.length - 1;
 	}
 	
 	/** 
@@ -154,15 +225,27 @@ public class Message implements Comparable<Message> {
 	 * @return The TTL (minutes)
 	 */
 	public int getTtl() {
-		if (this.initTtl == INFINITE_TTL) {
+		if (this.core.initTtl == INFINITE_TTL) {
 			return Integer.MAX_VALUE;
 		}
 		else {
-			return (int)( ((this.initTtl * 60) -
-					(SimClock.getTime()-this.timeCreated)) /60.0 );
+			return (int)( ((this.core.initTtl * 60) -
+					(SimClock.getTime()-this.core.timeCreated)) /60.0 );
 		}
 	}
 	
+	
+	/**
+	 * Returns the time after which the TTL of this message (see
+	 * {@link #getTtl()}) is zero or less.
+	 * @return The time or Double.MAX_VALUE if the TTL is infinite
+	 */
+	public double getTtlExpiryTime() {
+		if (this.core.initTtl == INFINITE_TTL) {
+			return Double.MAX_VALUE;
+		}
+		return this.core.timeCreated + (this.core.initTtl - 1) * 60.0;
+	}
 	
 	/**
 	 * Sets the initial TTL (time-to-live) for this message. The initial
@@ -171,7 +254,7 @@ public class Message implements Comparable<Message> {
 	 * @param ttl The time-to-live to set
 	 */
 	public void setTtl(int ttl) {
-		this.initTtl = ttl;
+		getWritableCore().initTtl = ttl;
 	}
 	
 	/**
@@ -195,7 +278,7 @@ public class Message implements Comparable<Message> {
 	 * @return the time when this message was created
 	 */
 	public double getCreationTime() {
-		return this.timeCreated;
+		return this.core.timeCreated;
 	}
 	
 	/**
@@ -203,7 +286,7 @@ public class Message implements Comparable<Message> {
 	 * @param request The request message
 	 */
 	public void setRequest(Message request) {
-		this.requestMsg = request;
+		getWritableCore().requestMsg = request;
 	}
 	
 	/**
@@ -212,7 +295,7 @@ public class Message implements Comparable<Message> {
 	 * @return the message this message is response to
 	 */
 	public Message getRequest() {
-		return this.requestMsg;
+		return this.core.requestMsg;
 	}
 	
 	/**
@@ -220,7 +303,7 @@ public class Message implements Comparable<Message> {
 	 * @return true if this message is a response message
 	 */
 	public boolean isResponse() {
-		return this.requestMsg != null;
+		return this.core.requestMsg != null;
 	}
 	
 	/**
@@ -229,7 +312,7 @@ public class Message implements Comparable<Message> {
 	 * @param size Size of the response message
 	 */
 	public void setResponseSize(int size) {
-		this.responseSize = size;
+		getWritableCore().responseSize = size;
 	}
 	
 	/**
@@ -238,7 +321,7 @@ public class Message implements Comparable<Message> {
 	 * @return the size of the requested response message
 	 */
 	public int getResponseSize() {
-		return responseSize;
+		return this.core.responseSize;
 	}
 	
 	/**
@@ -246,28 +329,25 @@ public class Message implements Comparable<Message> {
 	 * @return a string representation of the message
 	 */
 	public String toString () {
-		return id;
+		return this.core.id;
 	}
 
 	/**
-	 * Deep copies message data from other message. If new fields are
+	 * Copies message data from other message. The core and the properties
+	 * are shared with the other message until either of the messages 
+	 * changes them, and the path is shared for good. If new fields are
 	 * introduced to this class, most likely they should be copied here too
 	 * (unless done in constructor).
 	 * @param m The message where the data is copied
 	 */
 	protected void copyFrom(Message m) {
-		this.path = new ArrayList<DTNHost>(m.path);
-		this.timeCreated = m.timeCreated;
-		this.responseSize = m.responseSize;
-		this.requestMsg  = m.requestMsg;
-		this.initTtl = m.initTtl;
-		this.appID = m.appID;
+		this.core = m.core;
+		this.coreShared = m.coreShared = true;
+		this.path = m.path;
 		
 		if (m.properties != null) {
-			Set<String> keys = m.properties.keySet();
-			for (String key : keys) {
-				updateProperty(key, m.getProperty(key));
-			}
+			this.properties = m.properties;
+			this.propertiesShared = m.propertiesShared = true;
 		}
 	}
 	
@@ -317,6 +397,10 @@ public class Message implements Comparable<Message> {
 			   that don't use the property feature  */
 			this.properties = new HashMap<String, Object>();
 		}		
+		else if (this.propertiesShared) {
+			this.properties = new HashMap<String, Object>(this.properties);
+			this.propertiesShared = false;
+		}
 
 		this.properties.put(key, value);
 	}
@@ -326,9 +410,7 @@ public class Message implements Comparable<Message> {
 	 * @return A replicate of the message
 	 */
 	public Message replicate() {
-		Message m = new Message(from, to, id, size);
-		m.copyFrom(this);
-		return m;
+		return new Message(this);
 	}
 	
 	/**
@@ -343,21 +425,115 @@ public class Message implements Comparable<Message> {
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
-		nextUniqueId = 0;
+		SimulationContext ctx = SimulationContext.get();
+		ctx.nextMessageId = 0;
+		ctx.messageIndexes = new HashMap<String, Integer>();
 	}
 
 	/**
 	 * @return the appID
 	 */
 	public String getAppID() {
-		return appID;
+		return this.core.appID;
 	}
 
 	/**
 	 * @param appID the appID to set
 	 */
 	public void setAppID(String appID) {
-		this.appID = appID;
+		getWritableCore().appID = appID;
+	}
+	
+	/**
+	 * Persistent list of the nodes a message has passed. Every node of the
+	 * list refers to the rest of the path before it, so the replicates of 
+	 * a message share the common beginning of their paths.
+	 */
+	private static final class HopPath implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		/** the last node of the path */
+		private final DTNHost host;
+		/** the path before the last node (or null) */
+		private final HopPath parent;
+		/** number of nodes on the path */
+		private final int length;
+		
+		/**
+		 * Creates a path that continues the given path with a node
+		 * @param host The node to add
+		 * @param parent The path to continue (or null for a new path)
+		 */
+		private HopPath(DTNHost host, HopPath parent) {
+			this.host = host;
+			this.parent = parent;
+			this.length = (parent == null ? 1 : parent.length + 1);
+		}
+		
+		/**
+		 * Returns the nodes of the path in order from the first one
+		 * @return The nodes
+		 */
+		private DTNHost[] toArray() {
+			DTNHost[] hosts = new DTNHost[this.length];
+			HopPath p = this;
+			for (int i = this.length - 1; i >= 0; i--) {
+				hosts[i] = p.host;
+				p = p.parent;
+			}
+			return hosts;
+		}
+	}
+	
+	/**
+	 * The data of a message that is the same for all of its replicates 
+	 * unless it is changed after replicating
+	 */
+	private static class Core implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private DTNHost from;
+		private DTNHost to;
+		/** Identifier of the message */
+		private String id;
+		/** Index of the identifier */
+		private int index;
+		/** Size of the message (bytes) */
+		private int size;
+		/** The time when this message was created */
+		private double timeCreated;
+		/** Initial TTL of the message */
+		private int initTtl;
+		/** if a response to this message is required, this is the size of 
+		 * the response message (or 0 if no response is requested) */
+		private int responseSize;
+		/** if this message is a response message, this is set to the 
+		 * request msg*/
+		private Message requestMsg;
+		/** Application ID of the application that created the message */
+		private String appID;
+		
+		private Core(DTNHost from, DTNHost to, String id, int size) {
+			this.from = from;
+			this.to = to;
+			this.id = id;
+			this.size = size;
+		}
+		
+		/**
+		 * Returns a copy of this core
+		 * @return The copy
+		 */
+		private Core copy() {
+			Core c = new Core(from, to, id, size);
+			c.index = this.index;
+			c.timeCreated = this.timeCreated;
+			c.initTtl = this.initTtl;
+			c.responseSize = this.responseSize;
+			c.requestMsg = this.requestMsg;
+			c.appID = this.appID;
+			return c;
+		}
 	}
 	
 }
@@ -4,32 +4,123 @@
  */
 package core;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Map;
 
 /**
  * Intermodule communication bus. Works as a blackboard where modules can
  * post data, subscribe to data changes and also poll for data values.
  * This is fairly similar to Message class' property interface, but these
  * values are shared for a node instead of message.
+ * <P>Each key is resolved to an integer slot (see {@link #getSlot(String)})
+ * that is the same in all the buses. The values are stored in arrays
+ * indexed by the slot, Double and Integer values as primitives, so modules
+ * that access the bus often should resolve their keys once and use the
+ * slot-based methods. The key-based methods work the same way as before
+ * and are just a layer on top of the slot-based ones.</P>
  */
-public class ModuleCommunicationBus {
-	/** Initial capacity for the listener lists (instead of 10) */
-	private static int INIT_CAPACITY = 3;
-	/** The values in the blackboard (or null if none)*/
-	private HashMap<String, Object> values;
-	/** Subscribed listeners (or null if none)*/
-	private HashMap<String, List<ModuleCommunicationListener>> listeners;
+public class ModuleCommunicationBus implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** value type of an empty slot */
+	private static final byte NONE = 0;
+	/** value type of a slot with an object value */
+	private static final byte OBJECT = 1;
+	/** value type of a slot with a Double value */
+	private static final byte DOUBLE = 2;
+	/** value type of a slot with an Integer value */
+	private static final byte INT = 3;
+	/** empty listener list */
+	private static final ModuleCommunicationListener[] NO_LISTENERS = 
+		new ModuleCommunicationListener[0];
+	
+	/** The slots of the keys */
+	private static final Map<String, Integer> slots = 
+		new HashMap<String, Integer>();
+	/** The keys of the slots */
+	private static volatile String[] keys = new String[0];
+	
+	/** The value types by slot (or null if there are no values) */
+	private transient byte[] types;
+	/** The Double and Integer values by slot */
+	private transient double[] numbers;
+	/** The other values by slot (or null if none) */
+	private transient Object[] objects;
+	/** Subscribed listeners by slot (or null if none) */
+	private transient ModuleCommunicationListener[][] listeners;
 	
 	/**
 	 * Constructor.
 	 */
 	public ModuleCommunicationBus() {
-		this.values = null; /* use lazy creation  */
+		this.types = null; /* use lazy creation  */
 		this.listeners = null;
 	}
 	
+	/**
+	 * Returns the slot of a key. The same key has the same slot in all the
+	 * buses, so the slot can be resolved once, e.g., to a static field.
+	 * @param key The key
+	 * @return The slot of the key
+	 */
+	public static synchronized int getSlot(String key) {
+		Integer slot = slots.get(key);
+		if (slot == null) {
+			slot = keys.length;
+			String[] newKeys = Arrays.copyOf(keys, slot + 1);
+			newKeys[slot] = key;
+			keys = newKeys;
+			slots.put(key, slot);
+		}
+		return slot;
+	}
+	
+	/**
+	 * Returns the key of a slot
+	 * @param slot The slot
+	 * @return The key whose slot it is
+	 */
+	public static String getKey(int slot) {
+		return keys[slot];
+	}
+	
+	/**
+	 * Makes sure that the value arrays have room for the given slot
+	 * @param slot The slot
+	 */
+	private void ensureValueCapacity(int slot) {
+		if (this.types == null) {
+			/* lazy creation to prevent performance overhead for classes
+			   that don't use the property feature  */
+			int size = Math.max(slot + 1, keys.length);
+			this.types = new byte[size];
+			this.numbers = new double[size];
+			this.objects = new Object[size];
+		} else if (slot >= this.types.length) {
+			int size = Math.max(slot + 1, keys.length);
+			this.types = Arrays.copyOf(this.types, size);
+			this.numbers = Arrays.copyOf(this.numbers, size);
+			this.objects = Arrays.copyOf(this.objects, size);
+		}
+	}
+	
+	/**
+	 * Returns the value type of a slot
+	 * @param slot The slot
+	 * @return The value type (NONE if the slot has no value)
+	 */
+	private byte getType(int slot) {
+		if (this.types == null || slot >= this.types.length) {
+			return NONE;
+		}
+		return this.types[slot];
+	}
+	
 	/**
 	 * Adds a new property for this node. The key can be any string but 
 	 * it should be such that no other class accidently uses the same value.
@@ -40,13 +131,24 @@ public class ModuleCommunicationBus {
 	 * @throws SimError if there is already a value for the given key
 	 */
 	public void addProperty(String key, Object value) throws SimError {
-		if (this.values != null && this.values.containsKey(key)) {
+		addProperty(getSlot(key), value);
+	}
+	
+	/**
+	 * Adds a new property for this node using the slot of the key
+	 * (cf. {@link #addProperty(String, Object)}).
+	 * @param slot The slot of the key
+	 * @param value The value to store
+	 * @throws SimError if there is already a value for the given slot
+	 */
+	public void addProperty(int slot, Object value) throws SimError {
+		if (getType(slot) != NONE) {
 			/* check to prevent accidental name space collisions */
-			throw new SimError("A value for the key " + key + 
+			throw new SimError("A value for the key " + getKey(slot) + 
 					" already exists");
 		}
 		
-		this.updateProperty(key, value);
+		this.updateProperty(slot, value);
 	}
 	
 	/**
@@ -56,10 +158,27 @@ public class ModuleCommunicationBus {
 	 * @return The stored object or null if it isn't found
 	 */
 	public Object getProperty(String key) {
-		if (this.values == null) {
+		return getProperty(getSlot(key));
+	}
+	
+	/**
+	 * Returns an object that was stored using the given slot. If such 
+	 * object is not found, null is returned. Double and Integer values are
+	 * boxed again for each call.
+	 * @param slot The slot of the key
+	 * @return The stored object or null if it isn't found
+	 */
+	public Object getProperty(int slot) {
+		switch (getType(slot)) {
+		case DOUBLE:
+			return this.numbers[slot];
+		case INT:
+			return (int)this.numbers[slot];
+		case OBJECT:
+			return this.objects[slot];
+		default:
 			return null;
 		}
-		return this.values.get(key);
 	}
 	
 	/**
@@ -68,10 +187,16 @@ public class ModuleCommunicationBus {
 	 * @return true if the value exists, false if not
 	 */
 	public boolean containsProperty(String key) {
-		if (this.values == null) {
-			return false;
-		}
-		return this.values.containsKey(key);
+		return containsProperty(getSlot(key));
+	}
+	
+	/**
+	 * Returns true if the bus contains a value for the given slot
+	 * @param slot The slot of the key
+	 * @return true if the value exists, false if not
+	 */
+	public boolean containsProperty(int slot) {
+		return getType(slot) != NONE;
 	}
 	
 	/**
@@ -82,14 +207,47 @@ public class ModuleCommunicationBus {
 	 * @param value The new value to store
 	 */
 	public void updateProperty(String key, Object value) throws SimError {
-		if (this.values == null) {
-			/* lazy creation to prevent performance overhead for classes
-			   that don't use the property feature  */
-			this.values = new HashMap<String, Object>();
-		}		
-
-		this.values.put(key, value);
-		notifyListeners(key, value);
+		updateProperty(getSlot(key), value);
+	}
+	
+	/**
+	 * Updates a value for an existing property using the slot of the key
+	 * (cf. {@link #updateProperty(String, Object)}).
+	 * @param slot The slot of the key
+	 * @param value The new value to store
+	 */
+	public void updateProperty(int slot, Object value) throws SimError {
+		ensureValueCapacity(slot);
+		if (value instanceof Double) {
+			this.types[slot] = DOUBLE;
+			this.numbers[slot] = (Double)value;
+			this.objects[slot] = null;
+		} else if (value instanceof Integer) {
+			this.types[slot] = INT;
+			this.numbers[slot] = (Integer)value;
+			this.objects[slot] = null;
+		} else {
+			this.types[slot] = OBJECT;
+			this.objects[slot] = value;
+		}
+		notifyListeners(slot, value);
+	}
+	
+	/**
+	 * Sets a Double value for a slot. Works like 
+	 * {@link #updateProperty(int, Object)} but boxes the value only if 
+	 * there are listeners to notify.
+	 * @param slot The slot of the key
+	 * @param value The new value
+	 */
+	public void setDouble(int slot, double value) {
+		ensureValueCapacity(slot);
+		this.types[slot] = DOUBLE;
+		this.numbers[slot] = value;
+		this.objects[slot] = null;
+		if (hasListeners(slot)) {
+			notifyListeners(slot, value);
+		}
 	}
 
 	/**
@@ -100,19 +258,27 @@ public class ModuleCommunicationBus {
 	 * @throws SimError if the value with the given key was not a Double
 	 */
 	public double updateDouble(String key, double delta) throws SimError {
-		double current;
-		try {
-			current = (Double)getProperty(key);
-			updateProperty(key, current + delta);
-		}
-		catch (ClassCastException cce) {
-			throw new SimError("No Double value for key " + key);
-		}
-		catch (NullPointerException npe) {
-			throw new SimError("No value for key " + key);
+		return updateDouble(getSlot(key), delta);
+	}
+	
+	/**
+	 * Changes the Double value of a slot with the value delta  
+	 * @param slot The slot of the key
+	 * @param delta Value added to the old value
+	 * @return The new value
+	 * @throws SimError if the value of the slot was not a Double
+	 */
+	public double updateDouble(int slot, double delta) throws SimError {
+		byte type = getType(slot);
+		if (type == NONE || (type == OBJECT && this.objects[slot] == null)) {
+			throw new SimError("No value for key " + getKey(slot));
+		} else if (type != DOUBLE) {
+			throw new SimError("No Double value for key " + getKey(slot));
 		}
-
-		return current + delta;
+		
+		double value = this.numbers[slot] + delta;
+		setDouble(slot, value);
+		return value;
 	}
 	
 	/**
@@ -123,16 +289,26 @@ public class ModuleCommunicationBus {
 	 * @throws SimError if the value with the given key was not a Double
 	 */
 	public double getDouble(String key, double naValue) throws SimError {
-		Object value = this.getProperty(key);
-		if (value == null) {
+		return getDouble(getSlot(key), naValue);
+	}
+	
+	/**
+	 * Returns a double value from the communication bus using the slot of
+	 * the key.
+	 * @param slot The slot of the key
+	 * @param naValue The value to return if there is no value for the slot
+	 * @return The value of the slot, or the naValue if it has no value
+	 * @throws SimError if the value of the slot was not a Double
+	 */
+	public double getDouble(int slot, double naValue) throws SimError {
+		byte type = getType(slot);
+		if (type == DOUBLE) {
+			return this.numbers[slot];
+		} else if (type == NONE || 
+				(type == OBJECT && this.objects[slot] == null)) {
 			return naValue;
 		}
-		try {
-			return (Double)value;
-		}
-		catch (ClassCastException cce) {
-			throw new SimError("No Double value for key " + key);
-		}
+		throw new SimError("No Double value for key " + getKey(slot));
 	}
 	
 	/**
@@ -143,16 +319,26 @@ public class ModuleCommunicationBus {
 	 * @throws SimError if the value with the given key was not an Integer
 	 */
 	public int getInt(String key, int naValue) throws SimError {
-		Object value = this.getProperty(key);
-		if (value == null) {
+		return getInt(getSlot(key), naValue);
+	}
+	
+	/**
+	 * Returns an integer value from the communication bus using the slot of
+	 * the key.
+	 * @param slot The slot of the key
+	 * @param naValue The value to return if there is no value for the slot
+	 * @return The value of the slot, or the naValue if it has no value
+	 * @throws SimError if the value of the slot was not an Integer
+	 */
+	public int getInt(int slot, int naValue) throws SimError {
+		byte type = getType(slot);
+		if (type == INT) {
+			return (int)this.numbers[slot];
+		} else if (type == NONE || 
+				(type == OBJECT && this.objects[slot] == null)) {
 			return naValue;
 		}
-		try {
-			return (Integer)value;
-		}
-		catch (ClassCastException cce) {
-			throw new SimError("No Integer value for key " + key);
-		}
+		throw new SimError("No Integer value for key " + getKey(slot));
 	}
 	
 	/**
@@ -161,20 +347,34 @@ public class ModuleCommunicationBus {
 	 * @param module The module to subscribe.
 	 */
 	public void subscribe(String key, ModuleCommunicationListener module) {
+		subscribe(getSlot(key), module);
+	}
+	
+	/**
+	 * Subscribes a module to changes of the value of a slot.
+	 * @param slot The slot of the key
+	 * @param module The module to subscribe.
+	 */
+	public void subscribe(int slot, ModuleCommunicationListener module) {
 		if (this.listeners == null) {
 			/* first listener for the whole node */
-			this.listeners = 
-				new HashMap<String, List<ModuleCommunicationListener>>();
+			this.listeners = new ModuleCommunicationListener
+				[Math.max(slot + 1, keys.length)][];
+		} else if (slot >= this.listeners.length) {
+			this.listeners = Arrays.copyOf(this.listeners, 
+					Math.max(slot + 1, keys.length));
 		}
 		
-		List<ModuleCommunicationListener> list = this.listeners.get(key);
+		ModuleCommunicationListener[] list = this.listeners[slot];
 		if (list == null) {
 			/* first listener for this key */
-			list = new ArrayList<ModuleCommunicationListener>(INIT_CAPACITY);
-			this.listeners.put(key, list);
+			list = NO_LISTENERS;
 		}
 		
-		list.add(module);
+		/* a new array so that notifying isn't disturbed by subscriptions */
+		list = Arrays.copyOf(list, list.length + 1);
+		list[list.length - 1] = module;
+		this.listeners[slot] = list;
 	}
 	
 	/**
@@ -183,47 +383,142 @@ public class ModuleCommunicationBus {
 	 * @param module The module to whose subscription is removed
 	 */
 	public void unsubscribe(String key, ModuleCommunicationListener module) {
-		List<ModuleCommunicationListener> list;
-		
-		if (this.listeners == null) {
-			return; /* no subscriptions */
-		}
-		
-		list = this.listeners.get(key);
-		if (list == null) {
+		unsubscribe(getSlot(key), module);
+	}
+	
+	/**
+	 * Removes a notification subscription
+	 * @param slot The slot of the key for which the subscription should be 
+	 * removed
+	 * @param module The module to whose subscription is removed
+	 */
+	public void unsubscribe(int slot, ModuleCommunicationListener module) {
+		if (!hasListeners(slot)) {
 			return; /* no subscriptions for the key */
 		}
 		
-		list.remove(module);
+		ModuleCommunicationListener[] list = this.listeners[slot];
+		for (int i = 0; i < list.length; i++) {
+			if (module.equals(list[i])) {
+				ModuleCommunicationListener[] newList = 
+					new ModuleCommunicationListener[list.length - 1];
+				System.arraycopy(list, 0, newList, 0, i);
+				System.arraycopy(list, i + 1, newList, i, newList.length - i);
+				this.listeners[slot] = newList;
+				return;
+			}
+		}
 	}
 	
+	/**
+	 * Returns true if some module has subscribed to the changes of a slot
+	 * @param slot The slot of the key
+	 * @return True if the slot has listeners
+	 */
+	private boolean hasListeners(int slot) {
+		return this.listeners != null && slot < this.listeners.length &&
+			this.listeners[slot] != null && this.listeners[slot].length > 0;
+	}
 	
 	/**
-	 * Notifies all listeners that have subscribed to the given key 
-	 * @param key The key which got new value
+	 * Notifies all listeners that have subscribed to the given slot 
+	 * @param slot The slot which got new value
 	 * @param newValue The new value for the key
 	 */
-	private void notifyListeners(String key, Object newValue) {
-		List<ModuleCommunicationListener> list;
-		
-		if (this.listeners == null) {
+	private void notifyListeners(int slot, Object newValue) {
+		if (!hasListeners(slot)) {
 			return;
 		}
-		list = this.listeners.get(key);
 		
-		if (list == null) {
-			return;
+		String key = getKey(slot);
+		for (ModuleCommunicationListener mcl : this.listeners[slot]) {
+			if (mcl instanceof ModuleCommunicationSlotListener) {
+				((ModuleCommunicationSlotListener)mcl).moduleValueChanged(slot,
+						newValue);
+			} else {
+				mcl.moduleValueChanged(key, newValue);
+			}
 		}
+	}
+	
+	/**
+	 * Returns the values of the bus by their keys
+	 * @return The values (or null if there are no values)
+	 */
+	private HashMap<String, Object> getValues() {
+		if (this.types == null) {
+			return null;
+		}
+		HashMap<String, Object> values = new HashMap<String, Object>();
+		for (int i = 0; i < this.types.length; i++) {
+			if (this.types[i] != NONE) {
+				values.put(getKey(i), getProperty(i));
+			}
+		}
+		return values;
+	}
+	
+	/**
+	 * Writes the values and listeners by their keys, since the slots of the
+	 * keys depend on the order in which the keys were first used
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeObject(getValues());
 		
-		for (ModuleCommunicationListener mcl : list) {
-			mcl.moduleValueChanged(key, newValue);
+		HashMap<String, ModuleCommunicationListener[]> listenerMap = null;
+		if (this.listeners != null) {
+			listenerMap = new HashMap<String, ModuleCommunicationListener[]>();
+			for (int i = 0; i < this.listeners.length; i++) {
+				if (hasListeners(i)) {
+					listenerMap.put(getKey(i), this.listeners[i]);
+				}
+			}
 		}
+		out.writeObject(listenerMap);
 	}
 	
+	/**
+	 * Reads the values and listeners written by 
+	 * {@link #writeObject(ObjectOutputStream)} without notifying the 
+	 * listeners
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) 
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		Map<String, Object> values = (Map<String, Object>)in.readObject();
+		Map<String, ModuleCommunicationListener[]> listenerMap = 
+			(Map<String, ModuleCommunicationListener[]>)in.readObject();
+		
+		if (values != null) {
+			ensureValueCapacity(0);
+			for (Map.Entry<String, Object> e : values.entrySet()) {
+				int slot = getSlot(e.getKey());
+				Object value = e.getValue();
+				ensureValueCapacity(slot);
+				if (value instanceof Double || value instanceof Integer) {
+					this.types[slot] = value instanceof Double ? DOUBLE : INT;
+					this.numbers[slot] = ((Number)value).doubleValue();
+				} else {
+					this.types[slot] = OBJECT;
+					this.objects[slot] = value;
+				}
+			}
+		}
+		if (listenerMap != null) {
+			for (Map.Entry<String, ModuleCommunicationListener[]> e : 
+					listenerMap.entrySet()) {
+				for (ModuleCommunicationListener mcl : e.getValue()) {
+					subscribe(e.getKey(), mcl);
+				}
+			}
+		}
+	}
 	
 	@Override
 	public String toString() {
-		return "ComBus with mapping: " + (this.values != null ? 
-				this.values.toString() : "n/a");
+		return "ComBus with mapping: " + (this.types != null ? 
+				getValues().toString() : "n/a");
 	}
 }
@@ -0,0 +1,25 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package core;
+
+/**
+ * Module communication listener that is notified with the slots of the 
+ * changed variables (see {@link ModuleCommunicationBus#getSlot(String)}) 
+ * instead of their keys, so that it can tell the variables apart without
+ * comparing the keys.
+ */
+public interface ModuleCommunicationSlotListener 
+		extends ModuleCommunicationListener {
+	
+	/** 
+	 * This method is called instead of 
+	 * {@link #moduleValueChanged(String, Object)} whenever a variable, whose
+	 * changes the module has registered to, changes. 
+	 * @param slot The slot of the variable
+	 * @param newValue New value for the variable
+	 */ 
+	public void moduleValueChanged(int slot, Object newValue);
+	
+}
@@ -6,8 +6,11 @@ package core;
 
 import interfaces.ConnectivityGrid;
 import interfaces.ConnectivityOptimizer;
+import interfaces.MultiLevelGrid;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 
@@ -18,7 +21,10 @@ import util.ActivenessHandler;
 /**
  * Network interface of a DTNHost. Takes care of connectivity among hosts.
  */
-abstract public class NetworkInterface implements ModuleCommunicationListener {
+abstract public class NetworkInterface implements 
+		ModuleCommunicationSlotListener, Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** transmit range -setting id ({@value})*/
 	public static final String TRANSMIT_RANGE_S = "transmitRange";
 	/** transmit speed -setting id ({@value})*/
@@ -46,10 +52,17 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
     variable. Value type: integer */
 	public static final String SPEED_ID = "Network.speed";
 	
+	/** bus slots of the variables */
+	private static final int SCAN_INTERVAL_SLOT = 
+		ModuleCommunicationBus.getSlot(SCAN_INTERVAL_ID);
+	private static final int RANGE_SLOT = 
+		ModuleCommunicationBus.getSlot(RANGE_ID);
+	private static final int SPEED_SLOT = 
+		ModuleCommunicationBus.getSlot(SPEED_ID);
+	
 	private static final int CON_UP = 1;
 	private static final int CON_DOWN = 2;
 
-	private static Random rng;
 	protected DTNHost host = null;
 
 	protected String interfacetype;
@@ -70,6 +83,22 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	private int activenessJitterMax;
 	/** this interface's activeness jitter value */
 	private int activenessJitterValue;
+	/** activeness of the interface according to the activeness handler */
+	private boolean timeActive;
+	/** sim time until which {@link #timeActive} is valid */
+	private double timeActiveValidity = -Double.MAX_VALUE;
+	/** range changes of the activeness handler when timeActive was set */
+	private int timeActiveRangeChanges;
+	/** true if the battery of the host has run out */
+	private boolean batteryEmpty;
+	/** near interfaces computed beforehand for the ongoing update pass
+	 * (or null if they should be asked from the optimizer) */
+	private Collection<NetworkInterface> plannedNearInterfaces;
+	/** transmit range when the near interfaces were planned */
+	private double plannedRange;
+	/** index of this interface in its connectivity optimizer (or -1 if 
+	 * the optimizer hasn't set one) */
+	private int optimizerIndex = -1;
 
 	static {
 		DTNSim.registerForReset(NetworkInterface.class.getCanonicalName());
@@ -80,7 +109,22 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	 * Resets the static fields of the class
 	 */
 	public static void reset() {
-		rng = new Random(0);
+		SimulationContext.get().setClassState(NetworkInterface.class, null);
+	}
+	
+	/**
+	 * Returns the random number generator of the interfaces of the current
+	 * simulation
+	 * @return The random number generator
+	 */
+	private static Random getRng() {
+		SimulationContext ctx = SimulationContext.get();
+		Random rng = (Random)ctx.getClassState(NetworkInterface.class);
+		if (rng == null) {
+			rng = new Random(0);
+			ctx.setClassState(NetworkInterface.class, rng);
+		}
+		return rng;
 	}
 	
 	/**
@@ -116,6 +160,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.transmitSpeed = ni.transmitSpeed;
 		this.scanInterval = ni.scanInterval;
 		this.ah = ni.ah;
+		Random rng = getRng();
 		
 		if (ni.activenessJitterMax > 0) {
 			this.activenessJitterValue = rng.nextInt(ni.activenessJitterMax);
@@ -142,18 +187,29 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		this.host = host;
 		ModuleCommunicationBus comBus = host.getComBus();
 		
-		if (!comBus.containsProperty(SCAN_INTERVAL_ID)) {
+		if (!comBus.containsProperty(SCAN_INTERVAL_SLOT)) {
 			/* add properties and subscriptions only for the 1st interface */
 			/* TODO: support for multiple interfaces */
-			comBus.addProperty(SCAN_INTERVAL_ID, this.scanInterval);
-			comBus.addProperty(RANGE_ID, this.transmitRange);
-			comBus.addProperty(SPEED_ID, this.transmitSpeed);
-			comBus.subscribe(SCAN_INTERVAL_ID, this);
-			comBus.subscribe(RANGE_ID, this);
-			comBus.subscribe(SPEED_ID, this);
+			comBus.addProperty(SCAN_INTERVAL_SLOT, this.scanInterval);
+			comBus.addProperty(RANGE_SLOT, this.transmitRange);
+			comBus.addProperty(SPEED_SLOT, this.transmitSpeed);
+			comBus.subscribe(SCAN_INTERVAL_SLOT, this);
+			comBus.subscribe(RANGE_SLOT, this);
+			comBus.subscribe(SPEED_SLOT, this);
+		}
+		if (comBus.containsProperty(EnergyModel.ENERGY_VALUE_SLOT)) {
+			/* hosts without energy value are subscribed by their energy
+			   model when it adds the value */
+			comBus.subscribe(EnergyModel.ENERGY_VALUE_SLOT, this);
+			this.batteryEmpty = 
+				comBus.getDouble(EnergyModel.ENERGY_VALUE_SLOT, 1) <= 0;
 		}
 		
-		if (transmitRange > 0) {
+		if (transmitRange > 0 && MultiLevelGrid.isInUse()) {
+			optimizer = MultiLevelGrid.MultiLevelGridFactory(
+					this.interfacetype.hashCode());
+			optimizer.addInterface(this);
+		} else if (transmitRange > 0) {
 			optimizer = ConnectivityGrid.ConnectivityGridFactory(
 					this.interfacetype.hashCode(), transmitRange);
 			optimizer.addInterface(this);
@@ -169,6 +225,7 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	public void setGroupSettings(Settings s) {
 		s.setSubNameSpace(NET_SUB_NS);	
 		ah = new ActivenessHandler(s);
+		this.timeActiveValidity = -Double.MAX_VALUE;
 		
 		if (s.contains(SCAN_INTERVAL_S)) {
 			this.scanInterval =  s.getDouble(SCAN_INTERVAL_S);
@@ -213,6 +270,68 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return this.transmitSpeed;
 	}
 
+	/**
+	 * Returns the connectivity optimizer of this interface
+	 * @return the optimizer or null if the interface doesn't have one
+	 */
+	public ConnectivityOptimizer getOptimizer() {
+		return this.optimizer;
+	}
+	
+	/**
+	 * Returns the index the connectivity optimizer of this interface has
+	 * given to the interface
+	 * @return The index or -1 if the optimizer hasn't set one
+	 */
+	public int getOptimizerIndex() {
+		return this.optimizerIndex;
+	}
+	
+	/**
+	 * Sets the index of this interface in its connectivity optimizer. 
+	 * Optimizers can use the index to find their data of the interface
+	 * without hash lookups.
+	 * @param index The index or -1 to clear the index
+	 */
+	public void setOptimizerIndex(int index) {
+		this.optimizerIndex = index;
+	}
+	
+	/**
+	 * Sets the near interfaces that should be used, instead of asking them
+	 * from the optimizer, the next time this interface looks for new
+	 * connections. Used when the near interfaces are computed beforehand 
+	 * (e.g., in parallel) for an update pass. The planned interfaces may
+	 * leave out the interfaces that are not within the current transmit
+	 * range of this interface, so the plan is not used if the range 
+	 * changes before that.
+	 * @param near The near interfaces or null to clear the earlier value
+	 */
+	public void setPlannedNearInterfaces(Collection<NetworkInterface> near) {
+		this.plannedNearInterfaces = near;
+		this.plannedRange = this.transmitRange;
+	}
+	
+	/**
+	 * Returns the interfaces that might be close enough for a connection
+	 * with this interface. If the near interfaces were computed beforehand
+	 * (see {@link #setPlannedNearInterfaces(Collection)}), those are returned
+	 * (once), otherwise the optimizer is asked for them. The result is 
+	 * valid only until the next call (see 
+	 * {@link ConnectivityOptimizer#getNearInterfaces(NetworkInterface)}).
+	 * @return The near interfaces
+	 */
+	protected Collection<NetworkInterface> getNearInterfaces() {
+		Collection<NetworkInterface> near = this.plannedNearInterfaces;
+		if (near != null) {
+			this.plannedNearInterfaces = null;
+			if (this.plannedRange == this.transmitRange) {
+				return near;
+			}
+		}
+		return optimizer.getNearInterfaces(this);
+	}
+
 	/**
 	 * Returns a list of currently connected connections
 	 * @return a list of currently connected connections
@@ -222,15 +341,23 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	}
 	
 	/**
-	 * Returns true if the interface is on at the moment (false if not)
+	 * Returns true if the interface is on at the moment (false if not).
+	 * The activeness handler is asked again only when the activeness may
+	 * have changed since the previous call, and the battery level is
+	 * followed through the host's communication bus.
 	 * @return true if the interface is on at the moment (false if not)
 	 */
 	public boolean isActive() {
-		boolean active = ah.isActive(this.activenessJitterValue);
+		if (SimClock.getTime() >= this.timeActiveValidity ||
+				ah.getNrofRangeChanges() != this.timeActiveRangeChanges) {
+			this.timeActive = ah.isActive(this.activenessJitterValue);
+			this.timeActiveValidity = 
+				ah.getValidityTime(this.activenessJitterValue);
+			this.timeActiveRangeChanges = ah.getNrofRangeChanges();
+		}
+		boolean active = this.timeActive;
 		
-		if (active && host.getComBus().getDouble(EnergyModel.ENERGY_VALUE_ID,
-					1) <= 0) {
-			/* TODO: better way to check battery level */
+		if (active && this.batteryEmpty) {
 			/* no battery -> inactive */
 			active = false;
 		}
@@ -238,11 +365,10 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		if (active == false && this.transmitRange > 0) {
 			/* not active -> make range 0 */
 			this.oldTransmitRange = this.transmitRange;
-			host.getComBus().updateProperty(RANGE_ID, 0.0);
+			host.getComBus().setDouble(RANGE_SLOT, 0.0);
 		} else if (active == true && this.transmitRange == 0.0) {
 			/* active, but range == 0 -> restore range  */
-			host.getComBus().updateProperty(RANGE_ID, 
-					this.oldTransmitRange);
+			host.getComBus().setDouble(RANGE_SLOT, this.oldTransmitRange);
 		}		
 		return active;
 	}
@@ -275,6 +401,23 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 		return true;
 	}
 	
+	/**
+	 * Checks if this interface can be in the scanning mode at the current
+	 * time considering only its scanning interval. Unlike 
+	 * {@link #isScanning()}, this doesn't start a new scan round or check 
+	 * the activeness, so it can be used to skip looking for new 
+	 * connections when the interface can't be scanning anyway.
+	 * @return False if the interface is between its scan rounds, true if
+	 * not
+	 */
+	public boolean isScanningPossible() {
+		if (scanInterval <= 0.0) {
+			return true;
+		}
+		double simTime = SimClock.getTime();
+		return simTime == lastScanTime || simTime > lastScanTime + scanInterval;
+	}
+	
 	/**
 	 * Returns true if one of the connections of this interface is transferring
 	 * data
@@ -414,22 +557,37 @@ abstract public class NetworkInterface implements ModuleCommunicationListener {
 	
 	/**
 	 * This method is called by the {@link ModuleCommunicationBus} when/if
-	 * someone changes the scanning interval, transmit speed, or range
+	 * someone changes the scanning interval, transmit speed, range, or the
+	 * energy level of the host
 	 * @param key Identifier of the changed value
 	 * @param newValue New value for the variable
 	 */
 	public void moduleValueChanged(String key, Object newValue) {
-		if (key.equals(SCAN_INTERVAL_ID)) {
+		moduleValueChanged(ModuleCommunicationBus.getSlot(key), newValue);
+	}
+	
+	/**
+	 * Same as {@link #moduleValueChanged(String, Object)} with the slot 
+	 * of the changed value's key
+	 * @param slot Slot of the changed value
+	 * @param newValue New value for the variable
+	 */
+	public void moduleValueChanged(int slot, Object newValue) {
+		if (slot == EnergyModel.ENERGY_VALUE_SLOT) {
+			this.batteryEmpty = (Double)newValue <= 0;
+		}
+		else if (slot == RANGE_SLOT) {
+			this.transmitRange = (Double)newValue;	
+		}
+		else if (slot == SCAN_INTERVAL_SLOT) {
 			this.scanInterval = (Double)newValue;	
 		}
-		else if (key.equals(SPEED_ID)) {
+		else if (slot == SPEED_SLOT) {
 			this.transmitSpeed = (Integer)newValue;	
 		}
-		else if (key.equals(RANGE_ID)) {
-			this.transmitRange = (Double)newValue;	
-		}
 		else {
-			throw new SimError("Unexpected combus ID " + key);
+			throw new SimError("Unexpected combus ID " + 
+					ModuleCommunicationBus.getKey(slot));
 		}
 	}
 
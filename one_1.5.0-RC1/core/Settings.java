@@ -9,10 +9,12 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.Set;
@@ -36,7 +38,9 @@ import util.Range;
  * should always be forward slash ("/").
  * </P> 
  */
-public class Settings {
+public class Settings implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** properties object where the setting files are read into */
 	protected static Properties props;
 	/** file name of the default settings file ({@value}) */
@@ -55,10 +59,7 @@ public class Settings {
 	
 	/** Stream where all read settings are written to */
 	private static PrintStream out = null;
-	private static Set<String> writtenSettings = new HashSet<String>();
 	
-	/** run index for run-specific settings */
-	private static int runIndex = 0;
 	private String namespace = null; // namespace to look the settings from
 	private String secondaryNamespace = null;
 	private Stack<String> oldNamespaces;
@@ -99,8 +100,61 @@ public class Settings {
 	 * -1 to disable run indexing
 	 */
 	public static void setRunIndex(int index) {
-		runIndex = index;
-		writtenSettings.clear();
+		SimulationContext ctx = SimulationContext.get();
+		ctx.runIndex = index;
+		ctx.writtenSettings.clear();
+	}
+	
+	/**
+	 * Starts recording the settings that are read in the current simulation
+	 * context. All the full property names that are looked up are recorded
+	 * with their values (or null for undefined properties).
+	 */
+	public static void startRecording() {
+		SimulationContext.get().settingsReads = new HashMap<String, String>();
+	}
+
+	/**
+	 * Stops recording the settings reads
+	 * @return The reads recorded so far (or null if no reads were being
+	 * recorded)
+	 */
+	public static Map<String, String> stopRecording() {
+		SimulationContext ctx = SimulationContext.get();
+		Map<String, String> reads = ctx.settingsReads;
+		ctx.settingsReads = null;
+		return reads;
+	}
+
+	/**
+	 * Continues recording the settings reads to the given reads
+	 * @param reads Reads returned by {@link #stopRecording()} (if null,
+	 * nothing is recorded)
+	 */
+	public static void continueRecording(Map<String, String> reads) {
+		SimulationContext.get().settingsReads = reads;
+	}
+
+	/**
+	 * Checks if the recorded settings would have the same values in the
+	 * current run
+	 * @param reads The recorded reads
+	 * @return True if all the values are the same, false if not
+	 */
+	public static boolean hasSameValues(Map<String, String> reads) {
+		Map<String, String> recording = stopRecording();
+		try {
+			for (Map.Entry<String, String> e : reads.entrySet()) {
+				String value = lookup(e.getKey());
+				if (value == null ? e.getValue() != null : 
+						!value.equals(e.getValue())) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			continueRecording(recording);
+		}
 	}
 	
 	/**
@@ -299,10 +353,15 @@ public class Settings {
 	 * Writes the given setting string to the settings output (if any)
 	 * @param setting The string to write
 	 */
-	private static void outputSetting(String setting) {
-		if (out != null && !writtenSettings.contains(setting)) {
+	private static synchronized void outputSetting(String setting) {
+		if (out == null) {
+			return;
+		}
+		SimulationContext ctx = SimulationContext.get();
+		Set<String> writtenSettings = ctx.writtenSettings;
+		if (!writtenSettings.contains(setting)) {
 			if (writtenSettings.size() == 0) {
-				out.println("# Settings for run " + (runIndex + 1));
+				out.println("# Settings for run " + (ctx.runIndex + 1));
 			}
 			out.println(setting);
 			writtenSettings.add(setting);
@@ -363,21 +422,13 @@ public class Settings {
 			init(null);
 		}
 		fullPropName = getFullPropertyName(name, false);
-		String value = props.getProperty(fullPropName);
-		
-		if (value != null) { // found value, check if run setting can be parsed
-			value = parseRunSetting(value.trim());
-		}
+		String value = lookup(fullPropName);
 			
 		if ((value == null || value.length() == 0) && 
 				this.secondaryNamespace != null) {
 			// try secondary namespace if the value wasn't found from primary
 			fullPropName = getFullPropertyName(name, true);
-			value = props.getProperty(fullPropName);
-			
-			if (value != null) {
-				value = parseRunSetting(value.trim());
-			}
+			value = lookup(fullPropName);
 		}
 		
 		if (value == null || value.length() == 0) {
@@ -389,6 +440,29 @@ public class Settings {
 		return value;
 	}
 	
+	/**
+	 * Returns the value of a property for the current run (see 
+	 * {@link #setRunIndex(int)}) and records the read if reads are being
+	 * recorded (see {@link #startRecording()})
+	 * @param fullPropName Full name of the property
+	 * @return The value of the property or null if it isn't defined
+	 */
+	private static String lookup(String fullPropName) {
+		String value = props.getProperty(fullPropName);
+		
+		if (value != null) { // found value, check if run setting can be parsed
+			value = parseRunSetting(value.trim());
+		}
+		
+		Map<String, String> reads = SimulationContext.get().settingsReads;
+		if (reads != null) {
+			synchronized (reads) {
+				reads.put(fullPropName, value);
+			}
+		}
+		return value;
+	}
+	
 	/**
 	 * Returns the given setting if it exists, or defaultValue if the setting
 	 * does not exist
@@ -415,6 +489,7 @@ public class Settings {
 		final String RUN_ARRAY_END = "]";
 		final String RUN_ARRAY_DELIM = ";";
 		final int MIN_LENGTH = 3; // minimum run is one value. e.g. "[v]"
+		int runIndex = SimulationContext.get().runIndex;
 		
 		if (!value.startsWith(RUN_ARRAY_START) || 
 			!value.endsWith(RUN_ARRAY_END) || 
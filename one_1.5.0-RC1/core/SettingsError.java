@@ -9,6 +9,7 @@ package core;
  *
  */
 public class SettingsError extends SimError {
+	private static final long serialVersionUID = 1L;
 
 	public SettingsError(String cause) {
 		super(cause);
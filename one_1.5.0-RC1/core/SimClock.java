@@ -4,11 +4,15 @@
  */
 package core;
 
+import java.io.Serializable;
+
 /**
- * Wall clock for checking the simulation time.
+ * Wall clock for checking the simulation time. The time is kept in the
+ * current {@link SimulationContext}.
  */
-public class SimClock {
-	private static double clockTime = 0.0;
+public class SimClock implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	private static SimClock clock = null;
 	
 	private SimClock() {}
@@ -22,19 +26,27 @@ public class SimClock {
 	 * Get the instance of the class that can also change the time.
 	 * @return The instance of this clock
 	 */
-	public static SimClock getInstance() {
+	public static synchronized SimClock getInstance() {
 		if (clock == null) {
 			clock = new SimClock();
 		}
 		return clock;
 	}
 	
+	/**
+	 * Replaces a deserialized clock with the singleton instance
+	 * @return The instance of this clock
+	 */
+	private Object readResolve() {
+		return getInstance();
+	}
+	
 	/**
 	 * Returns the current time (seconds since start)
 	 * @return Time as a double
 	 */
 	public static double getTime() {
-		return clockTime;
+		return SimulationContext.get().clockTime;
 	}
 	
 	/**
@@ -42,7 +54,7 @@ public class SimClock {
 	 * @return Time as integer
 	 */
 	public static int getIntTime() {
-		return (int)Math.round(clockTime);
+		return (int)Math.round(getTime());
 	}
 	
 	/**
@@ -52,7 +64,7 @@ public class SimClock {
 	 * @return The sim time
 	 */
 	public static String getFormattedTime(int decimals) {
-		return String.format("%." + decimals + "f", clockTime);
+		return String.format("%." + decimals + "f", getTime());
 	}
 	
 	/**
@@ -60,7 +72,7 @@ public class SimClock {
 	 * @param time Nrof seconds to increase the time
 	 */
 	public void advance(double time) {
-		clockTime += time;
+		SimulationContext.get().clockTime += time;
 	}
 	
 	/**
@@ -68,7 +80,7 @@ public class SimClock {
 	 * @param time the time to set
 	 */
 	public void setTime(double time) {
-		clockTime = time;
+		SimulationContext.get().clockTime = time;
 	}
 	
 	/**
@@ -76,13 +88,13 @@ public class SimClock {
 	 * @return the current simulation time in a string 
 	 */
 	public String toString() {
-		return "SimTime: " + clockTime;
+		return "SimTime: " + getTime();
 	}
 	
 	/**
 	 * Resets the static fields of the class
 	 */
 	public static void reset() {
-		clockTime = 0;
+		SimulationContext.get().clockTime = 0;
 	}
 }
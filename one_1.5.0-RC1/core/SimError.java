@@ -9,6 +9,8 @@ package core;
  *
  */
 public class SimError extends AssertionError {
+	private static final long serialVersionUID = 1L;
+
 	private Exception e;
 
 	public SimError(String cause) {
@@ -9,7 +9,9 @@ import input.EventQueueHandler;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import movement.MapBasedMovement;
 import movement.MovementModel;
@@ -21,10 +23,8 @@ import routing.MessageRouter;
  * simulation run.
  */
 public class SimScenario implements Serializable {
+	private static final long serialVersionUID = 1L;
 	
-	/** a way to get a hold of this... */	
-	private static SimScenario myinstance=null;
-
 	/** namespace of scenario settings ({@value})*/
 	public static final String SCENARIO_NS = "Scenario";
 	/** number of host groups -setting id ({@value})*/
@@ -106,6 +106,8 @@ public class SimScenario implements Serializable {
 	private boolean simulateConnections;
 	/** Map used for host movement (if any) */
 	private SimMap simMap;
+	/** Settings reads of the interfaces (see {@link ContactTrace}) */
+	private Map<String, String> interfaceReads;
 
 	/** Global connection event listeners */
 	private List<ConnectionListener> connectionListeners;
@@ -124,7 +126,7 @@ public class SimScenario implements Serializable {
 	}
 	
 	public static void reset() {
-		myinstance = null;
+		SimulationContext.get().scenario = null;
 	}
 
 	/**
@@ -134,8 +136,12 @@ public class SimScenario implements Serializable {
 		Settings s = new Settings(SCENARIO_NS);
 		nrofGroups = s.getInt(NROF_GROUPS_S);
 
+		/* settings that don't affect movement aren't recorded for the
+		 * warmup snapshots (see WarmupSnapshot) */
+		Map<String, String> reads = Settings.stopRecording();
 		this.name = s.valueFillString(s.getSetting(NAME_S));
 		this.endTime = s.getDouble(END_TIME_S);
+		Settings.continueRecording(reads);
 		this.updateInterval = s.getDouble(UP_INT_S);
 		this.simulateConnections = s.getBoolean(SIM_CON_S);
 
@@ -151,7 +157,9 @@ public class SimScenario implements Serializable {
 		this.movementListeners = new ArrayList<MovementListener>();
 		this.updateListeners = new ArrayList<UpdateListener>();
 		this.appListeners = new ArrayList<ApplicationListener>();
+		reads = Settings.stopRecording();
 		this.eqHandler = new EventQueueHandler();
+		Settings.continueRecording(reads);
 
 		/* TODO: check size from movement models */
 		s.setNameSpace(MovementModel.MOVEMENT_MODEL_NS);
@@ -175,10 +183,11 @@ public class SimScenario implements Serializable {
 	 * Returns the SimScenario instance and creates one if it doesn't exist yet
 	 */
 	public static SimScenario getInstance() {
-		if (myinstance == null) {
-			myinstance = new SimScenario();
+		SimulationContext ctx = SimulationContext.get();
+		if (ctx.scenario == null) {
+			ctx.scenario = new SimScenario();
 		}
-		return myinstance;
+		return ctx.scenario;
 	}
 
 
@@ -281,6 +290,24 @@ public class SimScenario implements Serializable {
 		this.movementListeners.add(ml);
 	}
 
+	/**
+	 * Returns the list of registered movement listeners
+	 * @return the list of registered movement listeners
+	 */
+	public List<MovementListener> getMovementListeners() {
+		return this.movementListeners;
+	}
+
+	/**
+	 * Returns the settings reads of the interfaces if the reads were
+	 * recorded when the scenario was created (see 
+	 * {@link Settings#startRecording()})
+	 * @return The reads (empty if the reads weren't recorded)
+	 */
+	public Map<String, String> getInterfaceReads() {
+		return this.interfaceReads;
+	}
+
 	/**
 	 * Adds a new update listener for the world
 	 * @param ul The listener
@@ -318,6 +345,7 @@ public class SimScenario implements Serializable {
 	 */
 	protected void createHosts() {
 		this.hosts = new ArrayList<DTNHost>();
+		this.interfaceReads = new HashMap<String, String>();
 
 		for (int i=1; i<=nrofGroups; i++) {
 			List<NetworkInterface> interfaces = 
@@ -333,6 +361,8 @@ public class SimScenario implements Serializable {
 			MovementModel mmProto = 
 				(MovementModel)s.createIntializedObject(MM_PACKAGE + 
 						s.getSetting(MOVEMENT_MODEL_S));
+			/* router, interfaces and applications don't affect movement */
+			Map<String, String> reads = Settings.stopRecording();
 			MessageRouter mRouterProto = 
 				(MessageRouter)s.createIntializedObject(ROUTING_PACKAGE + 
 						s.getSetting(ROUTER_S));
@@ -341,7 +371,10 @@ public class SimScenario implements Serializable {
 			s.ensurePositiveValue(nrofHosts, NROF_HOSTS_S);
 			s.ensurePositiveValue(nrofInterfaces, NROF_INTERF_S);
 
-			// setup interfaces
+			// setup interfaces (reads are recorded for the contact traces)
+			if (reads != null) {
+				Settings.continueRecording(this.interfaceReads);
+			}
 			for (int j=1;j<=nrofInterfaces;j++) {
 				String intName = s.getSetting(INTERFACENAME_S + j);
 				Settings intSettings = new Settings(intName); 
@@ -352,6 +385,7 @@ public class SimScenario implements Serializable {
 				iface.setGroupSettings(s);
 				interfaces.add(iface);
 			}
+			Settings.stopRecording();
 
 			// setup applications
 			if (s.contains(APPCOUNT_S)) {
@@ -379,9 +413,10 @@ public class SimScenario implements Serializable {
 					// Failed to create an application for this group
 					System.err.println("Failed to setup an application: " + se);
 					System.err.println("Caught at " + se.getStackTrace()[0]);
-					System.exit(-1);
+					throw se; /* the user interface handles the error */
 				}
 			}
+			Settings.continueRecording(reads);
 
 			if (mmProto instanceof MapBasedMovement) {
 				this.simMap = ((MapBasedMovement)mmProto).getMap();
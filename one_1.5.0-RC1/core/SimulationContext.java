@@ -0,0 +1,201 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <P>State of a single simulation run. All the state that would otherwise be
+ * global (simulation time, address and message ID counters, run index, the
+ * scenario, and the static state of the classes registered with
+ * {@link DTNSim#registerForReset(String)}) is kept in a context so that
+ * multiple independent runs can be executed concurrently in one JVM.</P>
+ * <P>The context of a run is bound to the thread(s) executing it (see
+ * {@link #setCurrent(SimulationContext)}) and all the simulation classes
+ * resolve their state from the current context. If no context is set for
+ * a thread, the default context is used, so single runs don't need to care
+ * about contexts at all.</P>
+ * <P>The state objects stored in a context must be serializable so that
+ * the context can be written to a {@link Checkpoint}.</P>
+ */
+public class SimulationContext implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** the context used by threads that haven't set a context */
+	private static final SimulationContext defaultContext =
+		new SimulationContext(0);
+	/** contexts of the threads (if set) */
+	private static final ThreadLocal<SimulationContext> current =
+		new ThreadLocal<SimulationContext>();
+	/** has any thread set a context of its own */
+	private static volatile boolean contextsInUse = false;
+
+	/* state of the core classes (see the classes for details) */
+	/** current simulation time ({@link SimClock}) */
+	double clockTime;
+	/** next host address ({@link DTNHost}) */
+	int nextHostAddress;
+	/** next unique message ID ({@link Message}) */
+	int nextMessageId;
+	/** indexes of the message IDs ({@link Message#getIdIndex()}) */
+	HashMap<String, Integer> messageIndexes;
+	/** run index for the settings ({@link Settings}) */
+	int runIndex;
+	/** settings written to the settings output in this run */
+	Set<String> writtenSettings;
+	/** the scenario of the run ({@link SimScenario}) */
+	SimScenario scenario;
+	/** settings reads being recorded ({@link Settings#startRecording()}) */
+	Map<String, String> settingsReads;
+	/** subdirectory for the reports of the run (or null for none) */
+	private String reportSubdir;
+
+	/** state objects of other classes, with the class as the key */
+	private HashMap<Class<?>, Object> classStates;
+
+	/**
+	 * Creates a new, empty, context.
+	 * @param runIndex Run index for the settings
+	 */
+	public SimulationContext(int runIndex) {
+		this.runIndex = runIndex;
+		this.writtenSettings = new HashSet<String>();
+		this.messageIndexes = new HashMap<String, Integer>();
+		this.classStates = new HashMap<Class<?>, Object>();
+	}
+
+	/**
+	 * Restores the state of this context from another context (e.g., one read
+	 * from a checkpoint)
+	 * @param saved The context whose state is restored
+	 */
+	synchronized void restore(SimulationContext saved) {
+		this.clockTime = saved.clockTime;
+		this.nextHostAddress = saved.nextHostAddress;
+		this.nextMessageId = saved.nextMessageId;
+		this.messageIndexes = saved.messageIndexes;
+		this.runIndex = saved.runIndex;
+		this.writtenSettings = saved.writtenSettings;
+		this.scenario = saved.scenario;
+		this.classStates = saved.classStates;
+	}
+
+	/**
+	 * Returns the context of the current thread
+	 * @return The context of the current thread (or the default context if
+	 * the thread hasn't set one)
+	 */
+	public static SimulationContext get() {
+		if (!contextsInUse) {
+			return defaultContext;
+		}
+		SimulationContext ctx = current.get();
+		return ctx != null ? ctx : defaultContext;
+	}
+
+	/**
+	 * Sets the context of the current thread
+	 * @param ctx The context to set or null to use the default context
+	 */
+	public static void setCurrent(SimulationContext ctx) {
+		if (ctx == null || ctx == defaultContext) {
+			current.remove();
+			return;
+		}
+		contextsInUse = true;
+		current.set(ctx);
+	}
+
+	/**
+	 * Returns the state object the given class has stored to this context
+	 * @param owner The class whose state is returned
+	 * @return The state object or null if the class hasn't stored one
+	 */
+	public synchronized Object getClassState(Class<?> owner) {
+		return this.classStates.get(owner);
+	}
+
+	/**
+	 * Stores a state object of a class to this context. Classes with static
+	 * state should store the state using this method instead of static
+	 * fields.
+	 * @param owner The class whose state is stored
+	 * @param state The state object (or null to remove the state)
+	 */
+	public synchronized void setClassState(Class<?> owner, Object state) {
+		if (state == null) {
+			this.classStates.remove(owner);
+		}
+		else {
+			this.classStates.put(owner, state);
+		}
+	}
+
+	/**
+	 * Returns the state objects of the classes whose name starts with the
+	 * given prefix
+	 * @param prefix The prefix (e.g., a package name)
+	 * @return The state objects with the classes as the keys
+	 */
+	synchronized Map<Class<?>, Object> getClassStates(String prefix) {
+		Map<Class<?>, Object> states = new HashMap<Class<?>, Object>();
+		for (Map.Entry<Class<?>, Object> e : this.classStates.entrySet()) {
+			if (e.getKey().getName().startsWith(prefix)) {
+				states.put(e.getKey(), e.getValue());
+			}
+		}
+		return states;
+	}
+
+	/**
+	 * Replaces the state objects of the classes whose name starts with the
+	 * given prefix
+	 * @param prefix The prefix (e.g., a package name)
+	 * @param states The new state objects with the classes as the keys
+	 */
+	synchronized void setClassStates(String prefix,
+			Map<Class<?>, Object> states) {
+		this.classStates.keySet().removeAll(getClassStates(prefix).keySet());
+		this.classStates.putAll(states);
+	}
+
+	/**
+	 * Returns the run index of this context
+	 * @return The run index
+	 */
+	public int getRunIndex() {
+		return this.runIndex;
+	}
+
+	/**
+	 * Sets a subdirectory for the reports of this context's run. Reports
+	 * write their output files to the subdirectory of the directory they
+	 * would otherwise use.
+	 * @param subdir Name of the subdirectory or null for none
+	 */
+	public void setReportSubdir(String subdir) {
+		this.reportSubdir = subdir;
+	}
+
+	/**
+	 * Returns the subdirectory for the reports of this context's run
+	 * @return Name of the subdirectory or null if none is set
+	 */
+	public String getReportSubdir() {
+		return this.reportSubdir;
+	}
+
+	/**
+	 * Returns the simulation time of this context
+	 * @return The simulation time
+	 */
+	public double getTime() {
+		return this.clockTime;
+	}
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import movement.map.MapNode;
+import movement.map.SimMap;
+
+/**
+ * <P>Snapshot of the movement state of a world after the movement model
+ * warmup. When many runs of a batch differ only in settings that don't
+ * affect the movement (e.g., router settings), the warmup is run only in
+ * the first run and the other runs copy the warmed up state from the
+ * snapshot of that run.</P>
+ * <P>A snapshot contains the locations, paths and movement models of the
+ * hosts and the state of the movement classes stored in the simulation
+ * context. A snapshot is used in a run if all the settings that were read
+ * while the scenario was created and warmed up (apart from the router,
+ * interface, application and event settings, see
+ * {@link Settings#startRecording()}) have the same values in the run.
+ * Snapshots are not used if there are movement listeners since the
+ * listeners would not be informed about the warmup movement.</P>
+ * <P>The map (see {@link SimMap}) doesn't change during a simulation and
+ * is cached for all the runs that use it, so it is not serialized but the
+ * runs that use the snapshot share the map objects of the run that created
+ * the snapshot. The serialization of the map's node graph would also
+ * recurse as deep as the paths of the graph are long.</P>
+ * <P>The snapshots are kept in memory for the subsequent runs of the same
+ * JVM.</P>
+ */
+public class WarmupSnapshot {
+	/** Warmup snapshots -setting id ({@value}). Defines how many warmup
+	 * snapshots are kept in memory. Default is 0 (no snapshots). */
+	public static final String WARMUP_SNAPSHOTS_S = "warmupSnapshots";
+
+	/** name prefix of the classes whose state is included in snapshots */
+	private static final String MOVEMENT_PACKAGE = "movement.";
+
+	/** the snapshots (the most recently used last) */
+	private static final List<WarmupSnapshot> snapshots =
+		new LinkedList<WarmupSnapshot>();
+
+	/** the settings reads the snapshot depends on */
+	private Map<String, String> settingsReads;
+	private double warmupTime;
+	private int nrofHosts;
+	/** the serialized state */
+	private byte[] state;
+	/** the map objects the serialized state refers to */
+	private List<Object> mapObjects;
+
+	/**
+	 * Constructor. Creates a snapshot of the world's current state.
+	 * @param world The world
+	 * @param warmupTime The warmup time the world was warmed up with
+	 * @param reads The settings reads the state depends on
+	 */
+	private WarmupSnapshot(World world, double warmupTime,
+			Map<String, String> reads) {
+		this.settingsReads = reads;
+		this.warmupTime = warmupTime;
+		this.nrofHosts = world.getHosts().size();
+		this.mapObjects = new ArrayList<Object>();
+		this.state = write(world, mapObjects);
+	}
+
+	/**
+	 * Warms up the movement models of the world (see
+	 * {@link World#warmupMovementModel(double)}) or copies the warmed up
+	 * state from a snapshot if there is one for the same settings.
+	 * @param world The world to warm up
+	 * @param warmupTime Warmup time
+	 * @param reads Settings reads recorded while the scenario was created
+	 * (or null if the reads weren't recorded)
+	 */
+	public static void warmup(World world, double warmupTime,
+			Map<String, String> reads) {
+		int maxSnapshots = new Settings(World.OPTIMIZATION_SETTINGS_NS).getInt(
+				WARMUP_SNAPSHOTS_S, 0);
+		boolean movListeners =
+			!SimScenario.getInstance().getMovementListeners().isEmpty();
+
+		if (maxSnapshots <= 0 || warmupTime <= 0 || reads == null ||
+				movListeners) {
+			world.warmupMovementModel(warmupTime);
+			return;
+		}
+
+		WarmupSnapshot snapshot = find(world, warmupTime);
+		if (snapshot != null) {
+			snapshot.apply(world);
+			return;
+		}
+
+		Settings.continueRecording(reads);
+		world.warmupMovementModel(warmupTime);
+		reads = Settings.stopRecording();
+		add(new WarmupSnapshot(world, warmupTime, reads), maxSnapshots);
+	}
+
+	/**
+	 * Returns a snapshot that can be used for the world in the current run
+	 * @param world The world
+	 * @param warmupTime Warmup time
+	 * @return The snapshot or null if there is no suitable snapshot
+	 */
+	private static synchronized WarmupSnapshot find(World world,
+			double warmupTime) {
+		for (WarmupSnapshot s : snapshots) {
+			if (s.warmupTime == warmupTime &&
+					s.nrofHosts == world.getHosts().size() &&
+					Settings.hasSameValues(s.settingsReads)) {
+				snapshots.remove(s);
+				snapshots.add(s);
+				return s;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds a snapshot and removes the least recently used snapshots if
+	 * there are too many
+	 * @param snapshot The snapshot to add
+	 * @param maxSnapshots Maximum number of snapshots to keep
+	 */
+	private static synchronized void add(WarmupSnapshot snapshot,
+			int maxSnapshots) {
+		snapshots.add(snapshot);
+		while (snapshots.size() > maxSnapshots) {
+			snapshots.remove(0);
+		}
+	}
+
+	/**
+	 * Serializes the movement state of the world
+	 * @param world The world
+	 * @param mapObjects The list where the map objects the state refers to
+	 * are added
+	 * @return The serialized state
+	 */
+	private static byte[] write(World world, List<Object> mapObjects) {
+		State s = new State();
+		List<DTNHost> hosts = world.getHosts();
+		Map<Object, DTNHost> buses = new IdentityHashMap<Object, DTNHost>();
+		SimulationContext ctx = SimulationContext.get();
+
+		s.hosts = new DTNHost.MovementState[hosts.size()];
+		for (int i = 0; i < s.hosts.length; i++) {
+			s.hosts[i] = hosts.get(i).getMovementState();
+			buses.put(hosts.get(i).getComBus(), hosts.get(i));
+		}
+		s.classStates = new HashMap<Class<?>, Object>(
+				ctx.getClassStates(MOVEMENT_PACKAGE));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			ObjectOutputStream out = new SnapshotOutputStream(bytes, buses,
+					mapObjects);
+			out.writeObject(s);
+			out.close();
+		} catch (IOException e) {
+			throw new SimError("Warmup snapshot failed: " + e, e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Replaces the movement state of the world with the state of this
+	 * snapshot and sets the simulation time to the end of the warmup
+	 * @param world The world
+	 */
+	private void apply(World world) {
+		State s;
+		SimulationContext ctx = SimulationContext.get();
+
+		try {
+			SnapshotInputStream in = new SnapshotInputStream(
+					new ByteArrayInputStream(state), world, mapObjects);
+			s = (State)in.readObject();
+			in.fillCollections();
+			in.close();
+		} catch (IOException e) {
+			throw new SimError("Warmup snapshot failed: " + e, e);
+		} catch (ClassNotFoundException e) {
+			throw new SimError("Warmup snapshot failed: " + e, e);
+		}
+
+		List<DTNHost> hosts = world.getHosts();
+		for (int i = 0; i < s.hosts.length; i++) {
+			hosts.get(i).setMovementState(s.hosts[i]);
+		}
+		ctx.setClassStates(MOVEMENT_PACKAGE, s.classStates);
+		SimClock.getInstance().setTime(0);
+	}
+
+	/**
+	 * The state stored in a snapshot
+	 */
+	private static class State implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private DTNHost.MovementState[] hosts;
+		private HashMap<Class<?>, Object> classStates;
+	}
+
+	/**
+	 * Reference to a host (or its communication bus) of the world. The
+	 * hosts are not included in the snapshots but the references are
+	 * resolved to the hosts of the world the snapshot is applied to.
+	 */
+	private static class HostRef implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private int address;
+		/** is the reference to the host's communication bus */
+		private boolean comBus;
+
+		public HostRef(int address, boolean comBus) {
+			this.address = address;
+			this.comBus = comBus;
+		}
+	}
+
+	/**
+	 * Reference to a map object (a {@link SimMap} or a {@link MapNode}).
+	 * The map objects are not included in the serialized state but the
+	 * references are resolved to the objects of the run that created the
+	 * snapshot.
+	 */
+	private static class MapRef implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		/** index of the object in the snapshot's map objects */
+		private int index;
+
+		public MapRef(int index) {
+			this.index = index;
+		}
+	}
+
+	/**
+	 * Output stream that writes references instead of the hosts and the
+	 * map objects
+	 */
+	private static class SnapshotOutputStream
+			extends Checkpoint.StateOutputStream {
+		private Map<Object, DTNHost> buses;
+		private List<Object> mapObjects;
+		private Map<Object, Integer> mapIndexes;
+
+		/**
+		 * Constructor.
+		 * @param out The stream to write to
+		 * @param buses The hosts with their communication buses as keys
+		 * @param mapObjects The list where the referred map objects are
+		 * added
+		 * @throws IOException if writing the stream header fails
+		 */
+		public SnapshotOutputStream(OutputStream out,
+				Map<Object, DTNHost> buses, List<Object> mapObjects)
+				throws IOException {
+			super(out);
+			this.buses = buses;
+			this.mapObjects = mapObjects;
+			this.mapIndexes = new IdentityHashMap<Object, Integer>();
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) throws IOException {
+			if (obj instanceof DTNHost) {
+				return new HostRef(((DTNHost)obj).getAddress(), false);
+			}
+			if (buses.containsKey(obj)) {
+				return new HostRef(buses.get(obj).getAddress(), true);
+			}
+			if (obj instanceof SimMap || obj instanceof MapNode) {
+				Integer index = mapIndexes.get(obj);
+				if (index == null) {
+					index = mapObjects.size();
+					mapObjects.add(obj);
+					mapIndexes.put(obj, index);
+				}
+				return new MapRef(index);
+			}
+			return super.replaceObject(obj);
+		}
+	}
+
+	/**
+	 * Input stream that resolves the host references to the hosts of a
+	 * world and the map references to the map objects
+	 */
+	private static class SnapshotInputStream
+			extends Checkpoint.StateInputStream {
+		private World world;
+		private List<Object> mapObjects;
+
+		/**
+		 * Constructor.
+		 * @param in The stream to read from
+		 * @param world The world whose hosts the references refer to
+		 * @param mapObjects The map objects the references refer to
+		 * @throws IOException if reading the stream header fails
+		 */
+		public SnapshotInputStream(InputStream in, World world,
+				List<Object> mapObjects) throws IOException {
+			super(in);
+			this.world = world;
+			this.mapObjects = mapObjects;
+		}
+
+		@Override
+		protected Object resolveObject(Object obj) throws IOException {
+			if (obj instanceof HostRef) {
+				HostRef ref = (HostRef)obj;
+				DTNHost host = world.getNodeByAddress(ref.address);
+				return ref.comBus ? host.getComBus() : host;
+			}
+			if (obj instanceof MapRef) {
+				return mapObjects.get(((MapRef)obj).index);
+			}
+			return super.resolveObject(obj);
+		}
+	}
+}
@@ -4,20 +4,32 @@
  */
 package core;
 
+import input.EventCalendar;
 import input.EventQueue;
 import input.ExternalEvent;
 import input.ScheduledUpdatesQueue;
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer;
+import interfaces.SimpleBroadcastInterface;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+
+import util.ParallelExecutor;
 
 /**
  * World contains all the nodes and is responsible for updating their
  * location and connections.
  */
-public class World {
+public class World implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** name space of optimization settings ({@value})*/
 	public static final String OPTIMIZATION_SETTINGS_NS = "Optimization";
 
@@ -37,6 +49,111 @@ public class World {
 	 */
 	public static final String SIMULATE_CON_ONCE_S = "simulateConnectionsOnce";
 
+	/**
+	 * Should the connectivity of the nodes be computed in parallel 
+	 * -setting id ({@value}). Boolean (true/false) variable. If true, the
+	 * near interfaces (within the transmit range) of all interfaces are 
+	 * computed in parallel in the beginning of every update pass and the 
+	 * connections and router updates are then committed in the normal 
+	 * update order, so the results are identical to the sequential run.
+	 * If the connectivity sweep 
+	 * ({@link #CONNECTIVITY_SWEEP_S}) is used, the rows of the grids are 
+	 * checked for new connections in parallel instead, and the connections
+	 * are created in the same order as with one thread. Default is false.
+	 */
+	public static final String PARALLEL_UPDATE_S = "parallelUpdate";
+	
+	/**
+	 * Should the nodes be moved in parallel -setting id ({@value}). 
+	 * Boolean (true/false) variable. If true, the nodes whose movement 
+	 * models support it (see {@link movement.MovementModel#isParallelSafe()}) are 
+	 * moved in parallel. This requires per-host random number streams
+	 * ({@link movement.MovementModel#PER_HOST_RNG}) and gives the same results as 
+	 * moving the nodes sequentially with those streams. Default is false.
+	 */
+	public static final String PARALLEL_MOVEMENT_S = "parallelMovement";
+	
+	/**
+	 * Should the time be advanced to the next event -setting id ({@value}).
+	 * Boolean (true/false) variable. If true, the update intervals where 
+	 * nothing can happen are skipped: the nodes are moved over them in one
+	 * step and the nodes are not updated. The next update is done at the
+	 * last update interval before the next external event, the next
+	 * waypoint arrival or departure, the earliest time any two interfaces
+	 * can get in to or out of range, or the earliest time any router needs
+	 * to be updated (see {@link routing.MessageRouter#getNextUpdateTime()}),
+	 * e.g., for a transfer completion, a TTL check or an application. Idle
+	 * connections (whose routers have no pending work) don't prevent 
+	 * skipping. Activeness periods and update listeners are not 
+	 * considered, so the mode should be used only in scenarios where these
+	 * do not matter between the events. Default is false.
+	 */
+	public static final String NEXT_EVENT_ADVANCE_S = "nextEventAdvance";
+	
+	/**
+	 * Should the host updates after external events be coalesced 
+	 * -setting id ({@value}). Boolean (true/false) variable. If true, all
+	 * the events that have the same time are processed before the hosts
+	 * are updated, and only the hosts the events concern (see 
+	 * {@link ExternalEvent#getHostAddresses()}) are updated after them 
+	 * instead of all the hosts. The hosts are updated in the same way as 
+	 * in the full update passes (e.g., only their routers are updated if 
+	 * the connectivity sweep is enabled) and in random order if the update
+	 * order randomizing is on. All the hosts are still updated at the end
+	 * of every update interval. Default is false (all the hosts are
+	 * updated after every event).
+	 */
+	public static final String COALESCE_EVENT_UPDATES_S = 
+		"coalesceEventUpdates";
+	
+	/**
+	 * Should the updates of idle routers be skipped -setting id ({@value}).
+	 * Boolean (true/false) variable. If true, the router of a host is 
+	 * updated only when it has something to do (see 
+	 * {@link routing.MessageRouter#getNextUpdateTime()} and 
+	 * {@link routing.MessageRouter#hasPendingWork()}): when it or the 
+	 * routers it is connected to have changed, when it has applications,
+	 * or when its transfer is done or its next TTL check is due. The 
+	 * results are the same as without skipping. Default is false.
+	 */
+	public static final String SKIP_IDLE_ROUTERS_S = "skipIdleRouters";
+	
+	/**
+	 * Should the connections be updated with a connectivity sweep 
+	 * -setting id ({@value}). Boolean (true/false) variable. If true, the 
+	 * connections of all the interfaces are updated in the beginning of 
+	 * every update pass with one sweep over every connectivity grid (see
+	 * {@link ConnectivityGrid#updateConnections(ParallelExecutor)}), which
+	 * checks every pair of near interfaces once, and the hosts only update
+	 * their routers in the pass. The connections are the same as without 
+	 * the sweep but they are created and torn down in different order, and
+	 * all of them before the routers are updated, so the results differ. 
+	 * All the interfaces must be {@link SimpleBroadcastInterface}s (in 
+	 * {@link ConnectivityGrid}s). Default is false.
+	 */
+	public static final String CONNECTIVITY_SWEEP_S = "connectivitySweep";
+	
+	/**
+	 * Should the contacts be detected kinetically -setting id ({@value}).
+	 * Boolean (true/false) variable. If true, the hosts are moved in the 
+	 * beginning of every update interval and the exact times when the 
+	 * interfaces get in to and out of range during the interval are solved
+	 * from the movement (see {@link KineticContacts}). The connections are
+	 * created and torn down at those times (in time order with the external
+	 * events) and the hosts only update their routers. This gives exact 
+	 * contact times also with long update intervals. All the interfaces
+	 * must be {@link SimpleBroadcastInterface}s and their scanning 
+	 * intervals are not considered. Can't be used with 
+	 * {@link #NEXT_EVENT_ADVANCE_S}. Default is false.
+	 */
+	public static final String KINETIC_CONTACTS_S = "kineticContacts";
+	
+	/**
+	 * Number of threads to use for parallel updates -setting id ({@value}).
+	 * Integer variable. Default is the number of available processors.
+	 */
+	public static final String NROF_THREADS_S = "nrofThreads";
+
 	private int sizeX;
 	private int sizeY;
 	private List<EventQueue> eventQueues;
@@ -55,8 +172,39 @@ public class World {
 	private List<UpdateListener> updateListeners;
 	/** Queue of scheduled update requests */
 	private ScheduledUpdatesQueue scheduledUpdates;
+	/** calendar of the scheduled updates queue (index 0) and the event
+	 * queues */
+	private EventCalendar calendar;
 	private boolean simulateConOnce;
 	private boolean isConSimulated;
+	/** executor for the parallel updates (or null if not in use) */
+	private ParallelExecutor executor;
+	private boolean parallelUpdate;
+	private boolean parallelMovement;
+	/** hosts that are moved in parallel during the ongoing movement step */
+	private List<DTNHost> parallelMovers;
+	/** should idle update intervals be skipped */
+	private boolean nextEventAdvance;
+	/** end time of the simulation (used when skipping idle intervals) */
+	private double endTime;
+	/** was the radio of the host (by address) active in its last update */
+	private boolean[] radioActive;
+	/** interfaces whose near interfaces are planned for the ongoing pass */
+	private List<NetworkInterface> plannedInterfaces;
+	/** should the host updates after events be coalesced */
+	private boolean coalesceEventUpdates;
+	/** is the host (by address) concerned by the ongoing event batch */
+	private boolean[] touched;
+	/** addresses of the hosts concerned by the ongoing event batch */
+	private int[] touchedAddresses;
+	private int nrofTouched;
+	/** grids whose connections are updated with a sweep (or null if the
+	 * connectivity sweep is not in use) */
+	private List<ConnectivityGrid> sweptGrids;
+	/** kinetic contact detection (or null if not in use) */
+	private KineticContacts kinetic;
+	/** contact trace the connections are replayed from (or null) */
+	private ContactTrace contactReplay;
 
 	/**
 	 * Constructor.
@@ -74,6 +222,10 @@ public class World {
 		
 		this.simClock = SimClock.getInstance();
 		this.scheduledUpdates = new ScheduledUpdatesQueue();
+		List<EventQueue> queues = new ArrayList<EventQueue>();
+		queues.add(this.scheduledUpdates); /* first for equal times */
+		queues.addAll(eventQueues);
+		this.calendar = new EventCalendar(queues);
 		this.isCancelled = false;
 		this.isConSimulated = false;
 
@@ -99,10 +251,99 @@ public class World {
 		}
 		else { // null pointer means "don't randomize"
 			this.updateOrder = null;
+		}
+		
+		this.parallelUpdate = s.getBoolean(PARALLEL_UPDATE_S, false);
+		this.parallelMovement = s.getBoolean(PARALLEL_MOVEMENT_S, false);
+		if (this.parallelUpdate || this.parallelMovement) {
+			this.executor = ParallelExecutor.getInstance(
+					s.getInt(NROF_THREADS_S, 0));
+		}
+		else {
+			this.executor = null;
+		}
+		if (this.parallelUpdate) {
+			this.radioActive = new boolean[this.hosts.size()];
+			Arrays.fill(this.radioActive, true);
+			this.plannedInterfaces = new ArrayList<NetworkInterface>();
+		}
+		if (this.parallelMovement) {
+			this.parallelMovers = new ArrayList<DTNHost>();
 		}
+		
+		this.coalesceEventUpdates = s.getBoolean(COALESCE_EVENT_UPDATES_S, 
+				false);
+		if (this.coalesceEventUpdates) {
+			this.touched = new boolean[this.hosts.size()];
+			this.touchedAddresses = new int[this.hosts.size()];
+		}
+		
+		if (s.getBoolean(SKIP_IDLE_ROUTERS_S, false)) {
+			for (DTNHost host : this.hosts) {
+				host.setSkipIdleRouter(true);
+			}
+		}
+		
+		if (s.getBoolean(CONNECTIVITY_SWEEP_S, false)) {
+			initConnectivitySweep();
+		}
+		
+		this.nextEventAdvance = s.getBoolean(NEXT_EVENT_ADVANCE_S, false);
+		if (this.nextEventAdvance) {
+			Settings scen = new Settings(SimScenario.SCENARIO_NS);
+			this.endTime = scen.getDouble(SimScenario.END_TIME_S);
+		}
+		
+		if (s.getBoolean(KINETIC_CONTACTS_S, false)) {
+			if (this.nextEventAdvance) {
+				throw new SettingsError(OPTIMIZATION_SETTINGS_NS + "." + 
+						KINETIC_CONTACTS_S + " can't be used with " + 
+						NEXT_EVENT_ADVANCE_S);
+			}
+			this.kinetic = new KineticContacts(this.hosts);
+		}
+	}
+
+	/**
+	 * Collects the grids of the interfaces for the connectivity sweep
+	 * (see {@link #CONNECTIVITY_SWEEP_S})
+	 * @throws SettingsError if some interface is not supported by the sweep
+	 */
+	private void initConnectivitySweep() {
+		this.sweptGrids = new ArrayList<ConnectivityGrid>();
+		for (DTNHost host : this.hosts) {
+			for (NetworkInterface ni : host.getInterfaces()) {
+				ConnectivityOptimizer optimizer = ni.getOptimizer();
+				if (!(ni instanceof SimpleBroadcastInterface) || 
+						!(optimizer == null || 
+						optimizer instanceof ConnectivityGrid)) {
+					throw new SettingsError("Interface " + ni + " is not " +
+							"supported by " + OPTIMIZATION_SETTINGS_NS + "." +
+							CONNECTIVITY_SWEEP_S);
+				}
+				if (optimizer != null && !sweptGrids.contains(optimizer)) {
+					this.sweptGrids.add((ConnectivityGrid)optimizer);
+				}
+			}
+		}
 	}
 
 	/**
+	 * Sets the contact trace the connections are replayed from. When a 
+	 * trace is replayed, the hosts are not moved and the hosts only update
+	 * their routers (see {@link ContactTrace}).
+	 * @param trace The trace
+	 * @throws SettingsError if skipping idle intervals is enabled
+	 */
+	void setContactReplay(ContactTrace trace) {
+		if (this.nextEventAdvance) {
+			throw new SettingsError("Contact traces can't be used with " +
+					OPTIMIZATION_SETTINGS_NS + "." + NEXT_EVENT_ADVANCE_S);
+		}
+		this.contactReplay = trace;
+	}
+
+	/**
 	 * Moves hosts in the world for the time given time initialize host 
 	 * positions properly. SimClock must be set to <CODE>-time</CODE> before
 	 * calling this method.
@@ -126,22 +367,14 @@ public class World {
 
 	/**
 	 * Goes through all event Queues and sets the 
-	 * event queue that has the next event.
+	 * event queue that has the next event. The next event times of all
+	 * the queues are re-read, so this also notices queues whose events
+	 * have changed without being processed (e.g., asynchronous input).
 	 */
 	public void setNextEventQueue() {
-		EventQueue nextQueue = scheduledUpdates;
-		double earliest = nextQueue.nextEventsTime();
-
-		/* find the queue that has the next event */
-		for (EventQueue eq : eventQueues) {
-			if (eq.nextEventsTime() < earliest){
-				nextQueue = eq;	
-				earliest = eq.nextEventsTime();
-			}
-		}
-
-		this.nextEventQueue = nextQueue;
-		this.nextQueueEventTime = earliest;
+		this.calendar.updateAll();
+		this.nextEventQueue = this.calendar.getNextQueue();
+		this.nextQueueEventTime = this.calendar.getNextEventsTime();
 	}
 
 	/** 
@@ -150,6 +383,18 @@ public class World {
 	 * this method is called and after one update interval.
 	 */
 	public void update () {
+		if (this.nextEventAdvance) {
+			skipIdleIntervals();
+		}
+		else if (this.contactReplay != null) {
+			updateFromTrace();
+			return;
+		}
+		else if (this.kinetic != null) {
+			updateKinetically();
+			return;
+		}
+		
 		double runUntil = SimClock.getTime() + this.updateInterval;
 
 		setNextEventQueue();
@@ -157,10 +402,13 @@ public class World {
 		/* process all events that are due until next interval update */
 		while (this.nextQueueEventTime <= runUntil) {
 			simClock.setTime(this.nextQueueEventTime);
-			ExternalEvent ee = this.nextEventQueue.nextEvent();
-			ee.processEvent(this);
-			updateHosts(); // update all hosts after every event
-			setNextEventQueue();
+			if (this.coalesceEventUpdates) {
+				processEventBatch();
+			}
+			else {
+				processNextEvent();
+				updateHosts(); // update all hosts after every event
+			}
 		}
 
 		moveHosts(this.updateInterval);
@@ -169,52 +417,485 @@ public class World {
 		updateHosts();
 
 		/* inform all update listeners */
+		for (UpdateListener ul : this.updateListeners) {
+			ul.updated(this.hosts);
+		}
+	}
+
+	/**
+	 * Does one update interval with the kinetic contact detection (see
+	 * {@link #KINETIC_CONTACTS_S}): moves the hosts, processes the contact
+	 * events and the external events in time order, and updates the hosts
+	 * at the end of the interval.
+	 */
+	private void updateKinetically() {
+		double runUntil = SimClock.getTime() + this.updateInterval;
+
+		setNextEventQueue();
+		moveHosts(this.updateInterval);
+		if (simulateConnections) {
+			this.kinetic.computeEvents(this.updateInterval);
+		}
+		
+		while (!this.isCancelled) {
+			double contactTime = simulateConnections ? 
+					this.kinetic.getNextEventTime() : Double.MAX_VALUE;
+			if (contactTime <= runUntil && 
+					contactTime <= this.nextQueueEventTime) {
+				simClock.setTime(contactTime);
+				this.kinetic.processNextEvent();
+			}
+			else if (this.nextQueueEventTime <= runUntil) {
+				simClock.setTime(this.nextQueueEventTime);
+				if (this.coalesceEventUpdates) {
+					processEventBatch();
+				}
+				else {
+					processNextEvent();
+					updateHosts();
+				}
+			}
+			else {
+				break;
+			}
+		}
+		
+		simClock.setTime(runUntil);
+		if (simulateConnections) {
+			this.kinetic.connectRemaining();
+		}
+		updateHosts();
+
 		for (UpdateListener ul : this.updateListeners) {
 			ul.updated(this.hosts);
+		}
+	}
+
+	/**
+	 * Does one update interval replaying the connections from the contact
+	 * trace: processes the connection changes and the external events in
+	 * time order and updates the hosts at the end of the interval without 
+	 * moving them. The changes that have the same time as an event or an
+	 * update are replayed after the event, at the turns of the update pass
+	 * they were recorded in.
+	 */
+	private void updateFromTrace() {
+		double runUntil = SimClock.getTime() + this.updateInterval;
+
+		setNextEventQueue();
+		while (!this.isCancelled) {
+			double traceTime = this.contactReplay.getNextTime();
+			if (traceTime < runUntil && traceTime < this.nextQueueEventTime){
+				simClock.setTime(traceTime);
+				this.contactReplay.replay(traceTime);
+			}
+			else if (this.nextQueueEventTime <= runUntil) {
+				simClock.setTime(this.nextQueueEventTime);
+				if (this.coalesceEventUpdates) {
+					processEventBatch();
+				}
+				else {
+					processNextEvent();
+					updateHosts();
+				}
+			}
+			else {
+				break;
+			}
+		}
+		
+		simClock.setTime(runUntil);
+		updateHosts();
+
+		for (UpdateListener ul : this.updateListeners) {
+			ul.updated(this.hosts);
+		}
+	}
+
+	/**
+	 * Processes the next event and sets the event queue that has the
+	 * event after it.
+	 * @return The processed event
+	 */
+	private ExternalEvent processNextEvent() {
+		int queueIndex = this.calendar.getNextQueueIndex();
+		ExternalEvent ee = this.nextEventQueue.nextEvent();
+		ee.processEvent(this);
+		/* only the queue of the processed event has changed */
+		this.calendar.update(queueIndex);
+		this.nextEventQueue = this.calendar.getNextQueue();
+		this.nextQueueEventTime = this.calendar.getNextEventsTime();
+		return ee;
+	}
+	
+	/**
+	 * Processes all the events that have the same time as the next event
+	 * and then updates the hosts the events concern (or all the hosts if
+	 * any of the events concerns all of them). The hosts are updated in the
+	 * order of their addresses, or in an order shuffled with the current
+	 * time as the seed if update order randomizing is on.
+	 */
+	private void processEventBatch() {
+		double time = this.nextQueueEventTime;
+		boolean updateAll = false;
+		
+		do {
+			int[] addresses = processNextEvent().getHostAddresses();
+			if (addresses == null) {
+				updateAll = true;
+				continue;
+			}
+			for (int address : addresses) {
+				if (!this.touched[address]) {
+					this.touched[address] = true;
+					this.touchedAddresses[this.nrofTouched++] = address;
+				}
+			}
+		} while (this.nextQueueEventTime == time);
+		
+		if (this.contactReplay != null) {
+			this.contactReplay.replayBeforeTurn(time);
+		}
+		/* the interfaces are updated as in the full passes (updateHosts) */
+		boolean updateInterfaces = simulateConnections && 
+			this.kinetic == null && this.contactReplay == null && 
+			this.sweptGrids == null;
+		
+		Arrays.sort(this.touchedAddresses, 0, this.nrofTouched);
+		if (this.updateOrder != null) { // update order randomizing is on
+			Random rng = new Random(SimClock.getIntTime());
+			for (int i = this.nrofTouched - 1; i > 0; i--) {
+				int j = rng.nextInt(i + 1);
+				int address = this.touchedAddresses[i];
+				this.touchedAddresses[i] = this.touchedAddresses[j];
+				this.touchedAddresses[j] = address;
+			}
+		}
+		for (int i=0; i < this.nrofTouched; i++) {
+			int address = this.touchedAddresses[i];
+			this.touched[address] = false;
+			if (!updateAll && !this.isCancelled) {
+				DTNHost host = this.hosts.get(address);
+				if (this.contactReplay != null) {
+					this.contactReplay.replayTurn(time);
+				}
+				host.update(updateInterfaces);
+			}
+		}
+		this.nrofTouched = 0;
+		
+		if (updateAll) {
+			updateHosts();
 		}
 	}
 
+	/**
+	 * Moves the hosts over the update intervals where nothing can happen
+	 * and advances the simulation time to the start of the last such
+	 * interval.
+	 */
+	private void skipIdleIntervals() {
+		setNextEventQueue();
+		int idle = getNrofIdleIntervals();
+		
+		if (idle > 0) {
+			double time = SimClock.getTime();
+			moveHosts(idle * this.updateInterval);
+			for (int i=0; i < idle; i++) {
+				/* same time rounding and update order as without skipping */
+				time += this.updateInterval;
+				simClock.setTime(time);
+				shuffleUpdateOrder();
+			}
+		}
+	}
+	
+	/**
+	 * Returns how many of the following update intervals can be skipped
+	 * before the next event (see {@link #NEXT_EVENT_ADVANCE_S}).
+	 * @return The number of idle update intervals
+	 */
+	private int getNrofIdleIntervals() {
+		double now = SimClock.getTime();
+		double next = Math.min(this.nextQueueEventTime, this.endTime);
+		double maxSpeed = 0;
+		
+		for (int i=0, n = hosts.size(); i < n && next > now; i++) {
+			DTNHost host = hosts.get(i);
+			next = Math.min(next, host.getNextMovementChangeTime());
+			/* transfers, TTL checks, applications etc. of the router */
+			next = Math.min(next, host.getRouter().getNextUpdateTime());
+			maxSpeed = Math.max(maxSpeed, host.getCurrentSpeed());
+		}
+		
+		if (next - now <= this.updateInterval) {
+			return 0;
+		}
+		
+		if (simulateConnections) {
+			double gap = getMinRangeGap();
+			if (gap <= 0) {
+				return 0; /* some interfaces may connect or disconnect now */
+			}
+			if (maxSpeed > 0) {
+				/* nodes can approach each other at most twice the max speed */
+				next = Math.min(next, now + gap / (2 * maxSpeed));
+			}
+		}
+		
+		/* intervals ending before the next event can be skipped */
+		int idle = (int)Math.ceil((next - now) / this.updateInterval) - 1;
+		return idle > 0 ? idle : 0;
+	}
+	
+	/**
+	 * Returns the shortest distance any interface needs to move to get in
+	 * to or out of the range of another interface. Interfaces that are in
+	 * range but not connected (e.g., in the beginning of the simulation) and
+	 * connected interfaces that are out of range have no gap.
+	 * @return The shortest distance (or 0 if some interfaces have no gap or
+	 * the distance can't be determined)
+	 */
+	private double getMinRangeGap() {
+		double minGap = Double.MAX_VALUE;
+		
+		for (int i=0, n = hosts.size(); i < n; i++) {
+			DTNHost host = hosts.get(i);
+			for (NetworkInterface ni : host.getInterfaces()) {
+				if (!(ni.getOptimizer() instanceof ConnectivityGrid)) {
+					return 0;
+				}
+				ConnectivityGrid grid = (ConnectivityGrid)ni.getOptimizer();
+				if (!grid.isInCurrentCell(ni)) {
+					return 0; /* the near interfaces may be missing some */
+				}
+				double range = ni.getTransmitRange();
+				Coord loc = host.getLocation();
+				
+				minGap = Math.min(minGap, grid.getCellSize() - range);
+				for (NetworkInterface other : grid.getNearInterfaces(ni)) {
+					if (other == ni) {
+						continue;
+					}
+					double dist = loc.distance(other.getLocation());
+					double r = Math.min(range, other.getTransmitRange());
+					double gap = ni.isConnected(other) ? r - dist : dist - r;
+					minGap = Math.min(minGap, gap);
+				}
+				if (minGap <= 0) {
+					return 0;
+				}
+			}
+		}
+		
+		return minGap;
+	}
+	
 	/**
 	 * Updates all hosts (calls update for every one of them). If update
 	 * order randomizing is on (updateOrder array is defined), the calls
-	 * are made in random order.
+	 * are made in random order. If parallel updates are enabled, the near
+	 * interfaces of all hosts are computed first in parallel. If the 
+	 * connectivity sweep is enabled, the connections of all hosts are 
+	 * updated first and the hosts only update their routers. With the
+	 * kinetic contact detection or when a contact trace is replayed the 
+	 * hosts also only update their routers.
 	 */
 	private void updateHosts() {
+		List<DTNHost> order;
+		boolean planned = false;
+		boolean updateInterfaces = simulateConnections;
+		
 		if (this.updateOrder == null) { // randomizing is off
-			for (int i=0, n = hosts.size();i < n; i++) {
-				if (this.isCancelled) {
-					break;
-				}
-				hosts.get(i).update(simulateConnections);
-			}
+			order = this.hosts;
 		}
 		else { // update order randomizing is on
-			assert this.updateOrder.size() == this.hosts.size() : 
-				"Nrof hosts has changed unexpectedly";
-			Random rng = new Random(SimClock.getIntTime());
-			Collections.shuffle(this.updateOrder, rng); 
-			for (int i=0, n = hosts.size();i < n; i++) {
-				if (this.isCancelled) {
-					break;
+			shuffleUpdateOrder();
+			order = this.updateOrder;
+		}
+		
+		if (this.contactReplay != null) {
+			this.contactReplay.replayBeforeTurn(SimClock.getTime());
+			updateInterfaces = false;
+		}
+		else if (this.kinetic != null) {
+			updateInterfaces = false; /* connections updated kinetically */
+		}
+		else if (this.sweptGrids != null && simulateConnections) {
+			for (ConnectivityGrid grid : this.sweptGrids) {
+				grid.updateConnections(this.parallelUpdate ? this.executor : 
+					null);
+			}
+			updateInterfaces = false;
+		}
+		else if (this.parallelUpdate && simulateConnections) {
+			planConnectivity(order);
+			planned = true;
+		}
+		
+		for (int i=0, n = hosts.size();i < n; i++) {
+			if (this.isCancelled) {
+				break;
+			}
+			DTNHost host = order.get(i);
+			if (this.radioActive != null) {
+				boolean active = host.isRadioActive();
+				if (planned && active != this.radioActive[host.getAddress()]) {
+					/* the plan expected otherwise -> rest of the pass is 
+					   done without the plan */
+					clearConnectivityPlan();
+					planned = false;
 				}
-				this.updateOrder.get(i).update(simulateConnections);
-			}			
+				/* also after a fallback, so the next pass can be planned */
+				this.radioActive[host.getAddress()] = active;
+			}
+			if (this.contactReplay != null) {
+				this.contactReplay.replayTurn(SimClock.getTime());
+			}
+			host.update(updateInterfaces);
+		}
+		
+		if (planned) {
+			clearConnectivityPlan(); // in case the pass was cancelled
 		}
 		
 		if (simulateConOnce && simulateConnections) {
 			simulateConnections = false;
 		}
 	}
+	
+	/**
+	 * Shuffles the update order of the hosts (if randomizing is on) using 
+	 * the current simulation time as the seed.
+	 */
+	private void shuffleUpdateOrder() {
+		if (this.updateOrder == null) {
+			return;
+		}
+		assert this.updateOrder.size() == this.hosts.size() : 
+			"Nrof hosts has changed unexpectedly";
+		Random rng = new Random(SimClock.getIntTime());
+		Collections.shuffle(this.updateOrder, rng); 
+	}
+	
+	/**
+	 * Computes (in parallel) the near interfaces for all the interfaces that
+	 * are expected to look for new connections during the update pass. 
+	 * Only the near interfaces within the transmit range of the interface
+	 * are kept, so the range checks are also done in parallel; the hosts
+	 * don't move during the pass and the interfaces use the planned
+	 * interfaces in the update order, so the connections are the same as
+	 * without the plan. Hosts whose radio was active in their previous 
+	 * update are expected to be active also now. Interfaces that are 
+	 * between their scan rounds don't look for new connections.
+	 * @param order The order in which the hosts will be updated
+	 */
+	private void planConnectivity(List<DTNHost> order) {
+		Map<ConnectivityGrid, List<NetworkInterface>> updating = 
+			new HashMap<ConnectivityGrid, List<NetworkInterface>>();
+		final List<NetworkInterface> planned = this.plannedInterfaces;
+		
+		planned.clear();
+		for (int i=0, n = order.size(); i < n; i++) {
+			DTNHost host = order.get(i);
+			if (!this.radioActive[host.getAddress()]) {
+				continue;
+			}
+			for (NetworkInterface ni : host.getInterfaces()) {
+				if (!(ni.getOptimizer() instanceof ConnectivityGrid)) {
+					continue; // only grids support planning
+				}
+				ConnectivityGrid grid = (ConnectivityGrid)ni.getOptimizer();
+				List<NetworkInterface> list = updating.get(grid);
+				if (list == null) {
+					list = new ArrayList<NetworkInterface>();
+					updating.put(grid, list);
+				}
+				list.add(ni);
+				if (ni.isScanningPossible()) {
+					planned.add(ni); // others don't look for connections
+				}
+			}
+		}
+		
+		for (Map.Entry<ConnectivityGrid, List<NetworkInterface>> e : 
+				updating.entrySet()) {
+			e.getKey().prepareUpdatePass(e.getValue());
+		}
+		
+		executor.forEach(planned.size(), new ParallelExecutor.Job() {
+			public void run(int index) {
+				NetworkInterface ni = planned.get(index);
+				ConnectivityGrid grid = (ConnectivityGrid)ni.getOptimizer();
+				ni.setPlannedNearInterfaces(grid.getNearInterfacesInPass(ni,
+						ni.getTransmitRange()));
+			}
+		});
+	}
+	
+	/**
+	 * Clears the planned near interfaces of all interfaces so that they
+	 * are asked from the optimizers instead.
+	 */
+	private void clearConnectivityPlan() {
+		for (NetworkInterface ni : this.plannedInterfaces) {
+			ni.setPlannedNearInterfaces(null);
+		}
+		this.plannedInterfaces.clear();
+	}
 
 	/**
 	 * Moves all hosts in the world for a given amount of time
 	 * @param timeIncrement The time how long all nodes should move
 	 */
 	private void moveHosts(double timeIncrement) {
+		if (this.parallelMovement) {
+			moveHostsInParallel(timeIncrement);
+			return;
+		}
 		for (int i=0,n = hosts.size(); i<n; i++) {
 			DTNHost host = hosts.get(i);
 			host.move(timeIncrement);			
 		}		
+	}
+	
+	/**
+	 * Moves all hosts in the world like {@link #moveHosts(double)} but moves
+	 * the hosts whose movement models are parallel safe concurrently. The
+	 * activity of the movement is checked in the normal order first (the
+	 * activeness handlers may be shared by many hosts), the movement
+	 * listeners are informed in the normal order afterwards, and the rest 
+	 * of the hosts are moved in the normal order, so the results are the
+	 * same as with the sequential movement.
+	 * @param timeIncrement The time how long all nodes should move
+	 */
+	private void moveHostsInParallel(final double timeIncrement) {
+		final List<DTNHost> movers = this.parallelMovers;
+		
+		movers.clear();
+		for (int i=0,n = hosts.size(); i<n; i++) {
+			DTNHost host = hosts.get(i);
+			if (host.isMovementParallelSafe() && host.isMovementActive()) {
+				host.deferMovementNotifications();
+				movers.add(host);
+			}
+		}
+		
+		executor.forEach(movers.size(), new ParallelExecutor.Job() {
+			public void run(int index) {
+				movers.get(index).moveOnPath(timeIncrement);
+			}
+		});
+		
+		for (int i=0,n = hosts.size(); i<n; i++) {
+			DTNHost host = hosts.get(i);
+			if (host.isMovementParallelSafe()) {
+				host.notifyDeferredMovement();
+			}
+			else {
+				host.move(timeIncrement);
+			}
+		}
 	}
 
 	/**
@@ -273,5 +954,6 @@ public class World {
 	 */
 	public void scheduleUpdate(double simTime) {
 		scheduledUpdates.addUpdate(simTime);
+		this.calendar.update(0);
 	}
 }
@@ -11,6 +11,8 @@ import core.World;
  * A connection up/down event.
  */
 public class ConnectionEvent extends ExternalEvent {
+	private static final long serialVersionUID = 1L;
+
 	/** address of the node the (dis)connection is from */
 	protected int fromAddr;
 	/** address of the node the (dis)connection is to */
@@ -46,6 +48,11 @@ public class ConnectionEvent extends ExternalEvent {
 		from.forceConnection(to, interfaceId, this.isUp);
 	}
 	
+	@Override
+	public int[] getHostAddresses() {
+		return new int[] {this.fromAddr, this.toAddr};
+	}
+	
 	@Override
 	public String toString() {
 		return "CONN " + (isUp ? "up" : "down") + " @" + this.time + " " + 
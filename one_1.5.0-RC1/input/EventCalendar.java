@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package input;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Calendar of event queues. Keeps the queues in a binary heap ordered by
+ * the times of their next events, so the queue with the next event is
+ * found in constant time and a queue is re-ordered in logarithmic time
+ * (in the number of queues) after its event has been processed. Queues
+ * with equal next event times are ordered by their indexes in the list
+ * the calendar was created with.
+ * <P>The calendar doesn't notice when the next event time of a queue
+ * changes; the queue must be updated with {@link #update(int)} (or all of
+ * the queues with {@link #updateAll()}) after that.</P>
+ */
+public class EventCalendar implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private EventQueue[] queues;
+	/** next event times of the queues (by queue index) */
+	private double[] times;
+	/** heap of queue indexes */
+	private int[] heap;
+	/** positions of the queues in the heap (by queue index) */
+	private int[] positions;
+
+	/**
+	 * Constructor.
+	 * @param queues The queues in the order of precedence for events that
+	 * have the same time
+	 */
+	public EventCalendar(List<EventQueue> queues) {
+		int n = queues.size();
+		this.queues = queues.toArray(new EventQueue[n]);
+		this.times = new double[n];
+		this.heap = new int[n];
+		this.positions = new int[n];
+
+		for (int i = 0; i < n; i++) {
+			heap[i] = i;
+			positions[i] = i;
+		}
+		updateAll();
+	}
+
+	/**
+	 * Returns the queue that has the next event
+	 * @return The queue that has the next event
+	 */
+	public EventQueue getNextQueue() {
+		return queues[heap[0]];
+	}
+
+	/**
+	 * Returns the index of the queue that has the next event
+	 * @return The index of the queue
+	 */
+	public int getNextQueueIndex() {
+		return heap[0];
+	}
+
+	/**
+	 * Returns the time of the next event of all the queues (as it was when
+	 * the queue was last updated)
+	 * @return The time of the next event
+	 */
+	public double getNextEventsTime() {
+		return times[heap[0]];
+	}
+
+	/**
+	 * Updates the position of a queue after its next event time has
+	 * changed (e.g., an event was taken from it)
+	 * @param index Index of the queue
+	 */
+	public void update(int index) {
+		double old = times[index];
+		times[index] = queues[index].nextEventsTime();
+		if (times[index] < old) {
+			siftUp(positions[index]);
+		}
+		else {
+			siftDown(positions[index]);
+		}
+	}
+
+	/**
+	 * Re-reads the next event times of all the queues and rebuilds the
+	 * heap
+	 */
+	public void updateAll() {
+		for (int i = 0; i < queues.length; i++) {
+			times[i] = queues[i].nextEventsTime();
+		}
+		for (int p = queues.length / 2 - 1; p >= 0; p--) {
+			siftDown(p);
+		}
+	}
+
+	/**
+	 * Returns true if the queue at heap position p1 should be before the
+	 * queue at p2
+	 */
+	private boolean isBefore(int p1, int p2) {
+		int q1 = heap[p1];
+		int q2 = heap[p2];
+		return times[q1] < times[q2] || (times[q1] == times[q2] && q1 < q2);
+	}
+
+	private void siftUp(int p) {
+		while (p > 0) {
+			int parent = (p - 1) / 2;
+			if (!isBefore(p, parent)) {
+				return;
+			}
+			swap(p, parent);
+			p = parent;
+		}
+	}
+
+	private void siftDown(int p) {
+		int n = heap.length;
+		while (true) {
+			int child = 2 * p + 1;
+			if (child >= n) {
+				return;
+			}
+			if (child + 1 < n && isBefore(child + 1, child)) {
+				child++;
+			}
+			if (!isBefore(child, p)) {
+				return;
+			}
+			swap(p, child);
+			p = child;
+		}
+	}
+
+	private void swap(int p1, int p2) {
+		int q = heap[p1];
+		heap[p1] = heap[p2];
+		heap[p2] = q;
+		positions[heap[p1]] = p1;
+		positions[heap[p2]] = p2;
+	}
+}
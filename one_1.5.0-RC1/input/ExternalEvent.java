@@ -14,6 +14,8 @@ import core.World;
  * an update request (and no further actions) to all hosts is needed.
  */
 public class ExternalEvent implements Comparable<ExternalEvent>, Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** Time of the event (simulated seconds) */
 	protected double time;
 	
@@ -29,6 +31,17 @@ public class ExternalEvent implements Comparable<ExternalEvent>, Serializable {
 		// this is just a dummy event
 	}
 
+	/**
+	 * Returns the addresses of the hosts whose state this event changes
+	 * when it is processed. Only these hosts need to be updated after the
+	 * event (see {@link core.World#COALESCE_EVENT_UPDATES_S}).
+	 * @return The addresses of the hosts or null if all the hosts should be
+	 * updated (e.g., for dummy update request events)
+	 */
+	public int[] getHostAddresses() {
+		return null;
+	}
+
 	/**
 	 * Returns the time when this event should happen.
 	 * @return Event's time
@@ -5,8 +5,13 @@
 package input;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import core.Settings;
 
@@ -15,6 +20,8 @@ import core.Settings;
  * the events and preloading only a proper amount of them.
  */
 public class ExternalEventsQueue implements EventQueue {
+	private static final long serialVersionUID = 1L;
+
 	/** ExternalEvents namespace ({@value})*/
 	public static final String SETTINGS_NAMESPACE = "ExternalEvents";
 	/** number of event to preload -setting id ({@value})*/
@@ -25,8 +32,14 @@ public class ExternalEventsQueue implements EventQueue {
 	/** default number of preloaded events */
 	public static final int DEFAULT_NROF_PRELOAD = 500;
 	
+	/** events of the shared event files (with the absolute path as the key)
+	 * or null if events are not shared */
+	private static Map<String, List<ExternalEvent>> sharedEvents = null;
+	
 	private File eventsFile;
-	private ExternalEventsReader reader;
+	private transient ExternalEventsReader reader;
+	/** number of events read from the reader */
+	private int nrofRead;
 	private int nextEventIndex;
 	private int nrofPreload;
 	private List<ExternalEvent> queue;
@@ -74,16 +87,82 @@ public class ExternalEventsQueue implements EventQueue {
 		this.nrofPreload = nrof;
 	}
 	
-	private void init(String eeFilePath) {
-		this.eventsFile = new File(eeFilePath);
+	/**
+	 * Sets whether the events read from files are shared between queues.
+	 * When sharing is enabled, every events file is read completely at once
+	 * (regardless of the preload setting) the first time a queue needs it,
+	 * and the (immutable) events are shared by all the queues reading the
+	 * same file, e.g., in the concurrent runs of a batch.
+	 * @param share True to enable sharing, false to disable it (and to drop
+	 * the shared events)
+	 */
+	public static synchronized void setEventSharing(boolean share) {
+		if (share && sharedEvents == null) {
+			sharedEvents = new HashMap<String, List<ExternalEvent>>();
+		}
+		else if (!share) {
+			sharedEvents = null;
+		}
+	}
+	
+	/**
+	 * Returns all the events of the shared events file, reading the file
+	 * if it hasn't been read already
+	 * @param file The events file
+	 * @param nrofPreload How many events to read at a time
+	 * @return The events of the file or null if events are not shared
+	 */
+	private static synchronized List<ExternalEvent> getSharedEvents(
+			File file, int nrofPreload) {
+		if (sharedEvents == null) {
+			return null;
+		}
 		
-		if (BinaryEventsReader.isBinaryEeFile(eventsFile)) {
-			this.reader = new BinaryEventsReader(eventsFile);
+		String key = file.getAbsolutePath();
+		List<ExternalEvent> events = sharedEvents.get(key);
+		if (events == null) {
+			ExternalEventsReader reader = createReader(file);
+			events = new ArrayList<ExternalEvent>();
+			List<ExternalEvent> read;
+			do {
+				read = reader.readEvents(nrofPreload);
+				events.addAll(read);
+			} while (read.size() > 0);
+			reader.close();
+			
+			events = Collections.unmodifiableList(events);
+			sharedEvents.put(key, events);
+		}
+		return events;
+	}
+	
+	/**
+	 * Creates a reader for an events file
+	 * @param file The events file
+	 * @return A binary reader for binary files and a standard reader for
+	 * other files
+	 */
+	private static ExternalEventsReader createReader(File file) {
+		if (BinaryEventsReader.isBinaryEeFile(file)) {
+			return new BinaryEventsReader(file);
 		}
 		else {
-			this.reader = new StandardEventsReader(eventsFile);
+			return new StandardEventsReader(file);
 		}
+	}
+	
+	private void init(String eeFilePath) {
+		this.eventsFile = new File(eeFilePath);
 		
+		List<ExternalEvent> shared = getSharedEvents(eventsFile, nrofPreload);
+		if (shared != null) {
+			this.queue = shared;
+			this.nextEventIndex = 0;
+			this.allEventsRead = true; /* all events are already in queue */
+			return;
+		}
+		
+		this.reader = createReader(eventsFile);
 		this.queue = readEvents(nrofPreload);
 		this.nextEventIndex = 0;
 	}
@@ -151,6 +230,7 @@ public class ExternalEventsQueue implements EventQueue {
 		}
 		
 		List<ExternalEvent> events = reader.readEvents(nrof);
+		this.nrofRead += events.size();
 		
 		if (nrof > 0 && events.size() == 0) {
 			reader.close();
@@ -160,4 +240,27 @@ public class ExternalEventsQueue implements EventQueue {
 		return events;
 	}
 	
+	/**
+	 * Reads the queue from a checkpoint. The events file is reopened and
+	 * the events that were already read before the checkpoint are skipped.
+	 * @param stream The stream to read from
+	 * @throws IOException if reading fails
+	 * @throws ClassNotFoundException if a class of the stream is not found
+	 */
+	private void readObject(ObjectInputStream stream) throws IOException, 
+			ClassNotFoundException {
+		stream.defaultReadObject();
+		if (!this.allEventsRead) {
+			this.reader = createReader(this.eventsFile);
+			for (int left = this.nrofRead; left > 0; ) {
+				int read = reader.readEvents(
+						Math.min(left, nrofPreload)).size();
+				if (read == 0) {
+					break;
+				}
+				left -= read;
+			}
+		}
+	}
+	
 }
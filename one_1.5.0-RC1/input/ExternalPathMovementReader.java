@@ -11,6 +11,7 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -46,7 +47,9 @@ import core.SettingsError;
  * @author teemuk
  *
  */
-public class ExternalPathMovementReader {
+public class ExternalPathMovementReader implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	 // Singletons are evil, but I'm lazy
 	private static Map<String, ExternalPathMovementReader> singletons = 
 		new HashMap<String, ExternalPathMovementReader>();
@@ -54,7 +57,9 @@ public class ExternalPathMovementReader {
 	/** 
 	 * Represents a point on the path.
 	 */
-	public class Entry {
+	public class Entry implements Serializable {
+		private static final long serialVersionUID = 1L;
+
 		public double time;
 		public double x;
 		public double y;
@@ -63,7 +68,9 @@ public class ExternalPathMovementReader {
 	/** 
 	 * Describes a node's activity time
 	 */
-	public class ActiveTime {
+	public class ActiveTime implements Serializable {
+		private static final long serialVersionUID = 1L;
+
 		public double start;
 		public double end;
 	}
@@ -332,8 +339,8 @@ public class ExternalPathMovementReader {
 	 * @return instance of the reader that has loaded all the paths from the
 	 * 			given trace file.
 	 */
-	public static ExternalPathMovementReader getInstance(String traceFilePath,
-			String activeFilePath) {
+	public static synchronized ExternalPathMovementReader getInstance(
+			String traceFilePath, String activeFilePath) {
 		if (!ExternalPathMovementReader.singletons.containsKey(traceFilePath)) {
 			try {
 				ExternalPathMovementReader.singletons.put(traceFilePath,
@@ -8,6 +8,8 @@ package input;
  * A message related external event
  */
 public abstract class MessageEvent extends ExternalEvent {
+	private static final long serialVersionUID = 1L;
+
 	/** address of the node the message is from */
 	protected int fromAddr;
 	/** address of the node the message is to */
@@ -29,6 +31,11 @@ public abstract class MessageEvent extends ExternalEvent {
 		this.id = id;
 	}
 	
+	@Override
+	public int[] getHostAddresses() {
+		return new int[] {this.fromAddr, this.toAddr};
+	}
+	
 	@Override
 	public String toString() {
 		return "MSG @" + this.time + " " + id;
@@ -12,6 +12,8 @@ import core.World;
  * hosts (start and possible abort or delivery).
  */
 public class MessageRelayEvent extends MessageEvent {
+	private static final long serialVersionUID = 1L;
+
 	private int stage;
 	
 	/** Message relay stage constant for start of sending */
@@ -1,20 +1,26 @@
 /* 
- * Copyright 2010 Aalto University, ComNet
+ * Copyright 2010 Aalto University, ComNet
  * Released under GPLv3. See LICENSE.txt for details. 
  */
 package interfaces;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
 import movement.MovementModel;
+import util.ParallelExecutor;
 
+import core.Connection;
 import core.Coord;
 import core.DTNSim;
 import core.NetworkInterface;
 import core.Settings;
 import core.SettingsError;
+import core.SimulationContext;
 import core.World;
 
 /**
@@ -40,6 +46,7 @@ import core.World;
  * from zero to conserve memory. 
  */
 public class ConnectivityGrid extends ConnectivityOptimizer {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * Cell based optimization cell size multiplier -setting id ({@value}).
@@ -54,16 +61,67 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	/** default value for cell size multiplier ({@value}) */
 	public static final int DEF_CON_CELL_SIZE_MULT = 5;
 	
-	private GridCell[][] cells;
-	private HashMap<NetworkInterface, GridCell> ginterfaces;
+	/** initial size of the interface arrays of the cells */
+	private static final int EXPECTED_INTERFACE_COUNT = 5;
+	
+	/** the interfaces by their index in this grid */
+	private NetworkInterface[] interfaces;
+	private int nrofInterfaces;
+	/** cell of every interface (by index) */
+	private int[] cellOf;
+	/** slot of every interface (by index) in its cell's array */
+	private int[] slotOf;
+	/** indexes of the interfaces in every cell in the order they were added
+	 * to the cell (null for cells that have never had interfaces) */
+	private int[][] cellInterfaces;
+	/** number of interfaces in every cell */
+	private int[] cellSizes;
+	/** update sequence numbers of the interfaces (by index) in the current 
+	 * update pass or -1 if not updated (see {@link #prepareUpdatePass(List)})*/
+	private int[] passSeqs;
+	/** cells where the interfaces (by index) move to during the current
+	 * update pass or -1 if they don't move */
+	private int[] passNewCells;
+	/** interfaces moving in to the cells during the ongoing update pass in
+	 * the order of their update */
+	private int[][] passIncoming;
+	private int[] passIncomingSizes;
+	/** cells that have interfaces moving in during the current update pass */
+	private int[] passTargetCells;
+	private int nrofPassTargetCells;
+	/** the list reused for the near interfaces */
+	private transient ArrayList<NetworkInterface> nearList;
+	/** locations of the interfaces (by index) when their location in the
+	 * grid was last updated */
+	private double[] xs;
+	private double[] ys;
+	/* state of the interfaces (by index) during a connection sweep (see 
+	   {@link #updateConnections(ParallelExecutor)}) */
+	private transient boolean[] sweepActive;
+	private transient boolean[] sweepScanning;
+	private transient double[] sweepRanges;
+	/** indexes of the interfaces connected to every interface (by index)
+	 * in ascending order, recorded before the new connections are looked
+	 * for during a connection sweep */
+	private transient int[][] sweepPeers;
+	private transient int[] sweepPeerSizes;
+	/** interfaces (by index) to connect to every interface (by index) in
+	 * the order they were found during a connection sweep */
+	private transient int[][] sweepFound;
+	private transient int[] sweepFoundSizes;
+	/* transmitting interfaces by cell for summing interference (see
+	   {@link #setTransmitters(Collection, double)}) */
+	private transient int[] txCounts;
+	private transient double[] txSumXs;
+	private transient double[] txSumYs;
+	private transient int[][] txMembers;
+	/** cells that have transmitters */
+	private transient int[] txCells;
+	private transient int nrofTxCells;
+	private transient double txTime;
 	private int cellSize;
 	private int rows;
 	private int cols;
-	private static int worldSizeX;
-	private static int worldSizeY;
-	private static int cellSizeMultiplier;
-	
-	static HashMap<Integer,ConnectivityGrid> gridobjects;
 
 	static {
 		DTNSim.registerForReset(ConnectivityGrid.class.getCanonicalName());
@@ -71,45 +129,51 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 	
 	public static void reset() {
-		gridobjects = new HashMap<Integer, ConnectivityGrid>();
+		SimulationContext.get().setClassState(ConnectivityGrid.class, null);
+	}
 
-		Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
-		int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
-		worldSizeX = worldSize[0];
-		worldSizeY = worldSize[1];
-		
-		s.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);		
-		if (s.contains(CELL_SIZE_MULT_S)) {
-			cellSizeMultiplier = s.getInt(CELL_SIZE_MULT_S);
-		}
-		else {
-			cellSizeMultiplier = DEF_CON_CELL_SIZE_MULT;
-		}
-		if (cellSizeMultiplier < 1) {
-			throw new SettingsError("Too small value (" + cellSizeMultiplier +
-					") for " + World.OPTIMIZATION_SETTINGS_NS + 
-					"." + CELL_SIZE_MULT_S);
+	/**
+	 * Returns the grids and the grid settings of the current simulation 
+	 * (creates them if they don't exist yet)
+	 * @return The state of the current simulation's grids
+	 */
+	private static GridState getState() {
+		SimulationContext ctx = SimulationContext.get();
+		GridState state = (GridState)ctx.getClassState(ConnectivityGrid.class);
+		if (state == null) {
+			state = new GridState();
+			ctx.setClassState(ConnectivityGrid.class, state);
 		}
+		return state;
 	}
 
 	/**
 	 * Creates a new overlay connectivity grid
 	 * @param cellSize Cell's edge's length (must be larger than the largest
 	 * 	radio coverage's diameter)
+	 * @param worldSizeX Width of the world
+	 * @param worldSizeY Height of the world
 	 */
-	private ConnectivityGrid(int cellSize) {
+	private ConnectivityGrid(int cellSize, int worldSizeX, int worldSizeY) {
 		this.rows = worldSizeY/cellSize + 1;
 		this.cols = worldSizeX/cellSize + 1;
 		// leave empty cells on both sides to make neighbor search easier 
-		this.cells = new GridCell[rows+2][cols+2];
+		int nrofCells = (rows+2) * (cols+2);
 		this.cellSize = cellSize;
 
-		for (int i=0; i<rows+2; i++) {
-			for (int j=0; j<cols+2; j++) {
-				this.cells[i][j] = new GridCell();
-			}
-		}
-		ginterfaces = new HashMap<NetworkInterface,GridCell>();
+		this.cellInterfaces = new int[nrofCells][];
+		this.cellSizes = new int[nrofCells];
+		this.passIncoming = new int[nrofCells][];
+		this.passIncomingSizes = new int[nrofCells];
+		this.passTargetCells = new int[EXPECTED_INTERFACE_COUNT];
+		
+		this.interfaces = new NetworkInterface[EXPECTED_INTERFACE_COUNT];
+		this.cellOf = new int[EXPECTED_INTERFACE_COUNT];
+		this.slotOf = new int[EXPECTED_INTERFACE_COUNT];
+		this.passSeqs = new int[EXPECTED_INTERFACE_COUNT];
+		this.passNewCells = new int[EXPECTED_INTERFACE_COUNT];
+		this.xs = new double[EXPECTED_INTERFACE_COUNT];
+		this.ys = new double[EXPECTED_INTERFACE_COUNT];
 	}
 
 	/**
@@ -121,25 +185,60 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 */
 	public static ConnectivityGrid ConnectivityGridFactory(int key, 
 			double maxRange) {
+		GridState state = getState();
+		HashMap<Integer,ConnectivityGrid> gridobjects = state.gridobjects;
 		if (gridobjects.containsKey((Integer)key)) {
 			return (ConnectivityGrid)gridobjects.get((Integer)key);
 		} else {
 			ConnectivityGrid newgrid = 
 				new ConnectivityGrid((int)Math.ceil(maxRange * 
-						cellSizeMultiplier));
+						state.cellSizeMultiplier), state.worldSizeX,
+						state.worldSizeY);
 			gridobjects.put((Integer)key,newgrid);
 			return newgrid;
 		}
 	}
 
+	/**
+	 * Returns the index of an interface in this grid
+	 * @param ni The interface
+	 * @return The index or -1 if the interface is not in this grid
+	 */
+	private int indexOf(NetworkInterface ni) {
+		int index = ni.getOptimizerIndex();
+		if (index < 0 || index >= nrofInterfaces || interfaces[index] != ni) {
+			return -1;
+		}
+		return index;
+	}
+	
 	/**
 	 * Adds a network interface to the overlay grid
 	 * @param ni The new network interface
 	 */
 	public void addInterface(NetworkInterface ni) {
-		GridCell c = cellFromCoord(ni.getLocation());
-		c.addInterface(ni);
-		ginterfaces.put(ni,c);
+		if (indexOf(ni) >= 0) {
+			return; /* already in the grid */
+		}
+		
+		int index = nrofInterfaces++;
+		if (index == interfaces.length) {
+			int size = 2 * index;
+			interfaces = Arrays.copyOf(interfaces, size);
+			cellOf = Arrays.copyOf(cellOf, size);
+			slotOf = Arrays.copyOf(slotOf, size);
+			passSeqs = Arrays.copyOf(passSeqs, size);
+			passNewCells = Arrays.copyOf(passNewCells, size);
+			xs = Arrays.copyOf(xs, size);
+			ys = Arrays.copyOf(ys, size);
+		}
+		interfaces[index] = ni;
+		xs[index] = ni.getLocation().getX();
+		ys[index] = ni.getLocation().getY();
+		passSeqs[index] = -1;
+		passNewCells[index] = -1;
+		ni.setOptimizerIndex(index);
+		addToCell(index, cellFromCoord(ni.getLocation()));
 	}
 
 	/** 
@@ -147,11 +246,27 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to be removed
 	 */
 	public void removeInterface(NetworkInterface ni) {
-		GridCell c = ginterfaces.get(ni);
-		if (c != null) {
-			c.removeInterface(ni);
+		int index = indexOf(ni);
+		if (index < 0) {
+			return;
+		}
+		removeFromCell(index);
+		ni.setOptimizerIndex(-1);
+		
+		/* keep the indexes dense by moving the last interface to the hole */
+		int last = --nrofInterfaces;
+		if (index != last) {
+			interfaces[index] = interfaces[last];
+			cellOf[index] = cellOf[last];
+			slotOf[index] = slotOf[last];
+			passSeqs[index] = passSeqs[last];
+			passNewCells[index] = passNewCells[last];
+			xs[index] = xs[last];
+			ys[index] = ys[last];
+			cellInterfaces[cellOf[index]][slotOf[index]] = index;
+			interfaces[index].setOptimizerIndex(index);
 		}
-		ginterfaces.remove(ni);
+		interfaces[last] = null;
 	}
 
 	/**
@@ -169,48 +284,64 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	 * @param ni The interface to update
 	 */
 	public void updateLocation(NetworkInterface ni) {
-		GridCell oldCell = (GridCell)ginterfaces.get(ni);
-		GridCell newCell = cellFromCoord(ni.getLocation());
+		int index = indexOf(ni);
+		Coord loc = ni.getLocation();
+		int newCell = cellFromCoord(loc);
 
-		if (newCell != oldCell) {
-			oldCell.moveInterface(ni, newCell);
-			ginterfaces.put(ni,newCell);
+		xs[index] = loc.getX();
+		ys[index] = loc.getY();
+
+		if (newCell != cellOf[index]) {
+			removeFromCell(index);
+			addToCell(index, newCell);
 		}
 	}
 
 	/**
-	 * Finds all neighboring cells and the cell itself based on the coordinates
-	 * @param c The coordinates
-	 * @return Array of neighboring cells 
+	 * Adds an interface to the end of a cell's interfaces
+	 * @param index Index of the interface
+	 * @param cell The cell
 	 */
-	private GridCell[] getNeighborCellsByCoord(Coord c) {
-		// +1 due empty cells on both sides of the matrix
-		int row = (int)(c.getY()/cellSize) + 1;
-		int col = (int)(c.getX()/cellSize) + 1;
-		return getNeighborCells(row,col);
+	private void addToCell(int index, int cell) {
+		int[] members = cellInterfaces[cell];
+		int size = cellSizes[cell];
+		if (members == null) {
+			members = new int[EXPECTED_INTERFACE_COUNT];
+			cellInterfaces[cell] = members;
+		}
+		else if (size == members.length) {
+			members = Arrays.copyOf(members, 2 * size);
+			cellInterfaces[cell] = members;
+		}
+		members[size] = index;
+		cellSizes[cell] = size + 1;
+		cellOf[index] = cell;
+		slotOf[index] = size;
 	}
-
+	
 	/**
-	 * Returns an array of Cells that contains the neighbors of a certain
-	 * cell and the cell itself.
-	 * @param row Row index of the cell
-	 * @param col Column index of the cell
-	 * @return Array of neighboring Cells
+	 * Removes an interface from its cell. The order of the rest of the 
+	 * interfaces in the cell is kept since it defines the order in which
+	 * the near interfaces are returned (and connected).
+	 * @param index Index of the interface
 	 */
-	private GridCell[] getNeighborCells(int row, int col) {
-		return new GridCell[] {
-			cells[row-1][col-1],cells[row-1][col],cells[row-1][col+1],//1st row
-			cells[row][col-1],cells[row][col],cells[row][col+1],//2nd row
-			cells[row+1][col-1],cells[row+1][col],cells[row+1][col+1]//3rd row
-		};
+	private void removeFromCell(int index) {
+		int cell = cellOf[index];
+		int[] members = cellInterfaces[cell];
+		int size = --cellSizes[cell];
+		
+		for (int slot = slotOf[index]; slot < size; slot++) {
+			members[slot] = members[slot + 1];
+			slotOf[members[slot]] = slot;
+		}
 	}
 
 	/**
 	 * Get the cell having the specific coordinates
 	 * @param c Coordinates
-	 * @return The cell
+	 * @return Index of the cell
 	 */
-	private GridCell cellFromCoord(Coord c) {
+	private int cellFromCoord(Coord c) {
 		// +1 due empty cells on both sides of the matrix
 		int row = (int)(c.getY()/cellSize) + 1; 
 		int col = (int)(c.getX()/cellSize) + 1;
@@ -218,38 +349,525 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 		assert row > 0 && row <= rows && col > 0 && col <= cols : "Location " + 
 		c + " is out of world's bounds";
 		
-		return this.cells[row][col];
+		return row * (cols+2) + col;
 	}
 
 	/**
 	 * Returns all interfaces that use the same technology and channel
 	 */
 	public Collection<NetworkInterface> getAllInterfaces() {
-		return (Collection<NetworkInterface>)ginterfaces.keySet();
+		return Arrays.asList(interfaces).subList(0, nrofInterfaces);
 	}
 
 	/**
 	 * Returns all interfaces that are "near" (i.e., in neighboring grid cells) 
-	 * and use the same technology and channel as the given interface 
+	 * and use the same technology and channel as the given interface.
+	 * <strong>Note:</strong> the same list object is reused for the result 
+	 * of every call, so the list must not be used after the next call.
 	 * @param ni The interface whose neighboring interfaces are returned
 	 * @return List of near interfaces
 	 */
 	public Collection<NetworkInterface> getNearInterfaces(
 			NetworkInterface ni) {
+		ArrayList<NetworkInterface> niList = this.nearList;
+		if (niList == null) {
+			niList = new ArrayList<NetworkInterface>();
+			this.nearList = niList;
+		}
+		niList.clear();
+		
+		if (indexOf(ni) >= 0) {
+			int center = cellFromCoord(ni.getLocation());
+			for (int row = -1; row <= 1; row++) {
+				int first = center + row * (cols+2) - 1;
+				for (int cell = first; cell <= first + 2; cell++) {
+					int[] members = cellInterfaces[cell];
+					for (int i=0, n=cellSizes[cell]; i < n; i++) {
+						niList.add(interfaces[members[i]]);
+					}
+				}
+			}
+		}
+		
+		return niList;
+	}
+
+
+	/**
+	 * Returns true if the interface is in the grid cell of its current
+	 * location, i.e., the interface hasn't moved to another cell after its
+	 * location was last updated to the grid. The near interfaces of the
+	 * interfaces are all the interfaces in range only if all of them are in
+	 * their current cells.
+	 * @param ni The interface
+	 * @return True if the interface is in the grid and in its current cell
+	 */
+	public boolean isInCurrentCell(NetworkInterface ni) {
+		int index = indexOf(ni);
+		return index >= 0 && cellOf[index] == cellFromCoord(ni.getLocation());
+	}
+
+	/**
+	 * Returns the length of the edge of the grid's cells. Interfaces that
+	 * are in cells that are not next to each other are always at least
+	 * this far from each other.
+	 * @return The cell size
+	 */
+	public int getCellSize() {
+		return this.cellSize;
+	}
+
+	/**
+	 * Prepares the grid for an update pass where the given interfaces
+	 * are updated (i.e., {@link #updateLocation(NetworkInterface)} and 
+	 * {@link #getNearInterfaces(NetworkInterface)} are called for them) 
+	 * in the given order. After this, {@link #getNearInterfacesInPass} can 
+	 * be used to find out beforehand what the near interfaces will be for 
+	 * any of the interfaces when its turn comes. The grid itself must not 
+	 * change between the calls.
+	 * @param updating The interfaces in the order they will be updated
+	 */
+	public void prepareUpdatePass(List<NetworkInterface> updating) {
+		for (int i=0; i < nrofPassTargetCells; i++) {
+			passIncomingSizes[passTargetCells[i]] = 0;
+		}
+		nrofPassTargetCells = 0;
+		Arrays.fill(passSeqs, 0, nrofInterfaces, -1);
+		Arrays.fill(passNewCells, 0, nrofInterfaces, -1);
+
+		for (int i=0, n=updating.size(); i<n; i++) {
+			int index = indexOf(updating.get(i));
+			if (index < 0) {
+				continue;
+			}
+			int newCell = cellFromCoord(interfaces[index].getLocation());
+			passSeqs[index] = i;
+
+			if (newCell != cellOf[index]) {
+				passNewCells[index] = newCell;
+				if (passIncomingSizes[newCell] == 0) {
+					if (nrofPassTargetCells == passTargetCells.length) {
+						passTargetCells = Arrays.copyOf(passTargetCells, 
+								2 * nrofPassTargetCells);
+					}
+					passTargetCells[nrofPassTargetCells++] = newCell;
+				}
+				addToPassIncoming(newCell, index);
+			}
+		}
+	}
+
+	/**
+	 * Adds an interface to the interfaces moving in to a cell
+	 * @param cell The cell
+	 * @param index Index of the interface
+	 */
+	private void addToPassIncoming(int cell, int index) {
+		int[] incoming = passIncoming[cell];
+		int size = passIncomingSizes[cell];
+		if (incoming == null) {
+			incoming = new int[EXPECTED_INTERFACE_COUNT];
+			passIncoming[cell] = incoming;
+		}
+		else if (size == incoming.length) {
+			incoming = Arrays.copyOf(incoming, 2 * size);
+			passIncoming[cell] = incoming;
+		}
+		incoming[size] = index;
+		passIncomingSizes[cell] = size + 1;
+	}
+
+	/**
+	 * Returns the interfaces that {@link #getNearInterfaces(NetworkInterface)}
+	 * would return for the given interface when its turn comes in the update
+	 * pass prepared with {@link #prepareUpdatePass(List)}, leaving out the
+	 * ones that are further away than the given distance. The returned
+	 * interfaces are in the same order. This method only reads the
+	 * state of the grid so it can be called from multiple threads at the
+	 * same time.
+	 * @param ni The interface whose near interfaces are returned
+	 * @param maxDistance The largest distance of the returned interfaces 
+	 * (e.g., the transmit range of the interface)
+	 * @return List of near interfaces
+	 */
+	public List<NetworkInterface> getNearInterfacesInPass(
+			NetworkInterface ni, double maxDistance) {
 		ArrayList<NetworkInterface> niList = new ArrayList<NetworkInterface>();
-		GridCell loc = (GridCell)ginterfaces.get(ni);
+		int index = indexOf(ni);
+		
+		if (index < 0 || passSeqs[index] < 0) {
+			return niList;
+		}
 		
-		if (loc != null) {	
-			GridCell[] neighbors = 
-				getNeighborCellsByCoord(ni.getLocation());
-			for (int i=0; i < neighbors.length; i++) {
-				niList.addAll(neighbors[i].getInterfaces());
+		int mySeq = passSeqs[index];
+		Coord loc = ni.getLocation();
+		int center = cellFromCoord(loc);
+		for (int row = -1; row <= 1; row++) {
+			int first = center + row * (cols+2) - 1;
+			for (int cell = first; cell <= first + 2; cell++) {
+				/* interfaces that were in the cell in the beginning of the 
+				   pass and haven't moved away before our turn... */
+				int[] members = cellInterfaces[cell];
+				for (int i=0, n=cellSizes[cell]; i < n; i++) {
+					int other = members[i];
+					if (passNewCells[other] >= 0 && 
+							passSeqs[other] <= mySeq) {
+						continue;
+					}
+					if (loc.distance(interfaces[other].getLocation()) <= 
+							maxDistance) {
+						niList.add(interfaces[other]);
+					}
+				}
+				/* ...and the ones that have moved in (in the order they 
+				   moved) */
+				int[] incoming = passIncoming[cell];
+				for (int i=0, n=passIncomingSizes[cell]; i < n; i++) {
+					if (passSeqs[incoming[i]] > mySeq) {
+						break;
+					}
+					if (loc.distance(interfaces[incoming[i]].getLocation()) 
+							<= maxDistance) {
+						niList.add(interfaces[incoming[i]]);
+					}
+				}
 			}
 		}
 		
 		return niList;
 	}
 
+	/**
+	 * Updates the connections of all the interfaces of this grid in one
+	 * sweep. First the locations of the interfaces in the grid are updated
+	 * and the connections that have gone out of range (and all the 
+	 * connections of the interfaces whose host's radio is not active) are
+	 * torn down. Then the new connections are created. Every pair of 
+	 * interfaces in the same or in neighboring cells is checked only once:
+	 * an interface is checked against the interfaces after it in its own 
+	 * cell and against all the interfaces of the next cell of its row and 
+	 * the three cells below. A connection is created if the radios of both
+	 * the hosts are active, at least one of the interfaces is scanning and
+	 * the interfaces are within range of each other. This must be used 
+	 * only if all the interfaces of the grid are 
+	 * {@link SimpleBroadcastInterface}s; the result is then the same as 
+	 * if they were all updated, except for the order in which the 
+	 * connections are created and torn down.
+	 * <P>The pairs are checked without changing any connections, one row 
+	 * of cells at a time, and if an executor is given, the rows are 
+	 * checked in parallel. The new connections are created afterwards in 
+	 * the order of the indexes of the interfaces, so the order is the same
+	 * regardless of the number of threads.</P>
+	 * @param executor The executor for checking the rows in parallel (or
+	 * null to check them in this thread)
+	 */
+	public void updateConnections(ParallelExecutor executor) {
+		int n = nrofInterfaces;
+		if (sweepFoundSizes == null || sweepFoundSizes.length < n) {
+			sweepActive = new boolean[interfaces.length];
+			sweepScanning = new boolean[interfaces.length];
+			sweepRanges = new double[interfaces.length];
+			sweepPeers = new int[interfaces.length][];
+			sweepPeerSizes = new int[interfaces.length];
+			sweepFound = new int[interfaces.length][];
+			sweepFoundSizes = new int[interfaces.length];
+		}
+		
+		/* link downs */
+		for (int i=0; i < n; i++) {
+			NetworkInterface ni = interfaces[i];
+			updateLocation(ni);
+			sweepActive[i] = ni.getHost().isRadioActive();
+			sweepRanges[i] = ni.getTransmitRange();
+			
+			List<Connection> cons = ni.getConnections();
+			for (int c=0; c < cons.size(); ) {
+				NetworkInterface other = cons.get(c).getOtherInterface(ni);
+				double range = Math.min(sweepRanges[i], 
+						other.getTransmitRange());
+				Coord loc = ni.getLocation();
+				if (!sweepActive[i] || 
+						loc.distance(other.getLocation()) > range) {
+					ni.destroyConnection(other);
+				}
+				else {
+					c++;
+				}
+			}
+			recordPeers(i, cons);
+		}
+		
+		for (int i=0; i < n; i++) {
+			sweepScanning[i] = sweepActive[i] && interfaces[i].isScanning();
+			sweepFoundSizes[i] = 0;
+		}
+		
+		/* find the link ups (rows 1...rows have the interfaces) */
+		if (executor == null) {
+			for (int row = 1; row <= rows; row++) {
+				sweepRow(row);
+			}
+		}
+		else {
+			executor.forEach(rows, new ParallelExecutor.Job() {
+				public void run(int index) {
+					sweepRow(index + 1);
+				}
+			});
+		}
+		
+		/* link ups */
+		for (int i=0; i < n; i++) {
+			int[] found = sweepFound[i];
+			for (int f=0, size = sweepFoundSizes[i]; f < size; f++) {
+				int j = found[f];
+				/* the scanning interface creates the connection */
+				if (sweepScanning[i]) {
+					interfaces[i].createConnection(interfaces[j]);
+				}
+				else {
+					interfaces[j].createConnection(interfaces[i]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Records the indexes of the interfaces of this grid an interface is
+	 * connected to for the connection sweep. The rows are then checked 
+	 * against the recorded indexes, which are only read while the rows
+	 * are swept.
+	 * @param i Index of the interface
+	 * @param cons The connections of the interface
+	 */
+	private void recordPeers(int i, List<Connection> cons) {
+		NetworkInterface ni = interfaces[i];
+		int[] peers = sweepPeers[i];
+		if (peers == null || peers.length < cons.size()) {
+			peers = new int[Math.max(cons.size(), EXPECTED_INTERFACE_COUNT)];
+			sweepPeers[i] = peers;
+		}
+		int size = 0;
+		for (int c=0, nrof = cons.size(); c < nrof; c++) {
+			int other = indexOf(cons.get(c).getOtherInterface(ni));
+			if (other >= 0) {
+				peers[size++] = other;
+			}
+		}
+		Arrays.sort(peers, 0, size);
+		sweepPeerSizes[i] = size;
+	}
+	
+	/**
+	 * Finds the new connections of the interfaces of one row of cells 
+	 * during a connection sweep. Only the state of the interfaces of the 
+	 * row is changed, so the rows can be swept at the same time.
+	 * @param row The row
+	 */
+	private void sweepRow(int row) {
+		int first = row * (cols+2) + 1;
+		for (int cell = first; cell < first + cols; cell++) {
+			int[] members = cellInterfaces[cell];
+			for (int s=0, size = cellSizes[cell]; s < size; s++) {
+				int i = members[s];
+				if (!sweepActive[i]) {
+					continue;
+				}
+				for (int t = s + 1; t < size; t++) {
+					sweepPair(i, members[t]);
+				}
+				int below = cell + cols + 2;
+				sweepCell(i, cell + 1);
+				sweepCell(i, below - 1);
+				sweepCell(i, below);
+				sweepCell(i, below + 1);
+			}
+		}
+	}
+	
+	/**
+	 * Checks an interface against all the interfaces of a cell during a
+	 * connection sweep
+	 * @param i Index of the interface
+	 * @param cell The cell
+	 */
+	private void sweepCell(int i, int cell) {
+		int[] members = cellInterfaces[cell];
+		for (int s=0, size = cellSizes[cell]; s < size; s++) {
+			sweepPair(i, members[s]);
+		}
+	}
+	
+	/**
+	 * Adds the other interface to the interfaces the swept interface 
+	 * should connect to, if they should be connected and aren't connected 
+	 * yet
+	 * @param i Index of the interface being swept
+	 * @param j Index of the other interface
+	 */
+	private void sweepPair(int i, int j) {
+		if (!sweepActive[j] || !(sweepScanning[i] || sweepScanning[j])) {
+			return;
+		}
+		
+		double dx = xs[i] - xs[j];
+		double dy = ys[i] - ys[j];
+		double range = Math.min(sweepRanges[i], sweepRanges[j]);
+		if (Math.sqrt(dx*dx + dy*dy) > range) {
+			return;
+		}
+		if (Arrays.binarySearch(sweepPeers[i], 0, sweepPeerSizes[i], j) 
+				>= 0) {
+			return; /* already connected */
+		}
+		
+		int[] found = sweepFound[i];
+		int size = sweepFoundSizes[i];
+		if (found == null) {
+			found = new int[EXPECTED_INTERFACE_COUNT];
+			sweepFound[i] = found;
+		}
+		else if (size == found.length) {
+			found = Arrays.copyOf(found, 2 * size);
+			sweepFound[i] = found;
+		}
+		found[size] = j;
+		sweepFoundSizes[i] = size + 1;
+	}
+
+	/**
+	 * Sets the interfaces that are transmitting for summing the
+	 * interference with {@link #getInterference(Coord, double, 
+	 * NetworkInterface, NetworkInterface)}. The interfaces are grouped by
+	 * the cells they are in and the number of transmitters and their
+	 * centroid is computed for every cell.
+	 * @param transmitters The transmitting interfaces of this grid
+	 * @param time The simulation time of the transmitters
+	 */
+	public void setTransmitters(Collection<NetworkInterface> transmitters,
+			double time) {
+		if (txCounts == null) {
+			txCounts = new int[cellSizes.length];
+			txSumXs = new double[cellSizes.length];
+			txSumYs = new double[cellSizes.length];
+			txMembers = new int[cellSizes.length][];
+			txCells = new int[EXPECTED_INTERFACE_COUNT];
+		}
+		for (int i=0; i < nrofTxCells; i++) {
+			int cell = txCells[i];
+			txCounts[cell] = 0;
+			txSumXs[cell] = 0;
+			txSumYs[cell] = 0;
+		}
+		nrofTxCells = 0;
+		
+		for (NetworkInterface ni : transmitters) {
+			int index = indexOf(ni);
+			if (index < 0) {
+				continue;
+			}
+			Coord loc = ni.getLocation();
+			int cell = cellFromCoord(loc);
+			int count = txCounts[cell];
+			if (count == 0) {
+				if (nrofTxCells == txCells.length) {
+					txCells = Arrays.copyOf(txCells, 2 * nrofTxCells);
+				}
+				txCells[nrofTxCells++] = cell;
+			}
+			int[] members = txMembers[cell];
+			if (members == null) {
+				members = new int[EXPECTED_INTERFACE_COUNT];
+				txMembers[cell] = members;
+			} else if (count == members.length) {
+				members = Arrays.copyOf(members, 2 * count);
+				txMembers[cell] = members;
+			}
+			members[count] = index;
+			txCounts[cell] = count + 1;
+			txSumXs[cell] += loc.getX();
+			txSumYs[cell] += loc.getY();
+		}
+		this.txTime = time;
+	}
+	
+	/**
+	 * Returns the simulation time given for the current transmitters (see
+	 * {@link #setTransmitters(Collection, double)})
+	 * @return The time or NaN if the transmitters haven't been set
+	 */
+	public double getTransmittersTime() {
+		return (txCounts == null ? Double.NaN : txTime);
+	}
+	
+	/**
+	 * Returns the sum of the power that is received at the given location 
+	 * from the transmitters set with 
+	 * {@link #setTransmitters(Collection, double)} when every transmitter
+	 * sends with unit power and the power decreases with the distance to
+	 * the power of the path loss exponent. The transmitters in the same
+	 * and the neighboring cells of the location are summed one by one, 
+	 * but the transmitters of every farther cell are summed as if they 
+	 * were all in the centroid of the cell, so the cost depends on the 
+	 * number of cells with transmitters instead of the number of
+	 * transmitters. Distances shorter than 1 are counted as 1.
+	 * @param loc The location
+	 * @param exponent The path loss exponent
+	 * @param exclude1 An interface whose power is not counted (or null)
+	 * @param exclude2 Another interface whose power is not counted (or null)
+	 * @return The received power
+	 */
+	public double getInterference(Coord loc, double exponent, 
+			NetworkInterface exclude1, NetworkInterface exclude2) {
+		if (txCounts == null) {
+			return 0;
+		}
+		int center = cellFromCoord(loc);
+		int centerRow = center / (cols+2);
+		int centerCol = center % (cols+2);
+		double x = loc.getX();
+		double y = loc.getY();
+		double sum = 0;
+		
+		for (int i=0; i < nrofTxCells; i++) {
+			int cell = txCells[i];
+			int count = txCounts[cell];
+			if (Math.abs(cell / (cols+2) - centerRow) <= 1 && 
+					Math.abs(cell % (cols+2) - centerCol) <= 1) {
+				/* near cell: every transmitter separately */
+				int[] members = txMembers[cell];
+				for (int m=0; m < count; m++) {
+					NetworkInterface ni = interfaces[members[m]];
+					if (ni == exclude1 || ni == exclude2) {
+						continue;
+					}
+					Coord tx = ni.getLocation();
+					sum += getReceivedPower(x - tx.getX(), y - tx.getY(), 
+							exponent);
+				}
+			} else {
+				/* far cell: all transmitters at their centroid */
+				double dx = x - txSumXs[cell] / count;
+				double dy = y - txSumYs[cell] / count;
+				sum += count * getReceivedPower(dx, dy, exponent);
+			}
+		}
+		
+		return sum;
+	}
+	
+	/**
+	 * Returns the power received from a unit power transmitter 
+	 * @param dx Distance to the transmitter along the x-axis
+	 * @param dy Distance to the transmitter along the y-axis
+	 * @param exponent The path loss exponent
+	 * @return The received power
+	 */
+	private static double getReceivedPower(double dx, double dy, 
+			double exponent) {
+		double distance = Math.max(1.0, Math.sqrt(dx*dx + dy*dy));
+		return Math.pow(distance, -exponent);
+	}
 
 	/**
 	 * Returns a string representation of the ConnectivityCells object
@@ -261,63 +879,37 @@ public class ConnectivityGrid extends ConnectivityOptimizer {
 	}
 
 	/**
-	 * A single cell in the cell grid. Contains the interfaces that are 
-	 * currently in that part of the grid.
+	 * The grids of a simulation run and the settings they are created with
 	 */
-	public class GridCell {
-		// how large array is initially chosen
-		private static final int EXPECTED_INTERFACE_COUNT = 5;
-		private ArrayList<NetworkInterface> interfaces;
-
-		private GridCell() {
-			this.interfaces = new ArrayList<NetworkInterface>(
-					EXPECTED_INTERFACE_COUNT);
-		}
-
-		/**
-		 * Returns a list of of interfaces in this cell
-		 * @return a list of of interfaces in this cell
-		 */
-		public ArrayList<NetworkInterface> getInterfaces() {
-			return this.interfaces;
-		}
-
-		/**
-		 * Adds an interface to this cell
-		 * @param ni The interface to add
-		 */
-		public void addInterface(NetworkInterface ni) {
-			this.interfaces.add(ni);
-		}
-
-		/**
-		 * Removes an interface from this cell
-		 * @param ni The interface to remove
-		 */
-		public void removeInterface(NetworkInterface ni) {
-			this.interfaces.remove(ni);
-		}
-
-		/**
-		 * Moves a interface in a Cell to another Cell
-		 * @param ni The interface to move
-		 * @param to The cell where the interface should be moved to
-		 */
-		public void moveInterface(NetworkInterface ni, GridCell to) {
-			to.addInterface(ni);
-			boolean removeOk = this.interfaces.remove(ni); 
-			assert removeOk : "interface " + ni + 
-				" not found from cell with " + interfaces.toString();
-		}
-
-		/**
-		 * Returns a string representation of the cell
-		 * @return a string representation of the cell
-		 */
-		public String toString() {
-			return getClass().getSimpleName() + " with " + 
-				this.interfaces.size() + " interfaces :" + this.interfaces;
+	private static class GridState implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private HashMap<Integer,ConnectivityGrid> gridobjects;
+		private int worldSizeX;
+		private int worldSizeY;
+		private int cellSizeMultiplier;
+		
+		private GridState() {
+			gridobjects = new HashMap<Integer, ConnectivityGrid>();
+
+			Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+			int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+			worldSizeX = worldSize[0];
+			worldSizeY = worldSize[1];
+			
+			s.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);		
+			if (s.contains(CELL_SIZE_MULT_S)) {
+				cellSizeMultiplier = s.getInt(CELL_SIZE_MULT_S);
+			}
+			else {
+				cellSizeMultiplier = DEF_CON_CELL_SIZE_MULT;
+			}
+			if (cellSizeMultiplier < 1) {
+				throw new SettingsError("Too small value (" + 
+						cellSizeMultiplier + ") for " + 
+						World.OPTIMIZATION_SETTINGS_NS + "." + 
+						CELL_SIZE_MULT_S);
+			}
 		}
 	}
-	
-}
\ No newline at end of file
+}
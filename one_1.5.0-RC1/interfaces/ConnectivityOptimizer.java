@@ -4,6 +4,7 @@
  */
 package interfaces;
 
+import java.io.Serializable;
 import java.util.Collection;
 
 import core.NetworkInterface;
@@ -12,7 +13,8 @@ import core.NetworkInterface;
  * A superclass for schemes for optimizing the location of possible contacts
  * with network interfaces of a specific range
  */
-abstract public class ConnectivityOptimizer {
+abstract public class ConnectivityOptimizer implements Serializable {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * Adds a network interface to the optimizer (unless it is already present)
@@ -32,7 +34,13 @@ abstract public class ConnectivityOptimizer {
 
 	/**
 	 * Finds all network interfaces that might be located so that they can be
-	 * connected with the network interface
+	 * connected with the network interface.
+	 * <strong>Note:</strong> implementations may reuse the same collection
+	 * object for the result of every call, so the result is valid only until
+	 * the next call (for any interface) and must not be modified. Do not 
+	 * call this method again while iterating the result, e.g., for the near
+	 * interfaces, and copy the result if it is needed after the next call.
+	 * This also means that the calls must not be made concurrently.
 	 * 
 	 * @param ni network interface that needs to be connected
 	 * @return A collection of network interfaces within proximity
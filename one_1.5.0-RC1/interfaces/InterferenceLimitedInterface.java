@@ -18,6 +18,8 @@ import core.VBRConnection;
  * transmissions. The configured transmit speed is the maximum obtainable speed.
  */
 public class InterferenceLimitedInterface extends NetworkInterface {
+	private static final long serialVersionUID = 1L;
+
 	protected int currentTransmitSpeed;
 	protected int numberOfTransmissions;
 
@@ -97,11 +99,13 @@ public class InterferenceLimitedInterface extends NetworkInterface {
 				i++;
 			}
 		}
-		// Then find new possible connections
-		Collection<NetworkInterface> interfaces = 
-			optimizer.getNearInterfaces(this);
-		for (NetworkInterface i : interfaces) 
-			connect(i);
+		// Then find new possible connections (only during scan rounds)
+		if (isScanningPossible()) {
+			Collection<NetworkInterface> interfaces = 
+				getNearInterfaces();
+			for (NetworkInterface i : interfaces) 
+				connect(i);
+		}
 
 		// Find the current number of transmissions
 		// (to calculate the current transmission speed
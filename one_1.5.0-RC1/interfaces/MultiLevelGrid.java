@@ -0,0 +1,445 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+import movement.MovementModel;
+
+import core.Coord;
+import core.DTNSim;
+import core.NetworkInterface;
+import core.Settings;
+import core.SimulationContext;
+import core.World;
+
+/**
+ * <P>Hierarchical overlay grid for interfaces whose ranges differ. The grid
+ * has levels whose cell sizes are powers of two, and every interface is
+ * kept on the level whose cells are at least as large as its current
+ * transmit range (but less than twice as large). The interfaces are moved
+ * to another level when their range changes (e.g., through the
+ * {@link NetworkInterface#RANGE_ID} property).</P>
+ * <P>Two interfaces can be connected only if they are within the smaller
+ * one of their ranges. Thus the near interfaces of an interface are found
+ * by checking, on every level, only the cells within the interface's own
+ * range or the level's cell size, whichever is smaller. An interface with
+ * a short range doesn't look at many cells on the levels of long range
+ * interfaces, and a long range interface doesn't look at many cells on
+ * the levels of short range interfaces.</P>
+ * <P>Unlike {@link ConnectivityGrid}, the grid is not limited by the range
+ * of the first interface and doesn't use the cell size multiplier. The
+ * near interfaces are returned in different order than by the
+ * {@link ConnectivityGrid}.</P>
+ */
+public class MultiLevelGrid extends ConnectivityOptimizer {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Should the multi-level grids be used instead of the
+	 * {@link ConnectivityGrid}s -setting id ({@value}). Boolean (true/false)
+	 * variable. Used in {@link World#OPTIMIZATION_SETTINGS_NS} name space.
+	 * Default is false.
+	 */
+	public static final String MULTI_LEVEL_GRID_S = "multiLevelGrid";
+
+	/** maximum number of cells on a level; interfaces with shorter ranges
+	 * are kept on the lowest level that has at most this many cells */
+	private static final int MAX_CELLS_PER_LEVEL = 1 << 22;
+	/** initial size of the interface arrays */
+	private static final int EXPECTED_INTERFACE_COUNT = 5;
+
+	private int worldSizeX;
+	private int worldSizeY;
+	/** the levels by level number (null for levels not used yet) */
+	private Level[] levels;
+	/** the lowest level that can be used */
+	private int minLevel;
+
+	/** the interfaces by their index in this grid */
+	private NetworkInterface[] interfaces;
+	private int nrofInterfaces;
+	/** level, cell and slot in the cell of every interface (by index) */
+	private int[] levelOf;
+	private int[] cellOf;
+	private int[] slotOf;
+	/** the list reused for the near interfaces */
+	private transient ArrayList<NetworkInterface> nearList;
+
+	static {
+		DTNSim.registerForReset(MultiLevelGrid.class.getCanonicalName());
+		reset();
+	}
+
+	public static void reset() {
+		SimulationContext.get().setClassState(MultiLevelGrid.class, null);
+	}
+
+	/**
+	 * Returns the grids and the grid settings of the current simulation
+	 * (creates them if they don't exist yet)
+	 * @return The state of the current simulation's grids
+	 */
+	private static GridState getState() {
+		SimulationContext ctx = SimulationContext.get();
+		GridState state = (GridState)ctx.getClassState(MultiLevelGrid.class);
+		if (state == null) {
+			state = new GridState();
+			ctx.setClassState(MultiLevelGrid.class, state);
+		}
+		return state;
+	}
+
+	/**
+	 * Returns true if the multi-level grids should be used (see
+	 * {@link #MULTI_LEVEL_GRID_S})
+	 * @return True if the multi-level grids should be used
+	 */
+	public static boolean isInUse() {
+		return getState().inUse;
+	}
+
+	/**
+	 * Returns a multi-level grid object based on a hash value
+	 * @param key A hash value that separates different interfaces from each
+	 * other
+	 * @return The grid object for a specific interface
+	 */
+	public static MultiLevelGrid MultiLevelGridFactory(int key) {
+		GridState state = getState();
+		MultiLevelGrid grid = state.gridobjects.get(key);
+		if (grid == null) {
+			grid = new MultiLevelGrid(state.worldSizeX, state.worldSizeY);
+			state.gridobjects.put(key, grid);
+		}
+		return grid;
+	}
+
+	/**
+	 * Creates a new multi-level grid
+	 * @param worldSizeX Width of the world
+	 * @param worldSizeY Height of the world
+	 */
+	private MultiLevelGrid(int worldSizeX, int worldSizeY) {
+		this.worldSizeX = worldSizeX;
+		this.worldSizeY = worldSizeY;
+
+		/* the top level has only one cell */
+		int top = 0;
+		while ((1L << top) < Math.max(worldSizeX, worldSizeY)) {
+			top++;
+		}
+		this.levels = new Level[top + 1];
+		this.minLevel = 0;
+		while (this.minLevel < top &&
+				Level.nrofCells(1 << minLevel, worldSizeX, worldSizeY) >
+				MAX_CELLS_PER_LEVEL) {
+			this.minLevel++;
+		}
+
+		this.interfaces = new NetworkInterface[EXPECTED_INTERFACE_COUNT];
+		this.levelOf = new int[EXPECTED_INTERFACE_COUNT];
+		this.cellOf = new int[EXPECTED_INTERFACE_COUNT];
+		this.slotOf = new int[EXPECTED_INTERFACE_COUNT];
+	}
+
+	/**
+	 * Returns the index of an interface in this grid
+	 * @param ni The interface
+	 * @return The index or -1 if the interface is not in this grid
+	 */
+	private int indexOf(NetworkInterface ni) {
+		int index = ni.getOptimizerIndex();
+		if (index < 0 || index >= nrofInterfaces || interfaces[index] != ni) {
+			return -1;
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the level for the given range
+	 * @param range The range
+	 * @return The level number
+	 */
+	private int levelFor(double range) {
+		int level = this.minLevel;
+		while (level < levels.length - 1 && (1 << level) < range) {
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Returns a level (and creates it if it doesn't exist yet)
+	 */
+	private Level getLevel(int level) {
+		if (this.levels[level] == null) {
+			this.levels[level] = new Level(1 << level, worldSizeX, worldSizeY);
+		}
+		return this.levels[level];
+	}
+
+	/**
+	 * Adds a network interface to the grid
+	 * @param ni The new network interface
+	 */
+	public void addInterface(NetworkInterface ni) {
+		if (indexOf(ni) >= 0) {
+			return; /* already in the grid */
+		}
+
+		int index = nrofInterfaces++;
+		if (index == interfaces.length) {
+			int size = 2 * index;
+			interfaces = Arrays.copyOf(interfaces, size);
+			levelOf = Arrays.copyOf(levelOf, size);
+			cellOf = Arrays.copyOf(cellOf, size);
+			slotOf = Arrays.copyOf(slotOf, size);
+		}
+		interfaces[index] = ni;
+		ni.setOptimizerIndex(index);
+		int level = levelFor(ni.getTransmitRange());
+		addToCell(index, level, getLevel(level).cellFromCoord(
+				ni.getLocation()));
+	}
+
+	/**
+	 * Removes a network interface from the grid
+	 * @param ni The interface to be removed
+	 */
+	public void removeInterface(NetworkInterface ni) {
+		int index = indexOf(ni);
+		if (index < 0) {
+			return;
+		}
+		removeFromCell(index);
+		ni.setOptimizerIndex(-1);
+
+		/* keep the indexes dense by moving the last interface to the hole */
+		int last = --nrofInterfaces;
+		if (index != last) {
+			interfaces[index] = interfaces[last];
+			levelOf[index] = levelOf[last];
+			cellOf[index] = cellOf[last];
+			slotOf[index] = slotOf[last];
+			levels[levelOf[index]].members[cellOf[index]][slotOf[index]] =
+				index;
+			interfaces[index].setOptimizerIndex(index);
+		}
+		interfaces[last] = null;
+	}
+
+	/**
+	 * Adds interfaces to the grid
+	 * @param interfaces Collection of interfaces to add
+	 */
+	public void addInterfaces(Collection<NetworkInterface> interfaces) {
+		for (NetworkInterface n : interfaces) {
+			addInterface(n);
+		}
+	}
+
+	/**
+	 * Checks and updates (if necessary) interface's level and position in
+	 * the grid. Interfaces whose range is zero (e.g., inactive interfaces)
+	 * stay on their level.
+	 * @param ni The interface to update
+	 */
+	public void updateLocation(NetworkInterface ni) {
+		int index = indexOf(ni);
+		double range = ni.getTransmitRange();
+		int level = range > 0 ? levelFor(range) : levelOf[index];
+		int cell = getLevel(level).cellFromCoord(ni.getLocation());
+
+		if (level != levelOf[index] || cell != cellOf[index]) {
+			removeFromCell(index);
+			addToCell(index, level, cell);
+		}
+	}
+
+	/**
+	 * Adds an interface to the end of a cell's interfaces
+	 */
+	private void addToCell(int index, int level, int cell) {
+		Level l = this.levels[level];
+		int[] members = l.members[cell];
+		int size = l.sizes[cell];
+		if (members == null) {
+			members = new int[EXPECTED_INTERFACE_COUNT];
+			l.members[cell] = members;
+		}
+		else if (size == members.length) {
+			members = Arrays.copyOf(members, 2 * size);
+			l.members[cell] = members;
+		}
+		members[size] = index;
+		l.sizes[cell] = size + 1;
+		l.count++;
+		levelOf[index] = level;
+		cellOf[index] = cell;
+		slotOf[index] = size;
+	}
+
+	/**
+	 * Removes an interface from its cell by moving the last interface of
+	 * the cell to its slot
+	 */
+	private void removeFromCell(int index) {
+		Level l = this.levels[levelOf[index]];
+		int cell = cellOf[index];
+		int[] members = l.members[cell];
+		int last = --l.sizes[cell];
+		l.count--;
+
+		if (slotOf[index] != last) {
+			members[slotOf[index]] = members[last];
+			slotOf[members[last]] = slotOf[index];
+		}
+	}
+
+	/**
+	 * Returns all interfaces that use the same technology and channel
+	 */
+	public Collection<NetworkInterface> getAllInterfaces() {
+		return Arrays.asList(interfaces).subList(0, nrofInterfaces);
+	}
+
+	/**
+	 * Returns all interfaces that may be within the range of the given
+	 * interface and use the same technology and channel.
+	 * <strong>Note:</strong> the same list object is reused for the result
+	 * of every call, so the list must not be used after the next call.
+	 * @param ni The interface whose neighboring interfaces are returned
+	 * @return List of near interfaces
+	 */
+	public Collection<NetworkInterface> getNearInterfaces(
+			NetworkInterface ni) {
+		ArrayList<NetworkInterface> niList = this.nearList;
+		if (niList == null) {
+			niList = new ArrayList<NetworkInterface>();
+			this.nearList = niList;
+		}
+		niList.clear();
+
+		if (indexOf(ni) < 0) {
+			return niList;
+		}
+
+		Coord loc = ni.getLocation();
+		double range = ni.getTransmitRange();
+		for (Level l : this.levels) {
+			if (l == null || l.count == 0) {
+				continue;
+			}
+			/* interfaces of this level are within their range (at most
+			   the cell size) of the interface */
+			double dist = Math.min(range, l.cellSize);
+			int col1 = l.colFor(loc.getX() - dist);
+			int col2 = l.colFor(loc.getX() + dist);
+			int row1 = l.rowFor(loc.getY() - dist);
+			int row2 = l.rowFor(loc.getY() + dist);
+			for (int row = row1; row <= row2; row++) {
+				for (int cell = row * l.cols + col1,
+						end = row * l.cols + col2; cell <= end; cell++) {
+					int[] members = l.members[cell];
+					for (int i = 0, n = l.sizes[cell]; i < n; i++) {
+						niList.add(interfaces[members[i]]);
+					}
+				}
+			}
+		}
+
+		return niList;
+	}
+
+	/**
+	 * Returns a string representation of the object
+	 * @return a string representation of the object
+	 */
+	public String toString() {
+		return getClass().getSimpleName() + " with " + nrofInterfaces +
+			" interfaces";
+	}
+
+	/**
+	 * One level of the grid
+	 */
+	private static class Level implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private int cellSize;
+		private int rows;
+		private int cols;
+		/** indexes of the interfaces in every cell */
+		private int[][] members;
+		/** number of interfaces in every cell */
+		private int[] sizes;
+		/** number of interfaces on the level */
+		private int count;
+
+		private Level(int cellSize, int worldSizeX, int worldSizeY) {
+			this.cellSize = cellSize;
+			this.rows = worldSizeY / cellSize + 1;
+			this.cols = worldSizeX / cellSize + 1;
+			this.members = new int[rows * cols][];
+			this.sizes = new int[rows * cols];
+		}
+
+		/**
+		 * Returns the number of cells a level with the given cell size
+		 * would have
+		 */
+		private static long nrofCells(int cellSize, int worldSizeX,
+				int worldSizeY) {
+			return (long)(worldSizeY / cellSize + 1) *
+				(worldSizeX / cellSize + 1);
+		}
+
+		/** Returns the column of the x coordinate (locations outside the
+		 * world are on the edge cells) */
+		private int colFor(double x) {
+			int col = (int)Math.floor(x / cellSize);
+			return col < 0 ? 0 : (col >= cols ? cols - 1 : col);
+		}
+
+		/** Returns the row of the y coordinate (see colFor) */
+		private int rowFor(double y) {
+			int row = (int)Math.floor(y / cellSize);
+			return row < 0 ? 0 : (row >= rows ? rows - 1 : row);
+		}
+
+		private int cellFromCoord(Coord c) {
+			return rowFor(c.getY()) * cols + colFor(c.getX());
+		}
+	}
+
+	/**
+	 * The grids of a simulation run and the settings they are created with
+	 */
+	private static class GridState implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private HashMap<Integer,MultiLevelGrid> gridobjects;
+		private int worldSizeX;
+		private int worldSizeY;
+		private boolean inUse;
+
+		private GridState() {
+			gridobjects = new HashMap<Integer, MultiLevelGrid>();
+
+			Settings s = new Settings(MovementModel.MOVEMENT_MODEL_NS);
+			int [] worldSize = s.getCsvInts(MovementModel.WORLD_SIZE,2);
+			worldSizeX = worldSize[0];
+			worldSizeY = worldSize[1];
+
+			s.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);
+			inUse = s.getBoolean(MULTI_LEVEL_GRID_S, false);
+		}
+	}
+}
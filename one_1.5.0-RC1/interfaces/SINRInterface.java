@@ -0,0 +1,270 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package interfaces;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import core.Connection;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.Settings;
+import core.SettingsError;
+import core.SimClock;
+import core.VBRConnection;
+import core.World;
+
+/**
+ * <P>A Network Interface that provides a variable bit-rate service where
+ * the bit-rate of a link depends on the signal to interference and noise
+ * ratio (SINR) at the receiver. The interference is the power received
+ * from all the interfaces (of the same type) that are sending a message
+ * at the beginning of the update round, not only from the connected
+ * ones.</P>
+ * <P>Every interface sends with unit power and the received power
+ * decreases with the distance to the power of
+ * {@link #PATH_LOSS_EXPONENT_S}. The noise level is set so that the
+ * signal to noise ratio at the edge of the transmit range is
+ * {@link #RANGE_SNR_S}. The speed of a link is the transmit speed scaled
+ * by the Shannon capacity of the link relative to the capacity at
+ * {@link #MAX_SPEED_SINR_S} (and at most the transmit speed).</P>
+ * <P>The interference is summed using the cells of the
+ * {@link ConnectivityGrid}: the transmitters in the cells next to the
+ * receiver are summed one by one and the transmitters of the farther
+ * cells per cell (see {@link ConnectivityGrid#getInterference(Coord,
+ * double, NetworkInterface, NetworkInterface)}), so the cost stays close
+ * to linear in the number of transmitters. The interface can't be used
+ * with {@link MultiLevelGrid}.</P>
+ * <P>The transmit speed of the interface is the speed of the slowest link
+ * it is sending a message on, or the configured transmit speed if it is
+ * not sending anything.</P>
+ */
+public class SINRInterface extends NetworkInterface {
+	private static final long serialVersionUID = 1L;
+
+	/** Path loss exponent -setting id ({@value}). Default = 3.0 */
+	public static final String PATH_LOSS_EXPONENT_S = "pathLossExponent";
+	/** Signal to noise ratio (dB) at the edge of the transmit range
+	 * -setting id ({@value}). Default = 10.0 */
+	public static final String RANGE_SNR_S = "rangeSnr";
+	/** Signal to interference and noise ratio (dB) that gives the full
+	 * transmit speed -setting id ({@value}). Default = 20.0 */
+	public static final String MAX_SPEED_SINR_S = "maxSpeedSinr";
+
+	/** default value for the path loss exponent */
+	public static final double DEF_PATH_LOSS_EXPONENT = 3.0;
+	/** default value for the SNR at the edge of the range */
+	public static final double DEF_RANGE_SNR = 10.0;
+	/** default value for the SINR of full speed */
+	public static final double DEF_MAX_SPEED_SINR = 20.0;
+
+	private double pathLossExponent;
+	/** noise power relative to the unit transmit power */
+	private double noise;
+	/** capacity (bits/Hz) that gives the full speed */
+	private double maxCapacity;
+	protected int currentTransmitSpeed;
+
+	/**
+	 * Reads the interface settings from the Settings file
+	 */
+	public SINRInterface(Settings s) {
+		super(s);
+		this.pathLossExponent = s.getDouble(PATH_LOSS_EXPONENT_S,
+				DEF_PATH_LOSS_EXPONENT);
+		if (this.pathLossExponent <= 0) {
+			throw new SettingsError("Invalid value (" + pathLossExponent +
+					") for setting " + s.getFullPropertyName(
+							PATH_LOSS_EXPONENT_S));
+		}
+		double rangeSnr = Math.pow(10, s.getDouble(RANGE_SNR_S,
+				DEF_RANGE_SNR) / 10);
+		double maxSinr = Math.pow(10, s.getDouble(MAX_SPEED_SINR_S,
+				DEF_MAX_SPEED_SINR) / 10);
+		this.noise = Math.pow(Math.max(1.0, this.transmitRange),
+				-this.pathLossExponent) / rangeSnr;
+		this.maxCapacity = Math.log(1 + maxSinr) / Math.log(2);
+		this.currentTransmitSpeed = this.transmitSpeed;
+	}
+
+	/**
+	 * Copy constructor
+	 * @param ni the copied network interface object
+	 */
+	public SINRInterface(SINRInterface ni) {
+		super(ni);
+		this.transmitRange = ni.transmitRange;
+		this.transmitSpeed = ni.transmitSpeed;
+		this.pathLossExponent = ni.pathLossExponent;
+		this.noise = ni.noise;
+		this.maxCapacity = ni.maxCapacity;
+		this.currentTransmitSpeed = ni.transmitSpeed;
+	}
+
+	public NetworkInterface replicate() {
+		return new SINRInterface(this);
+	}
+
+	@Override
+	public void setHost(DTNHost host) {
+		super.setHost(host);
+		if (optimizer != null && !(optimizer instanceof ConnectivityGrid)) {
+			throw new SettingsError("Interface " + this.interfacetype +
+					" can't be used with " + World.OPTIMIZATION_SETTINGS_NS +
+					"." + MultiLevelGrid.MULTI_LEVEL_GRID_S);
+		}
+	}
+
+	/**
+	 * Returns the transmit speed of this network layer
+	 * @return the transmit speed
+	 */
+	@Override
+	public int getTransmitSpeed() {
+		return this.currentTransmitSpeed;
+	}
+
+	/**
+	 * Tries to connect this host to another host. The other host must be
+	 * active and within range of this host for the connection to succeed.
+	 * @param anotherInterface The host to connect to
+	 */
+	public void connect(NetworkInterface anotherInterface) {
+		if (isScanning()
+				&& anotherInterface.getHost().isRadioActive()
+				&& isWithinRange(anotherInterface)
+				&& !isConnected(anotherInterface)
+				&& (this != anotherInterface)) {
+			// new contact within range
+
+			Connection con = new VBRConnection(this.host, this,
+					anotherInterface.getHost(), anotherInterface);
+			connect(con, anotherInterface);
+		}
+	}
+
+	/**
+	 * Updates the state of current connections (i.e., tears down connections
+	 * that are out of range and creates new ones) and the speeds of the
+	 * links this interface is sending on.
+	 */
+	public void update() {
+		if (optimizer == null) {
+			return; /* nothing to do */
+		}
+
+		// First break the old ones
+		optimizer.updateLocation(this);
+		for (int i=0; i<this.connections.size(); ) {
+			Connection con = this.connections.get(i);
+			NetworkInterface anotherInterface = con.getOtherInterface(this);
+
+			// all connections should be up at this stage
+			assert con.isUp() : "Connection " + con + " was down!";
+
+			if (!isWithinRange(anotherInterface)) {
+				disconnect(con,anotherInterface);
+				connections.remove(i);
+			} else {
+				i++;
+			}
+		}
+		// Then find new possible connections (only during scan rounds)
+		if (isScanningPossible()) {
+			Collection<NetworkInterface> interfaces =
+				getNearInterfaces();
+			for (NetworkInterface i : interfaces)
+				connect(i);
+		}
+
+		updateTransmitSpeed();
+
+		for (Connection con : getConnections()) {
+			con.update();
+		}
+	}
+
+	/**
+	 * Computes the transmit speed from the SINRs at the receivers of the
+	 * messages this interface is sending
+	 */
+	private void updateTransmitSpeed() {
+		ConnectivityGrid grid = (ConnectivityGrid)optimizer;
+		double time = SimClock.getTime();
+		if (grid.getTransmittersTime() != time) {
+			/* first update of the round sets the round's transmitters */
+			List<NetworkInterface> transmitters =
+				new ArrayList<NetworkInterface>();
+			for (NetworkInterface ni : grid.getAllInterfaces()) {
+				if (isSending(ni)) {
+					transmitters.add(ni);
+				}
+			}
+			grid.setTransmitters(transmitters, time);
+		}
+
+		this.currentTransmitSpeed = this.transmitSpeed;
+		Coord loc = getLocation();
+		for (Connection con : this.connections) {
+			if (con.getMessageSender() != this.host) {
+				continue;
+			}
+			NetworkInterface receiver = con.getOtherInterface(this);
+			Coord rxLoc = receiver.getLocation();
+			double distance = Math.max(1.0, loc.distance(rxLoc));
+			double signal = Math.pow(distance, -this.pathLossExponent);
+			double interference = grid.getInterference(rxLoc,
+					this.pathLossExponent, this, receiver);
+			double sinr = signal / (this.noise + interference);
+			double capacity = Math.log(1 + sinr) / Math.log(2);
+
+			int speed = (int)Math.floor(this.transmitSpeed *
+					Math.min(1.0, capacity / this.maxCapacity));
+			if (speed < this.currentTransmitSpeed) {
+				this.currentTransmitSpeed = speed;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the given interface is sending a message
+	 * @param ni The interface
+	 * @return True if the interface is sending on some of its connections
+	 */
+	private static boolean isSending(NetworkInterface ni) {
+		for (Connection con : ni.getConnections()) {
+			if (con.getMessageSender() == ni.getHost()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Creates a connection to another host. This method does not do any checks
+	 * on whether the other node is in range or active
+	 * @param anotherInterface The interface to create the connection to
+	 */
+	public void createConnection(NetworkInterface anotherInterface) {
+		if (!isConnected(anotherInterface) && (this != anotherInterface)) {
+			// new contact within range
+
+			Connection con = new VBRConnection(this.host, this,
+					anotherInterface.getHost(), anotherInterface);
+			connect(con,anotherInterface);
+		}
+	}
+
+	/**
+	 * Returns a string representation of the object.
+	 * @return a string representation of the object.
+	 */
+	public String toString() {
+		return "SINRInterface " + super.toString();
+	}
+
+}
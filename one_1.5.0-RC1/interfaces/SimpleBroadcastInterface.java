@@ -16,6 +16,7 @@ import core.Settings;
  * one transmission can be on at a time.
  */
 public class SimpleBroadcastInterface extends NetworkInterface {
+	private static final long serialVersionUID = 1L;
 	
 	/**
 	 * Reads the interface settings from the Settings file
@@ -86,9 +87,12 @@ public class SimpleBroadcastInterface extends NetworkInterface {
 				i++;
 			}
 		}
-		// Then find new possible connections
+		// Then find new possible connections (only during scan rounds)
+		if (!isScanningPossible()) {
+			return;
+		}
 		Collection<NetworkInterface> interfaces =
-			optimizer.getNearInterfaces(this);
+			getNearInterfaces();
 		for (NetworkInterface i : interfaces) {
 			connect(i);
 		}
@@ -10,6 +10,7 @@ import java.util.List;
 import movement.map.MapNode;
 import core.Coord;
 import core.Settings;
+import core.SimulationContext;
 
 /**
  * This class controls the movement of busses. It informs the bus control system
@@ -18,10 +19,10 @@ import core.Settings;
  * @author Frans Ekman
  */
 public class BusMovement extends MapRouteMovement {
+	private static final long serialVersionUID = 1L;
 	
 	private BusControlSystem controlSystem;
 	private int id;
-	private static int nextID = 0;
 	private boolean startMode;
 	private List<Coord> stops;
 	
@@ -34,7 +35,7 @@ public class BusMovement extends MapRouteMovement {
 		int bcs = settings.getInt(BusControlSystem.BUS_CONTROL_SYSTEM_NR);
 		controlSystem = BusControlSystem.getBusControlSystem(bcs);
 		controlSystem.setMap(super.getMap());
-		this.id = nextID++;
+		this.id = getNextID();
 		controlSystem.registerBus(this);
 		startMode = true;
 		stops = new LinkedList<Coord>();
@@ -52,7 +53,7 @@ public class BusMovement extends MapRouteMovement {
 	public BusMovement(BusMovement proto) {
 		super(proto);
 		this.controlSystem = proto.controlSystem;
-		this.id = nextID++;
+		this.id = getNextID();
 		controlSystem.registerBus(this);
 		startMode = true;
 	}
@@ -85,5 +86,16 @@ public class BusMovement extends MapRouteMovement {
 	public int getID() {
 		return id;
 	}
-	
+
+	/**
+	 * Returns the next free ID of the current simulation run
+	 * @return The next ID
+	 */
+	private static int getNextID() {
+		SimulationContext ctx = SimulationContext.get();
+		Integer id = (Integer)ctx.getClassState(BusMovement.class);
+		int next = (id == null ? 0 : id);
+		ctx.setClassState(BusMovement.class, next + 1);
+		return next;
+	}
 }
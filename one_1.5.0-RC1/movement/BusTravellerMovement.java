@@ -4,6 +4,7 @@
  */
 package movement;
 
+import java.io.Serializable;
 import java.util.List;
 import java.util.Random;
 
@@ -12,6 +13,7 @@ import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
+import core.SimulationContext;
 
 /**
  * 
@@ -27,6 +29,7 @@ import core.Settings;
  */
 public class BusTravellerMovement extends MapBasedMovement implements 
 	SwitchableMovement, TransportMovement {
+	private static final long serialVersionUID = 1L;
 
 	public static final String PROBABILITIES_STRING = "probs";
 	public static final String PROBABILITY_TAKE_OTHER_BUS = "probTakeOtherBus";
@@ -52,8 +55,6 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	
 	private boolean takeBus;
 	
-	private static int nextID = 0;
-	
 	/**
 	 * Creates a BusTravellerModel 
 	 * @param settings
@@ -62,7 +63,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 		super(settings);
 		int bcs = settings.getInt(BusControlSystem.BUS_CONTROL_SYSTEM_NR);
 		controlSystem = BusControlSystem.getBusControlSystem(bcs);
-		id = nextID++;
+		id = getNextID();
 		controlSystem.registerTraveller(this);
 		nextPath = new Path();
 		state = STATE_WALKING_ELSEWHERE;
@@ -89,7 +90,7 @@ public class BusTravellerMovement extends MapBasedMovement implements
 			location = proto.location.clone();
 		}
 		nextPath = proto.nextPath;
-		id = nextID++;
+		id = getNextID();
 		controlSystem.registerTraveller(this);
 		probabilities = proto.probabilities;
 		cbtd = new ContinueBusTripDecider(rng, probabilities);
@@ -229,7 +230,8 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	 * 
 	 * @author Frans Ekman
 	 */
-	class ContinueBusTripDecider {
+	class ContinueBusTripDecider implements Serializable {
+		private static final long serialVersionUID = 1L;
 		
 		private double[] probabilities; // Probability to travel with bus
 		private int state;
@@ -351,7 +353,19 @@ public class BusTravellerMovement extends MapBasedMovement implements
 	}
 	
 	public static void reset() {
-		nextID = 0;
+		SimulationContext.get().setClassState(BusTravellerMovement.class, null);
 	}
-	
+
+	/**
+	 * Returns the next free ID of the current simulation run
+	 * @return The next ID
+	 */
+	private static int getNextID() {
+		SimulationContext ctx = SimulationContext.get();
+		Integer id = (Integer)ctx.getClassState(BusTravellerMovement.class);
+		int next = (id == null ? 0 : id);
+		ctx.setClassState(BusTravellerMovement.class, next + 1);
+		return next;
+	}
+
 }
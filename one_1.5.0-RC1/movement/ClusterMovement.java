@@ -14,6 +14,8 @@ import core.Coord;
 import core.Settings;
 
 public class ClusterMovement extends RandomWaypoint {
+	private static final long serialVersionUID = 1L;
+
 	/** Range of the cluster */
 	public static final String	CLUSTER_RANGE = "clusterRange";
 	/** Center point of the cluster */
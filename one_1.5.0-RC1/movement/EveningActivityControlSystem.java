@@ -4,12 +4,14 @@
  */
 package movement;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
 
 import core.Coord;
 import core.DTNSim;
+import core.SimulationContext;
 
 /**
  * This class controls the group mobility of the people meeting their friends in
@@ -17,7 +19,8 @@ import core.DTNSim;
  * 
  * @author Frans Ekman
  */
-public class EveningActivityControlSystem {
+public class EveningActivityControlSystem implements Serializable {
+	private static final long serialVersionUID = 1L;
 
 	private HashMap<Integer, EveningActivityMovement> eveningActivityNodes;
 	private List<Coord> meetingSpots;
@@ -25,9 +28,6 @@ public class EveningActivityControlSystem {
 	
 	private Random rng;
 	
-	private static HashMap<Integer, EveningActivityControlSystem> 
-		controlSystems;
-	
 	static {
 		DTNSim.registerForReset(EveningActivityControlSystem.class.
 				getCanonicalName());
@@ -44,7 +44,28 @@ public class EveningActivityControlSystem {
 	}
 
 	public static void reset() {
-		controlSystems = new HashMap<Integer, EveningActivityControlSystem>();
+		SimulationContext.get().setClassState(
+				EveningActivityControlSystem.class, null);
+	}
+	
+	/**
+	 * Returns the control systems of the current simulation
+	 * @return The control systems with their IDs as keys
+	 */
+	@SuppressWarnings(value = "unchecked")
+	private static HashMap<Integer, EveningActivityControlSystem> 
+			getControlSystems() {
+		SimulationContext ctx = SimulationContext.get();
+		HashMap<Integer, EveningActivityControlSystem> controlSystems = 
+			(HashMap<Integer, EveningActivityControlSystem>)ctx.getClassState(
+					EveningActivityControlSystem.class);
+		if (controlSystems == null) {
+			controlSystems = 
+				new HashMap<Integer, EveningActivityControlSystem>();
+			ctx.setClassState(EveningActivityControlSystem.class, 
+					controlSystems);
+		}
+		return controlSystems;
 	}
 	
 	/**
@@ -127,6 +148,8 @@ public class EveningActivityControlSystem {
 	 */
 	public static EveningActivityControlSystem getEveningActivityControlSystem(
 			int id) {
+		HashMap<Integer, EveningActivityControlSystem> controlSystems = 
+			getControlSystems();
 		if (controlSystems.containsKey(new Integer(id))) {
 			return controlSystems.get(new Integer(id));
 		} else {
@@ -15,6 +15,7 @@ import movement.map.MapNode;
 import movement.map.SimMap;
 import core.Coord;
 import core.Settings;
+import core.SimulationContext;
 
 /**
  * A Class to model movement when people are out shopping or doing other 
@@ -26,6 +27,7 @@ import core.Settings;
  */
 public class EveningActivityMovement extends MapBasedMovement 
 	implements SwitchableMovement {
+	private static final long serialVersionUID = 1L;
 
 	private static final int WALKING_TO_MEETING_SPOT_MODE = 0;
 	private static final int EVENING_ACTIVITY_MODE = 1;
@@ -44,7 +46,7 @@ public class EveningActivityMovement extends MapBasedMovement
 	public static final String MAX_WAIT_TIME_SETTING = 
 		"maxAfterShoppingStopTime";
 	
-	private static int nrOfMeetingSpots = 10;
+	private int nrOfMeetingSpots = 10;
 	
 	private int mode;
 	private boolean ready;
@@ -60,8 +62,6 @@ public class EveningActivityMovement extends MapBasedMovement
 	
 	private int id;
 	
-	private static int nextID = 0;
-	
 	private int minGroupSize;
 	private int maxGroupSize;
 	
@@ -120,7 +120,7 @@ public class EveningActivityMovement extends MapBasedMovement
 			}
 		}
 		
-		this.id = nextID++;
+		this.id = getNextID();
 		
 		int scsID = settings.getInt(EVENING_ACTIVITY_CONTROL_SYSTEM_NR_SETTING);
 		
@@ -144,7 +144,7 @@ public class EveningActivityMovement extends MapBasedMovement
 		super(proto);
 		this.pathFinder = proto.pathFinder;
 		this.mode = proto.mode;
-		this.id = nextID++;
+		this.id = getNextID();
 		scs = proto.scs;
 		scs.addEveningActivityNode(this);
 		this.setMinGroupSize(proto.getMinGroupSize());
@@ -277,7 +277,8 @@ public class EveningActivityMovement extends MapBasedMovement
 	}
 
 	public static void reset() {
-		nextID = 0;
+		SimulationContext.get().setClassState(EveningActivityMovement.class,
+				null);
 	}
 
 	public int getMinGroupSize() {
@@ -295,5 +296,17 @@ public class EveningActivityMovement extends MapBasedMovement
 	public void setMaxGroupSize(int maxGroupSize) {
 		this.maxGroupSize = maxGroupSize;
 	}
-	
+
+	/**
+	 * Returns the next free ID of the current simulation run
+	 * @return The next ID
+	 */
+	private static int getNextID() {
+		SimulationContext ctx = SimulationContext.get();
+		Integer id = (Integer)ctx.getClassState(
+				EveningActivityMovement.class);
+		int next = (id == null ? 0 : id);
+		ctx.setClassState(EveningActivityMovement.class, next + 1);
+		return next;
+	}
 }
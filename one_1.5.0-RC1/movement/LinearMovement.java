@@ -14,6 +14,8 @@ import movement.Path;
  * (work in progress)
  */
 public class LinearMovement extends MovementModel {
+	private static final long serialVersionUID = 1L;
+
 	/** Name space of the settings (append to group name space) */
 	public static final String LINEAR_MOVEMENT_NS = "LinearMovement.";
 	/** Per node group setting for defining the start coordinates of 
@@ -176,5 +178,9 @@ public class LinearMovement extends MovementModel {
 	public LinearMovement replicate() {
 		return new LinearMovement(this);
 	}
-
+	
+	@Override
+	public boolean isParallelSafe() {
+		return hasHostRng();
+	}
 }
@@ -29,6 +29,8 @@ import core.SimError;
  * roads of a SimMap. 
  */
 public class MapBasedMovement extends MovementModel implements SwitchableMovement {
+	private static final long serialVersionUID = 1L;
+
 	/** sim map for the model */
 	private SimMap map = null;
 	/** node where the last path ended or node next to initial placement */
@@ -259,10 +261,23 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 	
 	/**
 	 * Reads a sim map from location set to the settings, mirrors the map and
-	 * moves its upper left corner to origo.
+	 * moves its upper left corner to origo. The map cache is shared by all
+	 * the (possibly concurrent) simulation runs, so only one map is read at
+	 * a time and the maps must not be modified after reading.
 	 * @return A new SimMap based on the settings
 	 */
 	private SimMap readMap() {
+		synchronized (MapBasedMovement.class) {
+			return readMapUsingCache();
+		}
+	}
+	
+	/**
+	 * Returns a cached sim map, or reads the map if the cache doesn't contain
+	 * the map defined in the settings. The caller must hold the cache lock.
+	 * @return A new SimMap based on the settings
+	 */
+	private SimMap readMapUsingCache() {
 		SimMap simMap;
 		Settings settings = new Settings(MAP_BASE_MOVEMENT_NS);
 		WKTMapReader r = new WKTMapReader(true);
@@ -429,4 +444,9 @@ public class MapBasedMovement extends MovementModel implements SwitchableMovemen
 		return true;
 	}
 	
+	@Override
+	public boolean isParallelSafe() {
+		/* subclasses may share path finders etc. with other hosts */
+		return getClass() == MapBasedMovement.class && hasHostRng();
+	}
 }
@@ -4,6 +4,7 @@
  */
 package movement;
 
+import java.io.Serializable;
 import java.util.Random;
 
 import util.ActivenessHandler;
@@ -15,6 +16,7 @@ import core.ModuleCommunicationBus;
 import core.Settings;
 import core.SimClock;
 import core.SimError;
+import core.SimulationContext;
 
 /**
  * <P>Superclass for all movement models. All subclasses must contain at least a 
@@ -26,7 +28,9 @@ import core.SimError;
  * {@link #getInitialLocation()} and {@link #getPath()} are worthwhile to 
  * override.</P>
  */
-public abstract class MovementModel {
+public abstract class MovementModel implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** node's speed CSV (min, max) -setting id ({@value})*/
 	public static final String SPEED = "speed";
 	/** node's wait time CSV (min, max) -setting id ({@value})*/
@@ -44,9 +48,22 @@ public abstract class MovementModel {
 	public static final String WORLD_SIZE = "worldSize";
 	/** movement models' rng seed -setting id ({@value})*/
 	public static final String RNG_SEED = "rngSeed";
+	/** 
+	 * Should every host have its own random number stream -setting id 
+	 * ({@value}). Boolean (true/false) variable. If true, the movement model
+	 * of every host draws random numbers from a stream of its own, derived 
+	 * from the {@link #RNG_SEED} and the host's address, instead of the 
+	 * stream common for all the movement models. This makes the movement of
+	 * a host independent of the order the hosts are moved in, which is 
+	 * needed for moving the hosts in parallel. Models that share other 
+	 * state too keep using the common stream. Default is false.
+	 */
+	public static final String PER_HOST_RNG = "perHostRng";
 	
-	/** common rng for all movement models in the simulation */
-	protected static Random rng; 
+	/** rng of this movement model (common or per-host stream) */
+	protected Random rng; 
+	/** does this model have a random number stream of its own */
+	private boolean hasHostRng;
 	
 	/** DTNHost to which this movement model is attached */
 	protected DTNHost host;
@@ -93,6 +110,7 @@ public abstract class MovementModel {
 	 */
 	public MovementModel() {
 		super();
+		this.rng = getState().sharedRng;
 	}
 	
 	/**
@@ -104,6 +122,7 @@ public abstract class MovementModel {
 		double[] times;
 		
 		ah = new ActivenessHandler(settings);
+		rng = getState().sharedRng;
 		
 		if (settings.contains(SPEED)) {
 			speeds = settings.getCsvDoubles(SPEED, 2);
@@ -148,6 +167,7 @@ public abstract class MovementModel {
 		this.maxX = mm.maxX;
 		this.maxY = mm.maxY;
 		this.ah = mm.ah;
+		this.rng = mm.rng;
 		this.comBus = null;
 	}
 		
@@ -217,10 +237,40 @@ public abstract class MovementModel {
 	}
 
 	/**
+	 * Sets the host of this movement model. If per-host random number 
+	 * streams are used, the model's stream is also initialized here.
 	 * @param host the host to set
 	 */
 	public void setHost(DTNHost host) {
+		RngState state = getState();
 		this.host = host;
+		if (state.perHostRng && host != null) {
+			this.rng = new Random(state.getStreamSeed(host.getAddress()));
+			this.hasHostRng = true;
+		}
+	}
+	
+	/**
+	 * Returns true if this movement model has a random number stream of its
+	 * own (i.e., per-host streams are used and the host has been set)
+	 * @return true if the model has its own random number stream
+	 */
+	protected boolean hasHostRng() {
+		return this.hasHostRng;
+	}
+	
+	/**
+	 * Returns true if the host using this movement model can be moved 
+	 * concurrently with other hosts. This requires that {@link #getPath()} 
+	 * and {@link #nextPathAvailable()} only modify the state of this model 
+	 * and use only the model's own random number stream (see 
+	 * {@link #PER_HOST_RNG}). 
+	 * This implementation returns false; models that fulfill the 
+	 * requirements should override this.
+	 * @return true if the host can be moved concurrently with others
+	 */
+	public boolean isParallelSafe() {
+		return false;
 	}
 
 	/**
@@ -275,13 +325,64 @@ public abstract class MovementModel {
 	 * Resets all static fields to default values
 	 */
 	public static void reset() {
-		Settings s = new Settings(MOVEMENT_MODEL_NS);
-		if (s.contains(RNG_SEED)) {
-			int seed = s.getInt(RNG_SEED);
-			rng = new Random(seed);
+		SimulationContext.get().setClassState(MovementModel.class, null);
+	}
+	
+	/**
+	 * Returns the random number state of the current simulation (creates it
+	 * if it doesn't exist yet)
+	 * @return The random number state
+	 */
+	private static RngState getState() {
+		SimulationContext ctx = SimulationContext.get();
+		RngState state = (RngState)ctx.getClassState(MovementModel.class);
+		if (state == null) {
+			state = new RngState();
+			ctx.setClassState(MovementModel.class, state);
 		}
-		else {
-			rng = new Random(0);
+		return state;
+	}
+	
+	/**
+	 * The random number settings and the common rng of all movement models 
+	 * in a simulation
+	 */
+	private static class RngState implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		/** common rng for all movement models in the simulation */
+		private Random sharedRng;
+		/** seed of the common rng (used for deriving per-host streams) */
+		private int rngSeed;
+		/** are per-host random number streams used */
+		private boolean perHostRng;
+		
+		private RngState() {
+			Settings s = new Settings(MOVEMENT_MODEL_NS);
+			if (s.contains(RNG_SEED)) {
+				rngSeed = s.getInt(RNG_SEED);
+			}
+			else {
+				rngSeed = 0;
+			}
+			sharedRng = new Random(rngSeed);
+			perHostRng = s.getBoolean(PER_HOST_RNG, false);
+		}
+		
+		/**
+		 * Returns the seed for the random number stream of the host with the
+		 * given address. The seed is derived from the {@link #RNG_SEED} 
+		 * setting by mixing the address in it, so that the streams of 
+		 * different hosts are independent of each other.
+		 * @param address Address of the host
+		 * @return The seed for the host's stream
+		 */
+		private long getStreamSeed(int address) {
+			long z = ((long)rngSeed << 32) + address;
+			/* 64 bit finalizer of the SplitMix generator */
+			z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+			z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+			return z ^ (z >>> 31);
 		}
 	}
 	
@@ -4,6 +4,7 @@
  */
 package movement;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -12,7 +13,9 @@ import core.Coord;
 /**
  * A Path between multiple Coordinates.
  */
-public class Path  {
+public class Path implements Serializable  {
+	private static final long serialVersionUID = 1L;
+
 	/** coordinates of the path */
 	private List<Coord> coords;
 	/** speeds in the path legs */
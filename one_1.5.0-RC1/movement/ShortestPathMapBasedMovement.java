@@ -17,6 +17,8 @@ import core.Settings;
  */
 public class ShortestPathMapBasedMovement extends MapBasedMovement implements 
 	SwitchableMovement {
+	private static final long serialVersionUID = 1L;
+
 	/** the Dijkstra shortest path finder */
 	private DijkstraPathFinder pathFinder;
 
@@ -4,8 +4,12 @@
  */
 package movement.map;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,6 +19,8 @@ import core.Coord;
  * A simulation map for node movement.
  */
 public class SimMap implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	private Coord minBound;
 	private Coord maxBound;
 	/** list representation of the map for efficient list-returning */
@@ -157,6 +163,49 @@ public class SimMap implements Serializable {
 		maxBound = new Coord(maxX, maxY);
 	}
 	
+	/**
+	 * Writes the map with the neighbors of every node as the indexes of
+	 * the neighbors in the node list. The nodes don't write their neighbors
+	 * themselves, since writing them recursively would need a stack as 
+	 * deep as the paths through the map are long.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		
+		Map<MapNode, Integer> indexes = new IdentityHashMap<MapNode, Integer>();
+		for (int i = 0, n = nodes.size(); i < n; i++) {
+			indexes.put(nodes.get(i), i);
+		}
+		for (MapNode node : nodes) {
+			List<MapNode> neighbors = node.getNeighbors();
+			out.writeInt(neighbors.size());
+			for (MapNode neighbor : neighbors) {
+				Integer index = indexes.get(neighbor);
+				if (index == null) {
+					throw new IOException("Neighbor " + neighbor + " of " +
+							node + " is not a node of the map");
+				}
+				out.writeInt(index);
+			}
+		}
+	}
+	
+	/**
+	 * Reads the map written by {@link #writeObject(ObjectOutputStream)} and
+	 * adds the neighbors to the nodes
+	 */
+	private void readObject(ObjectInputStream in) 
+			throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		
+		for (MapNode node : nodes) {
+			List<MapNode> neighbors = node.getNeighbors();
+			for (int i = 0, n = in.readInt(); i < n; i++) {
+				neighbors.add(nodes.get(in.readInt()));
+			}
+		}
+	}
+	
 	/**
 	 * Returns a String representation of the map
 	 * @return a String representation of the map
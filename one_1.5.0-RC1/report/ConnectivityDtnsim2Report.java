@@ -13,6 +13,7 @@ import core.DTNHost;
  */
 public class ConnectivityDtnsim2Report extends Report 
 	implements ConnectionListener {	
+	private static final long serialVersionUID = 1L;
 	
 	/**
 	 * Constructor.
@@ -4,6 +4,7 @@
  */
 package report;
 
+import java.io.Serializable;
 import java.util.HashMap;
 
 import core.Coord;
@@ -18,6 +19,8 @@ import core.MessageListener;
  * If message is not delivered, its delivery time & hop count are reported as -1
  */
 public class DistanceDelayReport extends Report implements MessageListener {
+	private static final long serialVersionUID = 1L;
+
 	/** Syntax of the report lines */
 	public static final String SYNTAX = 
 		"distance at msg send, delivery time, hop count, MSG_ID";
@@ -52,7 +55,7 @@ public class DistanceDelayReport extends Report implements MessageListener {
 		}
 		
 		report(m.getId(), info.getLoc1().distance(info.getLoc2()),
-				getSimTime() - info.getTime(), m.getHops().size()-1);
+				getSimTime() - info.getTime(), m.getHopCount());
 	}
 
 	/**
@@ -109,7 +112,9 @@ public class DistanceDelayReport extends Report implements MessageListener {
  	/**
 	 * Private class that encapsulates time and location related information
 	 */
-	private class InfoTuple {
+	private class InfoTuple implements Serializable {
+		private static final long serialVersionUID = 1L;
+
 		private double time;
 		private Coord loc1;
 		private Coord loc2;
@@ -19,6 +19,7 @@ import input.StandardEventsReader;
  */
 public class EventLogReport extends Report 
 	implements ConnectionListener, MessageListener {
+	private static final long serialVersionUID = 1L;
 
 	/** Extra info for message relayed event ("relayed"): {@value} */
 	public static final String MESSAGE_TRANS_RELAYED = "R";
@@ -18,6 +18,7 @@ import core.Message;
  * same settings as the {@link MessageLocationReport}
  */
 public class MessageCopyCountReport extends MessageLocationReport {
+	private static final long serialVersionUID = 1L;
 
 	/**
 	 * Creates a snapshot of message counts
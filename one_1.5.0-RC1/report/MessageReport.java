@@ -14,6 +14,8 @@ import core.MessageListener;
  *  message_id creation_time deliver_time (duplicate)
  */
 public class MessageReport extends Report implements MessageListener {
+	private static final long serialVersionUID = 1L;
+
 	public static final String HEADER =
 	    "# messages: ID, start time, end time";
 	/** all message delays */
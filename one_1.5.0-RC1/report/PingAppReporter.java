@@ -17,6 +17,7 @@ import core.DTNHost;
  * @author teemuk
  */
 public class PingAppReporter extends Report implements ApplicationListener {
+	private static final long serialVersionUID = 1L;
 	
 	private int pingsSent=0, pingsReceived=0;
 	private int pongsSent=0, pongsReceived=0;
@@ -7,7 +7,11 @@ package report;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -18,6 +22,7 @@ import core.Settings;
 import core.SimClock;
 import core.SimError;
 import core.SimScenario;
+import core.SimulationContext;
 
 /**
  * Abstract superclass for all reports. All settings defined in this class
@@ -26,7 +31,9 @@ import core.SimScenario;
  * the reports implement warm up feature ({@link #WARMUP_S}) but the
  * implementations are always report specific.
  */
-public abstract class Report {
+public abstract class Report implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** Name space of the settings that are common to all reports ({@value}). */ 
 	public static final String REPORT_NS = "Report";
 	/** The interval (simulated seconds) of creating new settings files 
@@ -54,7 +61,7 @@ public abstract class Report {
 	/** Suffix for reports that are created on n second intervals */
 	public static final String INTERVALLED_FORMAT ="%04d" + OUT_SUFFIX; 
 	/** The print writer used to write output. See {@link #write(String)} */
-	protected PrintWriter out;
+	protected transient PrintWriter out;
 	/** String value for values that could not be calculated */
 	public static final String NAN = "NaN";
 	private String prefix = "";
@@ -67,6 +74,10 @@ public abstract class Report {
 	private double lastReportTime;
 	private String outFileName;
 	private String scenarioName;
+	/** name of the currently open output file (or null if none) */
+	private String openFileName;
+	/** length of the open output file when the report was serialized */
+	private long openFileLength;
 	
 	/**
 	 * Constructor.
@@ -126,6 +137,13 @@ public abstract class Report {
 			}
 			
 		}
+		
+		String subdir = SimulationContext.get().getReportSubdir();
+		if (subdir != null) { // run specific reports -> use run's subdir
+			File outFile = new File(outFileName);
+			outFileName = new File(new File(outFile.getParentFile(), subdir),
+					outFile.getName()).getPath();
+		}
 				
 		checkDirExistence(outFileName);
 	}
@@ -193,6 +211,7 @@ public abstract class Report {
 	private void createOutput(String outFileName) {
 		try {
 			this.out = new PrintWriter(new FileWriter(outFileName));
+			this.openFileName = outFileName;
 		} catch (IOException e) {
 			throw new SimError("Couldn't open file '" + outFileName + 
 					"' for report output\n" + e.getMessage(), e);
@@ -333,6 +352,46 @@ public abstract class Report {
 		if (out != null) {
 			out.close();
 		}
+		this.openFileName = null;
+	}
+	
+	/**
+	 * Writes the report to a checkpoint. The output written so far is 
+	 * flushed to the open output file, if any, and the length of the file 
+	 * is stored.
+	 * @param stream The stream to write to
+	 * @throws IOException if writing fails
+	 */
+	private void writeObject(ObjectOutputStream stream) throws IOException {
+		if (this.openFileName != null) {
+			out.flush();
+			this.openFileLength = new File(this.openFileName).length();
+		}
+		stream.defaultWriteObject();
+	}
+	
+	/**
+	 * Reads the report from a checkpoint. The open output file is truncated 
+	 * to its length at the checkpoint (i.e., output written after the
+	 * checkpoint is discarded) and opened for appending.
+	 * @param stream The stream to read from
+	 * @throws IOException if reading fails
+	 * @throws ClassNotFoundException if a class of the stream is not found
+	 */
+	private void readObject(ObjectInputStream stream) throws IOException, 
+			ClassNotFoundException {
+		stream.defaultReadObject();
+		if (this.openFileName != null) {
+			RandomAccessFile file = new RandomAccessFile(this.openFileName,
+					"rw");
+			try {
+				file.setLength(this.openFileLength);
+			} finally {
+				file.close();
+			}
+			this.out = new PrintWriter(new FileWriter(this.openFileName, 
+					true));
+		}
 	}
 	
 	/**
@@ -5,7 +5,6 @@
 package routing;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -13,8 +12,10 @@ import java.util.Random;
 import routing.util.EnergyModel;
 import routing.util.MessageTransferAcceptPolicy;
 import routing.util.RoutingInfo;
+import util.TimingWheel;
 import util.Tuple;
 
+import core.CBRConnection;
 import core.Connection;
 import core.DTNHost;
 import core.Message;
@@ -22,6 +23,7 @@ import core.MessageListener;
 import core.NetworkInterface;
 import core.Settings;
 import core.SimClock;
+import core.World;
 
 /**
  * Superclass of active routers. Contains convenience methods (e.g. 
@@ -29,6 +31,8 @@ import core.SimClock;
  * {@link #update()}).
  */
 public abstract class ActiveRouter extends MessageRouter {
+	private static final long serialVersionUID = 1L;
+
 	/** Delete delivered messages -setting id ({@value}). Boolean valued.
 	 * If set to true and final recipient of a message rejects it because it
 	 * already has it, the message is deleted from buffer. Default=false. */
@@ -41,11 +45,31 @@ public abstract class ActiveRouter extends MessageRouter {
 	public static final String RESPONSE_PREFIX = "R_";
 	/** how often TTL check (discarding old messages) is performed */
 	public static int TTL_CHECK_INTERVAL = 60;
+	/** Exact TTL expiry -setting id ({@value}). Boolean valued. Used in
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} name space. If true, messages
+	 * are dropped as soon as their TTL reaches zero instead of in the TTL
+	 * checks done every {@link #TTL_CHECK_INTERVAL} seconds, and only the
+	 * expiring messages are looked at (see {@link TimingWheel}). Changes
+	 * the results. Default=false. */
+	public static final String EXACT_TTL_S = "exactTtl";
+	/** tick length (seconds) of the message expiry time wheels */
+	private static final double EXPIRY_WHEEL_RESOLUTION = 1.0;
 	/** connection(s) that are currently used for sending */
 	protected ArrayList<Connection> sendingConnections;
 	/** sim time when the last TTL check was done */
 	private double lastTtlCheck;
-	
+	/** are the messages dropped exactly when their TTL expires */
+	private boolean exactTtl;
+	/** expiry times of the buffered messages (with exact TTL only) */
+	private TimingWheel<Message> expiryTimes;
+	/** IDs of the messages being sent (reused when removing messages) */
+	private List<String> excludedIds;
+	/** change count of this router in the beginning of the last update */
+	private int updateChangeCount;
+	/** sum of the change counts of the connected routers in the beginning
+	 * of the last update */
+	private long updatePeerChangeCount;
+	
 	private MessageTransferAcceptPolicy policy;
 	private EnergyModel energy;
 
@@ -60,6 +84,8 @@ public abstract class ActiveRouter extends MessageRouter {
 		this.policy = new MessageTransferAcceptPolicy(s);
 		
 		this.deleteDelivered = s.getBoolean(DELETE_DELIVERED_S, false);
+		this.exactTtl = new Settings(World.OPTIMIZATION_SETTINGS_NS).
+			getBoolean(EXACT_TTL_S, false);
 		
 		if (s.contains(EnergyModel.INIT_ENERGY_S)) {
 			this.energy = new EnergyModel(s);
@@ -75,6 +101,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	protected ActiveRouter(ActiveRouter r) {
 		super(r);
 		this.deleteDelivered = r.deleteDelivered;
+		this.exactTtl = r.exactTtl;
 		this.policy = r.policy;
 		this.energy = (r.energy != null ? r.energy.replicate() : null);
 	}
@@ -83,7 +110,26 @@ public abstract class ActiveRouter extends MessageRouter {
 	public void init(DTNHost host, List<MessageListener> mListeners) {
 		super.init(host, mListeners);
 		this.sendingConnections = new ArrayList<Connection>(1);
+		this.excludedIds = new ArrayList<String>(1);
 		this.lastTtlCheck = 0;
+		this.updateChangeCount = -1;
+		if (this.exactTtl) {
+			this.expiryTimes = new TimingWheel<Message>(
+					EXPIRY_WHEEL_RESOLUTION, SimClock.getTime());
+		}
+	}
+	
+	/**
+	 * Adds a message to the message buffer and, if exact TTL is used,
+	 * schedules the message to be dropped when its TTL expires.
+	 */
+	@Override
+	protected void addToMessages(Message m, boolean newMessage) {
+		super.addToMessages(m, newMessage);
+		double expiry = m.getTtlExpiryTime();
+		if (this.expiryTimes != null && expiry != Double.MAX_VALUE) {
+			this.expiryTimes.schedule(m, expiry);
+		}
 	}
 	
 	/**
@@ -94,6 +140,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	 */
 	@Override
 	public void changedConnection(Connection con) {
+		countChange();
 		if (this.energy != null && con.isUp() && !con.isInitiator(getHost())) {
 			this.energy.reduceDiscoveryEnergy();
 		}
@@ -300,6 +347,28 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 	}
 	
+	/**
+	 * Drops the messages whose TTL has expired since the last call using
+	 * the expiry time wheel. Messages that are being sent are dropped
+	 * after the transfer.
+	 */
+	private void dropDueMessages() {
+		List<Message> due = new ArrayList<Message>();
+		this.expiryTimes.poll(SimClock.getTime(), due);
+		for (Message m : due) {
+			if (getMessage(m.getId()) != m) {
+				continue; /* not in the buffer anymore */
+			}
+			if (m.getTtl() > 0 || isSending(m.getId())) {
+				/* check again in the next update */
+				this.expiryTimes.schedule(m, SimClock.getTime());
+			}
+			else {
+				deleteMessage(m.getId(), true);
+			}
+		}
+	}
+	
 	/**
 	 * Tries to make room for a new message. Current implementation simply
 	 * calls {@link #makeRoomForMessage(int)} and ignores the return value.
@@ -323,23 +392,16 @@ public abstract class ActiveRouter extends MessageRouter {
 	 * exludeMsgBeingSent is true)
 	 */
 	protected Message getNextMessageToRemove(boolean excludeMsgBeingSent) {
-		Collection<Message> messages = this.getMessageCollection();
-		Message oldest = null;
-		for (Message m : messages) {
-			
-			if (excludeMsgBeingSent && isSending(m.getId())) {
-				continue; // skip the message(s) that router is sending
-			}
-			
-			if (oldest == null ) {
-				oldest = m;
-			}
-			else if (oldest.getReceiveTime() > m.getReceiveTime()) {
-				oldest = m;
+		this.excludedIds.clear();
+		if (excludeMsgBeingSent) {
+			for (Connection con : this.sendingConnections) {
+				if (con.getMessage() != null) {
+					this.excludedIds.add(con.getMessage().getId());
+				}
 			}
 		}
 		
-		return oldest;
+		return getMessageBuffer().getOldest(this.excludedIds);
 	}
 	
 	/**
@@ -516,6 +578,7 @@ public abstract class ActiveRouter extends MessageRouter {
 	 */
 	protected void addToSendingConnections(Connection con) {
 		this.sendingConnections.add(con);
+		countChange();
 	}
 		
 	/**
@@ -579,6 +642,8 @@ public abstract class ActiveRouter extends MessageRouter {
 	 */
 	@Override
 	public void update() {		
+		this.updateChangeCount = getChangeCount();
+		this.updatePeerChangeCount = getPeerChangeCount();
 		super.update();
 		
 		/* in theory we can have multiple sending connections even though
@@ -610,6 +675,7 @@ public abstract class ActiveRouter extends MessageRouter {
 					this.makeRoomForMessage(0);
 				}
 				sendingConnections.remove(i);
+				countChange();
 			}
 			else {
 				/* index increase needed only if nothing was removed */
@@ -617,8 +683,11 @@ public abstract class ActiveRouter extends MessageRouter {
 			}
 		}
 		
+		if (this.expiryTimes != null) {
+			dropDueMessages();
+		}
 		/* time to do a TTL check and drop old messages? Only if not sending */
-		if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL && 
+		else if (SimClock.getTime() - lastTtlCheck >= TTL_CHECK_INTERVAL && 
 				sendingConnections.size() == 0) {
 			dropExpiredMessages();
 			lastTtlCheck = SimClock.getTime();
@@ -631,6 +700,88 @@ public abstract class ActiveRouter extends MessageRouter {
 		}
 	}
 	
+	/**
+	 * Returns the current time if the router has pending work (see 
+	 * {@link #hasPendingWork()}), applications or an energy model. 
+	 * Otherwise the router has nothing to do before the next TTL check 
+	 * (or the next time a message may expire, with exact TTL) or the time
+	 * its ongoing transfers are done, and the earliest of these times is
+	 * returned. Subclasses that do something in {@link #update()}
+	 * also when they have no connections must override this.
+	 * @return The time of the next update the router needs
+	 */
+	@Override
+	public double getNextUpdateTime() {
+		double now = SimClock.getTime();
+		if (hasApplications() || this.energy != null || hasPendingWork()) {
+			return now;
+		}
+		
+		double next;
+		if (this.expiryTimes != null) {
+			next = this.expiryTimes.getNextTime();
+		}
+		else {
+			/* a little early so that rounding can never delay the check */
+			next = this.lastTtlCheck + TTL_CHECK_INTERVAL;
+			next -= 2 * Math.ulp(next);
+		}
+		
+		for (int i=0, n=this.sendingConnections.size(); i<n; i++) {
+			Connection con = this.sendingConnections.get(i);
+			if (!(con instanceof CBRConnection) || !con.isUp()) {
+				return now;
+			}
+			CBRConnection cbr = (CBRConnection)con;
+			/* transfer is done when less than a byte remains */
+			next = Math.min(next, cbr.getTransferDoneTime() - 
+					1.0 / cbr.getSpeed());
+		}
+		
+		return next;
+	}
+	
+	/**
+	 * Returns true if the router has connections or its state has changed
+	 * since the beginning of the previous update (see 
+	 * {@link #hasStateChanged()}). Subclasses whose transfer decisions 
+	 * depend only on the messages of this and the connected routers can
+	 * return {@link #hasStateChanged()} instead, so that idle connections 
+	 * don't need updates.
+	 * @return True if the router may do something in the next update
+	 */
+	@Override
+	public boolean hasPendingWork() {
+		return getConnections().size() > 0 || hasStateChanged();
+	}
+	
+	/**
+	 * Returns true if the state of this router or the connected routers
+	 * has changed (see {@link #getChangeCount()}) since the beginning of
+	 * the previous update. If not, and the transfer decisions depend only 
+	 * on that state, the connections are idle: the previous update didn't
+	 * start any transfer and the next one wouldn't either.
+	 * @return True if the state has changed
+	 */
+	protected boolean hasStateChanged() {
+		return getChangeCount() != this.updateChangeCount ||
+			getPeerChangeCount() != this.updatePeerChangeCount;
+	}
+	
+	/**
+	 * Returns the sum of the change counts of the connected routers
+	 * @return The sum of the change counts
+	 */
+	private long getPeerChangeCount() {
+		long sum = 0;
+		List<Connection> connections = getConnections();
+		for (int i=0, n=connections.size(); i<n; i++) {
+			DTNHost other = connections.get(i).getOtherNode(getHost());
+			sum += other.getRouter().getChangeCount();
+		}
+		return sum;
+	}
+	
 	/**
 	 * Method is called just before a transfer is aborted at {@link #update()} 
 	 * due connection going down. This happens on the sending host. 
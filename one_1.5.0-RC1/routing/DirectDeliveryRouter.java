@@ -10,6 +10,7 @@ import core.Settings;
  * Router that will deliver messages only to the final recipient.
  */
 public class DirectDeliveryRouter extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
 
 	public DirectDeliveryRouter(Settings s) {
 		super(s);
@@ -32,6 +33,11 @@ public class DirectDeliveryRouter extends ActiveRouter {
 		}
 	}
 	
+	@Override
+	public boolean hasPendingWork() {
+		return hasStateChanged(); /* only the messages affect the transfers */
+	}
+	
 	@Override
 	public DirectDeliveryRouter replicate() {
 		return new DirectDeliveryRouter(this);
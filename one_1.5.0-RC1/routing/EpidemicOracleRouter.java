@@ -18,9 +18,10 @@ import core.*;
  * <B>Note:</B> This router module also bypasses ActiveRouter.update()
  */
 public class EpidemicOracleRouter extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
 	
 	/** List of all routers in this node group */
-	private static List<EpidemicOracleRouter> allRouters;
+	private List<EpidemicOracleRouter> allRouters;
 
 	static {
 		DTNSim.registerForReset(EpidemicOracleRouter.class.getCanonicalName());
@@ -42,6 +43,7 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 */
 	protected EpidemicOracleRouter(EpidemicOracleRouter r) {
 		super(r);
+		allRouters = getAllRouters();
 		allRouters.add(this);
 	}
 	
@@ -165,6 +167,11 @@ public class EpidemicOracleRouter extends ActiveRouter {
 		   are finalized immediately */
 	}
 	
+	@Override
+	public boolean hasPendingWork() {
+		return false; /* the updates do nothing */
+	}
+	
 	
 	@Override
 	public EpidemicOracleRouter replicate() {
@@ -175,7 +182,24 @@ public class EpidemicOracleRouter extends ActiveRouter {
 	 * Resets the static router list
 	 */
 	public static void reset() {
-		allRouters = new ArrayList<EpidemicOracleRouter>();
+		SimulationContext.get().setClassState(EpidemicOracleRouter.class, 
+				null);
+	}
+	
+	/**
+	 * Returns the list of all routers of the current simulation
+	 * @return The list of all routers
+	 */
+	@SuppressWarnings(value = "unchecked")
+	private static List<EpidemicOracleRouter> getAllRouters() {
+		SimulationContext ctx = SimulationContext.get();
+		List<EpidemicOracleRouter> routers = (List<EpidemicOracleRouter>)
+			ctx.getClassState(EpidemicOracleRouter.class);
+		if (routers == null) {
+			routers = new ArrayList<EpidemicOracleRouter>();
+			ctx.setClassState(EpidemicOracleRouter.class, routers);
+		}
+		return routers;
 	}
 
 }
\ No newline at end of file
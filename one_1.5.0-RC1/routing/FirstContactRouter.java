@@ -14,6 +14,7 @@ import core.Settings;
  * (or fragments) and forwards it to the first available contact.
  */
 public class FirstContactRouter extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
 	
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -38,7 +39,7 @@ public class FirstContactRouter extends ActiveRouter {
 		
 		if (recvCheck == RCV_OK) {
 			/* don't accept a message that has already traversed this node */
-			if (m.getHops().contains(getHost())) {
+			if (m.isOnPath(getHost())) {
 				recvCheck = DENIED_OLD;
 			}
 		}
@@ -66,6 +67,11 @@ public class FirstContactRouter extends ActiveRouter {
 		this.deleteMessage(con.getMessage().getId(), false);
 	}
 		
+	@Override
+	public boolean hasPendingWork() {
+		return hasStateChanged(); /* only the messages affect the transfers */
+	}
+	
 	@Override
 	public FirstContactRouter replicate() {
 		return new FirstContactRouter(this);
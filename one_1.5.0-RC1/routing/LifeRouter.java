@@ -15,6 +15,7 @@ import core.Connection;
  * Router module mimicking the game-of-life behavior
  */
 public class LifeRouter extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
 	
 	/** 
 	 * Neighboring message count -setting id ({@value}). Two comma
@@ -107,6 +108,11 @@ public class LifeRouter extends ActiveRouter {
 	}
 	
 
+	@Override
+	public boolean hasPendingWork() {
+		return hasStateChanged(); /* only the messages affect the transfers */
+	}
+	
 	@Override
 	public LifeRouter replicate() {
 		return new LifeRouter(this);
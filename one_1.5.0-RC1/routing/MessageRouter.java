@@ -4,6 +4,10 @@
  */
 package routing;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -12,6 +16,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 
+import routing.util.MessageBuffer;
 import routing.util.RoutingInfo;
 
 import util.Tuple;
@@ -25,11 +30,14 @@ import core.Settings;
 import core.SettingsError;
 import core.SimClock;
 import core.SimError;
+import core.World;
 
 /**
  * Superclass for message routers.
  */
-public abstract class MessageRouter {
+public abstract class MessageRouter implements Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** Message buffer size -setting id ({@value}). Integer value in bytes.*/
 	public static final String B_SIZE_S = "bufferSize";
 	/**
@@ -50,6 +58,16 @@ public abstract class MessageRouter {
 	 */ 
 	public static final String SEND_QUEUE_MODE_S = "sendQueue";
 	
+	/** Buffer add order -setting id ({@value}). Boolean valued. Used in
+	 * {@link World#OPTIMIZATION_SETTINGS_NS} name space. If true, of the 
+	 * oldest messages with the same receive time the one that was added to
+	 * the buffer first is removed first, which is found without going 
+	 * through the buffered messages (see {@link MessageBuffer}). If false,
+	 * the one that comes first in the iteration order of the buffer is 
+	 * removed first, as in the earlier versions. Changes the results. 
+	 * Default=false. */
+	public static final String BUFFER_ADD_ORDER_S = "bufferAddOrder";
+	
 	/** Setting value for random queue mode */
 	public static final int Q_MODE_RANDOM = 1;
 	/** Setting value for FIFO queue mode */
@@ -81,14 +99,24 @@ public abstract class MessageRouter {
 	public static final int DENIED_UNSPECIFIED = -99;
 	
 	private List<MessageListener> mListeners;
-	/** The messages being transferred with msgID_hostName keys */
-	private HashMap<String, Message> incomingMessages;
+	/** The messages being transferred */
+	private Message[] incomingMessages;
+	/** Keys of the messages being transferred (see {@link #incomingKey}) */
+	private long[] incomingKeys;
+	/** The hosts the messages being transferred are from */
+	private DTNHost[] incomingFrom;
+	/** Number of the messages being transferred */
+	private int nrofIncoming;
 	/** The messages this router is carrying */
-	private HashMap<String, Message> messages; 
+	private MessageBuffer messages;
 	/** The messages this router has received as the final recipient */
-	private HashMap<String, Message> deliveredMessages;
-	/** The messages that Applications on this router have blacklisted */
-	private HashMap<String, Object> blacklistedMessages;
+	private ArrayList<Message> deliveredMessages;
+	/** ID indexes of the messages this router has received as the final
+	 * recipient */
+	private BitSet deliveredIds;
+	/** ID indexes of the messages that Applications on this router have
+	 * blacklisted */
+	private BitSet blacklistedMessages;
 	/** Host where this router belongs to */
 	private DTNHost host;
 	/** size of the buffer */
@@ -97,6 +125,12 @@ public abstract class MessageRouter {
 	protected int msgTtl;
 	/** Queue mode for sending messages */
 	private int sendQueueMode;
+	/** are the messages with the same receive time removed in the order
+	 * they were added to the buffer */
+	private boolean bufferAddOrder;
+	/** number of changes in the messages and connections of this router
+	 * (see {@link #getChangeCount()}) */
+	private int changeCount;
 
 	/** applications attached to the host */
 	private HashMap<String, Collection<Application>> applications = null;
@@ -129,6 +163,8 @@ public abstract class MessageRouter {
 			sendQueueMode = Q_MODE_RANDOM;
 		}
 		
+		this.bufferAddOrder = new Settings(World.OPTIMIZATION_SETTINGS_NS).
+			getBoolean(BUFFER_ADD_ORDER_S, false);
 	}
 	
 	/**
@@ -139,10 +175,14 @@ public abstract class MessageRouter {
 	 * @param mListeners The message listeners
 	 */
 	public void init(DTNHost host, List<MessageListener> mListeners) {
-		this.incomingMessages = new HashMap<String, Message>();
-		this.messages = new HashMap<String, Message>();
-		this.deliveredMessages = new HashMap<String, Message>();
-		this.blacklistedMessages = new HashMap<String, Object>();
+		this.incomingMessages = new Message[2];
+		this.incomingKeys = new long[2];
+		this.incomingFrom = new DTNHost[2];
+		this.nrofIncoming = 0;
+		this.messages = new MessageBuffer(this.bufferAddOrder);
+		this.deliveredMessages = new ArrayList<Message>();
+		this.deliveredIds = new BitSet();
+		this.blacklistedMessages = new BitSet();
 		this.mListeners = mListeners;
 		this.host = host;
 	}
@@ -155,6 +195,7 @@ public abstract class MessageRouter {
 		this.bufferSize = r.bufferSize;
 		this.msgTtl = r.msgTtl;
 		this.sendQueueMode = r.sendQueueMode;
+		this.bufferAddOrder = r.bufferAddOrder;
 
 		this.applications = new HashMap<String, Collection<Application>>();
 		for (Collection<Application> apps : r.applications.values()) {
@@ -177,6 +218,56 @@ public abstract class MessageRouter {
 		}
 	}
 	
+	/**
+	 * Returns the simulation time when this router needs to be updated
+	 * next if none of its connections change before that. The updates
+	 * before that time can be skipped (see 
+	 * {@link core.World#SKIP_IDLE_ROUTERS_S}), so routers whose 
+	 * {@link #update()} may do something in any update must return the 
+	 * current time. This implementation always returns the current time.
+	 * @return The time of the next update the router needs
+	 */
+	public double getNextUpdateTime() {
+		return SimClock.getTime();
+	}
+	
+	/**
+	 * Returns true if the router may do something in its next update even
+	 * if the time returned by {@link #getNextUpdateTime()} hasn't come,
+	 * e.g., because the messages of a connected host have changed since 
+	 * the previous update. This implementation always returns true.
+	 * @return True if the router needs to be updated now
+	 */
+	public boolean hasPendingWork() {
+		return true;
+	}
+	
+	/**
+	 * Returns the number of changes in the messages (carried, incoming or 
+	 * delivered) and the connections of this router so far. If the 
+	 * count hasn't changed, the router's state hasn't changed either.
+	 * @return The change count
+	 */
+	protected int getChangeCount() {
+		return this.changeCount;
+	}
+	
+	/**
+	 * Counts a change in the messages or connections of this router
+	 * @see #getChangeCount()
+	 */
+	protected void countChange() {
+		this.changeCount++;
+	}
+	
+	/**
+	 * Returns true if any applications are attached to this router
+	 * @return true if the router has applications
+	 */
+	protected boolean hasApplications() {
+		return !this.applications.isEmpty();
+	}
+	
 	/**
 	 * Informs the router about change in connections state.
 	 * @param con The connection that changed
@@ -198,7 +289,7 @@ public abstract class MessageRouter {
 	 * @return True if the router has message with this id, false if not
 	 */
 	public boolean hasMessage(String id) {
-		return this.messages.containsKey(id);
+		return this.messages.contains(id);
 	}
 	
 	/**
@@ -210,7 +301,7 @@ public abstract class MessageRouter {
 	 * this host as the final recipient.
 	 */
 	protected boolean isDeliveredMessage(Message m) {
-		return (this.deliveredMessages.containsKey(m.getId()));
+		return this.deliveredIds.get(m.getIdIndex());
 	}
 	
 	/** 
@@ -223,7 +314,8 @@ public abstract class MessageRouter {
 	 * @return <code>true</code> if blacklisted, <code>false</code> otherwise.
 	 */
 	protected boolean isBlacklistedMessage(String id) {
-		return this.blacklistedMessages.containsKey(id);
+		int index = Message.getIdIndex(id);
+		return index >= 0 && this.blacklistedMessages.get(index);
 	}
 	
 	/**
@@ -235,7 +327,7 @@ public abstract class MessageRouter {
 	 * @return a reference to the messages of this router in collection
 	 */
 	public Collection<Message> getMessageCollection() {
-		return this.messages.values();
+		return this.messages.getMessages();
 	}
 	
 	/**
@@ -246,6 +338,14 @@ public abstract class MessageRouter {
 		return this.messages.size();
 	}
 	
+	/**
+	 * Returns the message buffer of this router
+	 * @return The message buffer
+	 */
+	protected MessageBuffer getMessageBuffer() {
+		return this.messages;
+	}
+	
 	/**
 	 * Returns the size of the message buffer.
 	 * @return The size or Integer.MAX_VALUE if the size isn't defined.
@@ -262,17 +362,11 @@ public abstract class MessageRouter {
 	 * size isn't defined)
 	 */
 	public int getFreeBufferSize() {
-		int occupancy = 0;
-		
 		if (this.getBufferSize() == Integer.MAX_VALUE) {
 			return Integer.MAX_VALUE;
 		}
 		
-		for (Message m : getMessageCollection()) {
-			occupancy += m.getSize();
-		}
-		
-		return this.getBufferSize() - occupancy;
+		return (int)(this.getBufferSize() - this.messages.getOccupancy());
 	}
 	
 	/**
@@ -371,11 +465,14 @@ public abstract class MessageRouter {
 			// -> put to buffer
 			addToMessages(aMessage, false);
 		} else if (isFirstDelivery) {
-			this.deliveredMessages.put(id, aMessage);
+			if (!this.deliveredIds.get(incoming.getIdIndex())) {
+				this.deliveredIds.set(incoming.getIdIndex());
+				this.deliveredMessages.add(aMessage);
+			}
 		} else if (outgoing == null) {
 			// Blacklist messages that an app wants to drop.
 			// Otherwise the peer will just try to send it back again.
-			this.blacklistedMessages.put(id, null);
+			this.blacklistedMessages.set(incoming.getIdIndex());
 		}
 		
 		for (MessageListener ml : this.mListeners) {
@@ -386,6 +483,19 @@ public abstract class MessageRouter {
 		return aMessage;
 	}
 	
+	/**
+	 * This method is called (on the receiving host) after a message was
+	 * successfully transferred over a connection. Same as 
+	 * {@link #messageTransferred(String, DTNHost)} with the ID of the 
+	 * message, which subclasses override to handle the transfers.
+	 * @param m The transferred message (as the previous hop has it)
+	 * @param from Host the message was from (previous hop)
+	 * @return The message that this host received
+	 */
+	public Message messageTransferred(Message m, DTNHost from) {
+		return messageTransferred(m.getId(), from);
+	}
+	
 	/**
 	 * Puts a message to incoming messages buffer. Two messages with the
 	 * same ID are distinguished by the from host.
@@ -393,7 +503,48 @@ public abstract class MessageRouter {
 	 * @param from Who the message was from (previous hop).
 	 */
 	protected void putToIncomingBuffer(Message m, DTNHost from) {
-		this.incomingMessages.put(m.getId() + "_" + from.toString(), m);
+		long key = incomingKey(m.getIdIndex(), from);
+		int i = indexOfIncoming(key);
+		if (i < 0) {
+			if (this.nrofIncoming == this.incomingKeys.length) {
+				int length = 2 * this.nrofIncoming;
+				this.incomingKeys = Arrays.copyOf(this.incomingKeys, length);
+				this.incomingMessages = Arrays.copyOf(this.incomingMessages,
+						length);
+				this.incomingFrom = Arrays.copyOf(this.incomingFrom, length);
+			}
+			i = this.nrofIncoming++;
+			this.incomingKeys[i] = key;
+			this.incomingFrom[i] = from;
+		}
+		this.incomingMessages[i] = m;
+		countChange();
+	}
+	
+	/**
+	 * Returns the key of an incoming message: the index of the message's ID
+	 * (see {@link Message#getIdIndex()}) in the upper and the address of
+	 * the sender in the lower 32 bits
+	 * @param idIndex Index of the message ID
+	 * @param from The host that sent the message
+	 * @return The key
+	 */
+	private static long incomingKey(int idIndex, DTNHost from) {
+		return ((long)idIndex << 32) | (from.getAddress() & 0xffffffffL);
+	}
+	
+	/**
+	 * Returns the position of an incoming message in the incoming buffer
+	 * @param key Key of the message
+	 * @return The position or -1 if there's no message with the key
+	 */
+	private int indexOfIncoming(long key) {
+		for (int i = 0; i < this.nrofIncoming; i++) {
+			if (this.incomingKeys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
 	}
 	
 	/**
@@ -404,17 +555,73 @@ public abstract class MessageRouter {
 	 * @return The found message or null if such message wasn't found
 	 */
 	protected Message removeFromIncomingBuffer(String id, DTNHost from) {
-		return this.incomingMessages.remove(id + "_" + from.toString());
+		return removeFromIncomingBuffer(Message.getIdIndex(id), from);
+	}
+	
+	/**
+	 * Removes and returns a message with the same ID as the given message
+	 * from the incoming messages buffer or null if such message wasn't 
+	 * found. The message is looked up by the ID index of the message.
+	 * @param m The message
+	 * @param from The host that sent this message (previous hop)
+	 * @return The found message or null if such message wasn't found
+	 */
+	protected Message removeFromIncomingBuffer(Message m, DTNHost from) {
+		return removeFromIncomingBuffer(m.getIdIndex(), from);
+	}
+	
+	/**
+	 * Removes and returns the message with the given ID index and sender 
+	 * from the incoming buffer
+	 * @param idIndex Index of the message ID or -1 for an unknown ID
+	 * @param from The host that sent this message (previous hop)
+	 * @return The found message or null if such message wasn't found
+	 */
+	private Message removeFromIncomingBuffer(int idIndex, DTNHost from) {
+		if (idIndex < 0) {
+			return null;
+		}
+		int i = indexOfIncoming(incomingKey(idIndex, from));
+		return i < 0 ? null : removeIncoming(i);
+	}
+	
+	/**
+	 * Removes and returns the message at the given position of the 
+	 * incoming buffer
+	 */
+	private Message removeIncoming(int i) {
+		Message m = this.incomingMessages[i];
+		int last = --this.nrofIncoming;
+		this.incomingKeys[i] = this.incomingKeys[last];
+		this.incomingFrom[i] = this.incomingFrom[last];
+		this.incomingMessages[i] = this.incomingMessages[last];
+		this.incomingFrom[last] = null;
+		this.incomingMessages[last] = null;
+		countChange();
+		return m;
 	}
 	
 	/**
-	 * Returns true if a message with the given ID is one of the
-	 * currently incoming messages, false if not
-	 * @param id ID of the message
+	 * Returns true if the given key matches one of the currently incoming
+	 * messages, false if not. The key is the ID of the message and the
+	 * name of the sending host separated by an underscore (the key of the
+	 * earlier string-keyed incoming buffer), so a plain message ID never
+	 * matches. The keys are compared without building them.
+	 * @param id Key of the message ("ID_sender")
 	 * @return True if such message is incoming right now
 	 */
-	protected boolean isIncomingMessage(String id) {
-		return this.incomingMessages.containsKey(id);
+	protected boolean isIncomingMessage(String id) {
+		for (int i = 0; i < this.nrofIncoming; i++) {
+			String incomingId = this.incomingMessages[i].getId();
+			String sender = this.incomingFrom[i].toString();
+			if (id.length() == incomingId.length() + 1 + sender.length() &&
+					id.startsWith(incomingId) && 
+					id.charAt(incomingId.length()) == '_' &&
+					id.endsWith(sender)) {
+				return true;
+			}
+		}
+		return false;
 	}
 	
 	/**
@@ -425,7 +632,8 @@ public abstract class MessageRouter {
 	 * message, if false, nothing is informed.
 	 */
 	protected void addToMessages(Message m, boolean newMessage) {
-		this.messages.put(m.getId(), m);
+		this.messages.add(m);
+		countChange();
 		
 		if (newMessage) {
 			for (MessageListener ml : this.mListeners) {
@@ -441,6 +649,9 @@ public abstract class MessageRouter {
 	 */
 	protected Message removeFromMessages(String id) {
 		Message m = this.messages.remove(id);
+		if (m != null) {
+			countChange();
+		}
 		return m;
 	}
 	
@@ -575,7 +786,7 @@ public abstract class MessageRouter {
 	 */
 	public RoutingInfo getRoutingInfo() {
 		RoutingInfo ri = new RoutingInfo(this);
-		RoutingInfo incoming = new RoutingInfo(this.incomingMessages.size() + 
+		RoutingInfo incoming = new RoutingInfo(this.nrofIncoming + 
 				" incoming message(s)");
 		RoutingInfo delivered = new RoutingInfo(this.deliveredMessages.size() +
 				" delivered message(s)");
@@ -587,11 +798,11 @@ public abstract class MessageRouter {
 		ri.addMoreInfo(delivered);
 		ri.addMoreInfo(cons);
 		
-		for (Message m : this.incomingMessages.values()) {
-			incoming.addMoreInfo(new RoutingInfo(m));
+		for (int i = 0; i < this.nrofIncoming; i++) {
+			incoming.addMoreInfo(new RoutingInfo(this.incomingMessages[i]));
 		}
 		
-		for (Message m : this.deliveredMessages.values()) {
+		for (Message m : this.deliveredMessages) {
 			delivered.addMoreInfo(new RoutingInfo(m + " path:" + m.getHops()));
 		}
 		
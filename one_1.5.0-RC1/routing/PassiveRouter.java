@@ -6,6 +6,7 @@ package routing;
 
 import core.Connection;
 import core.Settings;
+import core.SimClock;
 
 /**
  * Passive router that doesn't send anything unless commanded. This is useful
@@ -13,6 +14,7 @@ import core.Settings;
  * For implementation specifics, see MessageRouter class.
  */
 public class PassiveRouter extends MessageRouter {
+	private static final long serialVersionUID = 1L;
 
 	public PassiveRouter(Settings s) {
 		super(s);
@@ -35,6 +37,20 @@ public class PassiveRouter extends MessageRouter {
 	public void changedConnection(Connection con) {
 		// -"-
 	}
+	
+	/**
+	 * Returns the current time if the router has applications. Otherwise
+	 * the router never needs to be updated.
+	 */
+	@Override
+	public double getNextUpdateTime() {
+		return hasApplications() ? SimClock.getTime() : Double.MAX_VALUE;
+	}
+	
+	@Override
+	public boolean hasPendingWork() {
+		return hasApplications(); /* only the applications are updated */
+	}
 
 	@Override
 	public MessageRouter replicate() {
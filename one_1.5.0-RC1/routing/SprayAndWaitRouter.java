@@ -19,6 +19,8 @@ import core.Settings;
  *
  */
 public class SprayAndWaitRouter extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
+
 	/** identifier for the initial number of copies setting ({@value})*/ 
 	public static final String NROF_COPIES = "nrofCopies";
 	/** identifier for the binary-mode setting ({@value})*/ 
@@ -156,6 +158,11 @@ public class SprayAndWaitRouter extends ActiveRouter {
 		msg.updateProperty(MSG_COUNT_PROPERTY, nrofCopies);
 	}
 	
+	@Override
+	public boolean hasPendingWork() {
+		return hasStateChanged(); /* only the messages affect the transfers */
+	}
+	
 	@Override
 	public SprayAndWaitRouter replicate() {
 		return new SprayAndWaitRouter(this);
@@ -4,6 +4,7 @@
  */
 package routing;
 
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -23,6 +24,7 @@ import core.DTNHost;
 import core.Message;
 import core.Settings;
 import core.SimClock;
+import core.SimulationContext;
 
 
 /**
@@ -31,25 +33,22 @@ import core.SimClock;
  * Anders Lindgren et al.
  */
 public class edMultiRouter extends ActiveRouter{
+	private static final long serialVersionUID = 1L;
 
 
-   private static int start=0; // Transferring messages when start=1
-   private static int nodeCount=-1; //to store the count of no of nodes 
+	/** encounter information shared by all the routers of a run */
+	private final Encounters shared = getEncounters();
+
    private double zerothreshold; //to check how much of the encounter matrix has been filled
 
    public static final double DEFAULT_ZEROTHRESHOLD=0.25;
    
    public static final String edMulti_NS = "edMultiRouter";
     
-   private double maxPossibleZeroes=nodeCount*nodeCount*zerothreshold;
+   private double maxPossibleZeroes=shared.nodeCount*shared.nodeCount*zerothreshold;
 
    public static final String ZEROTHRESHOLD_S = "zerothreshold";
    
-	/** number of encounters of every node with every other node*/
-	private static int[][] encounters;
-
-	/** sumEncounters of total encounters by every node*/
-	private static Map<DTNHost, Integer> sumEncounters;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -83,16 +82,16 @@ public class edMultiRouter extends ActiveRouter{
 	
 		int i,j;
 	
-		for(i=0;i<nodeCount;i++) {
-	    	for(j=0;j<nodeCount;j++) {
-	       		if(encounters[i][j]==0){
+		for(i=0;i<shared.nodeCount;i++) {
+	    	for(j=0;j<shared.nodeCount;j++) {
+	       		if(shared.encounters[i][j]==0){
 	       	   		countZeroes++;
 	        	}
 	    	}
 		}
 	    if(countZeroes < maxPossibleZeroes)
 	    {
-	        start=1; //set start to 1 if the encounter matrix satisfies threshold for no of zero values
+	        shared.start=1; //set start to 1 if the encounter matrix satisfies threshold for no of zero values
 	    }
 	    
 	    return;
@@ -107,15 +106,15 @@ public class edMultiRouter extends ActiveRouter{
 		if (con.isUp()) {
 			DTNHost otherHost = con.getOtherNode(getHost());
 			
-			if(nodeCount==-1)
+			if(shared.nodeCount==-1)
 			{
-				nodeCount=otherHost.getHosts().size();
-				maxPossibleZeroes=nodeCount*nodeCount*zerothreshold;
+				shared.nodeCount=otherHost.getHosts().size();
+				maxPossibleZeroes=shared.nodeCount*shared.nodeCount*zerothreshold;
 			}
 			
 			updateEncounters(getHost(),otherHost);
 			//to set start
-		 	if(start==0) { 
+		 	if(shared.start==0) { 
 				checkStart();
 			}  
 		
@@ -130,38 +129,38 @@ public class edMultiRouter extends ActiveRouter{
 	 */
 	public void updateEncounters(DTNHost host1, DTNHost host2) {
 		//each message has different destination and we'll need encounters of every node with the destination(which is changing with each message) in same time instance, hence we've decided to use a 2D array
-		if (this.encounters == null) {
-			this.encounters=new int[host1.getHosts().size()][host1.getHosts().size()]; //TODO:replace 126 by hosts.size
+		if (shared.encounters == null) {
+			shared.encounters=new int[host1.getHosts().size()][host1.getHosts().size()]; //TODO:replace 126 by hosts.size
 		}
-		if(this.sumEncounters == null){
-			this.sumEncounters=new HashMap<DTNHost, Integer>();
+		if(shared.sumEncounters == null){
+			shared.sumEncounters=new HashMap<DTNHost, Integer>();
 		}
 		edMultiRouter othRouter = (edMultiRouter)host2.getRouter();
 		edMultiRouter myRouter = (edMultiRouter)host1.getRouter();
 
 		//if sumEncounters does not contain host1 , put host1 in sumEncounters and initialise by 0
-		if(!this.sumEncounters.containsKey(host1))
+		if(!shared.sumEncounters.containsKey(host1))
 		{
-			sumEncounters.put(host1,0);
+			shared.sumEncounters.put(host1,0);
 		}
 		//if sumEncounters does not contain host1 , put host1 in sumEncounters and initialise by 0
-		if(!this.sumEncounters.containsKey(host2))
+		if(!shared.sumEncounters.containsKey(host2))
 		{
-			sumEncounters.put(host2,0);
+			shared.sumEncounters.put(host2,0);
 		}
 		if(myRouter!=othRouter)
 		{
-			this.encounters[host1.getAddress()][host2.getAddress()]++;
+			shared.encounters[host1.getAddress()][host2.getAddress()]++;
 
 			//increase the value of sumEncounters of host1 by 1 
-			this.sumEncounters.put(host1,this.sumEncounters.get(host1)+1);
+			shared.sumEncounters.put(host1,shared.sumEncounters.get(host1)+1);
 		}
 		else
 		{
-			this.encounters[host1.getAddress()][host2.getAddress()]++;
-			this.encounters[host2.getAddress()][host1.getAddress()]++;
-			this.sumEncounters.put(host1,this.sumEncounters.get(host1)+1);
-			this.sumEncounters.put(host2,this.sumEncounters.get(host2)+1);
+			shared.encounters[host1.getAddress()][host2.getAddress()]++;
+			shared.encounters[host2.getAddress()][host1.getAddress()]++;
+			shared.sumEncounters.put(host1,shared.sumEncounters.get(host1)+1);
+			shared.sumEncounters.put(host2,shared.sumEncounters.get(host2)+1);
 		}
 		//System.out.println(host1.getAddress()+ " " + sumEncounters.get(host1));
 		//System.out.println(host2.getAddress()+ " " + sumEncounters.get(host2));
@@ -174,7 +173,7 @@ public class edMultiRouter extends ActiveRouter{
 	 * @return the current E value
 	 */
 	public int getEncounter(DTNHost host1,DTNHost host2){
-		return this.encounters[host1.getAddress()][host2.getAddress()];
+		return shared.encounters[host1.getAddress()][host2.getAddress()];
 	}
 
 	/**
@@ -183,10 +182,10 @@ public class edMultiRouter extends ActiveRouter{
 	 * @return the current S value
 	 */
 	public int getsumEncounters(DTNHost host){
-		if(sumEncounters.containsKey(host))
+		if(shared.sumEncounters.containsKey(host))
 		{
 			//System.out.println("poop:"+host.getAddress()+"="+this.sumEncounters.get(host));
-			return this.sumEncounters.get(host);
+			return shared.sumEncounters.get(host);
 		}
 		else
 			return 0;
@@ -209,7 +208,7 @@ public class edMultiRouter extends ActiveRouter{
 		
 		//To begin simulation when start=1
         //i.e. when the encounter matrix has no zero value
-		 if(start==1)
+		 if(shared.start==1)
 		{
 			tryOtherMessages();	
 		}	 
@@ -452,4 +451,31 @@ private double getDistFor(DTNHost dest,DTNHost nextHost)
 		return r;
 	}
 
+	/**
+	 * Returns the encounter information of the current simulation run
+	 * @return The encounter information
+	 */
+	private static Encounters getEncounters() {
+		SimulationContext ctx = SimulationContext.get();
+		Encounters e = (Encounters)ctx.getClassState(edMultiRouter.class);
+		if (e == null) {
+			e = new Encounters();
+			ctx.setClassState(edMultiRouter.class, e);
+		}
+		return e;
+	}
+
+	/**
+	 * Encounter information of one simulation run
+	 */
+	private static class Encounters implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private int start = 0; // Transferring messages when start=1
+		private int nodeCount = -1; //to store the count of no of nodes
+		/** number of encounters of every node with every other node*/
+		private int[][] encounters;
+		/** sumEncounters of total encounters by every node*/
+		private Map<DTNHost, Integer> sumEncounters;
+	}
 }
@@ -4,6 +4,7 @@
  */
 package routing;
 
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -23,6 +24,7 @@ import core.DTNHost;
 import core.Message;
 import core.Settings;
 import core.SimClock;
+import core.SimulationContext;
 
 /**
  * Implementation of Game router as described in 
@@ -30,12 +32,10 @@ import core.SimClock;
  * Anders Lindgren et al.
  */
 public class edSingleRouter extends ActiveRouter {
+	private static final long serialVersionUID = 1L;
 	
-	/** number of encounters of every node with every other node*/
-	private static int[][] encounters;
-
-	/** sumEncounters of total encounters by every node*/
-	private static Map<DTNHost, Integer> sumEncounters;
+	/** encounter information shared by all the routers of a run */
+	private final Encounters shared = getEncounters();
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -72,38 +72,38 @@ public class edSingleRouter extends ActiveRouter {
 	 */
 	public void updateEncounters(DTNHost host1, DTNHost host2) {
 		//each message has different destination and we'll need encounters of every node with the destination(which is changing with each message) in same time instance, hence we've decided to use a 2D array
-		if (this.encounters == null) {
-			this.encounters=new int[126][126]; //TODO:replace 126 by hosts.size
+		if (shared.encounters == null) {
+			shared.encounters=new int[126][126]; //TODO:replace 126 by hosts.size
 		}
-		if(this.sumEncounters == null){
-			this.sumEncounters=new HashMap<DTNHost, Integer>();
+		if(shared.sumEncounters == null){
+			shared.sumEncounters=new HashMap<DTNHost, Integer>();
 		}
 		edSingleRouter othRouter = (edSingleRouter)host2.getRouter();
 		edSingleRouter myRouter = (edSingleRouter)host1.getRouter();
 
 		//if sumEncounters does not contain host1 , put host1 in sumEncounters and initialise by 0
-		if(!this.sumEncounters.containsKey(host1))
+		if(!shared.sumEncounters.containsKey(host1))
 		{
-			sumEncounters.put(host1,0);
+			shared.sumEncounters.put(host1,0);
 		}
 		//if sumEncounters does not contain host1 , put host1 in sumEncounters and initialise by 0
-		if(!this.sumEncounters.containsKey(host2))
+		if(!shared.sumEncounters.containsKey(host2))
 		{
-			sumEncounters.put(host2,0);
+			shared.sumEncounters.put(host2,0);
 		}
 		if(myRouter!=othRouter)
 		{
-			this.encounters[host1.getAddress()][host2.getAddress()]++;
+			shared.encounters[host1.getAddress()][host2.getAddress()]++;
 
 			//increase the value of sumEncounters of host1 by 1 
-			this.sumEncounters.put(host1,this.sumEncounters.get(host1)+1);
+			shared.sumEncounters.put(host1,shared.sumEncounters.get(host1)+1);
 		}
 		else
 		{
-			this.encounters[host1.getAddress()][host2.getAddress()]++;
-			this.encounters[host2.getAddress()][host1.getAddress()]++;
-			this.sumEncounters.put(host1,this.sumEncounters.get(host1)+1);
-			this.sumEncounters.put(host2,this.sumEncounters.get(host2)+1);
+			shared.encounters[host1.getAddress()][host2.getAddress()]++;
+			shared.encounters[host2.getAddress()][host1.getAddress()]++;
+			shared.sumEncounters.put(host1,shared.sumEncounters.get(host1)+1);
+			shared.sumEncounters.put(host2,shared.sumEncounters.get(host2)+1);
 		}
 		//System.out.println(host1.getAddress()+ " " + sumEncounters.get(host1));
 		//System.out.println(host2.getAddress()+ " " + sumEncounters.get(host2));
@@ -116,7 +116,7 @@ public class edSingleRouter extends ActiveRouter {
 	 * @return the current E value
 	 */
 	public int getEncounter(DTNHost host1,DTNHost host2){
-		return this.encounters[host1.getAddress()][host2.getAddress()];
+		return shared.encounters[host1.getAddress()][host2.getAddress()];
 	}
 
 	/**
@@ -125,10 +125,10 @@ public class edSingleRouter extends ActiveRouter {
 	 * @return the current S value
 	 */
 	public int getsumEncounters(DTNHost host){
-		if(sumEncounters.containsKey(host))
+		if(shared.sumEncounters.containsKey(host))
 		{
 			//System.out.println("poop:"+host.getAddress()+"="+this.sumEncounters.get(host));
-			return this.sumEncounters.get(host);
+			return shared.sumEncounters.get(host);
 		}
 		else
 			return 0;
@@ -319,4 +319,29 @@ private double getDistFor(DTNHost dest,DTNHost nextHost)
 		return r;
 	}
 
+	/**
+	 * Returns the encounter information of the current simulation run
+	 * @return The encounter information
+	 */
+	private static Encounters getEncounters() {
+		SimulationContext ctx = SimulationContext.get();
+		Encounters e = (Encounters)ctx.getClassState(edSingleRouter.class);
+		if (e == null) {
+			e = new Encounters();
+			ctx.setClassState(edSingleRouter.class, e);
+		}
+		return e;
+	}
+
+	/**
+	 * Encounter information of one simulation run
+	 */
+	private static class Encounters implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		/** number of encounters of every node with every other node*/
+		private int[][] encounters;
+		/** sumEncounters of total encounters by every node*/
+		private Map<DTNHost, Integer> sumEncounters;
+	}
 }
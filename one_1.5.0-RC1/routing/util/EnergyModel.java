@@ -4,6 +4,7 @@
  */
 package routing.util;
 
+import java.io.Serializable;
 import java.util.Random;
 
 import core.*;
@@ -14,7 +15,9 @@ import core.*;
  * often than 1/s, constant scanning is assumed (and power consumption does not
  * increase from {@link #scanEnergy} value).
  */
-public class EnergyModel implements ModuleCommunicationListener {
+public class EnergyModel implements ModuleCommunicationListener, Serializable {
+	private static final long serialVersionUID = 1L;
+
 	/** Initial units of energy -setting id ({@value}). Can be either a 
 	 * single value, or a range of two values. In the latter case, the used
 	 * value is a uniformly distributed random value between the two values. */
@@ -44,6 +47,9 @@ public class EnergyModel implements ModuleCommunicationListener {
 	/** {@link ModuleCommunicationBus} identifier for the "current amount of 
 	 * energy left" variable. Value type: double */
 	public static final String ENERGY_VALUE_ID = "Energy.value";
+	/** {@link ModuleCommunicationBus} slot of {@link #ENERGY_VALUE_ID} */
+	public static final int ENERGY_VALUE_SLOT = 
+		ModuleCommunicationBus.getSlot(ENERGY_VALUE_ID);
 	
 	/** Initial energy levels from the settings */
 	private final double[] initEnergy;
@@ -59,7 +65,6 @@ public class EnergyModel implements ModuleCommunicationListener {
 	/** sim time of the last energy updated */
 	private double lastUpdate;
 	private ModuleCommunicationBus comBus;
-	private static Random rng = null;
 
 	/**
 	 * Constructor. Creates a new message router based on the settings in
@@ -120,14 +125,29 @@ public class EnergyModel implements ModuleCommunicationListener {
 			this.currentEnergy = range[0];
 		}
 		else {
-			if (rng == null) {
-				rng = new Random((int)(range[0] + range[1]));
-			}
+			Random rng = getRng(range);
 			this.currentEnergy = range[0] + 
 				rng.nextDouble() * (range[1] - range[0]);
 		}
 	}
 	
+	/**
+	 * Returns the random number generator of the current simulation run.
+	 * The generator is created, and seeded using the range, on the first
+	 * call of a run.
+	 * @param range The energy level range
+	 * @return The random number generator
+	 */
+	private static Random getRng(double range[]) {
+		SimulationContext ctx = SimulationContext.get();
+		Random rng = (Random)ctx.getClassState(EnergyModel.class);
+		if (rng == null) {
+			rng = new Random((int)(range[0] + range[1]));
+			ctx.setClassState(EnergyModel.class, rng);
+		}
+		return rng;
+	}
+	
 	/**
 	 * Returns the current energy level
 	 * @return the current energy level
@@ -152,9 +172,9 @@ public class EnergyModel implements ModuleCommunicationListener {
 		}
 		
 		if (amount >= this.currentEnergy) {
-			comBus.updateProperty(ENERGY_VALUE_ID, 0.0);
+			comBus.setDouble(ENERGY_VALUE_SLOT, 0.0);
 		} else {
-			comBus.updateDouble(ENERGY_VALUE_ID, -amount);
+			comBus.updateDouble(ENERGY_VALUE_SLOT, -amount);
 		}
 		
 	}
@@ -177,8 +197,13 @@ public class EnergyModel implements ModuleCommunicationListener {
 		
 		if (this.comBus == null) {
 			this.comBus = comBus;
-			this.comBus.addProperty(ENERGY_VALUE_ID, this.currentEnergy);
-			this.comBus.subscribe(ENERGY_VALUE_ID, this);
+			/* the interfaces follow the energy only of the hosts that have
+			   it; subscribed first to get also the initial value */
+			for (NetworkInterface ni : iface.getHost().getInterfaces()) {
+				this.comBus.subscribe(ENERGY_VALUE_SLOT, ni);
+			}
+			this.comBus.addProperty(ENERGY_VALUE_SLOT, this.currentEnergy);
+			this.comBus.subscribe(ENERGY_VALUE_SLOT, this);
 		}
 		
 		if (simTime > this.lastUpdate && iface.isTransferring()) {
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package routing.util;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import core.Message;
+
+/**
+ * <P>Message buffer of a router. Keeps the messages by their IDs together
+ * with the amount of buffer space they take and a heap of the messages in
+ * the order of their receive times (and the order they were added in, for
+ * messages with the same receive time), so the occupancy is known without
+ * summing the sizes of the messages and the oldest message is found
+ * without going through all the messages.</P>
+ * <P>By default, of the oldest messages with the same receive time the one
+ * that comes first in the iteration order is the oldest, as when the 
+ * messages were kept in a HashMap. Finding it needs going through the 
+ * messages when there are many such messages, which is common since many
+ * messages are often received during the same update. If the messages 
+ * are ordered by the order they were added in (see 
+ * {@link #MessageBuffer(boolean)}), the oldest message is always found 
+ * from the heap.</P>
+ * <P>The messages are iterated in the same order as the values of a
+ * HashMap with the message IDs as keys. The receive time of a message must
+ * not change while the message is in the buffer.</P>
+ */
+public class MessageBuffer implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** the messages by their IDs */
+	private HashMap<String, Entry> entries;
+	/** binary heap of the entries by the receive time and sequence number */
+	private Entry[] heap;
+	/** sequence number of the next added message */
+	private long nextSeq;
+	/** are the messages with the same receive time ordered by the order 
+	 * they were added in (or by the iteration order) */
+	private boolean addOrderTies;
+	/** sum of the sizes of the messages */
+	private long occupancy;
+	/** view of the messages (created when first needed) */
+	private transient Collection<Message> messages;
+
+	/**
+	 * Constructor. Creates an empty buffer where the messages with the same
+	 * receive time are in the iteration order.
+	 */
+	public MessageBuffer() {
+		this(false);
+	}
+
+	/**
+	 * Constructor. Creates an empty buffer.
+	 * @param addOrderTies If true, the messages with the same receive time
+	 * are in the order they were added in, if false, in the iteration order
+	 * of the buffer (see {@link #getOldest(Collection)})
+	 */
+	public MessageBuffer(boolean addOrderTies) {
+		this.entries = new HashMap<String, Entry>();
+		this.heap = new Entry[16];
+		this.addOrderTies = addOrderTies;
+	}
+
+	/**
+	 * Returns a message by ID.
+	 * @param id ID of the message
+	 * @return The message or null if there's no message with the ID
+	 */
+	public Message get(String id) {
+		Entry e = this.entries.get(id);
+		return e == null ? null : e.msg;
+	}
+
+	/**
+	 * Returns true if the buffer has a message with the given ID
+	 * @param id ID of the message
+	 * @return True if the message is in the buffer
+	 */
+	public boolean contains(String id) {
+		return this.entries.containsKey(id);
+	}
+
+	/**
+	 * Returns the number of messages in the buffer
+	 * @return The number of messages
+	 */
+	public int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Returns the sum of the sizes of the messages in the buffer
+	 * @return The occupancy (bytes)
+	 */
+	public long getOccupancy() {
+		return this.occupancy;
+	}
+
+	/**
+	 * Returns a view of the messages in the buffer. Messages can be removed
+	 * through the view but not added.
+	 * @return The messages
+	 */
+	public Collection<Message> getMessages() {
+		if (this.messages == null) {
+			this.messages = new MessageView();
+		}
+		return this.messages;
+	}
+
+	/**
+	 * Adds a message to the buffer. A message with the same ID is replaced.
+	 * @param m The message to add
+	 * @return The replaced message or null if there was no message with the
+	 * same ID
+	 */
+	public Message add(Message m) {
+		Entry e = new Entry(m, this.nextSeq++, this.entries.size());
+		Entry old = this.entries.put(m.getId(), e);
+		if (old != null) {
+			/* the new message takes the place of the old one */
+			this.occupancy -= old.msg.getSize();
+			e.index = old.index;
+			this.heap[e.index] = e;
+			siftDown(e.index);
+		} else {
+			if (e.index == this.heap.length) {
+				this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
+			}
+			this.heap[e.index] = e;
+		}
+		siftUp(e.index);
+		this.occupancy += m.getSize();
+
+		return old == null ? null : old.msg;
+	}
+
+	/**
+	 * Removes a message from the buffer
+	 * @param id ID of the message to remove
+	 * @return The removed message or null if there was no message with the ID
+	 */
+	public Message remove(String id) {
+		Entry e = this.entries.remove(id);
+		if (e == null) {
+			return null;
+		}
+		removeFromHeap(e);
+		return e.msg;
+	}
+
+	/**
+	 * Returns the oldest (by receive time) message that is not one of the
+	 * excluded messages. If many messages have the same receive time, the
+	 * one that was added to the buffer first is returned if the buffer 
+	 * orders such messages by the order they were added in, otherwise the 
+	 * one that comes first in the iteration order of the buffer.
+	 * @param excluded IDs of the messages that can't be returned
+	 * @return The oldest message or null if there are no messages that
+	 * aren't excluded
+	 */
+	public Message getOldest(Collection<String> excluded) {
+		/* only the excluded messages and their children need to be checked */
+		Entry oldest = findOldest(0, excluded, null);
+		if (oldest == null || this.addOrderTies) {
+			return oldest == null ? null : oldest.msg;
+		}
+
+		/* only the messages with the oldest time or older are counted */
+		double time = oldest.time;
+		if (countWithTime(0, excluded, time) > 1) {
+			for (Entry e : this.entries.values()) {
+				if (e.time == time && !excluded.contains(e.msg.getId())) {
+					return e.msg;
+				}
+			}
+		}
+		return oldest.msg;
+	}
+
+	private int countWithTime(int i, Collection<String> excluded, 
+			double time) {
+		if (i >= this.entries.size() || this.heap[i].time > time) {
+			return 0;
+		}
+		int count = 0;
+		if (this.heap[i].time == time &&
+				!excluded.contains(this.heap[i].msg.getId())) {
+			count++;
+		}
+		return count + countWithTime(2 * i + 1, excluded, time) +
+			countWithTime(2 * i + 2, excluded, time);
+	}
+
+	private Entry findOldest(int i, Collection<String> excluded, 
+			Entry oldest) {
+		if (i >= this.entries.size() || 
+				(oldest != null && !isBefore(this.heap[i], oldest))) {
+			return oldest;
+		}
+		if (!excluded.contains(this.heap[i].msg.getId())) {
+			return this.heap[i];
+		}
+		oldest = findOldest(2 * i + 1, excluded, oldest);
+		return findOldest(2 * i + 2, excluded, oldest);
+	}
+
+	/**
+	 * Returns true if entry a is before entry b in the heap order
+	 */
+	private static boolean isBefore(Entry a, Entry b) {
+		return a.time < b.time || (a.time == b.time && a.seq < b.seq);
+	}
+
+	/**
+	 * Removes an entry (that has already been removed from the map) from the
+	 * heap and the occupancy
+	 */
+	private void removeFromHeap(Entry e) {
+		int last = this.entries.size();
+		this.occupancy -= e.msg.getSize();
+		Entry moved = this.heap[last];
+		this.heap[last] = null;
+		if (moved != e) {
+			this.heap[e.index] = moved;
+			moved.index = e.index;
+			siftDown(moved.index);
+			siftUp(moved.index);
+		}
+	}
+
+	private void siftUp(int i) {
+		Entry e = this.heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (!isBefore(e, this.heap[parent])) {
+				break;
+			}
+			this.heap[i] = this.heap[parent];
+			this.heap[i].index = i;
+			i = parent;
+		}
+		this.heap[i] = e;
+		e.index = i;
+	}
+
+	private void siftDown(int i) {
+		int size = this.entries.size();
+		Entry e = this.heap[i];
+		while (2 * i + 1 < size) {
+			int child = 2 * i + 1;
+			if (child + 1 < size &&
+					isBefore(this.heap[child + 1], this.heap[child])) {
+				child++;
+			}
+			if (!isBefore(this.heap[child], e)) {
+				break;
+			}
+			this.heap[i] = this.heap[child];
+			this.heap[i].index = i;
+			i = child;
+		}
+		this.heap[i] = e;
+		e.index = i;
+	}
+
+	/**
+	 * A message in the buffer and its place in the heap
+	 */
+	private static class Entry implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private Message msg;
+		/** receive time of the message when it was added */
+		private double time;
+		/** sequence number of the addition (orders the same times) */
+		private long seq;
+		private int index;
+
+		private Entry(Message msg, long seq, int index) {
+			this.msg = msg;
+			this.time = msg.getReceiveTime();
+			this.seq = seq;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * View of the messages in the iteration order of the entry map
+	 */
+	private class MessageView extends AbstractCollection<Message> {
+		public Iterator<Message> iterator() {
+			final Iterator<Entry> i = entries.values().iterator();
+			return new Iterator<Message>() {
+				private Entry current;
+
+				public boolean hasNext() {
+					return i.hasNext();
+				}
+
+				public Message next() {
+					this.current = i.next();
+					return this.current.msg;
+				}
+
+				public void remove() {
+					i.remove();
+					removeFromHeap(this.current);
+				}
+			};
+		}
+
+		public int size() {
+			return entries.size();
+		}
+	}
+}
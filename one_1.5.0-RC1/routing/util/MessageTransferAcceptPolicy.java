@@ -4,6 +4,7 @@
  */
 package routing.util;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 import util.Range;
@@ -42,7 +43,8 @@ import core.Settings;
  * </P>
  * @author Ari
  */
-public class MessageTransferAcceptPolicy {
+public class MessageTransferAcceptPolicy implements Serializable {
+	private static final long serialVersionUID = 1L;
 
 	/** Namespace for all "Message Transfer Accept policy" settings ({@value})*/
 	public static final String MTA_POLICY_NS = "mtaPolicy";
@@ -109,8 +111,8 @@ public class MessageTransferAcceptPolicy {
 	 * to other nodes, unless it would be delivered to the final destination. */
 	public static final String HOPCOUNT_SPOLICY_S = "hopCountSendPolicy";
 	
-	private ArrayList<Tuple<String,ArithmeticCondition>> recvConditions = null;
-	private ArrayList<Tuple<String,ArithmeticCondition>> sendConditions = null;
+	private ArrayList<Tuple<Integer,ArithmeticCondition>> recvConditions = null;
+	private ArrayList<Tuple<Integer,ArithmeticCondition>> sendConditions = null;
 	
 	private Range[] toSendPolicy = null;
 	private Range[] fromSendPolicy = null;
@@ -161,11 +163,11 @@ public class MessageTransferAcceptPolicy {
 		int[] nrof = s.getCsvInts(NROF_MCBCS_S);		
 		if (nrof[0] > 0) { /* create lists only if needed */
 			this.recvConditions = 
-				new ArrayList<Tuple<String,ArithmeticCondition>>();
+				new ArrayList<Tuple<Integer,ArithmeticCondition>>();
 		}
 		if (nrof[1] > 0) {
 			this.sendConditions = 
-				new ArrayList<Tuple<String,ArithmeticCondition>>();
+				new ArrayList<Tuple<Integer,ArithmeticCondition>>();
 		}
 		
 		addConditions(s, MCBACR_S, MCBCVR_S, this.recvConditions,  nrof[0]);
@@ -181,12 +183,13 @@ public class MessageTransferAcceptPolicy {
 	 * @param nrof The number of settings to read
 	 */
 	private void addConditions(Settings s, String cPrefix, String vPrefix,
-			ArrayList<Tuple<String,ArithmeticCondition>> list,
+			ArrayList<Tuple<Integer,ArithmeticCondition>> list,
 			int nrof) {
 		for (int i=1; i<=nrof; i++) {
 			ArithmeticCondition ac = s.getCondition(cPrefix + i);
-			String mcbValue = s.getSetting(vPrefix + i);
-			list.add(new Tuple<String, ArithmeticCondition>(mcbValue, ac));
+			int mcbSlot = ModuleCommunicationBus.getSlot(
+					s.getSetting(vPrefix + i));
+			list.add(new Tuple<Integer, ArithmeticCondition>(mcbSlot, ac));
 		}
 	}
 	
@@ -200,14 +203,14 @@ public class MessageTransferAcceptPolicy {
 	 */
 	private boolean checkMcbConditions(ModuleCommunicationBus mcb, 
 			boolean receiving) {
-		ArrayList<Tuple<String,ArithmeticCondition>> list = 
+		ArrayList<Tuple<Integer,ArithmeticCondition>> list = 
 			(receiving ? this.recvConditions : this.sendConditions);
 		
 		if (list == null) {
 			return true;
 		}
 		
-		for (Tuple<String,ArithmeticCondition> t : list) {
+		for (Tuple<Integer,ArithmeticCondition> t : list) {
 			if (!mcb.containsProperty(t.getKey())) {
 				continue; /* no value in the bus; can't fail condition */
 			}
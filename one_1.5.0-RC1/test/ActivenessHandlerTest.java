@@ -70,5 +70,49 @@ public class ActivenessHandlerTest extends TestCase {
 
 	}
 	
+	public void testValidityTime() {
+		clock.setTime(1);
+		assertFalse(ah.isActive());
+		assertEquals(in, ah.getValidityTime(0));
+		assertEquals(in - 1, ah.getValidityTime(1));
+		clock.setTime(in);
+		assertTrue(ah.isActive());
+		assertEquals(out, ah.getValidityTime(0));
+		
+		int changes = ah.getNrofRangeChanges();
+		clock.setTime(out + 1);
+		assertFalse(ah.isActive());
+		assertEquals(changes + 1, ah.getNrofRangeChanges());
+		assertEquals(100.0, ah.getValidityTime(0));
+		
+		clock.setTime(500);
+		assertFalse(ah.isActive()); // moves one range at a time
+		assertEquals(500.0, ah.getValidityTime(0));
+		assertFalse(ah.isActive());
+		assertEquals(500.0, ah.getValidityTime(0));
+		assertFalse(ah.isActive()); // out of ranges
+		assertEquals(Double.MAX_VALUE, ah.getValidityTime(0));
+	}
+	
+	public void testValidityTimePeriods() {
+		TestSettings ts = new TestSettings();
+		ts.putSetting(ActivenessHandler.ACTIVE_PERIODS_S, "20,10");
+		ts.putSetting(ActivenessHandler.ACTIVE_PERIODS_OFFSET_S, "3");
+		ActivenessHandler pah = new ActivenessHandler(ts);
+		int offset = 5;
+		
+		for (double t = 0; t < 100; t += 0.25) {
+			clock.setTime(t);
+			boolean active = pah.isActive(offset);
+			double validity = pah.getValidityTime(offset);
+			assertTrue(validity > t);
+			for (double t2 = t; t2 < validity; t2 += 0.25) {
+				clock.setTime(t2);
+				assertEquals(active, pah.isActive(offset));
+			}
+			clock.setTime(validity);
+			assertTrue(active != pah.isActive(offset));
+		}
+	}
+	
 }
-
@@ -47,8 +47,19 @@ public class AllTests {
 		suite.addTestSuite(MaxPropDijkstraTest.class);
 		suite.addTestSuite(MaxPropRouterTest.class);
 		suite.addTestSuite(ScheduledUpdatesQueueTest.class);
+		suite.addTestSuite(EventCalendarTest.class);
 		suite.addTestSuite(MessageTest.class);
+		suite.addTestSuite(MessageBufferTest.class);
 		suite.addTestSuite(ModuleCommunicationBusTest.class);
+		suite.addTestSuite(SimulationContextTest.class);
+		suite.addTestSuite(TimingWheelTest.class);
+		suite.addTestSuite(CheckpointTest.class);
+		suite.addTestSuite(ConnectivityGridTest.class);
+		suite.addTestSuite(KineticContactsTest.class);
+		suite.addTestSuite(ContactTraceTest.class);
+		suite.addTestSuite(DTNSimTest.class);
+		suite.addTestSuite(MultiLevelGridTest.class);
+		suite.addTestSuite(SINRInterfaceTest.class);
 		//$JUnit-END$
 		return suite;
 	}
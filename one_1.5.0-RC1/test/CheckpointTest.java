@@ -0,0 +1,316 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import movement.map.MapNode;
+import movement.map.SimMap;
+import report.ConnectivityONEReport;
+import report.Report;
+import routing.PassiveRouter;
+import interfaces.SimpleBroadcastInterface;
+import core.Checkpoint;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+import core.SimScenario;
+import core.SimulationContext;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests for writing checkpoints and resuming runs from them
+ */
+public class CheckpointTest extends TestCase {
+	private static final String REPORT_NS = "ConnectivityONEReport.";
+	private TestSettings ts;
+	private File ckptFile;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ts = new TestSettings();
+		ckptFile = File.createTempFile("ckpttest", ".tmp");
+		ckptFile.delete(); /* only the name is needed */
+		ckptFile.deleteOnExit();
+		ts.putSetting(Checkpoint.CHECKPOINT_NS + "." + Checkpoint.FILE_S,
+				ckptFile.getAbsolutePath());
+		ts.putSetting(Checkpoint.CHECKPOINT_NS + "." + Checkpoint.INTERVAL_S,
+				"100");
+		ts.putSetting(Checkpoint.CHECKPOINT_NS + "." + Checkpoint.RESUME_S,
+				"true");
+		SimulationContext.setCurrent(new SimulationContext(0));
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		SimulationContext.setCurrent(null);
+		ckptFile.delete();
+	}
+
+	public void testResume() throws IOException {
+		File expectedOut = createTempFile("ckptreport");
+		File resumedOut = createTempFile("ckptreport");
+
+		/* uninterrupted run */
+		ts.putSetting(REPORT_NS + Report.OUTPUT_SETTING,
+				expectedOut.getAbsolutePath());
+		ConnectivityONEReport report = new ConnectivityONEReport();
+		World world = createWorld(report);
+		update(world, 400);
+		report.done();
+		String expected = readFile(expectedOut);
+
+		/* run that is interrupted after writing a checkpoint at 200 */
+		ts.putSetting(REPORT_NS + Report.OUTPUT_SETTING,
+				resumedOut.getAbsolutePath());
+		SimulationContext.setCurrent(new SimulationContext(0));
+		report = new ConnectivityONEReport();
+		world = createWorld(report);
+		update(world, 200);
+		ArrayList<Serializable> state = new ArrayList<Serializable>();
+		state.add(world);
+		state.add(report);
+		new Checkpoint().write(state);
+		update(world, 100);
+		report.done();
+		assertFalse(expected.equals(readFile(resumedOut)));
+
+		SimulationContext.setCurrent(new SimulationContext(0));
+		Checkpoint checkpoint = new Checkpoint();
+		assertTrue(checkpoint.canResume());
+		List<?> resumed = (List<?>)checkpoint.resume();
+		assertEquals(200.0, SimClock.getTime());
+		world = (World)resumed.get(0);
+		report = (ConnectivityONEReport)resumed.get(1);
+		update(world, 200);
+		report.done();
+
+		/* output written after the checkpoint was discarded at resume */
+		assertTrue(expected.length() > 0);
+		assertEquals(expected, readFile(resumedOut));
+	}
+
+	public void testHashCollections() {
+		HashSet<DTNHost> hosts = new HashSet<DTNHost>(1024);
+		HashSet<Message> messages = new HashSet<Message>(1024);
+		HashMap<String, Integer> ids = new HashMap<String, Integer>(1024);
+		for (int i=0; i<50; i++) {
+			DTNHost host = new DTNHost(null, null, "h",
+					new ArrayList<NetworkInterface>(),
+					new ModuleCommunicationBus(), new StationaryMovement(
+					new core.Coord(0, 0)), new PassiveRouter(ts));
+			Message m = new Message(host, host, "M" + i, 1);
+			hosts.add(host);
+			messages.add(m);
+			ids.put(m.getId(), i);
+		}
+		/* the order depends on the capacity of the map */
+		assertFalse(new ArrayList<String>(ids.keySet()).equals(
+				new ArrayList<String>(new HashMap<String, Integer>(ids)
+						.keySet())));
+
+		ArrayList<Serializable> state = new ArrayList<Serializable>();
+		state.add(hosts);
+		state.add(messages);
+		state.add(ids);
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.write(state);
+		List<?> resumed = (List<?>)checkpoint.resume();
+
+		assertEquals(getAddresses(hosts),
+				getAddresses((HashSet<?>)resumed.get(0)));
+		assertEquals(getIds(messages), getIds((HashSet<?>)resumed.get(1)));
+		assertEquals(new ArrayList<String>(ids.keySet()),
+				new ArrayList<Object>(((HashMap<?, ?>)resumed.get(2))
+						.keySet()));
+	}
+
+	public void testHashCollectionCapacities() {
+		/* keys 1, c/2 and c iterate in a different order in a hash table 
+		 * of any other capacity than c, so the collections are restored 
+		 * only if their capacity is resolved from the iteration order */
+		ArrayList<Serializable> state = new ArrayList<Serializable>();
+		for (int c = 16; c <= 4096; c *= 16) {
+			HashSet<Integer> set = new HashSet<Integer>(c);
+			HashMap<Integer, Integer> map = new HashMap<Integer, Integer>(c);
+			for (int key : new int[] {c, c / 2, 1}) {
+				set.add(key);
+				map.put(key, key);
+			}
+			state.add(set);
+			state.add(map);
+		}
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.write(state);
+		List<?> resumed = (List<?>)checkpoint.resume();
+
+		for (int i = 0; i < state.size(); i += 2) {
+			HashSet<?> set = (HashSet<?>)state.get(i);
+			HashMap<?, ?> map = (HashMap<?, ?>)state.get(i + 1);
+			assertEquals(new ArrayList<Object>(set), new ArrayList<Object>(
+					(HashSet<?>)resumed.get(i)));
+			assertEquals(new ArrayList<Object>(map.keySet()), 
+					new ArrayList<Object>(
+					((HashMap<?, ?>)resumed.get(i + 1)).keySet()));
+		}
+	}
+
+	public void testLongMap() {
+		/* a path long enough to overflow the stack if the nodes were 
+		 * written recursively through their neighbors */
+		final int nrofNodes = 100000;
+		HashMap<Coord, MapNode> nodes = new HashMap<Coord, MapNode>();
+		MapNode prev = null;
+		for (int i = 0; i < nrofNodes; i++) {
+			MapNode node = new MapNode(new Coord(i, 0));
+			node.addNeighbor(prev);
+			if (prev != null) {
+				prev.addNeighbor(node);
+			}
+			nodes.put(node.getLocation(), node);
+			prev = node;
+		}
+		SimMap map = new SimMap(nodes);
+
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.write(map);
+		SimMap resumed = (SimMap)checkpoint.resume();
+
+		assertEquals(nrofNodes, resumed.getNodes().size());
+		MapNode node = resumed.getNodeByCoord(new Coord(0, 0));
+		for (int i = 1; i < nrofNodes; i++) {
+			List<MapNode> neighbors = node.getNeighbors();
+			assertEquals(i == 1 ? 1 : 2, neighbors.size());
+			node = neighbors.get(neighbors.size() - 1);
+			assertEquals(new Coord(i, 0), node.getLocation());
+			assertSame(node, resumed.getNodeByCoord(node.getLocation()));
+		}
+	}
+
+	public void testFileName() throws IOException {
+		File dir = createTempFile("ckptdir");
+		dir.delete();
+		ts = new TestSettings();
+		ts.putSetting(Report.REPORTDIR_SETTING, dir.getPath());
+		ts.putSetting(Checkpoint.CHECKPOINT_NS + "." + Checkpoint.INTERVAL_S,
+				"10");
+		SimulationContext ctx = new SimulationContext(2);
+		ctx.setReportSubdir("sub");
+		SimulationContext.setCurrent(ctx);
+
+		Checkpoint checkpoint = new Checkpoint();
+		File expected = new File(new File(dir, "sub"), ts.getSetting(
+				SimScenario.SCENARIO_NS + "." + SimScenario.NAME_S) +
+				"_run3" + Checkpoint.DEF_FILE_SUFFIX);
+		assertEquals(expected, checkpoint.getFile());
+
+		checkpoint.write(new ArrayList<Serializable>());
+		assertTrue(expected.exists());
+		checkpoint.delete();
+		assertFalse(expected.exists());
+		new File(dir, "sub").delete();
+		dir.delete();
+
+		/* no checkpoints -> no file */
+		ts.putSetting(Checkpoint.CHECKPOINT_NS + "." + Checkpoint.INTERVAL_S,
+				"0");
+		assertNull(new Checkpoint().getFile());
+	}
+
+	private List<Integer> getAddresses(HashSet<?> hosts) {
+		List<Integer> addresses = new ArrayList<Integer>();
+		for (Object host : hosts) {
+			addresses.add(((DTNHost)host).getAddress());
+		}
+		return addresses;
+	}
+
+	private List<String> getIds(HashSet<?> messages) {
+		List<String> ids = new ArrayList<String>();
+		for (Object m : messages) {
+			ids.add(((Message)m).getId());
+		}
+		return ids;
+	}
+
+	private File createTempFile(String prefix) throws IOException {
+		File f = File.createTempFile(prefix, ".tmp");
+		f.deleteOnExit();
+		return f;
+	}
+
+	private String readFile(File f) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(f));
+		StringBuilder sb = new StringBuilder();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			sb.append(line).append('\n');
+		}
+		reader.close();
+		return sb.toString();
+	}
+
+	private void update(World world, int nrofUpdates) {
+		for (int i=0; i<nrofUpdates; i++) {
+			world.update();
+		}
+	}
+
+	/**
+	 * Creates a world with hosts that have random waypoint movement and
+	 * broadcast interfaces in the current simulation context
+	 * @param cl Connection listener of the interfaces
+	 * @return The world
+	 */
+	private World createWorld(ConnectionListener cl) {
+		DTNHost.reset();
+		TestSettings s = new TestSettings(null);
+		s.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.PER_HOST_RNG, "true");
+		s.setNameSpace("Group");
+		s.putSetting(MovementModel.SPEED, "0.5,1.5");
+		s.putSetting(MovementModel.WAIT_TIME, "0,10");
+		MovementModel mmProto = new RandomWaypoint(s);
+		s.setNameSpace(TestUtils.IFACE_NS);
+		s.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "20");
+		s.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+		List<ConnectionListener> cls = new ArrayList<ConnectionListener>();
+		cls.add(cl);
+
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i<30; i++) {
+			NetworkInterface ni = new SimpleBroadcastInterface(s);
+			ni.setGroupSettings(s);
+			ni.setClisteners(cls);
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(ni);
+			hosts.add(new DTNHost(null, null, "h", li,
+					new ModuleCommunicationBus(), mmProto,
+					new PassiveRouter(s)));
+		}
+
+		return new World(hosts, 100, 100, 1.0,
+				new ArrayList<UpdateListener>(), true,
+				new ArrayList<EventQueue>());
+	}
+}
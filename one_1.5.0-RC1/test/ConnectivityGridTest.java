@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import core.Coord;
+import core.DTNHost;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimulationContext;
+
+/**
+ * Tests for the ConnectivityGrid. The near interfaces given by the grid
+ * are compared against all the interfaces that are within range.
+ */
+public class ConnectivityGridTest extends TestCase {
+	private static final double RANGE = 10;
+	private static final int WORLD_SIZE = 200;
+	private Random rng;
+	private List<NetworkInterface> interfaces;
+	private ConnectivityGrid grid;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimulationContext.setCurrent(new SimulationContext(0));
+		DTNHost.reset();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.WORLD_SIZE, WORLD_SIZE + "," + WORLD_SIZE);
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "" + RANGE);
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+
+		rng = new Random(1);
+		interfaces = new ArrayList<NetworkInterface>();
+		for (int i=0; i<200; i++) {
+			NetworkInterface ni = new TestInterface(ts);
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(ni);
+			DTNHost host = new TestDTNHost(li, new ModuleCommunicationBus(),
+					ts);
+			interfaces.add(host.getInterfaces().get(0));
+		}
+		grid = (ConnectivityGrid)interfaces.get(0).getOptimizer();
+		moveAll();
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		SimulationContext.setCurrent(null);
+	}
+
+	public void testNearInterfaces() {
+		assertEquals(interfaces.size(), grid.getAllInterfaces().size());
+		assertTrue(grid.getCellSize() >= RANGE);
+		checkNearInterfaces(interfaces);
+	}
+
+	public void testMovingInterfaces() {
+		for (int round=0; round<20; round++) {
+			moveAll();
+			checkNearInterfaces(interfaces);
+		}
+	}
+
+	public void testIsInCurrentCell() {
+		NetworkInterface ni = interfaces.get(0);
+		assertTrue(grid.isInCurrentCell(ni));
+		Coord loc = ni.getLocation();
+		double x = (loc.getX() + grid.getCellSize()) % WORLD_SIZE;
+		ni.getHost().setLocation(new Coord(x, loc.getY()));
+		assertFalse(grid.isInCurrentCell(ni));
+		grid.updateLocation(ni);
+		assertTrue(grid.isInCurrentCell(ni));
+	}
+
+	public void testRemoveInterfaces() {
+		List<NetworkInterface> removed = new ArrayList<NetworkInterface>();
+		List<NetworkInterface> left = new ArrayList<NetworkInterface>();
+		for (int i=0; i<interfaces.size(); i++) {
+			if (i % 3 == 0) {
+				grid.removeInterface(interfaces.get(i));
+				removed.add(interfaces.get(i));
+			}
+			else {
+				left.add(interfaces.get(i));
+			}
+		}
+
+		assertEquals(new HashSet<NetworkInterface>(left),
+				new HashSet<NetworkInterface>(grid.getAllInterfaces()));
+		for (NetworkInterface ni : removed) {
+			assertEquals(0, grid.getNearInterfaces(ni).size());
+			assertFalse(grid.isInCurrentCell(ni));
+		}
+		checkNearInterfaces(left);
+		for (NetworkInterface ni : left) {
+			for (NetworkInterface near : grid.getNearInterfaces(ni)) {
+				assertFalse(removed.contains(near));
+			}
+		}
+
+		/* moving the rest and adding the removed ones back */
+		moveAll();
+		grid.addInterfaces(removed);
+		assertEquals(interfaces.size(), grid.getAllInterfaces().size());
+		checkNearInterfaces(interfaces);
+	}
+
+	/**
+	 * Moves all the interfaces to random locations and updates the
+	 * locations of the interfaces that are in the grid
+	 */
+	private void moveAll() {
+		for (NetworkInterface ni : interfaces) {
+			ni.getHost().setLocation(new Coord(rng.nextDouble() * WORLD_SIZE,
+					rng.nextDouble() * WORLD_SIZE));
+		}
+		for (NetworkInterface ni : grid.getAllInterfaces()) {
+			grid.updateLocation(ni);
+		}
+	}
+
+	/**
+	 * Checks that the near interfaces of every interface contain all the
+	 * interfaces within range (brute force) and no duplicates
+	 * @param inGrid The interfaces that are in the grid
+	 */
+	private void checkNearInterfaces(List<NetworkInterface> inGrid) {
+		int nrofInRange = 0;
+		for (NetworkInterface ni : inGrid) {
+			Collection<NetworkInterface> near = grid.getNearInterfaces(ni);
+			HashSet<NetworkInterface> nearSet =
+				new HashSet<NetworkInterface>(near);
+			assertEquals(near.size(), nearSet.size());
+
+			for (NetworkInterface other : inGrid) {
+				double dist = ni.getLocation().distance(other.getLocation());
+				if (dist <= RANGE) {
+					assertTrue(ni + " near " + other, nearSet.contains(other));
+					nrofInRange++;
+				}
+				else if (dist > 2 * Math.sqrt(2) * grid.getCellSize()) {
+					assertFalse(nearSet.contains(other));
+				}
+			}
+		}
+		assertTrue(nrofInRange > inGrid.size()); /* not only themselves */
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import report.MessageStatsReport;
+import report.Report;
+import routing.MessageRouter;
+import core.ConnectionListener;
+import core.ContactTrace;
+import core.Coord;
+import core.DTNHost;
+import core.NetworkInterface;
+import core.Settings;
+import core.SimClock;
+import core.SimScenario;
+import core.SimulationContext;
+import core.World;
+
+/**
+ * Tests for recording a contact trace and replaying the connections from it
+ */
+public class ContactTraceTest extends TestCase {
+	private File traceDir;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		traceDir = File.createTempFile("contacttrace", "");
+		traceDir.delete();
+		assertTrue(traceDir.mkdir());
+
+		TestSettings ts = new TestSettings();
+		ts.putSetting(SimScenario.SCENARIO_NS + "." + SimScenario.END_TIME_S,
+				"300");
+		ts.putSetting(SimScenario.SCENARIO_NS + "." + SimScenario.UP_INT_S,
+				"1");
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.WORLD_SIZE, "200,200");
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				ContactTrace.CONTACT_TRACE_DIR_S, traceDir.getPath());
+		ts.putSetting("btInterface.type", "SimpleBroadcastInterface");
+		ts.putSetting("btInterface." + NetworkInterface.TRANSMIT_RANGE_S,
+				"20");
+		ts.putSetting("btInterface." + NetworkInterface.TRANSMIT_SPEED_S,
+				"250");
+		ts.setNameSpace(SimScenario.GROUP_NS);
+		ts.putSetting(SimScenario.GROUP_ID_S, "h");
+		ts.putSetting(SimScenario.NROF_HOSTS_S, "30");
+		ts.putSetting(SimScenario.NROF_INTERF_S, "1");
+		ts.putSetting(SimScenario.INTERFACENAME_S + "1", "btInterface");
+		ts.putSetting(SimScenario.MOVEMENT_MODEL_S, "RandomWaypoint");
+		ts.putSetting(SimScenario.ROUTER_S, "PassiveRouter");
+		ts.putSetting(MovementModel.SPEED, "0.5,1.5");
+		ts.putSetting(MovementModel.WAIT_TIME, "0,10");
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		SimulationContext.setCurrent(null);
+		for (File f : traceDir.listFiles()) {
+			f.delete();
+		}
+		traceDir.delete();
+	}
+
+	public void testRecordAndReplay() {
+		ConnectionRecorder recorded = new ConnectionRecorder();
+		assertFalse(run(recorded));
+		assertTrue(recorded.events.size() > 0);
+		assertEquals(1, traceDir.listFiles().length);
+
+		ConnectionRecorder replayed = new ConnectionRecorder();
+		assertTrue(run(replayed));
+		assertEquals(recorded.events, replayed.events);
+		assertEquals(recorded.locations.get(0), replayed.locations.get(0));
+		assertEquals(1, replayed.locations.size()); /* hosts don't move */
+	}
+
+	public void testRoutedReplay() throws IOException {
+		TestSettings ts = new TestSettings(null);
+		ts.putSetting(SimScenario.SCENARIO_NS + "." + SimScenario.NAME_S,
+				"trace");
+		ts.putSetting("Events.nrof", "1");
+		ts.putSetting("Events1.class", "MessageEventGenerator");
+		ts.putSetting("Events1.interval", "1,3");
+		ts.putSetting("Events1.size", "500,2000");
+		ts.putSetting("Events1.hosts", "0,30");
+		ts.putSetting("Events1.prefix", "M");
+		ts.setNameSpace(SimScenario.GROUP_NS);
+		ts.putSetting(SimScenario.ROUTER_S, "EpidemicRouter");
+		ts.putSetting(MessageRouter.B_SIZE_S, "20000");
+		ts.putSetting(MessageRouter.MSG_TTL_S, "3");
+
+		File recordedStats = new File(traceDir, "recorded.txt");
+		assertFalse(run(new ConnectionRecorder(), recordedStats));
+		File replayedStats = new File(traceDir, "replayed.txt");
+		assertTrue(run(new ConnectionRecorder(), replayedStats));
+
+		String stats = read(recordedStats);
+		assertFalse(stats.contains("delivered: 0\n"));
+		assertEquals(stats, read(replayedStats));
+	}
+
+	public void testDifferentSettings() {
+		assertFalse(run(new ConnectionRecorder()));
+
+		/* a different range needs a new trace */
+		TestSettings ts = new TestSettings(null);
+		ts.putSetting("btInterface." + NetworkInterface.TRANSMIT_RANGE_S,
+				"10");
+		assertFalse(run(new ConnectionRecorder()));
+		assertEquals(2, traceDir.listFiles().length);
+	}
+
+	/**
+	 * Runs the scenario of the settings without message statistics
+	 * @see #run(ConnectionRecorder, File)
+	 */
+	private boolean run(ConnectionRecorder cl) {
+		return run(cl, null);
+	}
+
+	/**
+	 * Runs the scenario of the settings in a new simulation context with
+	 * contact traces in use
+	 * @param cl Connection listener of the scenario
+	 * @param stats File to write the message statistics to (or null for
+	 * no statistics)
+	 * @return True if the connections were replayed from a trace
+	 */
+	private boolean run(ConnectionRecorder cl, File stats) {
+		SimulationContext.setCurrent(new SimulationContext(0));
+		Settings.startRecording();
+		SimScenario scen = SimScenario.getInstance();
+		Map<String, String> reads = Settings.stopRecording();
+		scen.addConnectionListener(cl);
+		World world = scen.getWorld();
+		MessageStatsReport report = null;
+		if (stats != null) {
+			TestSettings ts = new TestSettings(null);
+			ts.putSetting("MessageStatsReport." + Report.OUTPUT_SETTING,
+					stats.getPath());
+			report = new MessageStatsReport();
+			scen.addMessageListener(report);
+		}
+
+		boolean replayed = ContactTrace.setup(world, reads, 0);
+		cl.addLocation(world.getHosts().get(0).getLocation());
+		while (SimClock.getTime() < scen.getEndTime()) {
+			world.update();
+			cl.addLocation(world.getHosts().get(0).getLocation());
+		}
+		if (report != null) {
+			report.done();
+		}
+		return replayed;
+	}
+
+	/**
+	 * Returns the contents of a file
+	 */
+	private String read(File file) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		FileReader reader = new FileReader(file);
+		char[] buf = new char[1024];
+		int n;
+		while ((n = reader.read(buf)) >= 0) {
+			sb.append(buf, 0, n);
+		}
+		reader.close();
+		return sb.toString();
+	}
+
+	/**
+	 * Connection listener that records the connection events and the
+	 * distinct locations of a host after every update
+	 */
+	private class ConnectionRecorder implements ConnectionListener {
+		private List<String> events = new ArrayList<String>();
+		private List<Coord> locations = new ArrayList<Coord>();
+
+		public void hostsConnected(DTNHost host1, DTNHost host2) {
+			events.add(SimClock.getTime() + " " + host1 + "-" + host2 + " up");
+		}
+
+		public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+			events.add(SimClock.getTime() + " " + host1 + "-" + host2 +
+					" down");
+		}
+
+		private void addLocation(Coord loc) {
+			if (locations.isEmpty() ||
+					!locations.get(locations.size() - 1).equals(loc)) {
+				locations.add(loc.clone());
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import report.Report;
+import core.DTNSim;
+import core.NetworkInterface;
+import core.SimScenario;
+import core.SimulationContext;
+
+/**
+ * Tests for the batch runs of the simulator
+ */
+public class DTNSimTest extends TestCase {
+	private File reportDir;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		reportDir = File.createTempFile("dtnsim", "");
+		reportDir.delete();
+		assertTrue(reportDir.mkdir());
+
+		TestSettings ts = new TestSettings();
+		ts.putSetting(SimScenario.SCENARIO_NS + "." + SimScenario.NAME_S,
+				"batch");
+		ts.putSetting(SimScenario.SCENARIO_NS + "." + SimScenario.END_TIME_S,
+				"100");
+		ts.putSetting(SimScenario.SCENARIO_NS + "." + SimScenario.UP_INT_S,
+				"1");
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.WORLD_SIZE, "200,200");
+		ts.putSetting("Report.nrofReports", "1");
+		ts.putSetting("Report.report1", "MessageStatsReport");
+		ts.putSetting(Report.REPORTDIR_SETTING, reportDir.getPath());
+		ts.putSetting("btInterface.type", "SimpleBroadcastInterface");
+		ts.putSetting("btInterface." + NetworkInterface.TRANSMIT_RANGE_S,
+				"20");
+		ts.putSetting("btInterface." + NetworkInterface.TRANSMIT_SPEED_S,
+				"250");
+		ts.setNameSpace(SimScenario.GROUP_NS);
+		ts.putSetting(SimScenario.GROUP_ID_S, "h");
+		ts.putSetting(SimScenario.NROF_HOSTS_S, "[10; abc; 10]");
+		ts.putSetting(SimScenario.NROF_INTERF_S, "1");
+		ts.putSetting(SimScenario.INTERFACENAME_S + "1", "btInterface");
+		ts.putSetting(SimScenario.MOVEMENT_MODEL_S, "RandomWaypoint");
+		ts.putSetting(SimScenario.ROUTER_S, "PassiveRouter");
+		ts.putSetting(MovementModel.SPEED, "0.5,1.5");
+		ts.putSetting(MovementModel.WAIT_TIME, "0,10");
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		SimulationContext.setCurrent(null);
+		delete(reportDir);
+	}
+
+	public void testFailingParallelRun() {
+		List<String> failed = DTNSim.runBatchInParallel(0, 3, 3);
+
+		assertEquals(Arrays.asList("Run 2/3"), failed);
+		/* the other runs are finished */
+		assertEquals(1, new File(reportDir, "run1").list().length);
+		assertEquals(1, new File(reportDir, "run3").list().length);
+		assertFalse(new File(reportDir, "run2").exists());
+	}
+
+	private void delete(File f) {
+		if (f.isDirectory()) {
+			for (File child : f.listFiles()) {
+				delete(child);
+			}
+		}
+		f.delete();
+	}
+}
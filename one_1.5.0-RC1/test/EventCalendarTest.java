@@ -0,0 +1,116 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventCalendar;
+import input.EventQueue;
+import input.ScheduledUpdatesQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import core.SimClock;
+
+/**
+ * Tests for the EventCalendar
+ */
+public class EventCalendarTest extends TestCase {
+	private static double MAX = Double.MAX_VALUE;
+	private List<ScheduledUpdatesQueue> queues;
+	private EventCalendar cal;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		queues = new ArrayList<ScheduledUpdatesQueue>();
+		for (int i=0; i<5; i++) {
+			queues.add(new ScheduledUpdatesQueue());
+		}
+	}
+
+	private void createCalendar() {
+		cal = new EventCalendar(new ArrayList<EventQueue>(queues));
+	}
+
+	/**
+	 * Takes the next event from the calendar and returns the index of the
+	 * queue it was taken from
+	 */
+	private int next(double expectedTime) {
+		int index = cal.getNextQueueIndex();
+		assertEquals(expectedTime, cal.getNextEventsTime());
+		assertSame(queues.get(index), cal.getNextQueue());
+		assertEquals(expectedTime, cal.getNextQueue().nextEvent().getTime());
+		cal.update(index);
+		return index;
+	}
+
+	public void testEmpty() {
+		createCalendar();
+		assertEquals(MAX, cal.getNextEventsTime());
+		assertEquals(0, cal.getNextQueueIndex());
+	}
+
+	public void testOrder() {
+		queues.get(0).addUpdate(5);
+		queues.get(1).addUpdate(2);
+		queues.get(1).addUpdate(6);
+		queues.get(2).addUpdate(1);
+		queues.get(3).addUpdate(4);
+		queues.get(4).addUpdate(3);
+		queues.get(4).addUpdate(7);
+		createCalendar();
+
+		assertEquals(2, next(1));
+		assertEquals(1, next(2));
+		assertEquals(4, next(3));
+		assertEquals(3, next(4));
+		assertEquals(0, next(5));
+		assertEquals(1, next(6));
+		assertEquals(4, next(7));
+		assertEquals(MAX, cal.getNextEventsTime());
+	}
+
+	public void testEqualTimes() {
+		queues.get(3).addUpdate(2);
+		queues.get(1).addUpdate(2);
+		queues.get(4).addUpdate(2);
+		queues.get(2).addUpdate(1);
+		queues.get(2).addUpdate(2);
+		createCalendar();
+
+		assertEquals(2, next(1));
+		assertEquals(1, next(2));
+		assertEquals(2, next(2));
+		assertEquals(3, next(2));
+		assertEquals(4, next(2));
+	}
+
+	public void testUpdates() {
+		queues.get(1).addUpdate(5);
+		queues.get(3).addUpdate(8);
+		createCalendar();
+
+		queues.get(4).addUpdate(3); // to the top
+		cal.update(4);
+		queues.get(0).addUpdate(9);
+		cal.update(0);
+
+		assertEquals(4, next(3));
+		queues.get(2).addUpdate(6);
+		cal.update(2);
+		assertEquals(1, next(5));
+		assertEquals(2, next(6));
+		assertEquals(3, next(8));
+
+		queues.get(1).addUpdate(1);
+		assertEquals(0, cal.getNextQueueIndex()); // not updated yet
+		cal.updateAll();
+		assertEquals(1, next(1));
+		assertEquals(0, next(9));
+		assertEquals(MAX, cal.getNextEventsTime());
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import input.EventQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.Path;
+import routing.PassiveRouter;
+import interfaces.SimpleBroadcastInterface;
+import core.ConnectionListener;
+import core.Coord;
+import core.DTNHost;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+import core.SimulationContext;
+import core.UpdateListener;
+import core.World;
+
+/**
+ * Tests for the kinetic contact detection. The hosts move on straight
+ * lines so the times when they get in and out of range can be computed
+ * beforehand.
+ */
+public class KineticContactsTest extends TestCase {
+	private static final double TIME_DELTA = 0.00001;
+	private List<Double> upTimes;
+	private List<Double> downTimes;
+	private World world;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimulationContext.setCurrent(new SimulationContext(0));
+		DTNHost.reset();
+		upTimes = new ArrayList<Double>();
+		downTimes = new ArrayList<Double>();
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		SimulationContext.setCurrent(null);
+	}
+
+	public void testPassingStationaryHost() {
+		/* in range (10) when x is between 40 and 60 */
+		createWorld(true, 7, 10,
+				new LineMovement(new Coord(0, 50), new Coord(100, 50), 1),
+				new LineMovement(new Coord(50, 50), new Coord(50, 50), 1));
+		runUntil(100);
+
+		assertEquals(1, upTimes.size());
+		assertEquals(40.0, upTimes.get(0), TIME_DELTA);
+		assertEquals(1, downTimes.size());
+		assertEquals(60.0, downTimes.get(0), TIME_DELTA);
+	}
+
+	public void testCrossingHosts() {
+		/* distance is |100 - sqrt(2) * t| until the hosts stop at 100 */
+		createWorld(true, 7, 10,
+				new LineMovement(new Coord(0, 0), new Coord(100, 100), 1),
+				new LineMovement(new Coord(100, 0), new Coord(0, 100), 1));
+		runUntil(200);
+
+		assertEquals(1, upTimes.size());
+		assertEquals(90 / Math.sqrt(2), upTimes.get(0), TIME_DELTA);
+		assertEquals(1, downTimes.size());
+		assertEquals(110 / Math.sqrt(2), downTimes.get(0), TIME_DELTA);
+	}
+
+	public void testFastHostsAreNotMissed() {
+		/* in range (5) only between 9.75 and 10.25 */
+		LineMovement a = new LineMovement(new Coord(0, 50),
+				new Coord(200, 50), 10);
+		LineMovement b = new LineMovement(new Coord(200, 50),
+				new Coord(0, 50), 10);
+
+		createWorld(false, 7, 5, a, b);
+		runUntil(28);
+		assertEquals(0, upTimes.size()); /* polling misses the contact */
+
+		SimulationContext.setCurrent(new SimulationContext(0));
+		createWorld(true, 7, 5, a, b);
+		runUntil(28);
+		assertEquals(1, upTimes.size());
+		assertEquals(9.75, upTimes.get(0), TIME_DELTA);
+		assertEquals(1, downTimes.size());
+		assertEquals(10.25, downTimes.get(0), TIME_DELTA);
+	}
+
+	public void testFasterNextPath() {
+		/* the first path ends at 5 and the second path (at speed 10) 
+		 * starts in the next step where the host moves 10 (the speed of
+		 * the first path) in 10 s; in range (1) when x is between 7 and 9 */
+		createWorld(true, 10, 1,
+				new PathsMovement(path(1, 0, 5), path(10, 5, 100)),
+				new LineMovement(new Coord(8, 0), new Coord(8, 0), 1));
+		runUntil(20);
+
+		assertEquals(1, upTimes.size());
+		assertEquals(12.0, upTimes.get(0), TIME_DELTA);
+		assertEquals(1, downTimes.size());
+		assertEquals(14.0, downTimes.get(0), TIME_DELTA);
+	}
+
+	public void testSlowerNextPath() {
+		/* the first path ends at 20 and the second path (at speed 1) has
+		 * two waypoints that both are passed in the next step, taking
+		 * the whole step; in range (3) when x is between 22 and 28 */
+		createWorld(true, 10, 3,
+				new PathsMovement(path(10, 0, 20), path(1, 20, 30, 40)),
+				new LineMovement(new Coord(25, 0), new Coord(25, 0), 1));
+		runUntil(20);
+
+		assertEquals(1, upTimes.size());
+		assertEquals(12.0, upTimes.get(0), TIME_DELTA);
+		assertEquals(1, downTimes.size());
+		assertEquals(18.0, downTimes.get(0), TIME_DELTA);
+	}
+
+	/**
+	 * Creates a path along the x axis
+	 * @param speed Speed of the path
+	 * @param xs The x coordinates of the waypoints
+	 * @return The path
+	 */
+	private static Path path(double speed, double... xs) {
+		Path p = new Path(speed);
+		for (double x : xs) {
+			p.addWaypoint(new Coord(x, 0));
+		}
+		return p;
+	}
+
+	private void runUntil(double time) {
+		while (SimClock.getTime() < time - TIME_DELTA) {
+			world.update();
+		}
+	}
+
+	/**
+	 * Creates a world with hosts that have broadcast interfaces
+	 * @param kinetic If true, kinetic contact detection is used
+	 * @param interval The update interval
+	 * @param range Transmit range of the interfaces
+	 * @param movements Movement models of the hosts
+	 */
+	private void createWorld(boolean kinetic, double interval, double range,
+			MovementModel... movements) {
+		DTNHost.reset();
+		upTimes.clear();
+		downTimes.clear();
+		TestSettings s = new TestSettings();
+		s.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				World.KINETIC_CONTACTS_S, "" + kinetic);
+		s.setNameSpace(TestUtils.IFACE_NS);
+		s.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "" + range);
+		s.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+		List<ConnectionListener> cls = new ArrayList<ConnectionListener>();
+		cls.add(new ContactListener());
+
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (MovementModel mm : movements) {
+			NetworkInterface ni = new SimpleBroadcastInterface(s);
+			ni.setGroupSettings(s);
+			ni.setClisteners(cls);
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(ni);
+			hosts.add(new DTNHost(null, null, "h", li,
+					new ModuleCommunicationBus(), mm, new PassiveRouter(s)));
+		}
+
+		this.world = new World(hosts, 1000, 1000, interval,
+				new ArrayList<UpdateListener>(), true,
+				new ArrayList<EventQueue>());
+	}
+
+	/** Connection listener that records the contact times */
+	private class ContactListener implements ConnectionListener {
+		public void hostsConnected(DTNHost host1, DTNHost host2) {
+			upTimes.add(SimClock.getTime());
+		}
+
+		public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+			downTimes.add(SimClock.getTime());
+		}
+	}
+
+	/**
+	 * Movement model where the host moves once from a location to another
+	 * at a constant speed and then stays there
+	 */
+	private static class LineMovement extends MovementModel {
+		private Coord from;
+		private Coord to;
+		private double speed;
+		private boolean moved;
+
+		public LineMovement(Coord from, Coord to, double speed) {
+			this.from = from;
+			this.to = to;
+			this.speed = speed;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return from.clone();
+		}
+
+		@Override
+		public boolean isActive() {
+			return true;
+		}
+
+		@Override
+		public Path getPath() {
+			if (moved) {
+				return null;
+			}
+			moved = true;
+			Path p = new Path(speed);
+			p.addWaypoint(from.clone());
+			p.addWaypoint(to.clone());
+			return p;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			return moved ? Double.MAX_VALUE : 0;
+		}
+
+		@Override
+		public LineMovement replicate() {
+			return new LineMovement(from, to, speed);
+		}
+	}
+
+	/**
+	 * Movement model where the host moves the given paths one after
+	 * another without waiting and then stays at the end of the last one
+	 */
+	private static class PathsMovement extends MovementModel {
+		private Path[] paths;
+		private int next;
+
+		public PathsMovement(Path... paths) {
+			this.paths = paths;
+		}
+
+		@Override
+		public Coord getInitialLocation() {
+			return paths[0].getCoords().get(0).clone();
+		}
+
+		@Override
+		public boolean isActive() {
+			return true;
+		}
+
+		@Override
+		public Path getPath() {
+			return next < paths.length ? paths[next++] : null;
+		}
+
+		@Override
+		public double nextPathAvailable() {
+			return next < paths.length ? 0 : Double.MAX_VALUE;
+		}
+
+		@Override
+		public PathsMovement replicate() {
+			return new PathsMovement(paths);
+		}
+	}
+}
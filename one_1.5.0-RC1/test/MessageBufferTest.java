@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import routing.util.MessageBuffer;
+import core.Message;
+import core.SimClock;
+
+/**
+ * Tests for the MessageBuffer
+ */
+public class MessageBufferTest extends TestCase {
+	private MessageBuffer buffer;
+	private SimClock sc;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimClock.reset();
+		sc = SimClock.getInstance();
+		buffer = new MessageBuffer();
+	}
+
+	private Message newMsg(String id, double time, int size) {
+		sc.setTime(time);
+		Message m = new Message(null, null, id, size);
+		buffer.add(m);
+		return m;
+	}
+
+	public void testOccupancy() {
+		newMsg("M1", 1, 100);
+		newMsg("M2", 2, 200);
+		assertEquals(300, buffer.getOccupancy());
+		assertEquals(2, buffer.size());
+
+		newMsg("M1", 3, 50); /* replaces the old M1 */
+		assertEquals(250, buffer.getOccupancy());
+		assertEquals(2, buffer.size());
+
+		assertNotNull(buffer.remove("M2"));
+		assertNull(buffer.remove("M2"));
+		assertEquals(50, buffer.getOccupancy());
+		assertFalse(buffer.contains("M2"));
+		assertEquals(3.0, buffer.get("M1").getReceiveTime());
+	}
+
+	public void testOldest() {
+		List<String> none = Collections.emptyList();
+		assertNull(buffer.getOldest(none));
+
+		Message m3 = newMsg("M3", 3, 10);
+		Message m1 = newMsg("M1", 1, 10);
+		Message m2 = newMsg("M2", 2, 10);
+
+		assertEquals(m1, buffer.getOldest(none));
+		assertEquals(m2, buffer.getOldest(Arrays.asList("M1")));
+		assertEquals(m3, buffer.getOldest(Arrays.asList("M1", "M2")));
+		assertNull(buffer.getOldest(Arrays.asList("M1", "M2", "M3")));
+
+		buffer.remove("M1");
+		assertEquals(m2, buffer.getOldest(none));
+	}
+
+	public void testOldestTies() {
+		List<String> none = Collections.emptyList();
+		HashMap<String, Message> map = new HashMap<String, Message>();
+		for (int i = 0; i < 20; i++) {
+			Message m = newMsg("M" + i, i % 3 + 1, 10);
+			map.put(m.getId(), m);
+		}
+
+		/* ties are resolved by the iteration order */
+		List<Message> oldest = new ArrayList<Message>();
+		for (Message m : map.values()) {
+			if (m.getReceiveTime() == 1) {
+				oldest.add(m);
+			}
+		}
+		assertEquals(oldest.get(0), buffer.getOldest(none));
+		assertEquals(oldest.get(1), buffer.getOldest(
+				Arrays.asList(oldest.get(0).getId())));
+	}
+
+	public void testOldestTiesAddOrder() {
+		buffer = new MessageBuffer(true);
+		List<String> none = Collections.emptyList();
+		List<Message> added = new ArrayList<Message>();
+		for (int i = 0; i < 20; i++) {
+			added.add(newMsg("M" + i, i % 3 + 1, 10));
+		}
+
+		/* ties are resolved by the order the messages were added in */
+		assertEquals(added.get(0), buffer.getOldest(none));
+		assertEquals(added.get(3), buffer.getOldest(Arrays.asList("M0")));
+		assertEquals(added.get(6), buffer.getOldest(
+				Arrays.asList("M0", "M3")));
+
+		/* a replaced message is added again */
+		newMsg("M0", 1, 10);
+		assertEquals(added.get(3), buffer.getOldest(none));
+		buffer.remove("M3");
+		assertEquals(added.get(6), buffer.getOldest(none));
+	}
+
+	public void testIterationOrderAndRemove() {
+		Random rng = new Random(1);
+		HashMap<String, Message> map = new HashMap<String, Message>();
+		for (int i = 0; i < 200; i++) {
+			String id = "M" + rng.nextInt(100);
+			if (rng.nextInt(3) == 0) {
+				assertEquals(map.remove(id), buffer.remove(id));
+			} else {
+				Message m = newMsg(id, rng.nextInt(50), 1);
+				map.put(id, m);
+			}
+		}
+		assertEquals(new ArrayList<Message>(map.values()),
+				new ArrayList<Message>(buffer.getMessages()));
+		assertEquals(map.size(), buffer.getOccupancy());
+
+		/* removing through the view */
+		for (Iterator<Message> i = buffer.getMessages().iterator();
+				i.hasNext();) {
+			if (i.next().getReceiveTime() < 25) {
+				i.remove();
+			}
+		}
+		List<String> none = Collections.emptyList();
+		double prev = -1;
+		while (buffer.size() > 0) {
+			Message m = buffer.getOldest(none);
+			assertTrue(m.getReceiveTime() >= 25);
+			assertTrue(m.getReceiveTime() >= prev);
+			prev = m.getReceiveTime();
+			buffer.remove(m.getId());
+		}
+		assertEquals(0, buffer.getOccupancy());
+	}
+}
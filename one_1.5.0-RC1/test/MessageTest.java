@@ -4,6 +4,8 @@
  */
 package test;
 
+import java.util.Arrays;
+
 import junit.framework.TestCase;
 
 import org.junit.Before;
@@ -61,4 +63,72 @@ public class MessageTest extends TestCase {
 	}
 
 
+	@Test
+	public void testReplicate() {
+		msg.addProperty("foo", "value1");
+		Message rep = msg.replicate();
+		assertEquals(msg.getId(), rep.getId());
+		assertEquals(10, rep.getTtl());
+		assertEquals("value1", rep.getProperty("foo"));
+		assertTrue(msg.getUniqueId() != rep.getUniqueId());
+		
+		/* changes to the replicate must not change the original */
+		rep.setTtl(5);
+		rep.updateProperty("foo", "value2");
+		rep.addNodeOnPath(to);
+		assertEquals(10, msg.getTtl());
+		assertEquals("value1", msg.getProperty("foo"));
+		assertEquals(1, msg.getHops().size());
+		assertEquals(5, rep.getTtl());
+		assertEquals("value2", rep.getProperty("foo"));
+		assertEquals(2, rep.getHops().size());
+		
+		/* ...and the other way around */
+		Message rep2 = msg.replicate();
+		msg.setAppID("app");
+		msg.addProperty("bar", "value3");
+		assertNull(rep2.getAppID());
+		assertNull(rep2.getProperty("bar"));
+	}
+
+	@Test
+	public void testHops() {
+		TestUtils utils = new TestUtils(null, null, new TestSettings());
+		DTNHost h1 = utils.createHost();
+		DTNHost h2 = utils.createHost();
+		DTNHost h3 = utils.createHost();
+		Message m = new Message(h1, h3, "H", 100);
+		assertEquals(0, m.getHopCount());
+		
+		Message rep1 = m.replicate();
+		rep1.addNodeOnPath(h2);
+		Message rep2 = rep1.replicate();
+		rep2.addNodeOnPath(h3);
+		rep1.addNodeOnPath(h1);
+		
+		assertEquals(0, m.getHopCount());
+		assertEquals(2, rep1.getHopCount());
+		assertEquals(2, rep2.getHopCount());
+		assertEquals(Arrays.asList(h1), m.getHops());
+		assertEquals(Arrays.asList(h1, h2, h1), rep1.getHops());
+		assertEquals(Arrays.asList(h1, h2, h3), rep2.getHops());
+		assertFalse(m.isOnPath(h2));
+		assertTrue(rep1.isOnPath(h2));
+		assertFalse(rep1.isOnPath(h3));
+		assertTrue(rep2.isOnPath(h3));
+	}
+
+	@Test
+	public void testIdIndex() {
+		Message m1 = new Message(from, to, "I1", 100);
+		Message m2 = new Message(from, to, "I2", 100);
+		Message again = new Message(from, to, "I1", 50);
+		
+		assertFalse(m1.getIdIndex() == m2.getIdIndex());
+		assertEquals(m1.getIdIndex(), again.getIdIndex());
+		assertEquals(m1.getIdIndex(), m1.replicate().getIdIndex());
+		assertEquals(m2.getIdIndex(), Message.getIdIndex("I2"));
+		assertEquals(-1, Message.getIdIndex("no such id"));
+	}
+
 }
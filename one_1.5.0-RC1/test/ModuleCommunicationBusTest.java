@@ -11,6 +11,7 @@ import org.junit.Test;
 
 import core.ModuleCommunicationBus;
 import core.ModuleCommunicationListener;
+import core.SimError;
 
 public class ModuleCommunicationBusTest extends TestCase {
 
@@ -103,4 +104,37 @@ public class ModuleCommunicationBusTest extends TestCase {
 		assertEquals(-16.7, b.getDouble(key, -1.0));
 	}	
 
+	@Test
+	public void testSlots() {
+		String key = "slottst";
+		int slot = ModuleCommunicationBus.getSlot(key);
+		assertEquals(slot, ModuleCommunicationBus.getSlot(key));
+		assertEquals(key, ModuleCommunicationBus.getKey(slot));
+		
+		assertFalse(b.containsProperty(slot));
+		assertEquals(-1.0, b.getDouble(slot, -1.0));
+		b.subscribe(slot, mcl);
+		b.addProperty(key, 2.5);
+		assertTrue(b.containsProperty(slot));
+		assertEquals(key, notifyKey);
+		assertEquals(2.5, notifyValue);
+		
+		b.setDouble(slot, 4.0);
+		assertEquals(4.0, b.getDouble(key, -1.0));
+		assertEquals(4.0, b.getProperty(key));
+		assertEquals(4.0, notifyValue);
+		assertEquals(5.5, b.updateDouble(slot, 1.5));
+		assertEquals(5.5, notifyValue);
+		
+		b.updateProperty(slot, 3);
+		assertEquals(3, b.getInt(key, -1));
+		assertEquals(3, b.getProperty(slot));
+		try {
+			b.getDouble(slot, -1.0);
+			fail("Integer value returned as Double");
+		} catch (SimError e) {
+			/* expected */
+		}
+	}
+
 }
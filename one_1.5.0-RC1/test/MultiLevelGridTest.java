@@ -0,0 +1,195 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.ConnectivityOptimizer;
+import interfaces.MultiLevelGrid;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import movement.MovementModel;
+import core.Coord;
+import core.DTNHost;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimulationContext;
+import core.World;
+
+/**
+ * Tests for the MultiLevelGrid. The interfaces within range of each other
+ * that are found from the near interfaces given by the grid are compared
+ * against the ConnectivityGrid and against all the interfaces within
+ * range.
+ */
+public class MultiLevelGridTest extends TestCase {
+	private static final int WORLD_SIZE = 1000;
+	private Random rng;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		rng = new Random(1);
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		SimulationContext.setCurrent(null);
+	}
+
+	public void testSameAsConnectivityGrid() {
+		List<NetworkInterface> single = createInterfaces(false, 300, 30);
+		List<NetworkInterface> multi = createInterfaces(true, 300, 30);
+		assertTrue(single.get(0).getOptimizer() instanceof ConnectivityGrid);
+		assertTrue(multi.get(0).getOptimizer() instanceof MultiLevelGrid);
+
+		for (int round=0; round<5; round++) {
+			moveAll(single, new Random(round));
+			moveAll(multi, new Random(round));
+			int nrofInRange = 0;
+			for (int i=0; i<single.size(); i++) {
+				Set<Integer> expected = getInRange(single.get(i));
+				assertEquals(expected, getInRange(multi.get(i)));
+				nrofInRange += expected.size();
+			}
+			assertTrue(nrofInRange > single.size());
+		}
+	}
+
+	public void testMixedRanges() {
+		double[] ranges = {5, 50, 500};
+		List<NetworkInterface> interfaces = createInterfaces(true, 300, 5);
+		for (int i=0; i<interfaces.size(); i++) {
+			ModuleCommunicationBus comBus =
+				interfaces.get(i).getHost().getComBus();
+			comBus.updateProperty(NetworkInterface.RANGE_ID,
+					ranges[i % ranges.length]);
+		}
+
+		for (int round=0; round<5; round++) {
+			moveAll(interfaces, rng);
+			int nrofShortNear = 0;
+			for (NetworkInterface ni : interfaces) {
+				checkNearInterfaces(ni, interfaces);
+				if (ni.getTransmitRange() == ranges[0]) {
+					nrofShortNear += getNear(ni).size();
+				}
+			}
+			/* short range interfaces see only a few of the others */
+			assertTrue(nrofShortNear < interfaces.size() * 100 / 3);
+		}
+	}
+
+	public void testRemoveInterfaces() {
+		List<NetworkInterface> interfaces = createInterfaces(true, 300, 30);
+		MultiLevelGrid grid = (MultiLevelGrid)interfaces.get(0).getOptimizer();
+		List<NetworkInterface> left = new ArrayList<NetworkInterface>();
+		for (int i=0; i<interfaces.size(); i++) {
+			if (i % 3 == 0) {
+				grid.removeInterface(interfaces.get(i));
+				assertEquals(0, getNear(interfaces.get(i)).size());
+			}
+			else {
+				left.add(interfaces.get(i));
+			}
+		}
+		assertEquals(new HashSet<NetworkInterface>(left),
+				new HashSet<NetworkInterface>(grid.getAllInterfaces()));
+
+		moveAll(left, rng);
+		for (NetworkInterface ni : left) {
+			checkNearInterfaces(ni, left);
+		}
+	}
+
+	/**
+	 * Creates hosts with an interface in a new simulation context
+	 * @param multiLevel If true, the multi-level grid is used
+	 * @param nrofHosts Number of hosts to create
+	 * @param range Transmit range of the interfaces
+	 * @return The interfaces of the hosts
+	 */
+	private List<NetworkInterface> createInterfaces(boolean multiLevel,
+			int nrofHosts, double range) {
+		SimulationContext.setCurrent(new SimulationContext(0));
+		DTNHost.reset();
+		TestSettings ts = new TestSettings();
+		ts.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." +
+				MovementModel.WORLD_SIZE, WORLD_SIZE + "," + WORLD_SIZE);
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				MultiLevelGrid.MULTI_LEVEL_GRID_S, "" + multiLevel);
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "" + range);
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+
+		List<NetworkInterface> interfaces = new ArrayList<NetworkInterface>();
+		for (int i=0; i<nrofHosts; i++) {
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(new TestInterface(ts));
+			DTNHost host = new TestDTNHost(li, new ModuleCommunicationBus(),
+					ts);
+			interfaces.add(host.getInterfaces().get(0));
+		}
+		return interfaces;
+	}
+
+	/**
+	 * Moves the interfaces to random locations and updates them to their
+	 * grid
+	 */
+	private void moveAll(List<NetworkInterface> interfaces, Random rng) {
+		for (NetworkInterface ni : interfaces) {
+			ni.getHost().setLocation(new Coord(rng.nextDouble() * WORLD_SIZE,
+					rng.nextDouble() * WORLD_SIZE));
+			ni.getOptimizer().updateLocation(ni);
+		}
+	}
+
+	private List<NetworkInterface> getNear(NetworkInterface ni) {
+		return new ArrayList<NetworkInterface>(
+				ni.getOptimizer().getNearInterfaces(ni));
+	}
+
+	/**
+	 * Returns the addresses of the hosts whose interfaces are among the
+	 * near interfaces and within range of the interface
+	 */
+	private Set<Integer> getInRange(NetworkInterface ni) {
+		Set<Integer> inRange = new HashSet<Integer>();
+		for (NetworkInterface other : getNear(ni)) {
+			if (isInRange(ni, other)) {
+				inRange.add(other.getHost().getAddress());
+			}
+		}
+		return inRange;
+	}
+
+	private boolean isInRange(NetworkInterface a, NetworkInterface b) {
+		return a.getLocation().distance(b.getLocation()) <=
+			Math.min(a.getTransmitRange(), b.getTransmitRange());
+	}
+
+	/**
+	 * Checks that the near interfaces of an interface contain all the
+	 * interfaces within range (brute force) and no duplicates
+	 */
+	private void checkNearInterfaces(NetworkInterface ni,
+			List<NetworkInterface> inGrid) {
+		ConnectivityOptimizer grid = ni.getOptimizer();
+		List<NetworkInterface> near = getNear(ni);
+		Set<NetworkInterface> nearSet = new HashSet<NetworkInterface>(near);
+		assertEquals(near.size(), nearSet.size());
+		assertTrue(grid.getAllInterfaces().containsAll(nearSet));
+		for (NetworkInterface other : inGrid) {
+			if (isInRange(ni, other)) {
+				assertTrue(ni + " near " + other, nearSet.contains(other));
+			}
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import interfaces.ConnectivityGrid;
+import interfaces.SINRInterface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import routing.PassiveRouter;
+import core.Connection;
+import core.Coord;
+import core.DTNHost;
+import core.Message;
+import core.MessageListener;
+import core.ModuleCommunicationBus;
+import core.NetworkInterface;
+import core.SimClock;
+import core.SimulationContext;
+import core.World;
+
+/**
+ * Tests for the SINRInterface. The speeds of the links are checked
+ * against the speeds computed from the signal, noise and interference
+ * powers.
+ */
+public class SINRInterfaceTest extends TestCase {
+	private static final double RANGE = 100;
+	private static final int SPEED = 1000;
+	/* noise power that gives the default SNR (10 dB) at the range edge */
+	private static final double NOISE = Math.pow(RANGE,
+			-SINRInterface.DEF_PATH_LOSS_EXPONENT) / 10;
+	/* capacity at the default full speed SINR (20 dB) */
+	private static final double MAX_CAPACITY = log2(1 + 100);
+	private TestSettings ts;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		SimulationContext.setCurrent(new SimulationContext(0));
+		DTNHost.reset();
+		ts = new TestSettings();
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		ts.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "" + RANGE);
+		ts.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "" + SPEED);
+		ts.setNameSpace(null);
+		SimClock.getInstance().setTime(1);
+	}
+
+	protected void tearDown() throws Exception {
+		super.tearDown();
+		SimulationContext.setCurrent(null);
+	}
+
+	public void testFullSpeedWithoutInterference() {
+		NetworkInterface sender = startSending(new Coord(10, 0));
+		Connection con = sender.getConnections().get(0);
+
+		sender.update();
+		assertEquals(SPEED, sender.getTransmitSpeed());
+		assertEquals(10000 - SPEED, con.getRemainingByteCount());
+	}
+
+	public void testSpeedAtRangeEdge() {
+		NetworkInterface sender = startSending(new Coord(RANGE, 0));
+
+		sender.update();
+		assertEquals(getSpeed(Math.pow(RANGE, -3), 0),
+				sender.getTransmitSpeed());
+		assertTrue(sender.getTransmitSpeed() < SPEED);
+	}
+
+	public void testInterferenceLowersSpeed() {
+		NetworkInterface sender = startSending(new Coord(50, 0));
+		startSending(new Coord(50, 40), new Coord(50, 45));
+
+		sender.update();
+		int speed = getSpeed(Math.pow(50, -3), Math.pow(40, -3));
+		assertEquals(speed, sender.getTransmitSpeed());
+		assertTrue(speed > 0 && speed < getSpeed(Math.pow(50, -3), 0));
+	}
+
+	public void testLinkRejectedByInterference() {
+		NetworkInterface sender = startSending(new Coord(90, 0));
+		Connection con = sender.getConnections().get(0);
+		startSending(new Coord(90, 1), new Coord(90, 2));
+
+		sender.update();
+		assertEquals(0, sender.getTransmitSpeed());
+		assertEquals(10000, con.getRemainingByteCount());
+	}
+
+	public void testFarCellInterference() {
+		ts.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." +
+				ConnectivityGrid.CELL_SIZE_MULT_S, "1");
+		List<NetworkInterface> transmitters =
+			new ArrayList<NetworkInterface>();
+		for (int i=0; i<20; i++) {
+			transmitters.add(createHost(new Coord(600 + (i % 5) * 10,
+					600 + (i / 5) * 10)));
+		}
+		NetworkInterface near = createHost(new Coord(10, 10));
+		transmitters.add(near);
+		ConnectivityGrid grid = (ConnectivityGrid)near.getOptimizer();
+		assertEquals((int)RANGE, grid.getCellSize());
+		grid.setTransmitters(transmitters, 1);
+
+		Coord rx = new Coord(20, 10);
+		double exact = 0;
+		for (NetworkInterface ni : transmitters) {
+			exact += Math.pow(Math.max(1, rx.distance(ni.getLocation())), -3);
+		}
+		double sum = grid.getInterference(rx, 3, null, null);
+		assertEquals(exact, sum, exact * 0.01);
+		/* the near transmitter is summed exactly */
+		assertEquals(exact - Math.pow(10, -3),
+				grid.getInterference(rx, 3, near, null), exact * 0.01);
+	}
+
+	/**
+	 * Returns the speed of a link with the given signal and interference
+	 * powers
+	 */
+	private int getSpeed(double signal, double interference) {
+		double capacity = log2(1 + signal / (NOISE + interference));
+		return (int)Math.floor(SPEED * Math.min(1, capacity / MAX_CAPACITY));
+	}
+
+	private static double log2(double value) {
+		return Math.log(value) / Math.log(2);
+	}
+
+	/**
+	 * Creates a host with an SINR interface at a location
+	 * @param loc The location
+	 * @return The interface of the host
+	 */
+	private NetworkInterface createHost(Coord loc) {
+		ts.setNameSpace(TestUtils.IFACE_NS);
+		NetworkInterface ni = new SINRInterface(ts);
+		ni.setGroupSettings(ts);
+		ts.setNameSpace(null);
+		List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+		li.add(ni);
+		DTNHost host = new DTNHost(new ArrayList<MessageListener>(), null,
+				"h", li, new ModuleCommunicationBus(),
+				new StationaryMovement(loc), new PassiveRouter(ts));
+		return host.getInterfaces().get(0);
+	}
+
+	/**
+	 * Creates a sender at the origin and a receiver at the given location
+	 * and starts sending a message from the sender to the receiver
+	 * @param rxLoc Location of the receiver
+	 * @return The interface of the sender
+	 */
+	private NetworkInterface startSending(Coord rxLoc) {
+		return startSending(new Coord(0, 0), rxLoc);
+	}
+
+	/**
+	 * Creates a sender and a receiver and starts sending a message from the
+	 * sender to the receiver
+	 * @param txLoc Location of the sender
+	 * @param rxLoc Location of the receiver
+	 * @return The interface of the sender
+	 */
+	private NetworkInterface startSending(Coord txLoc, Coord rxLoc) {
+		NetworkInterface tx = createHost(txLoc);
+		NetworkInterface rx = createHost(rxLoc);
+		tx.connect(rx);
+		tx.getConnections().get(0).startTransfer(tx.getHost(),
+				new Message(tx.getHost(), rx.getHost(),
+						"M" + tx.getHost().getAddress(), 10000));
+		return tx;
+	}
+}
@@ -6,6 +6,7 @@ package test;
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.util.Map;
 
 import junit.framework.TestCase;
 import core.Settings;
@@ -204,6 +205,26 @@ public class SettingsTest extends TestCase {
 		assertEquals(CSV_RS_V[1],vals[1]);
 	}
 	
+	public void testRecording() {
+		Settings ns = new Settings("Ns");
+		ns.setSecondaryNamespace("DefNs");
+		
+		Settings.startRecording();
+		ns.getInt(RS_S);
+		Map<String, String> reads = Settings.stopRecording();
+		s.getSetting(TST); // not recorded
+		
+		assertEquals(2, reads.size());
+		assertEquals("", reads.get("Ns.runSetting"));
+		assertEquals("1", reads.get("DefNs.runSetting"));
+		assertTrue(Settings.hasSameValues(reads));
+		
+		Settings.setRunIndex(1); // Ns.runSetting is still empty
+		assertTrue(Settings.hasSameValues(reads));
+		Settings.setRunIndex(2);
+		assertFalse(Settings.hasSameValues(reads));
+	}
+	
 	public void testInvalidRunIndex() {
 		assertEquals("[val1 ; val2",s.getSetting(IRS_S));
 	}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import junit.framework.TestCase;
+import core.Message;
+import core.SimClock;
+import core.SimulationContext;
+
+/**
+ * Tests for the simulation context: state of runs in different contexts
+ * must not affect each other.
+ */
+public class SimulationContextTest extends TestCase {
+
+	private SimulationContext ctx1;
+	private SimulationContext ctx2;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		ctx1 = new SimulationContext(0);
+		ctx2 = new SimulationContext(1);
+	}
+
+	protected void tearDown() throws Exception {
+		SimulationContext.setCurrent(null);
+		super.tearDown();
+	}
+
+	public void testClock() {
+		SimClock.getInstance().setTime(5);
+
+		SimulationContext.setCurrent(ctx1);
+		assertEquals(0.0, SimClock.getTime());
+		SimClock.getInstance().advance(10);
+
+		SimulationContext.setCurrent(ctx2);
+		assertEquals(0.0, SimClock.getTime());
+		SimClock.getInstance().setTime(20);
+
+		SimulationContext.setCurrent(ctx1);
+		assertEquals(10.0, SimClock.getTime());
+		assertEquals(20.0, ctx2.getTime());
+
+		SimulationContext.setCurrent(null);
+		assertEquals(5.0, SimClock.getTime());
+	}
+
+	public void testMessageIds() {
+		SimulationContext.setCurrent(ctx1);
+		int first = new Message(null, null, "M1", 1).getUniqueId();
+		new Message(null, null, "M2", 1);
+
+		SimulationContext.setCurrent(ctx2);
+		assertEquals(first, new Message(null, null, "M1", 1).getUniqueId());
+
+		SimulationContext.setCurrent(ctx1);
+		assertEquals(first + 2,
+				new Message(null, null, "M3", 1).getUniqueId());
+	}
+
+	public void testClassState() {
+		Object state = new Object();
+		ctx1.setClassState(SimulationContextTest.class, state);
+		assertSame(state, ctx1.getClassState(SimulationContextTest.class));
+		assertNull(ctx2.getClassState(SimulationContextTest.class));
+
+		ctx1.setClassState(SimulationContextTest.class, null);
+		assertNull(ctx1.getClassState(SimulationContextTest.class));
+	}
+
+	public void testThreadContext() throws Exception {
+		final double[] seen = new double[1];
+		SimulationContext.setCurrent(ctx1);
+		SimClock.getInstance().setTime(42);
+
+		Thread t = new Thread() {
+			public void run() {
+				seen[0] = SimClock.getTime();
+			}
+		};
+		t.start();
+		t.join();
+
+		assertEquals(42.0, SimClock.getTime());
+		assertFalse(seen[0] == 42.0);
+	}
+}
@@ -72,4 +72,9 @@ public class TestDTNHost extends DTNHost {
 		this.transferredId = id;
 		this.transferredFrom = from;
 	}
+	
+	@Override
+	public void messageTransferred(Message m, DTNHost from) {
+		messageTransferred(m.getId(), from);
+	}
 }
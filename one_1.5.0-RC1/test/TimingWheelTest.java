@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import util.TimingWheel;
+
+/**
+ * Tests for the TimingWheel
+ */
+public class TimingWheelTest extends TestCase {
+
+	public void testPoll() {
+		TimingWheel<String> wheel = new TimingWheel<String>(1.0, 10);
+		List<String> due = new ArrayList<String>();
+		wheel.schedule("A", 12.5);
+		wheel.schedule("B", 5); /* already passed */
+		wheel.schedule("C", 12.5);
+		wheel.schedule("D", 200);
+		assertEquals(4, wheel.size());
+
+		wheel.poll(10, due);
+		assertEquals(1, due.size());
+		assertEquals("B", due.get(0));
+		assertEquals(12.5, wheel.getNextTime());
+
+		due.clear();
+		wheel.poll(12.4, due);
+		assertEquals(0, due.size());
+		wheel.poll(12.5, due);
+		assertEquals(2, due.size());
+		assertTrue(due.contains("A") && due.contains("C"));
+
+		due.clear();
+		assertTrue(wheel.getNextTime() <= 200);
+		wheel.poll(199.9, due);
+		assertEquals(0, due.size());
+		assertEquals(200.0, wheel.getNextTime());
+		wheel.poll(1000, due);
+		assertEquals(1, due.size());
+		assertEquals(0, wheel.size());
+		assertEquals(Double.MAX_VALUE, wheel.getNextTime());
+	}
+
+	public void testLevels() {
+		Random rng = new Random(3);
+		TimingWheel<Integer> wheel = new TimingWheel<Integer>(1.0, 0);
+		HashMap<Integer, Double> times = new HashMap<Integer, Double>();
+		List<Integer> due = new ArrayList<Integer>();
+		double time = 0;
+		int next = 0;
+
+		while (time < 300000) {
+			for (int i = 0; i < 3; i++) {
+				/* from the near future up to beyond the wheel's span */
+				double t = time + Math.pow(10, rng.nextDouble() * 8);
+				times.put(next, t);
+				wheel.schedule(next++, t);
+			}
+			double nextTime = wheel.getNextTime();
+			for (double t : times.values()) {
+				assertTrue(nextTime <= t);
+			}
+
+			time += rng.nextDouble() * 500;
+			due.clear();
+			wheel.poll(time, due);
+			double prev = -1;
+			for (Integer item : due) {
+				double t = times.remove(item);
+				assertTrue(t <= time);
+				assertTrue(Math.floor(t) >= Math.floor(prev));
+				prev = t;
+			}
+			for (double t : times.values()) {
+				assertTrue(t > time);
+			}
+			assertEquals(times.size(), wheel.size());
+		}
+	}
+}
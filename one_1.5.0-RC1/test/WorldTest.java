@@ -5,15 +5,35 @@
 package test;
 
 import input.EventQueue;
+import input.ExternalEvent;
+import input.MessageCreateEvent;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
 import junit.framework.TestCase;
+import movement.MovementModel;
+import movement.RandomWaypoint;
+import routing.ActiveRouter;
+import routing.EpidemicRouter;
+import routing.MessageRouter;
+import routing.PassiveRouter;
+import interfaces.ConnectivityGrid;
+import interfaces.SimpleBroadcastInterface;
+import core.Connection;
+import core.ConnectionListener;
+import core.Coord;
 import core.DTNHost;
+import core.Message;
+import core.MessageListener;
 import core.ModuleCommunicationBus;
 import core.NetworkInterface;
 import core.SimClock;
+import core.SimScenario;
+import core.SimulationContext;
 import core.UpdateListener;
 import core.World;
 
@@ -36,6 +56,7 @@ public class WorldTest extends TestCase {
 	protected void setUp() throws Exception {
 		super.setUp();
 		SimClock.reset();
+		DTNHost.reset();
 		TestSettings testSettings = new TestSettings();
 		testSettings.setNameSpace(TestUtils.IFACE_NS);
 		testSettings.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "1.0");
@@ -102,6 +123,436 @@ public class WorldTest extends TestCase {
 	}
 	
 
+	public void testCoalescedEventUpdates() {
+		TestSettings s = new TestSettings();
+		s.setNameSpace(World.OPTIMIZATION_SETTINGS_NS);
+		s.putSetting(World.COALESCE_EVENT_UPDATES_S, "true");
+		
+		eQueues.add(new TestQueue(new HostEvent(0.15, 1, 2),
+				new HostEvent(0.15, 3, 2), new HostEvent(0.25, 4, 4), 
+				new HostEvent(0.35, 5, 6)));
+		TestScenario ts = new TestScenario();
+		this.world = new World(ts.getHosts(),ts.getWorldSizeX(), 
+				ts.getWorldSizeY(),ts.getUpdateInterval(), 
+				ts.getUpdateListeners(), ts.simulateConnections(), 
+				ts.getExternalEvents() );
+		world.scheduleUpdate(0.35);
+		
+		world.update();
+		assertNrofUpdates(1);
+		
+		world.update(); // one update for both events at 0.15
+		assertNrofUpdates(new int[] {2, 3, 3, 3, 2, 2, 2, 2, 2, 2});
+		
+		world.update();
+		assertNrofUpdates(new int[] {3, 4, 4, 4, 4, 3, 3, 3, 3, 3});
+		
+		world.update(); // the scheduled update at 0.35 updates all
+		assertNrofUpdates(new int[] {5, 6, 6, 6, 6, 5, 5, 5, 5, 5});
+	}
+	
+	public void testNextEventAdvanceInitialContacts() {
+		List<DTNHost> hosts = createConnectingWorld(0.1, new Coord(0,0),
+				new Coord(0.5,0), new Coord(50,50));
+		
+		world.update();
+		assertEquals(0.1, SimClock.getTime(), TIME_DELTA);
+		/* hosts in range at the start are connected by the first update */
+		assertEquals(1, hosts.get(0).getConnections().size());
+		assertEquals(1, hosts.get(1).getConnections().size());
+		assertEquals(0, hosts.get(2).getConnections().size());
+	}
+	
+	public void testNextEventAdvanceStationaryHosts() {
+		List<DTNHost> hosts = createConnectingWorld(1, new Coord(10,10),
+				new Coord(10.5,10));
+		
+		world.update();
+		assertEquals(1.0, SimClock.getTime(), TIME_DELTA);
+		assertEquals(1, hosts.get(0).getConnections().size());
+		
+		assertEquals(1, hosts.get(1).getConnections().size());
+	}
+	
+	public void testNextEventAdvanceSkipsIdleIntervals() {
+		List<DTNHost> hosts = createConnectingWorld(1, new Coord(10,10),
+				new Coord(20,10));
+		
+		/* no contacts can ever happen so (almost) all can be skipped */
+		int nrofUpdates = 0;
+		while (SimClock.getTime() < 1000 - TIME_DELTA) {
+			world.update();
+			nrofUpdates++;
+		}
+		assertTrue(nrofUpdates < 10);
+		assertEquals(0, hosts.get(0).getConnections().size());
+	}
+	
+	public void testParallelMovement() {
+		List<Coord> oneThread = getLocations(createWaypointWorld(1, null,
+				null, World.PARALLEL_MOVEMENT_S));
+		List<Coord> manyThreads = getLocations(createWaypointWorld(4, null,
+				null, World.PARALLEL_MOVEMENT_S));
+		
+		assertEquals(oneThread.size(), manyThreads.size());
+		for (int i=0; i<oneThread.size(); i++) {
+			assertEquals("Host " + i, oneThread.get(i), manyThreads.get(i));
+		}
+	}
+	
+	public void testParallelUpdate() {
+		ConnectionRecorder sequential = new ConnectionRecorder();
+		ConnectionRecorder parallel = new ConnectionRecorder();
+		createWaypointWorld(1, sequential, null);
+		createWaypointWorld(4, parallel, null, World.PARALLEL_UPDATE_S);
+		
+		assertTrue(sequential.events.size() > 0);
+		assertEquals(sequential.events, parallel.events);
+	}
+	
+	public void testConnectionsInRange() {
+		RangeChecker checker = new RangeChecker(20);
+		createWaypointWorld(1, null, checker);
+		assertTrue(checker.nrofInRange > 0);
+	}
+	
+	public void testConnectivitySweep() {
+		RangeChecker checker = new RangeChecker(20);
+		createWaypointWorld(1, null, checker, World.CONNECTIVITY_SWEEP_S);
+		assertTrue(checker.nrofInRange > 0);
+	}
+	
+	public void testParallelConnectivitySweep() {
+		ConnectionRecorder sequential = new ConnectionRecorder();
+		ConnectionRecorder parallel = new ConnectionRecorder();
+		createWaypointWorld(1, sequential, null, World.CONNECTIVITY_SWEEP_S);
+		createWaypointWorld(4, parallel, new RangeChecker(20),
+				World.CONNECTIVITY_SWEEP_S, World.PARALLEL_UPDATE_S);
+		
+		assertTrue(sequential.events.size() > 0);
+		assertEquals(sequential.events, parallel.events);
+	}
+	
+	public void testSkipIdleRouters() {
+		assertSameEvents();
+		assertSameEvents(ActiveRouter.EXACT_TTL_S);
+	}
+	
+	/**
+	 * Asserts that the message and connection events of a run with 
+	 * short message TTLs are the same with and without skipping the idle
+	 * router updates
+	 * @param optimizations The other optimization settings to enable
+	 */
+	private void assertSameEvents(String... optimizations) {
+		MessageRecorder all = new MessageRecorder();
+		MessageRecorder skipping = new MessageRecorder();
+		String[] skip = Arrays.copyOf(optimizations, optimizations.length + 1);
+		skip[optimizations.length] = World.SKIP_IDLE_ROUTERS_S;
+		runMessageWorld(all, optimizations);
+		runMessageWorld(skipping, skip);
+		
+		assertTrue(all.nrofTransferred > 0);
+		assertTrue(all.nrofDeleted > 0);
+		assertEquals(all.events, skipping.events);
+	}
+	
+	private List<Coord> getLocations(List<DTNHost> hosts) {
+		List<Coord> locations = new ArrayList<Coord>();
+		for (DTNHost host : hosts) {
+			locations.add(host.getLocation().clone());
+		}
+		return locations;
+	}
+	
+	/**
+	 * Runs a world with hosts that have random waypoint movement, per-host
+	 * random number streams and broadcast interfaces in a new simulation 
+	 * context
+	 * @param nrofThreads Number of threads to use
+	 * @param cl Connection listener of the interfaces (or null)
+	 * @param ul Update listener of the world (or null)
+	 * @param optimizations The optimization settings to enable
+	 * @return The hosts after the run
+	 */
+	private List<DTNHost> createWaypointWorld(int nrofThreads, 
+			ConnectionListener cl, UpdateListener ul, 
+			String... optimizations) {
+		SimulationContext.setCurrent(new SimulationContext(0));
+		DTNHost.reset();
+		TestSettings s = new TestSettings();
+		s.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." + 
+				MovementModel.PER_HOST_RNG, "true");
+		for (String optimization : optimizations) {
+			s.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." + 
+					optimization, "true");
+		}
+		s.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." + 
+				World.NROF_THREADS_S, "" + nrofThreads);
+		s.setNameSpace("Group");
+		s.putSetting(MovementModel.SPEED, "0.5,1.5");
+		s.putSetting(MovementModel.WAIT_TIME, "0,10");
+		MovementModel mmProto = new RandomWaypoint(s);
+		s.setNameSpace(TestUtils.IFACE_NS);
+		s.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "20");
+		s.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+		List<ConnectionListener> cls = new ArrayList<ConnectionListener>();
+		if (cl != null) {
+			cls.add(cl);
+		}
+		List<UpdateListener> uls = new ArrayList<UpdateListener>();
+		if (ul != null) {
+			uls.add(ul);
+		}
+		
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i<100; i++) {
+			NetworkInterface ni = new SimpleBroadcastInterface(s);
+			ni.setGroupSettings(s);
+			ni.setClisteners(cls);
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(ni);
+			hosts.add(new DTNHost(null, null, "h", li, 
+					new ModuleCommunicationBus(), mmProto, 
+					new PassiveRouter(s)));
+		}
+		
+		this.world = new World(hosts, worldSizeX, worldSizeY, 1.0, uls, 
+				true, eQueues);
+		for (int i=0; i<500; i++) {
+			world.update();
+		}
+		SimulationContext.setCurrent(null);
+		return hosts;
+	}
+	
+	/**
+	 * Runs a world with hosts that have random waypoint movement, epidemic
+	 * routers and messages with a two minute TTL in a new simulation 
+	 * context
+	 * @param recorder Recorder of the message and connection events
+	 * @param optimizations The optimization settings to enable
+	 */
+	private void runMessageWorld(MessageRecorder recorder, 
+			String... optimizations) {
+		SimulationContext.setCurrent(new SimulationContext(0));
+		DTNHost.reset();
+		TestSettings s = new TestSettings();
+		s.putSetting(MovementModel.MOVEMENT_MODEL_NS + "." + 
+				MovementModel.PER_HOST_RNG, "true");
+		for (String optimization : optimizations) {
+			s.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." + 
+					optimization, "true");
+		}
+		s.setNameSpace("Group");
+		s.putSetting(MovementModel.SPEED, "0.5,1.5");
+		s.putSetting(MovementModel.WAIT_TIME, "0,10");
+		s.putSetting(MessageRouter.MSG_TTL_S, "2");
+		s.putSetting(MessageRouter.B_SIZE_S, "3000");
+		MovementModel mmProto = new RandomWaypoint(s);
+		MessageRouter routerProto = new EpidemicRouter(s);
+		s.setNameSpace(TestUtils.IFACE_NS);
+		s.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "20");
+		s.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "100");
+		List<ConnectionListener> cls = new ArrayList<ConnectionListener>();
+		cls.add(recorder);
+		List<MessageListener> mls = new ArrayList<MessageListener>();
+		mls.add(recorder);
+		
+		int nrofHosts = 30;
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (int i=0; i<nrofHosts; i++) {
+			NetworkInterface ni = new SimpleBroadcastInterface(s);
+			ni.setGroupSettings(s);
+			ni.setClisteners(cls);
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(ni);
+			hosts.add(new DTNHost(mls, null, "h", li, 
+					new ModuleCommunicationBus(), mmProto, routerProto));
+		}
+		
+		Random rng = new Random(0);
+		List<ExternalEvent> messages = new ArrayList<ExternalEvent>();
+		for (int i=0; i<200; i++) {
+			int from = rng.nextInt(nrofHosts);
+			int to = (from + 1 + rng.nextInt(nrofHosts - 1)) % nrofHosts;
+			messages.add(new MessageCreateEvent(from, to, "M" + i, 
+					100 + rng.nextInt(900), 0, i * 2.5));
+		}
+		List<EventQueue> queues = new ArrayList<EventQueue>();
+		queues.add(new TestQueue(messages.toArray(new ExternalEvent[0])));
+		
+		this.world = new World(hosts, worldSizeX, worldSizeY, 1.0, 
+				new ArrayList<UpdateListener>(), true, queues);
+		for (int i=0; i<600; i++) {
+			world.update();
+		}
+		SimulationContext.setCurrent(null);
+	}
+	
+	/** Connection listener that records the connection events */
+	private class ConnectionRecorder implements ConnectionListener {
+		protected List<String> events = new ArrayList<String>();
+		
+		public void hostsConnected(DTNHost host1, DTNHost host2) {
+			events.add(SimClock.getTime() + " " + host1 + "-" + host2 + " up");
+		}
+		
+		public void hostsDisconnected(DTNHost host1, DTNHost host2) {
+			events.add(SimClock.getTime() + " " + host1 + "-" + host2 + 
+					" down");
+		}
+	}
+	
+	/** Connection and message listener that records all the events */
+	private class MessageRecorder extends ConnectionRecorder 
+			implements MessageListener {
+		private int nrofTransferred;
+		private int nrofDeleted;
+		
+		public void newMessage(Message m) {
+			events.add(SimClock.getTime() + " " + m + " new");
+		}
+		
+		public void messageTransferStarted(Message m, DTNHost from, 
+				DTNHost to) {
+			events.add(SimClock.getTime() + " " + m + " " + from + "->" + to +
+					" started");
+		}
+		
+		public void messageDeleted(Message m, DTNHost where, 
+				boolean dropped) {
+			events.add(SimClock.getTime() + " " + m + " " + where + 
+					(dropped ? " dropped" : " removed"));
+			nrofDeleted++;
+		}
+		
+		public void messageTransferAborted(Message m, DTNHost from, 
+				DTNHost to) {
+			events.add(SimClock.getTime() + " " + m + " " + from + "->" + to +
+					" aborted");
+		}
+		
+		public void messageTransferred(Message m, DTNHost from, DTNHost to,
+				boolean firstDelivery) {
+			events.add(SimClock.getTime() + " " + m + " " + from + "->" + to +
+					" transferred");
+			nrofTransferred++;
+		}
+	}
+	
+	/** 
+	 * Update listener that checks that the hosts that are within the range
+	 * of each other, and only them, are connected after every update
+	 */
+	private class RangeChecker implements UpdateListener {
+		private double range;
+		private int nrofInRange;
+		
+		public RangeChecker(double range) {
+			this.range = range;
+		}
+		
+		public void updated(List<DTNHost> hosts) {
+			for (int i=0; i<hosts.size(); i++) {
+				DTNHost h1 = hosts.get(i);
+				for (int j=i+1; j<hosts.size(); j++) {
+					DTNHost h2 = hosts.get(j);
+					boolean inRange = h1.getLocation().distance(
+							h2.getLocation()) <= range;
+					boolean connected = false;
+					for (Connection con : h1.getConnections()) {
+						connected |= con.getOtherNode(h1) == h2;
+					}
+					assertEquals(SimClock.getTime() + " " + h1 + "-" + h2, 
+							inRange, connected);
+					if (inRange) {
+						nrofInRange++;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Replaces the world with one that has hosts with broadcast interfaces 
+	 * at the given locations and skips the idle update intervals
+	 * @param interval The update interval
+	 * @param locs Locations of the hosts
+	 * @return The new hosts
+	 */
+	private List<DTNHost> createConnectingWorld(double interval, 
+			Coord... locs) {
+		TestSettings s = new TestSettings();
+		s.putSetting(SimScenario.SCENARIO_NS + "." + SimScenario.END_TIME_S,
+				"1000");
+		s.putSetting(World.OPTIMIZATION_SETTINGS_NS + "." + 
+				World.NEXT_EVENT_ADVANCE_S, "true");
+		s.setNameSpace(TestUtils.IFACE_NS);
+		s.putSetting(NetworkInterface.TRANSMIT_RANGE_S, "1.0");
+		s.putSetting(NetworkInterface.TRANSMIT_SPEED_S, "1");
+		ConnectivityGrid.reset();
+		
+		List<DTNHost> hosts = new ArrayList<DTNHost>();
+		for (Coord loc : locs) {
+			NetworkInterface ni = new SimpleBroadcastInterface(s);
+			ni.setGroupSettings(s);
+			List<NetworkInterface> li = new ArrayList<NetworkInterface>();
+			li.add(ni);
+			hosts.add(new DTNHost(null, null, "h", li, 
+					new ModuleCommunicationBus(), new StationaryMovement(loc),
+					new PassiveRouter(s)));
+		}
+		
+		this.world = new World(hosts, worldSizeX, worldSizeY, interval,
+				new ArrayList<UpdateListener>(), true, eQueues);
+		return hosts;
+	}
+	
+	private void assertNrofUpdates(int[] nrofs) {
+		for (int i=0; i<nrofs.length; i++) {
+			assertEquals("Host " + i, nrofs[i], testHosts.get(i).nrofUpdate);
+		}
+	}
+	
+	/** Event that concerns the given hosts */
+	private class HostEvent extends ExternalEvent {
+		private int[] addresses;
+		
+		public HostEvent(double time, int... addresses) {
+			super(time);
+			this.addresses = addresses;
+		}
+		
+		@Override
+		public int[] getHostAddresses() {
+			return this.addresses;
+		}
+	}
+	
+	/** Event queue with a fixed list of events */
+	private class TestQueue implements EventQueue {
+		private LinkedList<ExternalEvent> events;
+		
+		public TestQueue(ExternalEvent... events) {
+			this.events = new LinkedList<ExternalEvent>(Arrays.asList(events));
+		}
+		
+		public ExternalEvent nextEvent() {
+			if (events.isEmpty()) {
+				return new ExternalEvent(Double.MAX_VALUE);
+			}
+			return events.removeFirst();
+		}
+		
+		public double nextEventsTime() {
+			if (events.isEmpty()) {
+				return Double.MAX_VALUE;
+			}
+			return events.getFirst().getTime();
+		}
+	}
+	
 	/** Dummy scenario for providing test values for the World */ 
 	private class TestScenario extends core.SimScenario {
 		public TestScenario() {	}
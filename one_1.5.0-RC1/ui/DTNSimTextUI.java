@@ -14,6 +14,28 @@ public class DTNSimTextUI extends DTNSimUI {
 	private long startTime; // simulation start time
 	/** How often the UI view is updated (milliseconds) */
 	public static final long UI_UP_INTERVAL = 60000;
+	/** prefix for the printed lines */
+	private String prefix;
+	
+	/**
+	 * Constructor.
+	 */
+	public DTNSimTextUI() {
+		this("");
+	}
+	
+	/**
+	 * Constructor.
+	 * @param prefix Prefix for all the lines the UI prints (e.g., to tell
+	 * apart the output of concurrent runs)
+	 */
+	public DTNSimTextUI(String prefix) {
+		this.prefix = prefix;
+	}
+
+	protected boolean isCheckpointingSupported() {
+		return true;
+	}
 
 	protected void runSim() {
 		double simTime = SimClock.getTime();
@@ -34,10 +56,16 @@ public class DTNSimTextUI extends DTNSimUI {
 			}
 			simTime = SimClock.getTime();
 			this.update(false);
+			if (simTime < endTime) {
+				updateCheckpoint();
+			}
 		}
 		
 		double duration = (System.currentTimeMillis() - startTime)/1000.0;
 		
+		if (simTime >= endTime) {
+			this.checkpoint.delete(); // completed run isn't resumed
+		}
 		simDone = true;
 		done();
 		this.update(true); // force final UI update
@@ -68,7 +96,7 @@ public class DTNSimTextUI extends DTNSimUI {
 	}
 	
 	private void print(String txt) {
-		System.out.println(txt);
+		System.out.println(prefix + txt);
 	}
 	
 }
@@ -4,11 +4,14 @@
  */
 package ui;
 
+import java.util.Map;
 import java.util.Vector;
 
 import report.Report;
 import core.ApplicationListener;
+import core.Checkpoint;
 import core.ConnectionListener;
+import core.ContactTrace;
 import core.MessageListener;
 import core.MovementListener;
 import core.Settings;
@@ -17,6 +20,7 @@ import core.SimClock;
 import core.SimError;
 import core.SimScenario;
 import core.UpdateListener;
+import core.WarmupSnapshot;
 import core.World;
 
 /**
@@ -58,6 +62,10 @@ public abstract class DTNSimUI {
 	protected SimScenario scen;
 	/** simtime of last UI update */
 	protected double lastUpdate;
+	/** Checkpoint writer of the simulation */
+	protected Checkpoint checkpoint;
+	/** is the VM exited if the simulation can't be started */
+	private boolean exitOnError;
 	
 	/**
 	 * Constructor.
@@ -67,6 +75,18 @@ public abstract class DTNSimUI {
 		this.reports = new Vector<Report>();
 		this.simDone = false;
 		this.simCancelled = false;
+		this.exitOnError = true;
+	}
+	
+	/**
+	 * Sets whether the VM is exited if the simulation can't be started 
+	 * (e.g., because of an error in the settings). If not, the error is 
+	 * thrown to the caller of {@link #start()}, e.g., so that the other
+	 * concurrent runs of a batch can finish. Default is true.
+	 * @param exit If true, the VM is exited on errors
+	 */
+	public void setExitOnError(boolean exit) {
+		this.exitOnError = exit;
 	}
 	
 	/**
@@ -90,7 +110,17 @@ public abstract class DTNSimUI {
 				
 		try {
 			settings = new Settings();
+			if (isCheckpointingSupported()) {
+				this.checkpoint = new Checkpoint();
+				if (this.checkpoint.canResume()) {
+					resumeModel();
+					return;
+				}
+			}
+			
+			Settings.startRecording(); /* for the warmup snapshots */
 			this.scen = SimScenario.getInstance();
+			Map<String, String> scenarioReads = Settings.stopRecording();
 
 			// add reports
 			for (int i=1, n = settings.getInt(NROF_REPORT_S); i<=n; i++){
@@ -109,20 +139,61 @@ public abstract class DTNSimUI {
 			}
 
 			this.world = this.scen.getWorld();
-			world.warmupMovementModel(warmupTime);
+			if (!ContactTrace.setup(world, scenarioReads, warmupTime)) {
+				WarmupSnapshot.warmup(world, warmupTime, scenarioReads);
+			}
 		}
-		catch (SettingsError se) {
-			System.err.println("Can't start: error in configuration file(s)");
-			System.err.println(se.getMessage());
-			System.exit(-1);			
+		catch (SettingsError se) {
+			System.err.println("Can't start: error in configuration file(s)");
+			System.err.println(se.getMessage());
+			if (!this.exitOnError) {
+				throw se;
+			}
+			System.exit(-1);			
 		}
 		catch (SimError er) {
 			System.err.println("Can't start: " + er.getMessage());
 			System.err.println("Caught at " + er.getStackTrace()[0]);
+			if (!this.exitOnError) {
+				throw er;
+			}
 			System.exit(-1);
 		}		
 	}
 	
+	/**
+	 * Initializes the simulator model from a checkpoint
+	 */
+	@SuppressWarnings("unchecked")
+	private void resumeModel() {
+		this.reports = (Vector<Report>)this.checkpoint.resume();
+		this.scen = SimScenario.getInstance();
+		this.world = this.scen.getWorld();
+		this.lastUpdate = SimClock.getTime();
+		System.out.println("Resumed from checkpoint " + 
+				this.checkpoint.getFile() + " at " + SimClock.getTime());
+	}
+	
+	/**
+	 * Returns true if this user interface writes checkpoints and resumes
+	 * runs from them (see {@link Checkpoint}). This implementation returns
+	 * false.
+	 * @return true if checkpoints are supported
+	 */
+	protected boolean isCheckpointingSupported() {
+		return false;
+	}
+	
+	/**
+	 * Writes a checkpoint of the simulation if it is time for one. Must be
+	 * called between world updates.
+	 */
+	protected void updateCheckpoint() {
+		if (this.checkpoint != null) {
+			this.checkpoint.update(this.reports);
+		}
+	}
+	
 	/**
 	 * Runs maintenance jobs that are needed before exiting.
 	 */
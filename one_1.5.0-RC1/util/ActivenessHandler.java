@@ -4,6 +4,7 @@
  */
 package util;
 
+import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.Queue;
 
@@ -15,7 +16,8 @@ import core.SimClock;
  * Object of this class tell the models when a node belonging
  * to a certain group is active and when not.
  */
-public class ActivenessHandler {
+public class ActivenessHandler implements Serializable {
+	private static final long serialVersionUID = 1L;
 	
 	/** 
 	 * <P>Active times -setting id ({@value})</P>
@@ -53,6 +55,8 @@ public class ActivenessHandler {
 	private int activePeriodsOffset;
 	
 	private TimeRange curRange = null;
+	/** number of times the current time range has changed */
+	private int nrofRangeChanges = 0;
 	
 	public ActivenessHandler(Settings s) {
 		this.activeTimes = parseActiveTimes(s);
@@ -140,6 +144,7 @@ public class ActivenessHandler {
 		
 		if (this.curRange.isOut(time)) { // time for the next time range
 			this.curRange = activeTimes.poll();
+			this.nrofRangeChanges++;
 			if (curRange == null) {
 				return false; // out of active times
 			}
@@ -147,11 +152,73 @@ public class ActivenessHandler {
 		
 		return curRange.isInRange(time);
 	}
+	
+	/**
+	 * Returns the simulation time until which {@link #isActive(int)} keeps
+	 * returning the same value for the given offset as it returns now. The
+	 * result is valid only as long as the current time range of active
+	 * times mode doesn't change (see {@link #getNrofRangeChanges()}), and
+	 * it should be asked right after calling {@link #isActive(int)}.
+	 * @param offset The offset
+	 * @return The time before which the activeness stays the same; the
+	 * current time if it may change any moment or Double.MAX_VALUE if it
+	 * never changes
+	 */
+	public double getValidityTime(int offset) {
+		double now = SimClock.getTime();
+		
+		if (this.activeTimes == null) {
+			if (this.activePeriods == null) {
+				return Double.MAX_VALUE;
+			}
+			int intTime = SimClock.getIntTime();
+			int periodTime = intTime + this.activePeriodsOffset + offset;
+			if (periodTime < 0) {
+				return now;
+			}
+			int timeIndex = periodTime % 
+				(this.activePeriods[0] + this.activePeriods[1]);
+			int change; // next integer time with different activeness
+			if (timeIndex <= this.activePeriods[0]) {
+				change = intTime + this.activePeriods[0] - timeIndex + 1;
+			} else {
+				change = intTime + this.activePeriods[0] + 
+					this.activePeriods[1] - timeIndex;
+			}
+			/* integer time is the rounded sim time */
+			return change - 0.5;
+		}
+		
+		if (curRange == null) {
+			return Double.MAX_VALUE;
+		}
+		
+		double time = now + offset;
+		if (time < curRange.start) {
+			return curRange.start - offset;
+		} else if (time <= curRange.end) {
+			return curRange.end - offset;
+		} else {
+			return now; // next isActive call moves to the next range
+		}
+	}
+	
+	/**
+	 * Returns the number of times the current time range of active times
+	 * mode has changed. Since the handler is shared by all the interfaces
+	 * of a group, the change can also be caused by other interfaces.
+	 * @return The number of time range changes
+	 */
+	public int getNrofRangeChanges() {
+		return this.nrofRangeChanges;
+	}
 
 	/**
 	 * Class for handling time ranges
 	 */
-	private class TimeRange {
+	private class TimeRange implements Serializable {
+		private static final long serialVersionUID = 1L;
+
 		private double start;
 		private double end;
 		
@@ -0,0 +1,167 @@
+/* 
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details. 
+ */
+package util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import core.SimError;
+import core.SimulationContext;
+
+/**
+ * Executes index based jobs in parallel using a fixed set of worker threads.
+ * The index range is split into contiguous partitions (one per thread) and
+ * the caller is blocked until all the partitions are done. The work done for
+ * a single index must not depend on the work done for other indexes, so the
+ * result is the same regardless of the number of threads. Serialized
+ * executors are replaced by the shared executors when they are read.
+ */
+public class ParallelExecutor implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** Shared executors with the number of threads as the key */
+	private static HashMap<Integer, ParallelExecutor> executors =
+		new HashMap<Integer, ParallelExecutor>();
+
+	private transient ExecutorService pool;
+	private int nrofThreads;
+
+	/**
+	 * A job that is run once for every index of the range
+	 */
+	public interface Job {
+		/**
+		 * Does the work for one index
+		 * @param index The index
+		 */
+		public void run(int index);
+	}
+
+	/**
+	 * Constructor.
+	 * @param nrofThreads Number of threads to use (including the caller's
+	 * thread)
+	 */
+	private ParallelExecutor(int nrofThreads) {
+		this.nrofThreads = nrofThreads;
+		if (nrofThreads > 1) {
+			this.pool = Executors.newFixedThreadPool(nrofThreads - 1,
+					new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ParallelExecutor");
+					t.setDaemon(true); /* don't prevent the JVM from exiting */
+					return t;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns a shared executor with the given number of threads
+	 * @param nrofThreads Number of threads to use. If less than 1, the
+	 * number of available processors is used.
+	 * @return The executor
+	 */
+	public static synchronized ParallelExecutor getInstance(int nrofThreads) {
+		if (nrofThreads < 1) {
+			nrofThreads = Runtime.getRuntime().availableProcessors();
+		}
+		ParallelExecutor pe = executors.get(nrofThreads);
+		if (pe == null) {
+			pe = new ParallelExecutor(nrofThreads);
+			executors.put(nrofThreads, pe);
+		}
+		return pe;
+	}
+
+	/**
+	 * Replaces a deserialized executor with the shared executor that has
+	 * the same number of threads
+	 * @return The shared executor
+	 */
+	private Object readResolve() {
+		return getInstance(this.nrofThreads);
+	}
+	
+	/**
+	 * Returns the number of threads this executor uses
+	 * @return the number of threads
+	 */
+	public int getNrofThreads() {
+		return this.nrofThreads;
+	}
+
+	/**
+	 * Runs the job for all indexes from 0 to nrof-1 and returns when all
+	 * of them are done. The last partition is run in the caller's thread.
+	 * @param nrof Number of indexes
+	 * @param job The job to run
+	 * @throws SimError if a job threw a checked exception
+	 */
+	public void forEach(int nrof, final Job job) {
+		int parts = Math.min(this.nrofThreads, nrof);
+
+		if (parts <= 1) {
+			runRange(job, 0, nrof);
+			return;
+		}
+
+		/* the jobs are run in the simulation context of the caller */
+		final SimulationContext ctx = SimulationContext.get();
+		List<Future<?>> futures = new ArrayList<Future<?>>(parts - 1);
+		for (int p = 0; p < parts - 1; p++) {
+			final int start = (int)((long)p * nrof / parts);
+			final int end = (int)((long)(p + 1) * nrof / parts);
+			futures.add(pool.submit(new Runnable() {
+				public void run() {
+					SimulationContext.setCurrent(ctx);
+					try {
+						runRange(job, start, end);
+					} finally {
+						SimulationContext.setCurrent(null);
+					}
+				}
+			}));
+		}
+
+		runRange(job, (int)((long)(parts - 1) * nrof / parts), nrof);
+
+		for (Future<?> f : futures) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				throw new SimError(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException)cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error)cause;
+				}
+				throw new SimError(cause.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Runs a job for a range of indexes
+	 * @param job The job to run
+	 * @param start The first index (inclusive)
+	 * @param end The last index (exclusive)
+	 */
+	private static void runRange(Job job, int start, int end) {
+		for (int i = start; i < end; i++) {
+			job.run(i);
+		}
+	}
+}
@@ -4,11 +4,14 @@
  */
 package util;
 
+import java.io.Serializable;
+
 /**
  * Range of values
  * @author Ari
  */
-public class Range {
+public class Range implements Serializable {
+	private static final long serialVersionUID = 1L;
 	
 	private double min;
 	private double max;
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2010 Aalto University, ComNet
+ * Released under GPLv3. See LICENSE.txt for details.
+ */
+package util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * <P>Hierarchical timing wheel for scheduling items to become due at given
+ * times. The time is divided into ticks of the given resolution and the
+ * items are kept in {@value #LEVELS} levels of {@value #SLOTS} slots. The
+ * first level has a slot for each of the next {@value #SLOTS} ticks, the
+ * second level for each of the next {@value #SLOTS} blocks of
+ * {@value #SLOTS} ticks, and so on. When the wheel advances to the start
+ * of a block, the items of the block's slot are moved to the lower
+ * levels. Scheduling an item and finding the due items take constant time
+ * (apart from the ticks that are passed), regardless of the number of
+ * items.</P>
+ * <P>The items become due exactly at their times; the resolution only
+ * affects how the items are spread over the slots.</P>
+ */
+public class TimingWheel<T> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** number of bits in the slot index */
+	private static final int BITS = 6;
+	/** number of slots in a level */
+	public static final int SLOTS = 1 << BITS;
+	/** number of levels */
+	public static final int LEVELS = 4;
+	private static final int MASK = SLOTS - 1;
+	/** largest distance (in ticks) an item can be placed at */
+	private static final long MAX_DELTA = (1L << (BITS * LEVELS)) - 1;
+
+	private double resolution;
+	/** the current tick; all the items of the earlier ticks are due */
+	private long tick;
+	private ArrayList<Item<T>>[][] slots;
+	private int size;
+
+	/**
+	 * Constructor.
+	 * @param resolution Length of a tick (seconds)
+	 * @param time The current time
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public TimingWheel(double resolution, double time) {
+		this.resolution = resolution;
+		this.tick = toTick(time);
+		this.slots = new ArrayList[LEVELS][SLOTS];
+	}
+
+	private long toTick(double time) {
+		return (long)Math.floor(time / this.resolution);
+	}
+
+	/**
+	 * Schedules an item. If the time has already passed, the item is due
+	 * at the next {@link #poll(double, Collection)}.
+	 * @param item The item
+	 * @param time The time when the item is due
+	 */
+	public void schedule(T item, double time) {
+		insert(new Item<T>(item, time, Math.max(toTick(time), this.tick)));
+		this.size++;
+	}
+
+	/**
+	 * Puts an item to the slot of its tick
+	 */
+	private void insert(Item<T> item) {
+		long delta = Math.min(item.tick - this.tick, MAX_DELTA);
+		long placed = this.tick + delta;
+		int level = 0;
+		while (delta >= (1L << (BITS * (level + 1)))) {
+			level++;
+		}
+		int index = (int)((placed >>> (BITS * level)) & MASK);
+		if (this.slots[level][index] == null) {
+			this.slots[level][index] = new ArrayList<Item<T>>(2);
+		}
+		this.slots[level][index].add(item);
+	}
+
+	/**
+	 * Moves the items whose time is at or before the given time from the
+	 * wheel to the given collection. The items that became due at
+	 * different ticks are given in the order of the ticks.
+	 * @param time The current time
+	 * @param due The collection where the due items are added to
+	 */
+	public void poll(double time, Collection<T> due) {
+		long target = toTick(time);
+		while (this.size > 0) {
+			ArrayList<Item<T>> slot = this.slots[0][(int)(this.tick & MASK)];
+			if (slot != null) {
+				for (int i = 0; i < slot.size(); ) {
+					if (slot.get(i).time <= time) {
+						due.add(slot.remove(i).value);
+						this.size--;
+					} else {
+						i++;
+					}
+				}
+			}
+			if (this.tick >= target) {
+				return;
+			}
+			advance();
+		}
+		this.tick = Math.max(this.tick, target);
+	}
+
+	/**
+	 * Moves to the next tick and moves the items of the blocks that start
+	 * at the tick to the lower levels (highest level first)
+	 */
+	private void advance() {
+		this.tick++;
+		int top = 0;
+		while (top < LEVELS - 1 &&
+				(this.tick & ((1L << (BITS * (top + 1))) - 1)) == 0) {
+			top++;
+		}
+		for (int level = top; level > 0; level--) {
+			int index = (int)((this.tick >>> (BITS * level)) & MASK);
+			ArrayList<Item<T>> slot = this.slots[level][index];
+			if (slot != null && !slot.isEmpty()) {
+				this.slots[level][index] = null;
+				for (Item<T> item : slot) {
+					insert(item);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the earliest time when some item may be due. The time is
+	 * exact if there are items in the first level slots of the current
+	 * block, otherwise the start of the next block is returned.
+	 * @return The time or Double.MAX_VALUE if the wheel is empty
+	 */
+	public double getNextTime() {
+		if (this.size == 0) {
+			return Double.MAX_VALUE;
+		}
+		long blockEnd = this.tick | MASK;
+		for (long t = this.tick; t <= blockEnd; t++) {
+			ArrayList<Item<T>> slot = this.slots[0][(int)(t & MASK)];
+			if (slot != null && !slot.isEmpty()) {
+				double next = Double.MAX_VALUE;
+				for (Item<T> item : slot) {
+					next = Math.min(next, item.time);
+				}
+				return next;
+			}
+		}
+		return (blockEnd + 1) * this.resolution;
+	}
+
+	/**
+	 * Returns the number of items in the wheel
+	 * @return The number of items
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * An item in the wheel
+	 */
+	private static class Item<T> implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private T value;
+		private double time;
+		private long tick;
+
+		private Item(T value, double time, long tick) {
+			this.value = value;
+			this.time = time;
+			this.tick = tick;
+		}
+	}
+}